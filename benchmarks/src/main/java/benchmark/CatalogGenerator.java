@@ -0,0 +1,106 @@
+package main.java.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+/**
+ * Deterministic synthetic catalogs. Titles are drawn from a small
+ * vocabulary and authors from a fixed pool, so searches have realistic
+ * hit rates at every catalog size.
+ */
+public final class CatalogGenerator {
+    private static final String[] WORDS = {
+        "the", "art", "of", "programming", "clean", "code", "pragmatic", "design", "patterns", "java",
+        "systems", "concurrency", "practice", "effective", "modern", "introduction", "algorithms", "data",
+        "structures", "distributed", "network", "history", "garden", "river", "night", "city", "secret",
+        "journey", "ocean", "mountain", "light", "shadow", "kingdom", "memory", "winter", "summer", "fire",
+        "stone", "machine", "learning", "theory", "guide", "handbook", "principles", "language", "world"
+    };
+    private static final String[] FIRST_NAMES = {
+        "Robert", "Andrew", "Eric", "Martin", "Joshua", "Brian", "Donald", "Barbara", "Grace", "Ada",
+        "Edsger", "Linus", "Margaret", "Ken", "Dennis", "Bjarne", "James", "Niklaus", "Frances", "Leslie"
+    };
+    private static final String[] LAST_NAMES = {
+        "Martin", "Hunt", "Freeman", "Fowler", "Bloch", "Goetz", "Knuth", "Liskov", "Hopper", "Lovelace",
+        "Dijkstra", "Torvalds", "Hamilton", "Thompson", "Ritchie", "Stroustrup", "Gosling", "Wirth", "Allen", "Lamport"
+    };
+    
+    private CatalogGenerator() { }
+    
+    public static String isbn(int i) {
+        String body = String.format("978%09d", i);
+        int sum = 0;
+        for (int d = 0; d < 12; d++) {
+            int digit = body.charAt(d) - '0';
+            sum += (d % 2 == 0) ? digit : digit * 3;
+        }
+        return body + (10 - sum % 10) % 10;
+    }
+    
+    public static String patronId(int i) {
+        return "P" + i;
+    }
+    
+    public static List<Book> books(int count, long seed) {
+        Random random = new Random(seed);
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(new Book(isbn(i), title(random), author(random), 1900 + random.nextInt(125)));
+        }
+        return books;
+    }
+    
+    public static List<Patron> patrons(int count, int maxBooksAllowed) {
+        List<Patron> patrons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Patron patron = new Patron(patronId(i), "Patron " + i, "patron" + i + "@email.com", "555-0100");
+            patron.setMaxBooksAllowed(maxBooksAllowed);
+            patrons.add(patron);
+        }
+        return patrons;
+    }
+    
+    // A service holding a generated catalog, with the per-event log output silenced
+    public static LibraryService service(int books, int patrons, int maxBooksAllowed) {
+        Logger.getLogger("").setLevel(Level.OFF);
+        LibraryService service = new LibraryService();
+        List<Book> catalog = books(books, 42);
+        for (int from = 0; from < catalog.size(); from += 10_000) {
+            service.addBooks(catalog.subList(from, Math.min(catalog.size(), from + 10_000)));
+        }
+        service.addPatrons(patrons(patrons, maxBooksAllowed));
+        return service;
+    }
+    
+    public static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+    
+    public static String lastName(Random random) {
+        return LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+    
+    private static String title(Random random) {
+        int words = 2 + random.nextInt(4);
+        StringBuilder title = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            String word = word(random);
+            if (w > 0) {
+                title.append(' ');
+            }
+            title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        return title.toString();
+    }
+    
+    private static String author(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + lastName(random);
+    }
+}
@@ -0,0 +1,57 @@
+package main.java.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.java.observer.AsyncEventBus;
+import main.java.observer.BackpressurePolicy;
+import main.java.service.LibraryService;
+
+// Cost of the lending path as more listeners subscribe, synchronously or through the async bus
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventDispatchBenchmark {
+    @Param({"1", "4", "16"})
+    public int listeners;
+    
+    @Param({"sync", "async"})
+    public String dispatch;
+    
+    // Simulated per-event listener cost in JMH tokens
+    @Param({"100"})
+    public int listenerWork;
+    
+    private LibraryService service;
+    private AsyncEventBus bus;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = CatalogGenerator.service(10_000, 1, 5);
+        if ("async".equals(dispatch)) {
+            bus = new AsyncEventBus(1, 1 << 16, 256, BackpressurePolicy.DROP);
+            service.enableAsyncDispatch(bus);
+        }
+        for (int i = 0; i < listeners; i++) {
+            service.addEventListener(event -> Blackhole.consumeCPU(listenerWork));
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (bus != null) {
+            bus.close();
+        }
+    }
+    
+    @Benchmark
+    public boolean checkoutAndReturn() {
+        String isbn = CatalogGenerator.isbn(7);
+        return service.checkoutBook("P0", isbn) && service.returnBook("P0", isbn);
+    }
+}
@@ -0,0 +1,52 @@
+package main.java.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import main.java.model.Book;
+import main.java.model.InventoryReport;
+import main.java.service.LibraryService;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InventoryReportBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+    
+    private LibraryService service;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        int patrons = Math.max(1, catalogSize / 100);
+        service = CatalogGenerator.service(catalogSize, patrons, 100);
+        // Lend out roughly a tenth of the catalog
+        Random random = new Random(7);
+        for (int i = 0; i < catalogSize / 10; i++) {
+            service.checkoutBook(CatalogGenerator.patronId(random.nextInt(patrons)),
+                    CatalogGenerator.isbn(random.nextInt(catalogSize)));
+        }
+    }
+    
+    @Benchmark
+    public InventoryReport summary() {
+        return service.getInventorySummary();
+    }
+    
+    @Benchmark
+    public Map<String, Integer> report() {
+        return service.getInventoryReport();
+    }
+    
+    @Benchmark
+    public List<Book> borrowedBooks() {
+        return service.getBorrowedBooks();
+    }
+}
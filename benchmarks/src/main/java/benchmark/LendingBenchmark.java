@@ -0,0 +1,54 @@
+package main.java.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import main.java.service.LibraryService;
+
+/**
+ * One checkout plus the matching return per operation, each thread acting
+ * as its own patron over a shared catalog. Run with -t 1, -t 4, ... to see
+ * how lending scales with threads.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LendingBenchmark {
+    private static final int PATRONS = 1024;
+    
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"10000", "1000000"})
+        public int catalogSize;
+        
+        LibraryService service;
+        final AtomicInteger nextPatron = new AtomicInteger();
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            service = CatalogGenerator.service(catalogSize, PATRONS, 5);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Borrower {
+        String patronId;
+        
+        @Setup(Level.Trial)
+        public void setUp(Catalog catalog) {
+            patronId = CatalogGenerator.patronId(catalog.nextPatron.getAndIncrement() % PATRONS);
+        }
+    }
+    
+    @Benchmark
+    public boolean checkoutAndReturn(Catalog catalog, Borrower borrower) {
+        String isbn = CatalogGenerator.isbn(ThreadLocalRandom.current().nextInt(catalog.catalogSize));
+        return catalog.service.checkoutBook(borrower.patronId, isbn)
+                && catalog.service.returnBook(borrower.patronId, isbn);
+    }
+}
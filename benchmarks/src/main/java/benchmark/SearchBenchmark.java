@@ -0,0 +1,86 @@
+package main.java.benchmark;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import main.java.model.Book;
+import main.java.service.LibraryService;
+import main.java.strategy.AuthorSearchStrategy;
+import main.java.strategy.ISBNSearchStrategy;
+import main.java.strategy.TitleSearchStrategy;
+
+// Indexed searches through LibraryService against the original full-scan strategies; the result cache is off
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlibrary.searchCacheSize=0")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+    
+    // A rare phrase, a common word and a popular author
+    @Param({"secret garden", "code"})
+    public String titleQuery;
+    
+    private LibraryService service;
+    private Collection<Book> books;
+    private String isbn;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = CatalogGenerator.service(catalogSize, 0, 5);
+        books = service.getAllBooks();
+        isbn = CatalogGenerator.isbn(catalogSize / 2);
+    }
+    
+    @Benchmark
+    public List<Book> titleIndexed() {
+        return service.searchBooksByTitle(titleQuery);
+    }
+    
+    @Benchmark
+    public List<Book> titleScan() {
+        return new TitleSearchStrategy().search(books, titleQuery);
+    }
+    
+    @Benchmark
+    public List<Book> authorIndexed() {
+        return service.searchBooksByAuthor("lamport");
+    }
+    
+    @Benchmark
+    public List<Book> authorScan() {
+        return new AuthorSearchStrategy().search(books, "lamport");
+    }
+    
+    @Benchmark
+    public List<Book> isbnIndexed() {
+        return service.searchBooksByISBN(isbn);
+    }
+    
+    @Benchmark
+    public List<Book> isbnScan() {
+        return new ISBNSearchStrategy().search(books, isbn);
+    }
+    
+    @Benchmark
+    public List<Book> isbnPrefix() {
+        return service.searchBooksByISBNPrefix("978-0-000-001");
+    }
+    
+    // One typo per word, ranked over titles and authors
+    @Benchmark
+    public List<Book> fuzzy() {
+        return service.searchBooksFuzzy("pragmatc programing");
+    }
+    
+    @Benchmark
+    public List<Book> fuzzyAuthor() {
+        return service.searchBooksFuzzy("lamprt");
+    }
+}
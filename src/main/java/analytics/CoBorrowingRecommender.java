@@ -0,0 +1,324 @@
+package main.java.analytics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import main.java.model.Patron;
+import main.java.observer.BatchLibraryEventListener;
+import main.java.observer.EventType;
+import main.java.observer.LibraryEvent;
+import main.java.observer.LibraryEventListener;
+import main.java.service.LibraryService;
+
+/**
+ * "Patrons who borrowed this also borrowed" lists, kept up to date from
+ * BOOK_CHECKED_OUT events instead of by comparing every pair of patrons.
+ * A checkout pairs the book with the titles the patron borrowed before it
+ * in a sparse co-occurrence matrix: one row per book, holding the counts
+ * of its most frequent neighbours in a SpaceSaving summary, so a row never
+ * grows past its capacity. Rows keep their best few neighbours ranked by
+ * cosine similarity, co-borrowers / sqrt(borrowers of one * borrowers of
+ * the other), so a lookup only reads a precomputed list. A row's own
+ * borrowers scale all of its scores alike, so the ranking leaves them out
+ * and a lookup applies them. The borrowed book's row is ranked afresh on
+ * each checkout; the other rows it touched only move the borrowed book
+ * within their lists, so a neighbour's place can lag behind its own
+ * borrowers growing until the row's book is next borrowed.
+ *
+ * Only the last RECENT_TITLES distinct titles before the new one are
+ * paired with it, so a heavy borrower costs the same as anyone else, and
+ * borrowing a title again adds nothing. A cold start rebuilds the matrix
+ * from the patrons' borrowing histories on a fork-join pool; checkouts
+ * counted while a rebuild runs may be missed by it.
+ */
+public class CoBorrowingRecommender implements LibraryEventListener, BatchLibraryEventListener {
+    public static final int DEFAULT_NEIGHBOURS = 64;
+    public static final int DEFAULT_TOP = 10;
+    static final int RECENT_TITLES = 50;
+    // Patrons or rows a rebuild task handles without splitting further
+    private static final int BATCH = 256;
+    
+    private final Function<String, List<String>> historyOf;
+    private final Supplier<? extends Collection<Patron>> patrons;
+    private final int neighbours;
+    private final int top;
+    private final ForkJoinPool pool;
+    private volatile Matrix matrix = new Matrix();
+    
+    // Histories are read from the service's patrons; rebuilds run on the common pool
+    public CoBorrowingRecommender(LibraryService service) {
+        this(patronId -> {
+            Patron patron = service.getPatron(patronId);
+            return patron == null ? null : patron.getBorrowingHistory();
+        }, service::getAllPatrons, DEFAULT_NEIGHBOURS, DEFAULT_TOP, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * neighbours is the number of co-borrowed titles counted per book and
+     * top the number of recommendations kept for it.
+     */
+    public CoBorrowingRecommender(Function<String, List<String>> historyOf, Supplier<? extends Collection<Patron>> patrons,
+                                  int neighbours, int top, ForkJoinPool pool) {
+        if (top < 1 || neighbours < top) {
+            throw new IllegalArgumentException("Need 1 <= top <= neighbours");
+        }
+        this.historyOf = historyOf;
+        this.patrons = patrons;
+        this.neighbours = neighbours;
+        this.top = top;
+        this.pool = pool;
+    }
+    
+    @Override
+    public void onLibraryEvent(LibraryEvent event) {
+        if (event.getEventType() != EventType.BOOK_CHECKED_OUT || event.getPatronId() == null
+                || event.getBookIsbn() == null) {
+            return;
+        }
+        List<String> history = historyOf.apply(event.getPatronId());
+        if (history == null) {
+            return;
+        }
+        List<String> titles = new ArrayList<>(history);
+        int position = -1;
+        for (int i = 0; i < titles.size(); i++) {
+            if (titles.get(i).equals(event.getBookIsbn())) {
+                if (position >= 0) {
+                    // Borrowed before
+                    return;
+                }
+                position = i;
+            }
+        }
+        if (position < 0) {
+            return;
+        }
+        Matrix current = matrix;
+        List<String> earlier = current.record(titles, position);
+        current.row(event.getBookIsbn()).rank(current);
+        for (String other : earlier) {
+            current.row(other).place(event.getBookIsbn(), current);
+        }
+    }
+    
+    @Override
+    public void onLibraryEvents(List<LibraryEvent> events) {
+        for (LibraryEvent event : events) {
+            onLibraryEvent(event);
+        }
+    }
+    
+    // The books most often borrowed by the same patrons as this one, most similar first; k is capped at top
+    public List<Recommendation> getRecommendations(String isbn, int k) {
+        Neighbours row = matrix.rows.get(isbn);
+        if (row == null) {
+            return new ArrayList<>();
+        }
+        Ranked[] ranked = row.ranked;
+        double norm = Math.sqrt(Math.max(1, matrix.borrowers(isbn)));
+        List<Recommendation> recommendations = new ArrayList<>(Math.min(k, ranked.length));
+        for (int i = 0; i < ranked.length && i < k; i++) {
+            // Counts can overestimate once a row has evicted neighbours
+            double score = Math.min(1.0, ranked[i].weight / norm);
+            recommendations.add(new Recommendation(ranked[i].isbn, score, ranked[i].coBorrowers));
+        }
+        return recommendations;
+    }
+    
+    // Patrons who borrowed the book since the matrix was last rebuilt, or by the rebuild
+    public long getBorrowers(String isbn) {
+        return matrix.borrowers(isbn);
+    }
+    
+    /**
+     * Replaces the matrix with one built from every patron's borrowing
+     * history: the patrons are split across the pool to fill the rows, and
+     * the rows across it again to rank them. Lookups see the old matrix
+     * until the new one is complete.
+     */
+    public void rebuild() {
+        Patron[] all = patrons.get().toArray(new Patron[0]);
+        Matrix rebuilt = new Matrix();
+        pool.invoke(ForkJoinTask.adapt(new Fill(rebuilt, all, 0, all.length)));
+        Neighbours[] rows = rebuilt.rows.values().toArray(new Neighbours[0]);
+        pool.invoke(ForkJoinTask.adapt(new Rank(rebuilt, rows, 0, rows.length)));
+        matrix = rebuilt;
+    }
+    
+    private final class Matrix {
+        final ConcurrentHashMap<String, Neighbours> rows = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> borrowers = new ConcurrentHashMap<>();
+        
+        Neighbours row(String isbn) {
+            return rows.computeIfAbsent(isbn, Neighbours::new);
+        }
+        
+        /**
+         * Counts the first borrow of the title at the position in the
+         * history and pairs it with the distinct titles before it, which are
+         * returned. Pairing only with what came before keeps an event
+         * handled late, after the patron's next checkouts, from counting a
+         * pair twice.
+         */
+        List<String> record(List<String> history, int position) {
+            String isbn = history.get(position);
+            Set<String> seen = new HashSet<>();
+            List<String> earlier = new ArrayList<>();
+            for (int i = position - 1; i >= 0 && earlier.size() < RECENT_TITLES; i--) {
+                if (seen.add(history.get(i))) {
+                    earlier.add(history.get(i));
+                }
+            }
+            borrowers.computeIfAbsent(isbn, key -> new LongAdder()).increment();
+            Neighbours row = row(isbn);
+            for (String other : earlier) {
+                row.add(other);
+                row(other).add(isbn);
+            }
+            return earlier;
+        }
+        
+        long borrowers(String isbn) {
+            LongAdder count = borrowers.get(isbn);
+            return count == null ? 0 : count.sum();
+        }
+    }
+    
+    private final class Neighbours {
+        private final String isbn;
+        private final SpaceSaving counts = new SpaceSaving(neighbours);
+        volatile Ranked[] ranked = new Ranked[0];
+        
+        Neighbours(String isbn) {
+            this.isbn = isbn;
+        }
+        
+        synchronized void add(String other) {
+            counts.add(other, 1);
+        }
+        
+        // Under the row's lock, so an older ranking never replaces a newer one
+        synchronized void rank(Matrix matrix) {
+            List<Ranked> best = new ArrayList<>(top + 1);
+            counts.forEach((other, count) -> insert(best, new Ranked(other, count, matrix.borrowers(other))));
+            ranked = best.toArray(new Ranked[0]);
+        }
+        
+        // Moves one neighbour to where its current count puts it
+        synchronized void place(String other, Matrix matrix) {
+            List<Ranked> best = new ArrayList<>(top + 1);
+            for (Ranked entry : ranked) {
+                if (!entry.isbn.equals(other)) {
+                    best.add(entry);
+                }
+            }
+            long count = counts.count(other);
+            if (count > 0) {
+                insert(best, new Ranked(other, count, matrix.borrowers(other)));
+            }
+            ranked = best.toArray(new Ranked[0]);
+        }
+        
+        // Keeps best sorted and at most top long; top is small, so a linear insert beats a sort
+        private void insert(List<Ranked> best, Ranked entry) {
+            int at = best.size();
+            while (at > 0 && Ranked.BEST_FIRST.compare(entry, best.get(at - 1)) < 0) {
+                at--;
+            }
+            if (at < top) {
+                best.add(at, entry);
+                if (best.size() > top) {
+                    best.remove(top);
+                }
+            }
+        }
+    }
+    
+    // A neighbour with its co-borrowers / sqrt(its borrowers), the row's part of the similarity
+    private static final class Ranked {
+        static final Comparator<Ranked> BEST_FIRST =
+                Comparator.comparingDouble((Ranked r) -> r.weight).reversed().thenComparing(r -> r.isbn);
+        
+        final String isbn;
+        final long coBorrowers;
+        final double weight;
+        
+        Ranked(String isbn, long coBorrowers, long borrowers) {
+            this.isbn = isbn;
+            this.coBorrowers = coBorrowers;
+            this.weight = coBorrowers / Math.sqrt(Math.max(1, borrowers));
+        }
+    }
+    
+    // Fills the rows from a range of patrons, halving the range down to a batch
+    private final class Fill implements Runnable {
+        private final Matrix matrix;
+        private final Patron[] patrons;
+        private final int from;
+        private final int to;
+        
+        Fill(Matrix matrix, Patron[] patrons, int from, int to) {
+            this.matrix = matrix;
+            this.patrons = patrons;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        public void run() {
+            if (to - from > BATCH) {
+                int middle = (from + to) >>> 1;
+                ForkJoinTask.invokeAll(ForkJoinTask.adapt(new Fill(matrix, patrons, from, middle)),
+                        ForkJoinTask.adapt(new Fill(matrix, patrons, middle, to)));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                List<String> history = new ArrayList<>(patrons[i].getBorrowingHistory());
+                Set<String> seen = new HashSet<>();
+                // Each title's first borrow, as its checkout event counted it
+                for (int position = 0; position < history.size(); position++) {
+                    if (seen.add(history.get(position))) {
+                        matrix.record(history, position);
+                    }
+                }
+            }
+        }
+    }
+    
+    private final class Rank implements Runnable {
+        private final Matrix matrix;
+        private final Neighbours[] rows;
+        private final int from;
+        private final int to;
+        
+        Rank(Matrix matrix, Neighbours[] rows, int from, int to) {
+            this.matrix = matrix;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        public void run() {
+            if (to - from > BATCH) {
+                int middle = (from + to) >>> 1;
+                ForkJoinTask.invokeAll(ForkJoinTask.adapt(new Rank(matrix, rows, from, middle)),
+                        ForkJoinTask.adapt(new Rank(matrix, rows, middle, to)));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                rows[i].rank(matrix);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package main.java.analytics;
+
+import java.util.Comparator;
+
+// A key and its estimated count
+public final class CountEstimate {
+    static final Comparator<CountEstimate> HEAVIEST_FIRST =
+            Comparator.comparingLong(CountEstimate::getCount).reversed().thenComparing(CountEstimate::getKey);
+    
+    private final String key;
+    private final long count;
+    
+    public CountEstimate(String key, long count) {
+        this.key = key;
+        this.count = count;
+    }
+    
+    // Getters
+    public String getKey() { return key; }
+    public long getCount() { return count; }
+    
+    @Override
+    public String toString() {
+        return key + "=" + count;
+    }
+}
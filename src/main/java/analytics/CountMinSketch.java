@@ -0,0 +1,124 @@
+package main.java.analytics;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Approximate counts of string keys in fixed memory. Each of depth rows
+ * maps a key to one of width counters; a key's estimate is the smallest of
+ * its counters, which never undercounts and overcounts by at most about
+ * e / width of the total with probability 1 - e^-depth. Updates are
+ * conservative, raising only the counters that are at the minimum.
+ *
+ * Sketches of the same shape merge by adding counters, so counts kept
+ * apart, by thread, time bucket or shard, can be combined afterwards.
+ * Not thread-safe.
+ */
+public final class CountMinSketch {
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final int[] counters;
+    private long total;
+    
+    // width is rounded up to a power of two
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("depth and width must be positive");
+        }
+        this.depth = depth;
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.mask = this.width - 1;
+        this.counters = new int[depth * this.width];
+    }
+    
+    public void add(String key, int count) {
+        long hash = hash(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[cell(row, hash)]);
+        }
+        int target = (int) Math.min((long) min + count, Integer.MAX_VALUE);
+        for (int row = 0; row < depth; row++) {
+            int cell = cell(row, hash);
+            if (counters[cell] < target) {
+                counters[cell] = target;
+            }
+        }
+        total += count;
+    }
+    
+    public long estimate(String key) {
+        long hash = hash(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[cell(row, hash)]);
+        }
+        return min;
+    }
+    
+    // Estimate over the sum of same-shaped sketches, tighter than adding their estimates
+    public static long estimate(List<CountMinSketch> sketches, String key) {
+        if (sketches.isEmpty()) {
+            return 0;
+        }
+        CountMinSketch first = sketches.get(0);
+        long hash = hash(key);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < first.depth; row++) {
+            int cell = first.cell(row, hash);
+            long sum = 0;
+            for (CountMinSketch sketch : sketches) {
+                sum += sketch.counters[cell];
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+    
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge sketches of different shapes");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (int) Math.min((long) counters[i] + other.counters[i], Integer.MAX_VALUE);
+        }
+        total += other.total;
+    }
+    
+    public void clear() {
+        Arrays.fill(counters, 0);
+        total = 0;
+    }
+    
+    public CountMinSketch copy() {
+        CountMinSketch copy = new CountMinSketch(depth, width);
+        System.arraycopy(counters, 0, copy.counters, 0, counters.length);
+        copy.total = total;
+        return copy;
+    }
+    
+    // Getters
+    public int getDepth() { return depth; }
+    public int getWidth() { return width; }
+    public long getTotal() { return total; }
+    
+    // Row i probes h1 + i * h2, which is as good as depth independent hashes
+    private int cell(int row, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & mask);
+    }
+    
+    // 64-bit FNV-1a, then a final mix so both halves are usable
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,135 @@
+package main.java.analytics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import main.java.model.Book;
+import main.java.observer.BatchLibraryEventListener;
+import main.java.observer.EventType;
+import main.java.observer.LibraryEvent;
+import main.java.observer.LibraryEventListener;
+import main.java.service.LibraryService;
+
+/**
+ * Most borrowed titles and authors over a sliding window, kept from the
+ * BOOK_CHECKED_OUT events as they are published instead of by scanning
+ * every patron's history. Counts live in SlidingTopK windows, so memory is
+ * fixed whatever the size of the catalog and a query costs the same at any
+ * load. Register it as a plain or a batch listener; trackers of separate
+ * services, such as the partitions of a ShardedLibraryService, merge.
+ *
+ * Rankings are recomputed at most once a second, so a panel polling them
+ * costs microseconds; single counts are always current. A borrow counts
+ * once, when it starts: returns and renewals don't change a title's
+ * popularity.
+ */
+public class PopularityTracker implements LibraryEventListener, BatchLibraryEventListener {
+    public static final Duration DEFAULT_WINDOW = Duration.ofDays(7);
+    public static final int DEFAULT_BUCKETS = 7;
+    public static final int DEFAULT_CAPACITY = 100;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1024;
+    private static final long REFRESH_MILLIS = 1000;
+    
+    private final Function<String, String> authorOf;
+    private final Clock clock;
+    private final SlidingTopK titles;
+    private final SlidingTopK authors;
+    private final int capacity;
+    private volatile Ranking titleRanking = Ranking.NONE;
+    private volatile Ranking authorRanking = Ranking.NONE;
+    
+    // The last week in daily buckets; authors are looked up in the service when a checkout is counted
+    public PopularityTracker(LibraryService service) {
+        this(isbn -> {
+            Book book = service.getBook(isbn);
+            return book == null ? null : book.getAuthor();
+        }, DEFAULT_WINDOW, DEFAULT_BUCKETS, DEFAULT_CAPACITY, Clock.systemUTC());
+    }
+    
+    public PopularityTracker(Function<String, String> authorOf, Duration window, int buckets, int capacity, Clock clock) {
+        this.authorOf = authorOf;
+        this.clock = clock;
+        this.capacity = capacity;
+        this.titles = new SlidingTopK(window, buckets, capacity, SKETCH_DEPTH, SKETCH_WIDTH);
+        this.authors = new SlidingTopK(window, buckets, capacity, SKETCH_DEPTH, SKETCH_WIDTH);
+    }
+    
+    @Override
+    public void onLibraryEvent(LibraryEvent event) {
+        if (event.getEventType() != EventType.BOOK_CHECKED_OUT || event.getBookIsbn() == null) {
+            return;
+        }
+        titles.add(event.getBookIsbn(), event.getTimestamp());
+        String author = authorOf.apply(event.getBookIsbn());
+        if (author != null) {
+            authors.add(author, event.getTimestamp());
+        }
+    }
+    
+    @Override
+    public void onLibraryEvents(List<LibraryEvent> events) {
+        for (LibraryEvent event : events) {
+            onLibraryEvent(event);
+        }
+    }
+    
+    // ISBNs of the most borrowed titles in the window, with their estimated checkouts; k is capped at the capacity
+    public List<CountEstimate> getTopTitles(int k) {
+        long now = clock.millis();
+        Ranking ranking = titleRanking;
+        if (ranking.isStale(now)) {
+            titleRanking = ranking = new Ranking(now, titles.top(capacity, now));
+        }
+        return ranking.top(k);
+    }
+    
+    public List<CountEstimate> getTopAuthors(int k) {
+        long now = clock.millis();
+        Ranking ranking = authorRanking;
+        if (ranking.isStale(now)) {
+            authorRanking = ranking = new Ranking(now, authors.top(capacity, now));
+        }
+        return ranking.top(k);
+    }
+    
+    public long getCheckouts(String isbn) {
+        return titles.estimate(isbn, clock.millis());
+    }
+    
+    public long getAuthorCheckouts(String author) {
+        return authors.estimate(author, clock.millis());
+    }
+    
+    // Adds the other tracker's counts to this one's; both need the same window and capacity
+    public void merge(PopularityTracker other) {
+        titles.merge(other.titles);
+        authors.merge(other.authors);
+        titleRanking = Ranking.NONE;
+        authorRanking = Ranking.NONE;
+    }
+    
+    private static final class Ranking {
+        static final Ranking NONE = new Ranking(Long.MIN_VALUE, Collections.<CountEstimate>emptyList());
+        
+        final long computedAt;
+        final List<CountEstimate> entries;
+        
+        Ranking(long computedAt, List<CountEstimate> entries) {
+            this.computedAt = computedAt;
+            this.entries = entries;
+        }
+        
+        boolean isStale(long now) {
+            return now >= computedAt + REFRESH_MILLIS || now < computedAt;
+        }
+        
+        List<CountEstimate> top(int k) {
+            return new ArrayList<>(entries.subList(0, Math.min(k, entries.size())));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package main.java.analytics;
+
+// A book similar to another, with its cosine similarity and the patrons who borrowed both
+public final class Recommendation {
+    private final String isbn;
+    private final double score;
+    private final long coBorrowers;
+    
+    public Recommendation(String isbn, double score, long coBorrowers) {
+        this.isbn = isbn;
+        this.score = score;
+        this.coBorrowers = coBorrowers;
+    }
+    
+    // Getters
+    public String getIsbn() { return isbn; }
+    public double getScore() { return score; }
+    public long getCoBorrowers() { return coBorrowers; }
+    
+    @Override
+    public String toString() {
+        return String.format("%s=%.3f (%d)", isbn, score, coBorrowers);
+    }
+}
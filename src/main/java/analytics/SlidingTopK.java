@@ -0,0 +1,187 @@
+package main.java.analytics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Heaviest keys over a sliding time window, in fixed memory. The window is
+ * a ring of buckets, each covering window / buckets of time with a
+ * count-min sketch for the counts and a space-saving summary for the
+ * candidates; a bucket is cleared and reused once it falls out of the
+ * window, so the window slides a bucket at a time.
+ *
+ * Keys are split across stripes by hash, each with its own ring and lock,
+ * so concurrent updates of different keys rarely contend and a key's
+ * counts are never spread over two stripes. A query takes each stripe's
+ * candidates from its live buckets and estimates them from the sum of
+ * those buckets' sketches.
+ *
+ * Windows of the same shape merge bucket by bucket, so counts kept by
+ * separate trackers, threads or shards can be combined.
+ */
+public final class SlidingTopK {
+    private static final int STRIPES = 4;
+    
+    private final long bucketMillis;
+    private final int buckets;
+    private final int depth;
+    private final int width;
+    private final int capacity;
+    private final Stripe[] stripes;
+    
+    /**
+     * capacity is the number of candidates each bucket keeps, and so the
+     * largest k a query answers well; depth and width size the sketches.
+     */
+    public SlidingTopK(Duration window, int buckets, int capacity, int depth, int width) {
+        if (buckets < 1 || window.toMillis() < buckets) {
+            throw new IllegalArgumentException("Need at least one bucket of at least a millisecond");
+        }
+        this.bucketMillis = window.toMillis() / buckets;
+        this.buckets = buckets;
+        this.depth = depth;
+        this.width = width;
+        this.capacity = capacity;
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+    
+    public void add(String key, long timestamp) {
+        stripeFor(key).add(key, Math.floorDiv(timestamp, bucketMillis));
+    }
+    
+    // Estimated count of the key in the window ending at now
+    public long estimate(String key, long now) {
+        return stripeFor(key).estimate(key, Math.floorDiv(now, bucketMillis));
+    }
+    
+    // The k heaviest keys in the window ending at now, heaviest first
+    public List<CountEstimate> top(int k, long now) {
+        long epoch = Math.floorDiv(now, bucketMillis);
+        List<CountEstimate> all = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.collect(epoch, all);
+        }
+        all.sort(CountEstimate.HEAVIEST_FIRST);
+        return new ArrayList<>(all.subList(0, Math.min(k, all.size())));
+    }
+    
+    public void merge(SlidingTopK other) {
+        if (other.bucketMillis != bucketMillis || other.buckets != buckets || other.depth != depth
+                || other.width != width || other.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge windows of different shapes");
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            // Copied first so two windows merging into each other can't deadlock
+            Bucket[] copies = other.stripes[i].copy();
+            stripes[i].merge(copies);
+        }
+    }
+    
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+    
+    private final class Stripe {
+        private final Bucket[] ring = new Bucket[buckets];
+        
+        Stripe() {
+            for (int i = 0; i < buckets; i++) {
+                ring[i] = new Bucket(Long.MIN_VALUE, new CountMinSketch(depth, width), new SpaceSaving(capacity));
+            }
+        }
+        
+        synchronized void add(String key, long epoch) {
+            Bucket bucket = ring[(int) Math.floorMod(epoch, (long) buckets)];
+            if (bucket.epoch > epoch) {
+                // Older than the window already
+                return;
+            }
+            if (bucket.epoch < epoch) {
+                bucket.reset(epoch);
+            }
+            bucket.sketch.add(key, 1);
+            bucket.candidates.add(key, 1);
+        }
+        
+        synchronized long estimate(String key, long epoch) {
+            return CountMinSketch.estimate(live(epoch), key);
+        }
+        
+        synchronized void collect(long epoch, List<CountEstimate> into) {
+            List<CountMinSketch> sketches = live(epoch);
+            Set<String> seen = new HashSet<>();
+            for (Bucket bucket : ring) {
+                if (!isLive(bucket, epoch)) {
+                    continue;
+                }
+                for (String key : bucket.candidates.keys()) {
+                    if (seen.add(key)) {
+                        into.add(new CountEstimate(key, CountMinSketch.estimate(sketches, key)));
+                    }
+                }
+            }
+        }
+        
+        synchronized Bucket[] copy() {
+            Bucket[] copies = new Bucket[buckets];
+            for (int i = 0; i < buckets; i++) {
+                copies[i] = new Bucket(ring[i].epoch, ring[i].sketch.copy(), ring[i].candidates.copy());
+            }
+            return copies;
+        }
+        
+        synchronized void merge(Bucket[] others) {
+            for (int i = 0; i < buckets; i++) {
+                Bucket bucket = ring[i];
+                Bucket other = others[i];
+                if (other.epoch == Long.MIN_VALUE || bucket.epoch > other.epoch) {
+                    continue;
+                }
+                if (bucket.epoch < other.epoch) {
+                    bucket.reset(other.epoch);
+                }
+                bucket.sketch.merge(other.sketch);
+                bucket.candidates.merge(other.candidates);
+            }
+        }
+        
+        private List<CountMinSketch> live(long epoch) {
+            List<CountMinSketch> sketches = new ArrayList<>(buckets);
+            for (Bucket bucket : ring) {
+                if (isLive(bucket, epoch)) {
+                    sketches.add(bucket.sketch);
+                }
+            }
+            return sketches;
+        }
+        
+        private boolean isLive(Bucket bucket, long epoch) {
+            return bucket.epoch <= epoch && bucket.epoch > epoch - buckets;
+        }
+    }
+    
+    private static final class Bucket {
+        long epoch;
+        final CountMinSketch sketch;
+        final SpaceSaving candidates;
+        
+        Bucket(long epoch, CountMinSketch sketch, SpaceSaving candidates) {
+            this.epoch = epoch;
+            this.sketch = sketch;
+            this.candidates = candidates;
+        }
+        
+        void reset(long epoch) {
+            this.epoch = epoch;
+            sketch.clear();
+            candidates.clear();
+        }
+    }
+}
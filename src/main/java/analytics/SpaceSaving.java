@@ -0,0 +1,165 @@
+package main.java.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Metwally et al.'s space-saving summary: the heaviest keys of a stream in
+ * a fixed number of counters. A new key takes over the smallest counter
+ * once all are in use and carries its count on, so counts only ever
+ * overestimate, and any key seen more than total / capacity times is
+ * guaranteed to be kept.
+ * The counters sit in a min-heap, so an update is O(log capacity).
+ * Not thread-safe.
+ */
+public final class SpaceSaving {
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+    
+    public void add(String key, long count) {
+        Counter counter = counters.get(key);
+        if (counter == null && size < capacity) {
+            counter = new Counter(key, size);
+            counter.count = count;
+            heap[size++] = counter;
+            counters.put(key, counter);
+            siftUp(counter.index);
+            return;
+        }
+        if (counter == null) {
+            counter = heap[0];
+            counters.remove(counter.key);
+            counter.key = key;
+            counters.put(key, counter);
+        }
+        counter.count += count;
+        siftDown(counter.index);
+    }
+    
+    // The kept keys, heaviest first, with their counts
+    public List<CountEstimate> entries() {
+        List<CountEstimate> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new CountEstimate(heap[i].key, heap[i].count));
+        }
+        entries.sort(CountEstimate.HEAVIEST_FIRST);
+        return entries;
+    }
+    
+    // The kept keys with their counts, in no particular order
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(heap[i].key, heap[i].count);
+        }
+    }
+    
+    // The kept keys in no particular order
+    public List<String> keys() {
+        List<String> keys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(heap[i].key);
+        }
+        return keys;
+    }
+    
+    public boolean contains(String key) {
+        return counters.containsKey(key);
+    }
+    
+    // The key's count, or 0 when it isn't kept
+    public long count(String key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0 : counter.count;
+    }
+    
+    public void merge(SpaceSaving other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.heap[i].key, other.heap[i].count);
+        }
+    }
+    
+    public void clear() {
+        counters.clear();
+        for (int i = 0; i < size; i++) {
+            heap[i] = null;
+        }
+        size = 0;
+    }
+    
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        for (int i = 0; i < size; i++) {
+            Counter counter = new Counter(heap[i].key, i);
+            counter.count = heap[i].count;
+            copy.heap[i] = counter;
+            copy.counters.put(counter.key, counter);
+        }
+        copy.size = size;
+        return copy;
+    }
+    
+    public int getCapacity() { return capacity; }
+    public int size() { return size; }
+    
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+    
+    // Counts only grow, so a kept counter only ever moves down the heap
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= counter.count) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+    
+    private static final class Counter {
+        String key;
+        long count;
+        int index;
+        
+        Counter(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+}
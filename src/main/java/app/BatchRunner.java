@@ -0,0 +1,146 @@
+package main.java.app;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import main.java.bulk.RecordParser;
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+/**
+ * Runs a command script or a recorded transaction trace against a
+ * LibraryService without prompting, as fast as the service allows, then
+ * prints throughput and latency per command. One CSV command per line:
+ *
+ *   add_book,978-0-132-35088-4,Clean Code,Robert C. Martin,2008
+ *   add_patron,P001,John Doe,john@email.com,123-456-7890
+ *   remove_book,978-0-132-35088-4
+ *   checkout,P001,978-0-132-35088-4
+ *   return,P001,978-0-132-35088-4
+ *   search,clean            (current strategy; also search_title, search_author, search_isbn)
+ *   report
+ *
+ * Blank lines and lines starting with '#' are skipped. Malformed lines are
+ * counted and reported but do not stop the run.
+ *
+ * Usage: java main.java.app.BatchRunner [script | -]
+ */
+public class BatchRunner {
+    private static final int SAMPLE_ERRORS = 10;
+    
+    private final LibraryService libraryService;
+    private final WorkloadStats stats;
+    private final List<String> sampleErrors;
+    private long malformed;
+    
+    public BatchRunner(LibraryService libraryService) {
+        this.libraryService = libraryService;
+        this.stats = new WorkloadStats();
+        this.sampleErrors = new ArrayList<>();
+    }
+    
+    public static void main(String[] args) throws IOException {
+        Logger.getLogger("").setLevel(Level.OFF);
+        String source = args.length > 0 ? args[0] : "-";
+        try (BufferedReader reader = "-".equals(source)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+            new BatchRunner(new LibraryService()).run(reader, System.out);
+        }
+    }
+    
+    public void run(BufferedReader reader, PrintStream out) throws IOException {
+        long begin = System.nanoTime();
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            try {
+                List<String> fields = RecordParser.parseCsv(trimmed);
+                String command = fields.get(0).toLowerCase();
+                long start = System.nanoTime();
+                boolean succeeded = execute(command, fields);
+                stats.record(command, System.nanoTime() - start, succeeded);
+            } catch (IllegalArgumentException e) {
+                malformed++;
+                if (sampleErrors.size() < SAMPLE_ERRORS) {
+                    sampleErrors.add("line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        stats.print(out, System.nanoTime() - begin);
+        if (malformed > 0) {
+            out.println(malformed + " malformed line(s) skipped");
+            sampleErrors.forEach(error -> out.println("  " + error));
+        }
+    }
+    
+    // Returns whether the service accepted the command; searches and reports always succeed
+    private boolean execute(String command, List<String> fields) {
+        switch (command) {
+            case "add_book":
+                arguments(fields, 4);
+                return libraryService.addBook(new Book(fields.get(1), fields.get(2), fields.get(3),
+                        parseYear(fields.get(4))));
+            case "add_patron":
+                arguments(fields, 4);
+                return libraryService.addPatron(new Patron(fields.get(1), fields.get(2), fields.get(3), fields.get(4)));
+            case "remove_book":
+                arguments(fields, 1);
+                return libraryService.removeBook(fields.get(1));
+            case "checkout":
+                arguments(fields, 2);
+                return libraryService.checkoutBook(fields.get(1), fields.get(2));
+            case "return":
+                arguments(fields, 2);
+                return libraryService.returnBook(fields.get(1), fields.get(2));
+            case "search":
+                arguments(fields, 1);
+                libraryService.searchBooks(fields.get(1));
+                return true;
+            case "search_title":
+                arguments(fields, 1);
+                libraryService.searchBooksByTitle(fields.get(1));
+                return true;
+            case "search_author":
+                arguments(fields, 1);
+                libraryService.searchBooksByAuthor(fields.get(1));
+                return true;
+            case "search_isbn":
+                arguments(fields, 1);
+                libraryService.searchBooksByISBN(fields.get(1));
+                return true;
+            case "report":
+                libraryService.getInventorySummary();
+                return true;
+            default:
+                throw new IllegalArgumentException("unknown command '" + command + "'");
+        }
+    }
+    
+    private static void arguments(List<String> fields, int expected) {
+        if (fields.size() - 1 != expected) {
+            throw new IllegalArgumentException(fields.get(0) + " takes " + expected + " argument(s), got "
+                    + (fields.size() - 1));
+        }
+    }
+    
+    private static int parseYear(String year) {
+        try {
+            return Integer.parseInt(year);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad year '" + year + "'");
+        }
+    }
+}
@@ -1,27 +1,36 @@
 package main.java.app;
 
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
+import main.java.http.HttpServer;
+import main.java.http.LibraryHttpApi;
 import main.java.model.Book;
+import main.java.model.InventoryReport;
+import main.java.model.Page;
 import main.java.model.Patron;
+import main.java.observer.LoggingEventListener;
 import main.java.service.LibraryService;
 
 public class LibraryApplication {
     private static final Logger logger = Logger.getLogger(LibraryApplication.class.getName());
+    private static final int PAGE_SIZE = 20;
     private LibraryService libraryService;
     private Scanner scanner;
     
     public LibraryApplication() {
         this.libraryService = new LibraryService();
+        this.libraryService.addEventListener(new LoggingEventListener());
         this.scanner = new Scanner(System.in);
     }
     
     public void run() {
         // Initialize with sample data
         initializeSampleData();
+        libraryService.startExpiryTimer();
         
         System.out.println("=== Welcome to Library Management System ===");
         
@@ -84,22 +93,17 @@ public class LibraryApplication {
         int choice = getIntInput("Enter search type: ");
         String query = getStringInput("Enter search query: ");
         
-        List<Book> results;
+        Function<String, Page<Book>> results;
         switch (choice) {
-            case 1: results = libraryService.searchBooksByTitle(query); break;
-            case 2: results = libraryService.searchBooksByAuthor(query); break;
-            case 3: results = libraryService.searchBooksByISBN(query); break;
+            case 1: results = cursor -> libraryService.searchBooksByTitle(query, PAGE_SIZE, cursor); break;
+            case 2: results = cursor -> libraryService.searchBooksByAuthor(query, PAGE_SIZE, cursor); break;
+            case 3: results = cursor -> libraryService.searchBooksByISBN(query, PAGE_SIZE, cursor); break;
             default:
                 System.out.println("Invalid search type.");
                 return;
         }
         
-        if (results.isEmpty()) {
-            System.out.println("No books found matching your query.");
-        } else {
-            System.out.println("Search Results:");
-            results.forEach(System.out::println);
-        }
+        printPages(results, "Search Results:", "No books found matching your query.");
     }
     
     private void addPatron() {
@@ -143,30 +147,50 @@ public class LibraryApplication {
     
     private void viewInventoryReport() {
         System.out.println("\n=== Inventory Report ===");
-        Map<String, Integer> report = libraryService.getInventoryReport();
-        System.out.println("Total Books: " + report.get("total"));
-        System.out.println("Available Books: " + report.get("available"));
-        System.out.println("Borrowed Books: " + report.get("borrowed"));
+        InventoryReport report = libraryService.getInventorySummary();
+        System.out.println("Total Books: " + report.getTotalBooks());
+        System.out.println("Available Books: " + report.getAvailableBooks());
+        System.out.println("Borrowed Books: " + report.getBorrowedBooks());
+        System.out.println("Copies: " + report.getTotalCopies() + " (" + report.getAvailableCopies() + " on the shelf)");
     }
     
     private void viewAllBooks() {
         System.out.println("\n=== All Books ===");
-        List<Book> books = libraryService.getAllBooks();
-        if (books.isEmpty()) {
-            System.out.println("No books in the library.");
-        } else {
-            books.forEach(System.out::println);
-        }
+        printPages(cursor -> libraryService.getAllBooks(PAGE_SIZE, cursor), null, "No books in the library.");
     }
     
     private void viewAllPatrons() {
         System.out.println("\n=== All Patrons ===");
-        List<Patron> patrons = libraryService.getAllPatrons();
-        if (patrons.isEmpty()) {
-            System.out.println("No patrons registered.");
-        } else {
-            patrons.forEach(System.out::println);
+        printPages(cursor -> libraryService.getAllPatrons(PAGE_SIZE, cursor), null, "No patrons registered.");
+    }
+    
+    // Prints one page at a time and asks before fetching the next
+    private <T> void printPages(Function<String, Page<T>> fetch, String header, String emptyMessage) {
+        Page<T> page = fetch.apply(null);
+        if (page.getItems().isEmpty()) {
+            System.out.println(emptyMessage);
+            return;
         }
+        if (header != null) {
+            System.out.println(header);
+        }
+        while (true) {
+            page.getItems().forEach(System.out::println);
+            if (!page.hasNext() || !getStringInput("-- Enter for more, q to stop: ").isEmpty()) {
+                return;
+            }
+            page = fetch.apply(page.getNextCursor());
+        }
+    }
+    
+    // Serves the sample library over HTTP until the process is stopped
+    private void serve(int port) throws IOException, InterruptedException {
+        initializeSampleData();
+        libraryService.startExpiryTimer();
+        HttpServer server = new HttpServer(new LibraryHttpApi(libraryService), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        Thread.currentThread().join();
     }
     
     private void initializeSampleData() {
@@ -198,7 +222,16 @@ public class LibraryApplication {
         }
     }
     
-    public static void main(String[] args) {
-        new LibraryApplication().run();
+    // No arguments starts the interactive menu; --batch, --load and --http run headless
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length > 0 && args[0].equals("--load")) {
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length > 0 && args[0].equals("--http")) {
+            new LibraryApplication().serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+        } else {
+            new LibraryApplication().run();
+        }
     }
 }
@@ -0,0 +1,208 @@
+package main.java.app;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+/**
+ * Synthetic traffic against an in-process LibraryService: a configurable
+ * mix of checkouts, returns, searches and book additions, with book
+ * popularity following a Zipfian distribution so a few titles take most of
+ * the traffic. Prints throughput and latency percentiles per operation.
+ *
+ * Usage: java main.java.app.LoadGenerator [key=value ...]
+ *   books=100000 patrons=10000 threads=<cpus> seconds=10 skew=0.99 seed=42
+ *   mix=checkout:40,return:35,search:20,add:5   (weights, any scale)
+ *   maxLoans=5                                  (per patron)
+ */
+public class LoadGenerator {
+    private static final String[] OPERATIONS = {"checkout", "return", "search", "add"};
+    
+    private final int books;
+    private final int patrons;
+    private final int threads;
+    private final long durationNanos;
+    private final double skew;
+    private final long seed;
+    private final int maxLoans;
+    private final int[] cumulativeMix;
+    private final LibraryService libraryService;
+    private final WorkloadStats stats;
+    private final AtomicInteger nextNewBook;
+    
+    public LoadGenerator(Map<String, String> options) {
+        this.books = Integer.parseInt(options.getOrDefault("books", "100000"));
+        this.patrons = Integer.parseInt(options.getOrDefault("patrons", "10000"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("seconds", "10")));
+        this.skew = Double.parseDouble(options.getOrDefault("skew", "0.99"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        this.maxLoans = Integer.parseInt(options.getOrDefault("maxLoans", "5"));
+        this.cumulativeMix = parseMix(options.getOrDefault("mix", "checkout:40,return:35,search:20,add:5"));
+        if (books < 1 || patrons < 1 || threads < 1) {
+            throw new IllegalArgumentException("books, patrons and threads must be positive");
+        }
+        this.libraryService = new LibraryService();
+        this.stats = new WorkloadStats();
+        this.nextNewBook = new AtomicInteger(books);
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        Logger.getLogger("").setLevel(Level.OFF);
+        new LoadGenerator(parseOptions(args)).run();
+    }
+    
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("expected key=value, got '" + arg + "'");
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+    
+    public void run() throws InterruptedException {
+        System.out.printf("Loading %d books and %d patrons...%n", books, patrons);
+        populate();
+        ZipfianGenerator popularity = new ZipfianGenerator(books, skew);
+        
+        System.out.printf("Running %d thread(s) for %ds, skew %.2f%n",
+                threads, TimeUnit.NANOSECONDS.toSeconds(durationNanos), skew);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                work(random, popularity, System.nanoTime() + durationNanos);
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        stats.print(System.out, System.nanoTime() - begin);
+        System.out.println(libraryService.getInventorySummary());
+        System.out.println(libraryService.getSearchCacheStats());
+    }
+    
+    private void populate() {
+        List<Book> catalog = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            catalog.add(newBook(i));
+        }
+        libraryService.addBooks(catalog);
+        List<Patron> members = new ArrayList<>(patrons);
+        for (int i = 0; i < patrons; i++) {
+            Patron patron = new Patron(patronId(i), "Patron " + i, "p" + i + "@email.com", "000-000-0000");
+            patron.setMaxBooksAllowed(maxLoans);
+            members.add(patron);
+        }
+        libraryService.addPatrons(members);
+    }
+    
+    // Each worker only returns books it checked out itself, so every return should be accepted
+    private void work(Random random, ZipfianGenerator popularity, long deadline) {
+        List<String[]> loans = new ArrayList<>();
+        int operation = 0;
+        while ((operation++ & 63) != 0 || System.nanoTime() < deadline) {
+            String name = pick(random);
+            long start = System.nanoTime();
+            boolean succeeded;
+            switch (name) {
+                case "checkout": {
+                    String patronId = patronId(random.nextInt(patrons));
+                    String isbn = isbn(popularity.next(random));
+                    succeeded = libraryService.checkoutBook(patronId, isbn);
+                    if (succeeded) {
+                        loans.add(new String[] {patronId, isbn});
+                    }
+                    break;
+                }
+                case "return": {
+                    if (loans.isEmpty()) {
+                        continue;
+                    }
+                    int index = random.nextInt(loans.size());
+                    String[] loan = loans.get(index);
+                    loans.set(index, loans.get(loans.size() - 1));
+                    loans.remove(loans.size() - 1);
+                    succeeded = libraryService.returnBook(loan[0], loan[1]);
+                    break;
+                }
+                case "search":
+                    succeeded = !libraryService.searchBooksByTitle(title(popularity.next(random))).isEmpty();
+                    break;
+                default:
+                    succeeded = libraryService.addBook(newBook(nextNewBook.getAndIncrement()));
+                    break;
+            }
+            stats.record(name, System.nanoTime() - start, succeeded);
+        }
+    }
+    
+    private String pick(Random random) {
+        int roll = random.nextInt(cumulativeMix[cumulativeMix.length - 1]);
+        for (int i = 0; i < cumulativeMix.length; i++) {
+            if (roll < cumulativeMix[i]) {
+                return OPERATIONS[i];
+            }
+        }
+        return OPERATIONS[OPERATIONS.length - 1];
+    }
+    
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            int index = Arrays.asList(OPERATIONS).indexOf(kv[0].trim());
+            if (kv.length != 2 || index < 0) {
+                throw new IllegalArgumentException("bad mix entry '" + part + "', expected one of "
+                        + Arrays.toString(OPERATIONS) + " as name:weight");
+            }
+            weights[index] = Integer.parseInt(kv[1].trim());
+        }
+        int[] cumulative = new int[OPERATIONS.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += Math.max(0, weights[i]);
+            cumulative[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("mix needs at least one positive weight");
+        }
+        return cumulative;
+    }
+    
+    private static Book newBook(int rank) {
+        return new Book(isbn(rank), title(rank), "Author " + (rank % 997), 1950 + rank % 75);
+    }
+    
+    private static String isbn(int rank) {
+        return String.format("979%010d", rank);
+    }
+    
+    private static String title(int rank) {
+        // The suffix keeps "Title 1" from matching "Title 10", "Title 100", ...
+        return "Title " + rank + " Edition";
+    }
+    
+    private static String patronId(int i) {
+        return String.format("P%07d", i);
+    }
+}
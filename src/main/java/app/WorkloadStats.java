@@ -0,0 +1,61 @@
+package main.java.app;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import main.java.metrics.HistogramSnapshot;
+import main.java.metrics.LatencyHistogram;
+
+// Client-side latency and outcome of every operation a workload issued, per operation type
+class WorkloadStats {
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    void record(String operation, long nanos, boolean succeeded) {
+        Entry entry = entries.get(operation);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(operation, o -> new Entry());
+        }
+        entry.latency.record(nanos);
+        if (!succeeded) {
+            entry.rejected.increment();
+        }
+    }
+    
+    long totalOperations() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.latency.snapshot().getCount();
+        }
+        return total;
+    }
+    
+    void print(PrintStream out, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        out.printf("%-14s %10s %9s %12s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "rejected", "ops/s", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)");
+        long total = 0;
+        Map<String, Entry> sorted = new TreeMap<>(entries);
+        for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+            HistogramSnapshot latency = e.getValue().latency.snapshot();
+            total += latency.getCount();
+            out.printf("%-14s %10d %9d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    e.getKey(), latency.getCount(), e.getValue().rejected.sum(), latency.getCount() / seconds,
+                    micros(latency.getPercentileNanos(50)), micros(latency.getPercentileNanos(90)),
+                    micros(latency.getPercentileNanos(99)), micros(latency.getPercentileNanos(99.9)),
+                    micros(latency.getMaxNanos()));
+        }
+        out.printf("total %d operations in %.2fs, %.0f ops/s%n", total, seconds, total / seconds);
+    }
+    
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+    
+    private static final class Entry {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rejected = new LongAdder();
+    }
+}
@@ -0,0 +1,54 @@
+package main.java.app;
+
+import java.util.Random;
+
+/**
+ * Draws ranks 0..n-1 where rank k is picked with probability proportional
+ * to 1/(k+1)^theta, using the constant-time method of Gray et al. ("Quickly
+ * generating billion-record synthetic databases"). Rank 0 is the most
+ * popular. theta 0 is uniform; real catalogs tend to sit around 0.8-0.99.
+ */
+class ZipfianGenerator {
+    private final int n;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+    private final double secondRankThreshold;
+    
+    ZipfianGenerator(int n, double theta) {
+        if (n < 1 || theta < 0 || theta >= 1) {
+            throw new IllegalArgumentException("need n >= 1 and 0 <= theta < 1");
+        }
+        this.n = n;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetaN = zeta(n, theta);
+        double zeta2 = zeta(2, theta);
+        this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetaN);
+        this.secondRankThreshold = 1 + Math.pow(0.5, theta);
+    }
+    
+    int next(Random random) {
+        if (theta == 0) {
+            return random.nextInt(n);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < secondRankThreshold) {
+            return Math.min(1, n - 1);
+        }
+        return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+    }
+    
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,333 @@
+package main.java.bulk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+/**
+ * Streams large CSV or JSON-lines files of books or patrons into a
+ * LibraryService. One thread reads lines and cuts them into chunks; a pool
+ * parses, validates and inserts the chunks in parallel through the bulk
+ * service methods, which fire one event per chunk. A bounded number of
+ * chunks is in flight at any time, so memory use does not depend on the
+ * size of the file. Duplicates, inside the file or against the catalog,
+ * are rejected by the service and counted.
+ *
+ * CSV files may start with a header naming the columns; without one books
+ * are read as isbn,title,author,year[,copies] and patrons as
+ * patronId,name,email,phone[,maxBooksAllowed].
+ */
+public class BulkImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+    private static final int MAX_SAMPLE_REJECTS = 20;
+    
+    private static final List<String> BOOK_COLUMNS = Arrays.asList("isbn", "title", "author", "year", "copies");
+    private static final List<String> PATRON_COLUMNS = Arrays.asList("patronid", "name", "email", "phone", "maxbooksallowed");
+    
+    private final LibraryService service;
+    private final int parallelism;
+    private final int chunkSize;
+    
+    public BulkImporter(LibraryService service) {
+        this(service, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+    
+    public BulkImporter(LibraryService service, int parallelism, int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("parallelism and chunkSize must be positive");
+        }
+        this.service = service;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+    
+    public ImportReport importBooks(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return importBooks(in, ImportFormat.forFile(file));
+        }
+    }
+    
+    public ImportReport importBooks(InputStream in, ImportFormat format) throws IOException {
+        return run(in, format, BOOK_COLUMNS, BulkImporter::toBook, service::addBooks);
+    }
+    
+    public ImportReport importPatrons(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return importPatrons(in, ImportFormat.forFile(file));
+        }
+    }
+    
+    public ImportReport importPatrons(InputStream in, ImportFormat format) throws IOException {
+        return run(in, format, PATRON_COLUMNS, BulkImporter::toPatron, service::addPatrons);
+    }
+    
+    private static Book toBook(Fields fields) {
+        String isbn = fields.required("isbn");
+        String title = fields.required("title");
+        String author = fields.required("author");
+        String year = fields.get("year", "publicationyear");
+        int publicationYear;
+        try {
+            publicationYear = year == null || year.isEmpty() ? 0 : Integer.parseInt(year);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("year '" + year + "' is not a number");
+        }
+        Book book = new Book(isbn, title, author, publicationYear);
+        String copies = fields.get("copies");
+        if (copies != null && !copies.isEmpty()) {
+            try {
+                book.setCopies(Integer.parseInt(copies));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("copies '" + copies + "' is not a number");
+            }
+        }
+        return book;
+    }
+    
+    private static Patron toPatron(Fields fields) {
+        Patron patron = new Patron(fields.required("patronid", "id"), fields.required("name"),
+                fields.get("email"), fields.get("phone"));
+        String max = fields.get("maxbooksallowed");
+        if (max != null && !max.isEmpty()) {
+            try {
+                patron.setMaxBooksAllowed(Integer.parseInt(max));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("maxBooksAllowed '" + max + "' is not a number");
+            }
+        }
+        return patron;
+    }
+    
+    private <T> ImportReport run(InputStream in, ImportFormat format, List<String> defaultColumns,
+                                 Function<Fields, T> mapper, Function<List<T>, List<T>> inserter) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream counting = new CountingInputStream(in);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(counting, StandardCharsets.UTF_8), 1 << 16);
+        Stats stats = new Stats();
+        
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "library-bulk-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Caps the chunks read but not yet inserted, which bounds memory
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Future<?>> pending = new ArrayList<>();
+        
+        try {
+            Map<String, Integer> columns = indexOf(defaultColumns);
+            long lineNumber = 0;
+            List<String> chunk = new ArrayList<>(chunkSize);
+            long chunkStart = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && format == ImportFormat.CSV && isHeader(line, defaultColumns)) {
+                    columns = headerColumns(line);
+                    chunkStart = 2;
+                    continue;
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (chunk.isEmpty()) {
+                    chunkStart = lineNumber;
+                }
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    pending.add(submit(pool, inFlight, chunk, chunkStart, format, columns, mapper, inserter, stats));
+                    chunk = new ArrayList<>(chunkSize);
+                    pruneDone(pending);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pending.add(submit(pool, inFlight, chunk, chunkStart, format, columns, mapper, inserter, stats));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Import failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        
+        return new ImportReport(stats.read.sum(), stats.accepted.sum(), stats.duplicates.sum(), stats.invalid.sum(),
+                counting.count.get(), System.nanoTime() - start, new ArrayList<>(stats.samples));
+    }
+    
+    private <T> Future<?> submit(ExecutorService pool, Semaphore inFlight, List<String> lines, long firstLine,
+                                 ImportFormat format, Map<String, Integer> columns, Function<Fields, T> mapper,
+                                 Function<List<T>, List<T>> inserter, Stats stats) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return pool.submit(() -> {
+                try {
+                    List<T> records = new ArrayList<>(lines.size());
+                    for (int i = 0; i < lines.size(); i++) {
+                        try {
+                            Fields fields = format == ImportFormat.CSV
+                                    ? Fields.csv(RecordParser.parseCsv(lines.get(i)), columns)
+                                    : Fields.json(RecordParser.parseJson(lines.get(i)));
+                            records.add(mapper.apply(fields));
+                        } catch (IllegalArgumentException e) {
+                            stats.invalid.increment();
+                            stats.sample("line " + (firstLine + i) + ": " + e.getMessage());
+                        }
+                    }
+                    stats.read.add(lines.size());
+                    List<T> rejected = inserter.apply(records);
+                    stats.accepted.add(records.size() - rejected.size());
+                    stats.duplicates.add(rejected.size());
+                    for (T duplicate : rejected) {
+                        stats.sample("duplicate: " + duplicate);
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+    
+    private static void pruneDone(List<Future<?>> pending) {
+        // Keep failures around so run() can report them
+        pending.removeIf(future -> future.isDone() && !future.isCancelled() && succeeded(future));
+    }
+    
+    private static boolean succeeded(Future<?> future) {
+        try {
+            future.get();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    private static boolean isHeader(String line, List<String> columns) {
+        String first = normalizeColumn(RecordParser.parseCsv(line).get(0));
+        return columns.contains(first) || first.equals("id");
+    }
+    
+    private static Map<String, Integer> headerColumns(String line) {
+        List<String> names = RecordParser.parseCsv(line);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(normalizeColumn(names.get(i)), i);
+        }
+        return columns;
+    }
+    
+    private static Map<String, Integer> indexOf(List<String> names) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i), i);
+        }
+        return columns;
+    }
+    
+    private static String normalizeColumn(String name) {
+        return name.trim().toLowerCase().replace("_", "").replace(" ", "");
+    }
+    
+    // Uniform, case-insensitive access to the fields of one CSV row or JSON object
+    private static final class Fields {
+        private final Map<String, String> values;
+        
+        private Fields(Map<String, String> values) {
+            this.values = values;
+        }
+        
+        static Fields csv(List<String> row, Map<String, Integer> columns) {
+            Map<String, String> values = new HashMap<>();
+            for (Map.Entry<String, Integer> column : columns.entrySet()) {
+                if (column.getValue() < row.size()) {
+                    values.put(column.getKey(), row.get(column.getValue()));
+                }
+            }
+            return new Fields(values);
+        }
+        
+        static Fields json(Map<String, String> object) {
+            Map<String, String> values = new HashMap<>();
+            for (Map.Entry<String, String> entry : object.entrySet()) {
+                values.put(normalizeColumn(entry.getKey()), entry.getValue());
+            }
+            return new Fields(values);
+        }
+        
+        String get(String... names) {
+            for (String name : names) {
+                String value = values.get(name);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+        
+        String required(String... names) {
+            String value = get(names);
+            if (value == null || value.trim().isEmpty()) {
+                throw new IllegalArgumentException("missing " + names[0]);
+            }
+            return value.trim();
+        }
+    }
+    
+    private static final class Stats {
+        final LongAdder read = new LongAdder();
+        final LongAdder accepted = new LongAdder();
+        final LongAdder duplicates = new LongAdder();
+        final LongAdder invalid = new LongAdder();
+        final Queue<String> samples = new ConcurrentLinkedQueue<>();
+        final AtomicLong sampled = new AtomicLong();
+        
+        void sample(String reject) {
+            if (sampled.getAndIncrement() < MAX_SAMPLE_REJECTS) {
+                samples.add(reject);
+            }
+        }
+    }
+    
+    private static final class CountingInputStream extends FilterInputStream {
+        final AtomicLong count = new AtomicLong();
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count.incrementAndGet();
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count.addAndGet(n);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package main.java.bulk;
+
+import java.nio.file.Path;
+
+public enum ImportFormat {
+    CSV,
+    JSON_LINES;
+    
+    public static ImportFormat forFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return JSON_LINES;
+        }
+        return CSV;
+    }
+}
@@ -0,0 +1,49 @@
+package main.java.bulk;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ImportReport {
+    private final long recordsRead;
+    private final long accepted;
+    private final long duplicates;
+    private final long invalid;
+    private final long bytesRead;
+    private final long elapsedNanos;
+    private final List<String> sampleRejects;
+    
+    public ImportReport(long recordsRead, long accepted, long duplicates, long invalid,
+                        long bytesRead, long elapsedNanos, List<String> sampleRejects) {
+        this.recordsRead = recordsRead;
+        this.accepted = accepted;
+        this.duplicates = duplicates;
+        this.invalid = invalid;
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = elapsedNanos;
+        this.sampleRejects = Collections.unmodifiableList(sampleRejects);
+    }
+    
+    // Getters
+    public long getRecordsRead() { return recordsRead; }
+    public long getAccepted() { return accepted; }
+    public long getDuplicates() { return duplicates; }
+    public long getInvalid() { return invalid; }
+    public long getRejected() { return duplicates + invalid; }
+    public long getBytesRead() { return bytesRead; }
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+    public List<String> getSampleRejects() { return sampleRejects; }
+    
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : recordsRead * 1e9 / elapsedNanos;
+    }
+    
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : bytesRead * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("ImportReport{read=%d, accepted=%d, duplicates=%d, invalid=%d, elapsed=%dms, %.0f records/s, %.1f MB/s}",
+                recordsRead, accepted, duplicates, invalid, getElapsedMillis(), getRecordsPerSecond(), getMegabytesPerSecond());
+    }
+}
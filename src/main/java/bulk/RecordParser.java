@@ -0,0 +1,145 @@
+package main.java.bulk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line-level parsers for the import formats. CSV follows RFC 4180 quoting
+ * within a line; quoted fields spanning lines are not supported. JSON lines
+ * must hold one flat object per line whose values are strings, numbers,
+ * booleans or null.
+ */
+public final class RecordParser {
+    private RecordParser() { }
+    
+    public static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+    
+    public static Map<String, String> parseJson(String line) {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = {skipSpace(line, 0)};
+        expect(line, pos, '{');
+        if (peek(line, pos) == '}') {
+            return fields;
+        }
+        while (true) {
+            String key = readString(line, pos);
+            expect(line, pos, ':');
+            fields.put(key, readValue(line, pos));
+            char next = peek(line, pos);
+            pos[0]++;
+            if (next == '}') {
+                return fields;
+            }
+            if (next != ',') {
+                throw new IllegalArgumentException("expected ',' or '}' at column " + pos[0]);
+            }
+        }
+    }
+    
+    private static String readValue(String line, int[] pos) {
+        char c = peek(line, pos);
+        if (c == '"') {
+            return readString(line, pos);
+        }
+        int start = pos[0];
+        while (pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) < 0) {
+            pos[0]++;
+        }
+        String literal = line.substring(start, pos[0]);
+        if (literal.isEmpty() || c == '{' || c == '[') {
+            throw new IllegalArgumentException("unsupported value at column " + start);
+        }
+        return "null".equals(literal) ? null : literal;
+    }
+    
+    private static String readString(String line, int[] pos) {
+        expect(line, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < line.length()) {
+            char c = line.charAt(pos[0]++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos[0] >= line.length()) {
+                break;
+            }
+            char escaped = line.charAt(pos[0]++);
+            switch (escaped) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > line.length()) {
+                        throw new IllegalArgumentException("truncated unicode escape");
+                    }
+                    sb.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default: sb.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+    
+    private static void expect(String line, int[] pos, char expected) {
+        if (peek(line, pos) != expected) {
+            throw new IllegalArgumentException("expected '" + expected + "' at column " + pos[0]);
+        }
+        pos[0]++;
+    }
+    
+    // Skips whitespace and returns the next character without consuming it
+    private static char peek(String line, int[] pos) {
+        pos[0] = skipSpace(line, pos[0]);
+        if (pos[0] >= line.length()) {
+            throw new IllegalArgumentException("unexpected end of line");
+        }
+        return line.charAt(pos[0]);
+    }
+    
+    private static int skipSpace(String line, int pos) {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
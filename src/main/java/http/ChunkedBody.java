@@ -0,0 +1,11 @@
+package main.java.http;
+
+/**
+ * Response body produced piece by piece while the connection can take more,
+ * sent with chunked transfer encoding. Called from the event loop, so
+ * implementations must not block.
+ */
+public interface ChunkedBody {
+    // The next piece of the body, or null when it is complete
+    String nextChunk();
+}
@@ -0,0 +1,17 @@
+package main.java.http;
+
+// Ends a request with the given status; the message becomes the error body
+public class HttpException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    private final int status;
+    
+    public HttpException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+    
+    public int getStatus() {
+        return status;
+    }
+}
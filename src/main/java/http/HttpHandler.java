@@ -0,0 +1,5 @@
+package main.java.http;
+
+public interface HttpHandler {
+    HttpResponse handle(HttpRequest request);
+}
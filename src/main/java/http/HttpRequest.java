@@ -0,0 +1,44 @@
+package main.java.http;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class HttpRequest {
+    private final String method;
+    private final String path;
+    private final Map<String, String> query;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final boolean keepAlive;
+    
+    HttpRequest(String method, String path, Map<String, String> query, Map<String, String> headers,
+                byte[] body, boolean keepAlive) {
+        this.method = method;
+        this.path = path;
+        this.query = Collections.unmodifiableMap(query);
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.keepAlive = keepAlive;
+    }
+    
+    // Getters
+    public String getMethod() { return method; }
+    public String getPath() { return path; }
+    public Map<String, String> getQuery() { return query; }
+    public byte[] getBody() { return body; }
+    public boolean isKeepAlive() { return keepAlive; }
+    
+    // Header names are matched case-insensitively
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+    
+    public String getParameter(String name) {
+        return query.get(name);
+    }
+    
+    @Override
+    public String toString() {
+        return method + " " + path + (query.isEmpty() ? "" : " " + query);
+    }
+}
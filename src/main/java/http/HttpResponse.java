@@ -0,0 +1,65 @@
+package main.java.http;
+
+import java.nio.charset.StandardCharsets;
+
+public class HttpResponse {
+    public static final String JSON = "application/json; charset=utf-8";
+    public static final String TEXT = "text/plain; charset=utf-8";
+    
+    private final int status;
+    private final String contentType;
+    private final byte[] body;
+    private final ChunkedBody chunkedBody;
+    
+    private HttpResponse(int status, String contentType, byte[] body, ChunkedBody chunkedBody) {
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+        this.chunkedBody = chunkedBody;
+    }
+    
+    public static HttpResponse json(int status, String json) {
+        return new HttpResponse(status, JSON, json.getBytes(StandardCharsets.UTF_8), null);
+    }
+    
+    public static HttpResponse text(int status, String text) {
+        return new HttpResponse(status, TEXT, text.getBytes(StandardCharsets.UTF_8), null);
+    }
+    
+    // Streams a body of unknown length without ever holding all of it
+    public static HttpResponse chunked(int status, String contentType, ChunkedBody body) {
+        return new HttpResponse(status, contentType, null, body);
+    }
+    
+    public static HttpResponse error(int status, String message) {
+        return json(status, "{\"error\":" + Json.quote(message) + "}");
+    }
+    
+    // Getters
+    public int getStatus() { return status; }
+    public String getContentType() { return contentType; }
+    public byte[] getBody() { return body; }
+    public ChunkedBody getChunkedBody() { return chunkedBody; }
+    
+    public boolean isChunked() {
+        return chunkedBody != null;
+    }
+    
+    static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 201: return "Created";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            default: return "Status " + status;
+        }
+    }
+}
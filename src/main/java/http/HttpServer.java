@@ -0,0 +1,493 @@
+package main.java.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small embedded HTTP/1.1 server. A few event loops, each with its own
+ * Selector, own all socket I/O; handlers run on a worker pool because
+ * LibraryService calls may wait on locks or on the journal. An idle
+ * connection holds no buffers, so one node can keep tens of thousands of
+ * kiosk connections open (raise the process's file descriptor limit).
+ *
+ * Connections are kept alive unless the client asks otherwise. Pipelined
+ * requests are answered one at a time in arrival order. Chunked responses
+ * are produced only as fast as the socket drains them.
+ */
+public class HttpServer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(HttpServer.class.getName());
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_TARGET_BYTES = 64 * 1024;
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    
+    private final HttpHandler handler;
+    private final int port;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    private final AtomicInteger nextLoop;
+    private final AtomicInteger openConnections;
+    private ServerSocketChannel serverChannel;
+    
+    public HttpServer(HttpHandler handler, int port) {
+        this(handler, port, Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                Runtime.getRuntime().availableProcessors() * 4);
+    }
+    
+    public HttpServer(HttpHandler handler, int port, int eventLoops, int workerThreads) {
+        if (eventLoops < 1 || workerThreads < 1) {
+            throw new IllegalArgumentException("eventLoops and workerThreads must be positive");
+        }
+        this.handler = handler;
+        this.port = port;
+        this.loops = new EventLoop[eventLoops];
+        this.workers = Executors.newFixedThreadPool(workerThreads, daemonThreads("http-worker-"));
+        this.nextLoop = new AtomicInteger();
+        this.openConnections = new AtomicInteger();
+    }
+    
+    public synchronized void start() throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.bind(new InetSocketAddress(port), 4096);
+        serverChannel.configureBlocking(false);
+        loops[0].execute(() -> {
+            try {
+                serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+            } catch (ClosedChannelException e) {
+                logger.log(Level.WARNING, "Server socket closed before it was registered", e);
+            }
+        });
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        logger.info("HTTP server listening on port " + getPort());
+    }
+    
+    // The bound port, useful when constructed with port 0
+    public int getPort() {
+        return serverChannel == null ? port : serverChannel.socket().getLocalPort();
+    }
+    
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+    
+    @Override
+    public synchronized void close() {
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                try {
+                    loop.thread.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        workers.shutdownNow();
+        if (serverChannel != null) {
+            closeQuietly(serverChannel);
+        }
+    }
+    
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing useful left to do with it
+        }
+    }
+    
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks;
+        private final ByteBuffer readBuffer;
+        private final Thread thread;
+        private volatile boolean running;
+        
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.tasks = new ConcurrentLinkedQueue<>();
+            this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            this.thread = new Thread(this, "http-loop-" + index);
+            this.thread.setDaemon(true);
+            this.running = true;
+        }
+        
+        // Runs the task on this loop's thread
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+        
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run() {
+            long nextIdleCheck = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (running) {
+                try {
+                    selector.select(1000);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                    long now = System.nanoTime();
+                    if (now - nextIdleCheck >= 0) {
+                        closeIdle(now);
+                        nextIdleCheck = now + TimeUnit.SECONDS.toNanos(1);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING, "HTTP event loop error", e);
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Failed to close selector", e);
+            }
+        }
+        
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                EventLoop owner = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+                SocketChannel accepted = channel;
+                if (owner == this) {
+                    register(accepted);
+                } else {
+                    owner.execute(() -> owner.register(accepted));
+                }
+            }
+        }
+        
+        private void register(SocketChannel channel) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(this, channel, key));
+                openConnections.incrementAndGet();
+            } catch (ClosedChannelException e) {
+                closeQuietly(channel);
+            }
+        }
+        
+        private void closeIdle(long now) {
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (attachment instanceof Connection) {
+                    Connection connection = (Connection) attachment;
+                    if (connection.isIdle() && now - connection.lastActive > IDLE_TIMEOUT_NANOS) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+    
+    // All state is touched only by the owning event loop's thread
+    private final class Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ArrayDeque<ByteBuffer> output;
+        // Received bytes not yet parsed, in read mode; null when everything has been consumed
+        private ByteBuffer input;
+        private ChunkedBody streaming;
+        private boolean busy;
+        private boolean closeAfterWrite;
+        private boolean inputClosed;
+        private boolean closed;
+        private long lastActive;
+        
+        Connection(EventLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            this.output = new ArrayDeque<>();
+            this.lastActive = System.nanoTime();
+        }
+        
+        boolean isIdle() {
+            return !busy && streaming == null && output.isEmpty();
+        }
+        
+        void onReadable() {
+            ByteBuffer buffer = loop.readBuffer;
+            buffer.clear();
+            int read;
+            try {
+                read = channel.read(buffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                // Requests already buffered are still answered before the connection goes
+                inputClosed = true;
+                processInput();
+                return;
+            }
+            lastActive = System.nanoTime();
+            buffer.flip();
+            append(buffer);
+            processInput();
+        }
+        
+        void onWritable() {
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+        
+        private void append(ByteBuffer received) {
+            if (input == null) {
+                input = ByteBuffer.allocate(Math.max(received.remaining(), 1024));
+                input.put(received).flip();
+                return;
+            }
+            if (input.capacity() - input.limit() < received.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(input.remaining() + received.remaining(),
+                        input.capacity() * 2));
+                grown.put(input);
+                input = grown;
+            } else {
+                input.compact();
+            }
+            input.put(received).flip();
+        }
+        
+        // Handles the next buffered request, unless one is still being answered
+        private void processInput() {
+            if (busy || streaming != null || closed) {
+                updateInterest();
+                return;
+            }
+            if (closeAfterWrite || input == null) {
+                finishInput();
+                return;
+            }
+            HttpRequest request;
+            try {
+                request = RequestParser.parse(input);
+            } catch (HttpException e) {
+                input = null;
+                closeAfterWrite = true;
+                respond(HttpResponse.error(e.getStatus(), e.getMessage()), false);
+                return;
+            }
+            if (!input.hasRemaining()) {
+                input = null;
+            }
+            if (request == null) {
+                finishInput();
+                return;
+            }
+            busy = true;
+            updateInterest();
+            try {
+                workers.execute(() -> {
+                    HttpResponse response = handle(request);
+                    loop.execute(() -> {
+                        busy = false;
+                        if (!closed) {
+                            respond(response, request.isKeepAlive());
+                        }
+                    });
+                });
+            } catch (RejectedExecutionException e) {
+                busy = false;
+                closeAfterWrite = true;
+                respond(HttpResponse.error(503, "Server is shutting down"), false);
+            }
+        }
+        
+        // Nothing left to answer: close if the client is gone or asked for it, else wait for more input
+        private void finishInput() {
+            if ((inputClosed || closeAfterWrite) && output.isEmpty()) {
+                close();
+            } else {
+                updateInterest();
+            }
+        }
+        
+        private HttpResponse handle(HttpRequest request) {
+            try {
+                HttpResponse response = handler.handle(request);
+                return response != null ? response : HttpResponse.error(404, "Not found");
+            } catch (HttpException e) {
+                return HttpResponse.error(e.getStatus(), e.getMessage());
+            } catch (IllegalArgumentException e) {
+                return HttpResponse.error(400, e.getMessage());
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Handler failed for " + request, e);
+                return HttpResponse.error(500, "Internal error");
+            }
+        }
+        
+        private void respond(HttpResponse response, boolean keepAlive) {
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+            StringBuilder head = new StringBuilder(128);
+            head.append("HTTP/1.1 ").append(response.getStatus()).append(' ')
+                    .append(HttpResponse.reason(response.getStatus())).append("\r\n");
+            head.append("Content-Type: ").append(response.getContentType()).append("\r\n");
+            if (response.isChunked()) {
+                head.append("Transfer-Encoding: chunked\r\n");
+            } else {
+                head.append("Content-Length: ").append(response.getBody().length).append("\r\n");
+            }
+            head.append("Connection: ").append(closeAfterWrite ? "close" : "keep-alive").append("\r\n\r\n");
+            output.add(ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1)));
+            if (response.isChunked()) {
+                streaming = response.getChunkedBody();
+            } else if (response.getBody().length > 0) {
+                output.add(ByteBuffer.wrap(response.getBody()));
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+        
+        private void flush() throws IOException {
+            while (true) {
+                while (!output.isEmpty()) {
+                    ByteBuffer next = output.peek();
+                    channel.write(next);
+                    if (next.hasRemaining()) {
+                        updateInterest();
+                        return;
+                    }
+                    output.poll();
+                }
+                if (streaming == null || !produceChunks()) {
+                    break;
+                }
+            }
+            lastActive = System.nanoTime();
+            processInput();
+        }
+        
+        // Queues up to CHUNK_TARGET_BYTES of the streamed body; returns false once nothing was queued
+        private boolean produceChunks() {
+            StringBuilder pending = new StringBuilder();
+            String chunk;
+            try {
+                while (pending.length() < CHUNK_TARGET_BYTES && (chunk = streaming.nextChunk()) != null) {
+                    pending.append(chunk);
+                }
+            } catch (RuntimeException e) {
+                // Headers are out already; cutting the connection is the only way to signal the failure
+                logger.log(Level.WARNING, "Streaming response failed", e);
+                close();
+                return false;
+            }
+            boolean finished = pending.length() < CHUNK_TARGET_BYTES;
+            if (pending.length() > 0) {
+                byte[] bytes = pending.toString().getBytes(StandardCharsets.UTF_8);
+                output.add(ByteBuffer.wrap((Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+                output.add(ByteBuffer.wrap(bytes));
+                output.add(ByteBuffer.wrap(CRLF));
+            }
+            if (finished) {
+                streaming = null;
+                output.add(ByteBuffer.wrap(LAST_CHUNK));
+            }
+            return !output.isEmpty();
+        }
+        
+        private void updateInterest() {
+            if (closed || !key.isValid()) {
+                return;
+            }
+            int ops = 0;
+            // Stop reading while a backlog of pipelined requests waits, so a client can't buffer unbounded input
+            boolean backlogged = input != null && input.remaining() > RequestParser.MAX_HEADER_BYTES + RequestParser.MAX_BODY_BYTES;
+            if (!inputClosed && !backlogged) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+        
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            streaming = null;
+            output.clear();
+            input = null;
+            key.cancel();
+            closeQuietly(channel);
+            openConnections.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package main.java.http;
+
+import main.java.model.Book;
+import main.java.model.InventoryReport;
+import main.java.model.Patron;
+
+// Hand-rolled JSON for the handful of shapes the API returns
+final class Json {
+    private Json() { }
+    
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        appendQuoted(sb, value);
+        return sb.toString();
+    }
+    
+    static void appendQuoted(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+    
+    static void appendBook(StringBuilder sb, Book book) {
+        sb.append("{\"isbn\":");
+        appendQuoted(sb, book.getIsbn());
+        sb.append(",\"title\":");
+        appendQuoted(sb, book.getTitle());
+        sb.append(",\"author\":");
+        appendQuoted(sb, book.getAuthor());
+        sb.append(",\"year\":").append(book.getPublicationYear());
+        sb.append(",\"available\":").append(book.isAvailable());
+        sb.append(",\"copies\":").append(book.getCopies());
+        sb.append(",\"availableCopies\":").append(book.getAvailableCopies()).append('}');
+    }
+    
+    static void appendPatron(StringBuilder sb, Patron patron) {
+        sb.append("{\"patronId\":");
+        appendQuoted(sb, patron.getPatronId());
+        sb.append(",\"name\":");
+        appendQuoted(sb, patron.getName());
+        sb.append(",\"email\":");
+        appendQuoted(sb, patron.getEmail());
+        sb.append(",\"phone\":");
+        appendQuoted(sb, patron.getPhone());
+        sb.append(",\"borrowed\":").append(patron.getBorrowedCount());
+        sb.append(",\"maxBooksAllowed\":").append(patron.getMaxBooksAllowed()).append('}');
+    }
+    
+    static String inventory(InventoryReport report) {
+        return "{\"total\":" + report.getTotalBooks() + ",\"available\":" + report.getAvailableBooks()
+                + ",\"borrowed\":" + report.getBorrowedBooks() + ",\"totalCopies\":" + report.getTotalCopies()
+                + ",\"availableCopies\":" + report.getAvailableCopies() + "}";
+    }
+}
@@ -0,0 +1,252 @@
+package main.java.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import main.java.bulk.RecordParser;
+import main.java.model.Book;
+import main.java.model.Page;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+/**
+ * JSON endpoints over a LibraryService:
+ *
+ *   GET  /books?limit=&cursor=            catalog page in ISBN order (stream=true: the whole catalog, chunked)
+ *   GET  /books/available?limit=&cursor=  available books (stream=true supported)
+ *   GET  /books/{isbn}
+ *   GET  /search?q=&by=title|author|isbn&limit=&cursor=   (stream=true supported)
+ *   GET  /search?q=&by=fuzzy              best typo-tolerant matches, ranked
+ *   GET  /patrons?limit=&cursor=
+ *   GET  /patrons/{id}
+ *   POST /patrons                         {"patronId","name","email","phone"}
+ *   POST /checkout                        {"patronId","isbn"} or the same as query parameters
+ *   POST /return                          {"patronId","isbn"} or the same as query parameters
+ *   GET  /inventory
+ *   GET  /metrics                         Prometheus text
+ */
+public class LibraryHttpApi implements HttpHandler {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int BOOKS_PER_CHUNK = 64;
+    
+    private final LibraryService libraryService;
+    
+    public LibraryHttpApi(LibraryService libraryService) {
+        this.libraryService = libraryService;
+    }
+    
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        String path = request.getPath();
+        String method = request.getMethod();
+        if (path.equals("/books")) {
+            requireGet(method);
+            if (streaming(request)) {
+                return streamBooks(libraryService.streamBooks());
+            }
+            return bookPage(libraryService.getAllBooks(limit(request), request.getParameter("cursor")));
+        }
+        if (path.equals("/books/available")) {
+            requireGet(method);
+            if (streaming(request)) {
+                return streamBooks(libraryService.streamAvailableBooks());
+            }
+            return bookPage(libraryService.getAvailableBooks(limit(request), request.getParameter("cursor")));
+        }
+        if (path.startsWith("/books/")) {
+            requireGet(method);
+            Book book = libraryService.getBook(path.substring("/books/".length()));
+            if (book == null) {
+                throw new HttpException(404, "No book with ISBN " + path.substring("/books/".length()));
+            }
+            StringBuilder json = new StringBuilder();
+            Json.appendBook(json, book);
+            return HttpResponse.json(200, json.toString());
+        }
+        if (path.equals("/search")) {
+            requireGet(method);
+            return search(request);
+        }
+        if (path.equals("/patrons")) {
+            if (method.equals("POST")) {
+                return addPatron(request);
+            }
+            requireGet(method);
+            Page<Patron> page = libraryService.getAllPatrons(limit(request), request.getParameter("cursor"));
+            return HttpResponse.json(200, page(page, Json::appendPatron));
+        }
+        if (path.startsWith("/patrons/")) {
+            requireGet(method);
+            Patron patron = libraryService.getPatron(path.substring("/patrons/".length()));
+            if (patron == null) {
+                throw new HttpException(404, "No patron with ID " + path.substring("/patrons/".length()));
+            }
+            StringBuilder json = new StringBuilder();
+            Json.appendPatron(json, patron);
+            return HttpResponse.json(200, json.toString());
+        }
+        if (path.equals("/checkout") || path.equals("/return")) {
+            if (!method.equals("POST")) {
+                throw new HttpException(405, "Use POST");
+            }
+            return lend(request, path.equals("/checkout"));
+        }
+        if (path.equals("/inventory")) {
+            requireGet(method);
+            return HttpResponse.json(200, Json.inventory(libraryService.getInventorySummary()));
+        }
+        if (path.equals("/metrics")) {
+            requireGet(method);
+            return HttpResponse.text(200, libraryService.getMetrics().toPrometheusText());
+        }
+        throw new HttpException(404, "No route for " + path);
+    }
+    
+    private HttpResponse search(HttpRequest request) {
+        String query = request.getParameter("q");
+        if (query == null || query.trim().isEmpty()) {
+            throw new HttpException(400, "Missing parameter q");
+        }
+        String by = request.getQuery().getOrDefault("by", "title");
+        String cursor = request.getParameter("cursor");
+        boolean stream = streaming(request);
+        switch (by) {
+            case "title":
+                return stream ? streamBooks(libraryService.streamBooksByTitle(query))
+                        : bookPage(libraryService.searchBooksByTitle(query, limit(request), cursor));
+            case "author":
+                return stream ? streamBooks(libraryService.streamBooksByAuthor(query))
+                        : bookPage(libraryService.searchBooksByAuthor(query, limit(request), cursor));
+            case "isbn":
+                return stream ? streamBooks(libraryService.streamBooksByISBN(query))
+                        : bookPage(libraryService.searchBooksByISBN(query, limit(request), cursor));
+            case "fuzzy":
+                // Already cut to the best matches, so there is never a next page
+                return bookPage(new Page<>(libraryService.searchBooksFuzzy(query), null));
+            default:
+                throw new HttpException(400, "Parameter by must be title, author, isbn or fuzzy");
+        }
+    }
+    
+    private HttpResponse addPatron(HttpRequest request) {
+        Map<String, String> fields = fields(request);
+        if (fields.get("patronId") == null || fields.get("patronId").trim().isEmpty()) {
+            throw new HttpException(400, "Missing patronId");
+        }
+        Patron patron = new Patron(fields.get("patronId"), fields.get("name"), fields.get("email"), fields.get("phone"));
+        if (!libraryService.addPatron(patron)) {
+            throw new HttpException(409, "Patron " + patron.getPatronId() + " already exists");
+        }
+        StringBuilder json = new StringBuilder();
+        Json.appendPatron(json, patron);
+        return HttpResponse.json(201, json.toString());
+    }
+    
+    private HttpResponse lend(HttpRequest request, boolean checkout) {
+        Map<String, String> fields = fields(request);
+        String patronId = fields.get("patronId");
+        String isbn = fields.get("isbn");
+        if (patronId == null || isbn == null) {
+            throw new HttpException(400, "patronId and isbn are required");
+        }
+        boolean done = checkout ? libraryService.checkoutBook(patronId, isbn) : libraryService.returnBook(patronId, isbn);
+        if (!done) {
+            throw new HttpException(409, checkout
+                    ? "Checkout refused: unknown patron or book, book unavailable or limit reached"
+                    : "Return refused: unknown patron or book, or book not borrowed by this patron");
+        }
+        return HttpResponse.json(200, "{\"ok\":true}");
+    }
+    
+    // JSON object body when present, otherwise the query parameters
+    private static Map<String, String> fields(HttpRequest request) {
+        if (request.getBody().length == 0) {
+            return request.getQuery();
+        }
+        try {
+            return RecordParser.parseJson(new String(request.getBody(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new HttpException(400, "Malformed JSON body: " + e.getMessage());
+        }
+    }
+    
+    private static HttpResponse bookPage(Page<Book> page) {
+        return HttpResponse.json(200, page(page, Json::appendBook));
+    }
+    
+    private static <T> String page(Page<T> page, BiConsumer<StringBuilder, T> writer) {
+        StringBuilder json = new StringBuilder(page.getItems().size() * 128 + 64);
+        json.append("{\"items\":[");
+        for (int i = 0; i < page.getItems().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            writer.accept(json, page.getItems().get(i));
+        }
+        json.append("],\"nextCursor\":");
+        Json.appendQuoted(json, page.getNextCursor());
+        return json.append('}').toString();
+    }
+    
+    // A JSON array written a few dozen books at a time as the client reads it
+    private static HttpResponse streamBooks(Stream<Book> books) {
+        Iterator<Book> iterator = books.iterator();
+        return HttpResponse.chunked(200, HttpResponse.JSON, new ChunkedBody() {
+            private boolean started;
+            private boolean finished;
+            
+            @Override
+            public String nextChunk() {
+                if (finished) {
+                    return null;
+                }
+                StringBuilder json = new StringBuilder(BOOKS_PER_CHUNK * 128);
+                if (!started) {
+                    json.append('[');
+                }
+                for (int i = 0; i < BOOKS_PER_CHUNK && iterator.hasNext(); i++) {
+                    if (started || i > 0) {
+                        json.append(',');
+                    }
+                    Json.appendBook(json, iterator.next());
+                }
+                started = true;
+                if (!iterator.hasNext()) {
+                    json.append(']');
+                    finished = true;
+                }
+                return json.toString();
+            }
+        });
+    }
+    
+    private static boolean streaming(HttpRequest request) {
+        return "true".equals(request.getParameter("stream"));
+    }
+    
+    private static int limit(HttpRequest request) {
+        String value = request.getParameter("limit");
+        if (value == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new HttpException(400, "limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            return limit;
+        } catch (NumberFormatException e) {
+            throw new HttpException(400, "limit must be a number");
+        }
+    }
+    
+    private static void requireGet(String method) {
+        if (!method.equals("GET")) {
+            throw new HttpException(405, "Use GET");
+        }
+    }
+}
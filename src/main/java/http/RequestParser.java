@@ -0,0 +1,119 @@
+package main.java.http;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Incremental HTTP/1.x request parser. Takes the bytes received so far and
+ * either consumes exactly one complete request or leaves the buffer alone
+ * until more arrive, which is all pipelining needs. Request bodies must
+ * carry a Content-Length.
+ */
+final class RequestParser {
+    static final int MAX_HEADER_BYTES = 16 * 1024;
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+    
+    private RequestParser() { }
+    
+    // Parses from the buffer's position; returns null, without moving it, when the request is incomplete
+    static HttpRequest parse(ByteBuffer in) {
+        int start = in.position();
+        int headerEnd = indexOfHeaderEnd(in, start);
+        if (headerEnd < 0) {
+            if (in.remaining() > MAX_HEADER_BYTES) {
+                throw new HttpException(431, "Request header is larger than " + MAX_HEADER_BYTES + " bytes");
+            }
+            return null;
+        }
+        
+        byte[] headerBytes = new byte[headerEnd - start];
+        in.get(headerBytes);
+        String[] lines = new String(headerBytes, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new HttpException(400, "Malformed request line");
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new HttpException(400, "Malformed header line");
+            }
+            headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+        }
+        
+        if (headers.containsKey("transfer-encoding")) {
+            throw new HttpException(501, "Chunked request bodies are not supported");
+        }
+        int length = contentLength(headers.get("content-length"));
+        if (in.limit() - headerEnd - 4 < length) {
+            in.position(start);
+            return null;
+        }
+        in.position(headerEnd + 4);
+        byte[] body = new byte[length];
+        in.get(body);
+        
+        String connection = headers.getOrDefault("connection", "");
+        boolean keepAlive = requestLine[2].equals("HTTP/1.1")
+                ? !connection.equalsIgnoreCase("close")
+                : connection.equalsIgnoreCase("keep-alive");
+        
+        String target = requestLine[1];
+        int queryStart = target.indexOf('?');
+        String path = decode(queryStart < 0 ? target : target.substring(0, queryStart));
+        Map<String, String> query = new HashMap<>();
+        if (queryStart >= 0) {
+            for (String pair : target.substring(queryStart + 1).split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int eq = pair.indexOf('=');
+                query.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+            }
+        }
+        return new HttpRequest(requestLine[0], path, query, headers, body, keepAlive);
+    }
+    
+    // Position of the CRLFCRLF that ends the header block, or -1
+    private static int indexOfHeaderEnd(ByteBuffer in, int from) {
+        int limit = Math.min(in.limit(), from + MAX_HEADER_BYTES + 4);
+        for (int i = from; i + 3 < limit; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int contentLength(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length;
+        try {
+            length = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new HttpException(400, "Malformed Content-Length");
+        }
+        if (length < 0) {
+            throw new HttpException(400, "Malformed Content-Length");
+        }
+        if (length > MAX_BODY_BYTES) {
+            throw new HttpException(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        return (int) length;
+    }
+    
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new HttpException(400, "Malformed URL encoding");
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package main.java.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import main.java.model.Book;
+import main.java.model.InventoryReport;
+
+/**
+ * Live counters plus one bit per book for "available" (a copy is on the
+ * shelf) and one for "borrowed" (none is), addressed by the book's dense
+ * internal ID. The report is read straight from the counters and the
+ * listings only visit set bits.
+ *
+ * Copies are taken and put back through the lock-free counters on Book,
+ * and the copy totals here follow them without locking. Only when a title's
+ * last copy leaves the shelf, or its first comes back, are its bits brought
+ * in line with the counter, under a striped monitor so that two racing
+ * transitions of one title cannot leave the bits stale.
+ */
+public class AvailabilityIndex {
+    private static final int MONITORS = 64;
+    
+    private final BookTable books;
+    private final ConcurrentBitSet available;
+    private final ConcurrentBitSet borrowed;
+    private final LongAdder totalCount;
+    private final LongAdder availableCount;
+    private final LongAdder totalCopies;
+    private final LongAdder availableCopies;
+    private final Object[] monitors;
+    
+    public AvailabilityIndex() {
+        this.books = new BookTable();
+        this.available = new ConcurrentBitSet();
+        this.borrowed = new ConcurrentBitSet();
+        this.totalCount = new LongAdder();
+        this.availableCount = new LongAdder();
+        this.totalCopies = new LongAdder();
+        this.availableCopies = new LongAdder();
+        this.monitors = new Object[MONITORS];
+        for (int i = 0; i < MONITORS; i++) {
+            monitors[i] = new Object();
+        }
+    }
+    
+    // Before the book can be lent
+    public void add(Book book) {
+        int id = book.getInternalId();
+        books.put(id, book);
+        totalCount.increment();
+        totalCopies.add(book.getCopies());
+        availableCopies.add(book.getAvailableCopies());
+        if (book.isAvailable()) {
+            available.set(id);
+            availableCount.increment();
+        } else {
+            borrowed.set(id);
+        }
+    }
+    
+    // Once the book has been retired with every copy on the shelf
+    public void remove(Book book) {
+        int id = book.getInternalId();
+        synchronized (monitorFor(id)) {
+            if (available.get(id)) {
+                available.clear(id);
+                availableCount.decrement();
+            }
+            borrowed.clear(id);
+        }
+        books.remove(id, book);
+        totalCount.decrement();
+        totalCopies.add(-book.getCopies());
+        availableCopies.add(-book.getCopies());
+    }
+    
+    // remaining is what Book.checkOutCopy returned
+    public void copyCheckedOut(Book book, int remaining) {
+        availableCopies.decrement();
+        if (remaining == 0) {
+            refresh(book);
+        }
+    }
+    
+    // onShelf is what Book.returnCopy returned
+    public void copyReturned(Book book, int onShelf) {
+        availableCopies.increment();
+        if (onShelf == 1) {
+            refresh(book);
+        }
+    }
+    
+    // After Book.returnCopy undid a checkOutCopy the counters never saw
+    public void copyUnclaimed(Book book) {
+        refresh(book);
+    }
+    
+    // After a successful Book.changeCopies
+    public void copiesChanged(Book book, int delta) {
+        totalCopies.add(delta);
+        availableCopies.add(delta);
+        refresh(book);
+    }
+    
+    public InventoryReport report() {
+        long total = totalCount.sum();
+        long availableBooks = availableCount.sum();
+        return new InventoryReport(total, availableBooks, total - availableBooks,
+                totalCopies.sum(), availableCopies.sum());
+    }
+    
+    // Whichever transition refreshes last reads the latest counter, so the bits end up right
+    private void refresh(Book book) {
+        int id = book.getInternalId();
+        synchronized (monitorFor(id)) {
+            boolean onShelf = book.isAvailable();
+            if (onShelf != available.get(id)) {
+                if (onShelf) {
+                    available.set(id);
+                    borrowed.clear(id);
+                    availableCount.increment();
+                } else {
+                    borrowed.set(id);
+                    available.clear(id);
+                    availableCount.decrement();
+                }
+            }
+        }
+    }
+    
+    private Object monitorFor(int id) {
+        return monitors[id & (MONITORS - 1)];
+    }
+    
+    public List<Book> availableBooks() {
+        return collect(available);
+    }
+    
+    public List<Book> borrowedBooks() {
+        return collect(borrowed);
+    }
+    
+    /**
+     * Appends up to limit available books with internal ID at or after fromId
+     * and returns the ID to continue from, or -1 when the listing is done.
+     */
+    public int availableBooks(int fromId, int limit, List<Book> into) {
+        return collect(available, fromId, limit, into);
+    }
+    
+    public int borrowedBooks(int fromId, int limit, List<Book> into) {
+        return collect(borrowed, fromId, limit, into);
+    }
+    
+    // The catalogued book with the internal ID, or null
+    public Book book(int id) {
+        return books.get(id);
+    }
+    
+    // Sets the internal ID of every available book, or of every borrowed one
+    public void copyBits(boolean availableBooks, BitSet into) {
+        (availableBooks ? available : borrowed).copyTo(into);
+    }
+    
+    public boolean isAvailable(Book book) {
+        return available.get(book.getInternalId());
+    }
+    
+    // Lazy and splittable, in internal ID order
+    public Stream<Book> streamAvailableBooks() {
+        return stream(available);
+    }
+    
+    public Stream<Book> streamBorrowedBooks() {
+        return stream(borrowed);
+    }
+    
+    private Stream<Book> stream(ConcurrentBitSet bits) {
+        return StreamSupport.intStream(bits.spliterator(), false)
+                .mapToObj(books::get)
+                .filter(Objects::nonNull);
+    }
+    
+    private int collect(ConcurrentBitSet bits, int fromId, int limit, List<Book> into) {
+        int added = 0;
+        for (int id = bits.nextSetBit(fromId); id >= 0; id = bits.nextSetBit(id + 1)) {
+            if (added == limit) {
+                return id;
+            }
+            Book book = books.get(id);
+            if (book != null) {
+                into.add(book);
+                added++;
+            }
+        }
+        return -1;
+    }
+    
+    private List<Book> collect(ConcurrentBitSet bits) {
+        List<Book> result = new ArrayList<>();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            Book book = books.get(id);
+            if (book != null) {
+                result.add(book);
+            }
+        }
+        return result;
+    }
+}
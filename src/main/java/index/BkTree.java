@@ -0,0 +1,177 @@
+package main.java.index;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree over words under Levenshtein distance. A lookup for
+ * words within n edits of a query only descends into children whose edge
+ * distance is within n of the current node's distance, which the triangle
+ * inequality guarantees is enough, so it visits a small part of a large
+ * vocabulary instead of comparing against every word.
+ *
+ * Inserts are serialized; children arrays are replaced, never modified, so
+ * lookups run concurrently without locking. Words are never removed.
+ */
+final class BkTree {
+    private static final Node[] NO_CHILDREN = new Node[0];
+    
+    private volatile Node root;
+    
+    synchronized boolean add(String word) {
+        if (root == null) {
+            root = new Node(word, 0);
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(word, node.word);
+            if (distance == 0) {
+                return false;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                Node[] children = Arrays.copyOf(node.children, node.children.length + 1);
+                children[children.length - 1] = new Node(word, distance);
+                node.children = children;
+                return true;
+            }
+            node = child;
+        }
+    }
+    
+    // Words within maxDistance edits of the query, mapped to their distance
+    Map<String, Integer> within(String query, int maxDistance) {
+        Map<String, Integer> matches = new LinkedHashMap<>();
+        Node start = root;
+        if (start == null) {
+            return matches;
+        }
+        Pattern pattern = query.length() <= Long.SIZE ? new Pattern(query) : null;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = pattern != null ? pattern.distance(node.word) : distance(query, node.word);
+            if (distance <= maxDistance) {
+                matches.put(node.word, distance);
+            }
+            for (Node child : node.children) {
+                if (Math.abs(child.edge - distance) <= maxDistance) {
+                    pending.push(child);
+                }
+            }
+        }
+        return matches;
+    }
+    
+    static int distance(String a, String b) {
+        if (a.length() > b.length()) {
+            String t = a;
+            a = b;
+            b = t;
+        }
+        int[] previous = new int[a.length() + 1];
+        int[] current = new int[a.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            previous[i] = i;
+        }
+        for (int j = 1; j <= b.length(); j++) {
+            current[0] = j;
+            char cb = b.charAt(j - 1);
+            for (int i = 1; i <= a.length(); i++) {
+                int cost = a.charAt(i - 1) == cb ? 0 : 1;
+                current[i] = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+            }
+            int[] t = previous;
+            previous = current;
+            current = t;
+        }
+        return previous[a.length()];
+    }
+    
+    /**
+     * Query side of Myers' bit-parallel edit distance: one bit per query
+     * character, so a comparison costs a few word operations per character
+     * of the other string instead of a full row of the DP table.
+     */
+    private static final class Pattern {
+        private final int length;
+        private final char[] chars;
+        private final long[] masks;
+        
+        Pattern(String query) {
+            this.length = query.length();
+            StringBuilder distinct = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                if (distinct.indexOf(String.valueOf(query.charAt(i))) < 0) {
+                    distinct.append(query.charAt(i));
+                }
+            }
+            this.chars = distinct.toString().toCharArray();
+            this.masks = new long[chars.length];
+            for (int i = 0; i < length; i++) {
+                masks[distinct.indexOf(String.valueOf(query.charAt(i)))] |= 1L << i;
+            }
+        }
+        
+        int distance(String text) {
+            if (length == 0) {
+                return text.length();
+            }
+            long last = 1L << (length - 1);
+            long pv = -1L;
+            long mv = 0L;
+            int score = length;
+            for (int j = 0; j < text.length(); j++) {
+                long eq = mask(text.charAt(j));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+                ph = (ph << 1) | 1L;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return score;
+        }
+        
+        private long mask(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return masks[i];
+                }
+            }
+            return 0L;
+        }
+    }
+    
+    private static final class Node {
+        private final String word;
+        private final int edge;
+        private volatile Node[] children = NO_CHILDREN;
+        
+        Node(String word, int edge) {
+            this.word = word;
+            this.edge = edge;
+        }
+        
+        Node child(int edge) {
+            for (Node child : children) {
+                if (child.edge == edge) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+}
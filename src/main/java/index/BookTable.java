@@ -0,0 +1,56 @@
+package main.java.index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.model.Book;
+
+// Books addressed by their dense internal ID, for walking the bits of a ConcurrentBitSet
+public class BookTable {
+    private static final int SEGMENT_SIZE = 1 << 14;
+    
+    private volatile AtomicReferenceArray<Book>[] segments;
+    
+    public BookTable() {
+        @SuppressWarnings("unchecked")
+        AtomicReferenceArray<Book>[] none = (AtomicReferenceArray<Book>[]) new AtomicReferenceArray<?>[0];
+        this.segments = none;
+    }
+    
+    public Book get(int id) {
+        AtomicReferenceArray<Book>[] current = segments;
+        int segment = id / SEGMENT_SIZE;
+        return id < 0 || segment >= current.length ? null : current[segment].get(id % SEGMENT_SIZE);
+    }
+    
+    public void put(int id, Book book) {
+        segment(id).set(id % SEGMENT_SIZE, book);
+    }
+    
+    public void remove(int id, Book book) {
+        AtomicReferenceArray<Book>[] current = segments;
+        int segment = id / SEGMENT_SIZE;
+        if (segment < current.length) {
+            current[segment].compareAndSet(id % SEGMENT_SIZE, book, null);
+        }
+    }
+    
+    private AtomicReferenceArray<Book> segment(int id) {
+        AtomicReferenceArray<Book>[] current = segments;
+        int segment = id / SEGMENT_SIZE;
+        return segment < current.length ? current[segment] : grow(segment);
+    }
+    
+    private synchronized AtomicReferenceArray<Book> grow(int segment) {
+        AtomicReferenceArray<Book>[] current = segments;
+        if (segment >= current.length) {
+            AtomicReferenceArray<Book>[] grown = Arrays.copyOf(current, Math.max(segment + 1, current.length * 2));
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            }
+            segments = grown;
+            current = grown;
+        }
+        return current[segment];
+    }
+}
@@ -0,0 +1,182 @@
+package main.java.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Growable bit set whose bits can be set and cleared from many threads.
+ * Storage is split into fixed segments that are never copied, so growing
+ * the set cannot lose a concurrent update.
+ */
+public class ConcurrentBitSet {
+    private static final int WORDS_PER_SEGMENT = 1024;
+    private static final int BITS_PER_SEGMENT = WORDS_PER_SEGMENT * 64;
+    
+    private volatile AtomicLongArray[] segments = new AtomicLongArray[0];
+    
+    public void set(int bit) {
+        AtomicLongArray words = segmentFor(bit, true);
+        int word = (bit % BITS_PER_SEGMENT) >>> 6;
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = words.get(word);
+        } while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask));
+    }
+    
+    public void clear(int bit) {
+        AtomicLongArray words = segmentFor(bit, false);
+        if (words == null) {
+            return;
+        }
+        int word = (bit % BITS_PER_SEGMENT) >>> 6;
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = words.get(word);
+        } while ((current & mask) != 0 && !words.compareAndSet(word, current, current & ~mask));
+    }
+    
+    public boolean get(int bit) {
+        AtomicLongArray words = segmentFor(bit, false);
+        return words != null && (words.get((bit % BITS_PER_SEGMENT) >>> 6) & (1L << bit)) != 0;
+    }
+    
+    // Index of the first set bit at or after from, or -1; skips empty words 64 bits at a time
+    public int nextSetBit(int from) {
+        return nextSetBit(from, Integer.MAX_VALUE);
+    }
+    
+    // Same, but gives up at the word holding bit to; the result may still be at or past to
+    private int nextSetBit(int from, int to) {
+        if (from < 0) {
+            from = 0;
+        }
+        AtomicLongArray[] current = segments;
+        for (int s = from / BITS_PER_SEGMENT; s < current.length; s++) {
+            AtomicLongArray words = current[s];
+            int startWord = s == from / BITS_PER_SEGMENT ? (from % BITS_PER_SEGMENT) >>> 6 : 0;
+            for (int w = startWord; w < WORDS_PER_SEGMENT; w++) {
+                if (s * BITS_PER_SEGMENT + w * 64 >= to) {
+                    return -1;
+                }
+                long bits = words.get(w);
+                if (w == startWord && s == from / BITS_PER_SEGMENT) {
+                    bits &= -1L << from;
+                }
+                if (bits != 0) {
+                    return s * BITS_PER_SEGMENT + w * 64 + Long.numberOfTrailingZeros(bits);
+                }
+            }
+        }
+        return -1;
+    }
+    
+    // Ors every set bit into the BitSet a word at a time; weakly consistent like the spliterator
+    public void copyTo(BitSet into) {
+        AtomicLongArray[] current = segments;
+        long[] words = new long[current.length * WORDS_PER_SEGMENT];
+        for (int s = 0; s < current.length; s++) {
+            for (int w = 0; w < WORDS_PER_SEGMENT; w++) {
+                words[s * WORDS_PER_SEGMENT + w] = current[s].get(w);
+            }
+        }
+        into.or(BitSet.valueOf(words));
+    }
+    
+    // One past the highest bit that can currently be set without growing
+    public int capacity() {
+        return segments.length * BITS_PER_SEGMENT;
+    }
+    
+    /**
+     * Set bits in ascending order. Splits halve the remaining range on word
+     * boundaries, so parallel streams divide the work evenly. Weakly
+     * consistent: bits changed during the walk may or may not be seen.
+     */
+    public Spliterator.OfInt spliterator() {
+        return new BitSpliterator(0, capacity());
+    }
+    
+    private final class BitSpliterator implements Spliterator.OfInt {
+        private static final int MIN_SPLIT_BITS = 4096;
+        
+        private int next;
+        private final int end;
+        
+        BitSpliterator(int next, int end) {
+            this.next = next;
+            this.end = end;
+        }
+        
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (next >= end) {
+                return false;
+            }
+            int bit = nextSetBit(next, end);
+            if (bit < 0 || bit >= end) {
+                next = end;
+                return false;
+            }
+            next = bit + 1;
+            action.accept(bit);
+            return true;
+        }
+        
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int mid = (next + (end - next) / 2) & ~63;
+            if (end - next < MIN_SPLIT_BITS || mid <= next) {
+                return null;
+            }
+            BitSpliterator prefix = new BitSpliterator(next, mid);
+            next = mid;
+            return prefix;
+        }
+        
+        @Override
+        public long estimateSize() {
+            return Math.max(0, end - next);
+        }
+        
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SORTED | NONNULL;
+        }
+        
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            return null;
+        }
+    }
+    
+    private AtomicLongArray segmentFor(int bit, boolean create) {
+        if (bit < 0) {
+            throw new IndexOutOfBoundsException("bit " + bit);
+        }
+        int segment = bit / BITS_PER_SEGMENT;
+        AtomicLongArray[] current = segments;
+        if (segment < current.length) {
+            return current[segment];
+        }
+        return create ? grow(segment) : null;
+    }
+    
+    private synchronized AtomicLongArray grow(int segment) {
+        AtomicLongArray[] current = segments;
+        if (segment >= current.length) {
+            AtomicLongArray[] grown = Arrays.copyOf(current, Math.max(segment + 1, current.length * 2));
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new AtomicLongArray(WORDS_PER_SEGMENT);
+            }
+            segments = grown;
+            current = grown;
+        }
+        return current[segment];
+    }
+}
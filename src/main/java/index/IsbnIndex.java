@@ -0,0 +1,161 @@
+package main.java.index;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+import main.java.model.Book;
+
+/**
+ * Books keyed by canonical ISBN-13. ISBN-10 values and hyphenated or spaced
+ * forms all map to the same key, so "0-13-235088-2", "978-0-132-35088-4" and
+ * "9780132350884" find the same book. The sorted view serves prefix and range
+ * queries, the hash view exact lookups.
+ */
+public class IsbnIndex {
+    private final Map<String, Book> exact;
+    private final NavigableMap<String, Book> sorted;
+    
+    public IsbnIndex() {
+        this.exact = new ConcurrentHashMap<>();
+        this.sorted = new ConcurrentSkipListMap<>();
+    }
+    
+    public boolean add(Book book) {
+        String key = canonicalize(book.getIsbn());
+        if (exact.putIfAbsent(key, book) != null) {
+            return false;
+        }
+        sorted.put(key, book);
+        return true;
+    }
+    
+    public void remove(Book book) {
+        String key = canonicalize(book.getIsbn());
+        if (exact.remove(key, book)) {
+            sorted.remove(key, book);
+        }
+    }
+    
+    public Book get(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        return exact.get(canonicalize(isbn));
+    }
+    
+    public List<Book> findByPrefix(String prefix) {
+        return new ArrayList<>(withPrefix(prefix).values());
+    }
+    
+    public List<Book> findRange(String fromIsbn, String toIsbn) {
+        String from = canonicalize(fromIsbn);
+        String to = canonicalize(toIsbn);
+        if (from.compareTo(to) > 0) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(sorted.subMap(from, true, to, true).values());
+    }
+    
+    // Up to limit books in canonical ISBN order, starting after the given canonical key (null for the start)
+    public List<Book> pageAfter(String afterKey, int limit) {
+        NavigableMap<String, Book> tail = afterKey == null ? sorted : sorted.tailMap(afterKey, false);
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Book book : tail.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(book);
+        }
+        return page;
+    }
+    
+    // Lazy and splittable, in canonical ISBN order
+    public Stream<Book> stream() {
+        return sorted.values().stream();
+    }
+    
+    public Stream<Book> streamByPrefix(String prefix) {
+        return withPrefix(prefix).values().stream();
+    }
+    
+    private NavigableMap<String, Book> withPrefix(String prefix) {
+        String from = canonicalizePrefix(prefix);
+        if (from.isEmpty()) {
+            return sorted;
+        }
+        String to = from.substring(0, from.length() - 1) + (char) (from.charAt(from.length() - 1) + 1);
+        return sorted.subMap(from, true, to, false);
+    }
+    
+    public int size() {
+        return exact.size();
+    }
+    
+    public static String canonicalize(String isbn) {
+        if (isCanonical(isbn)) {
+            return isbn;
+        }
+        String digits = strip(isbn);
+        if (isIsbn10(digits)) {
+            return toIsbn13(digits.substring(0, 9));
+        }
+        return digits;
+    }
+    
+    // A partial ISBN-10 such as "0-596" is widened to its ISBN-13 form "978-0-596"
+    public static String canonicalizePrefix(String prefix) {
+        String digits = strip(prefix);
+        if (digits.isEmpty() || "978".startsWith(digits) || "979".startsWith(digits)
+                || digits.startsWith("978") || digits.startsWith("979")) {
+            return digits;
+        }
+        return "978" + digits;
+    }
+    
+    // Already free of separators and lower-case letters, and not an ISBN-10, so nothing to rewrite
+    private static boolean isCanonical(String isbn) {
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ' || Character.toUpperCase(c) != c) {
+                return false;
+            }
+        }
+        return !isIsbn10(isbn);
+    }
+    
+    private static String strip(String isbn) {
+        StringBuilder sb = new StringBuilder(isbn.length());
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c != '-' && c != ' ') {
+                sb.append(Character.toUpperCase(c));
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static boolean isIsbn10(String digits) {
+        if (digits.length() != 10) {
+            return false;
+        }
+        for (int i = 0; i < 9; i++) {
+            if (!Character.isDigit(digits.charAt(i))) {
+                return false;
+            }
+        }
+        char check = digits.charAt(9);
+        return Character.isDigit(check) || check == 'X';
+    }
+    
+    private static String toIsbn13(String body) {
+        String isbn = "978" + body;
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = isbn.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return isbn + (10 - sum % 10) % 10;
+    }
+}
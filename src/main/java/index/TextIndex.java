@@ -0,0 +1,251 @@
+package main.java.index;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import main.java.model.Book;
+
+/**
+ * Inverted index over one text field of a book. Every book is posted under
+ * the normalized tokens of the field and under every trigram of the whole
+ * normalized value, so a substring query only has to verify the books that
+ * share all of its trigrams. The token vocabulary is also kept in a
+ * BK-tree for typo-tolerant lookups. Concurrent updates of different books
+ * are safe; callers serialize updates of the same book.
+ */
+public class TextIndex {
+    private static final int GRAM_SIZE = 3;
+    
+    private final Function<Book, String> field;
+    private final Map<Book, String> indexedText;
+    private final Map<String, Set<Book>> tokenPostings;
+    private final Map<String, Set<Book>> gramPostings;
+    private final BkTree vocabularyTree;
+    private final LongAdder totalTokens;
+    
+    public TextIndex(Function<Book, String> field) {
+        this.field = field;
+        this.indexedText = new ConcurrentHashMap<>();
+        this.tokenPostings = new ConcurrentHashMap<>();
+        this.gramPostings = new ConcurrentHashMap<>();
+        this.vocabularyTree = new BkTree();
+        this.totalTokens = new LongAdder();
+    }
+    
+    public void add(Book book) {
+        String value = field.apply(book);
+        if (value == null) {
+            return;
+        }
+        String text = normalize(value);
+        if (indexedText.put(book, text) != null) {
+            throw new IllegalStateException("Book " + book.getIsbn() + " is already indexed");
+        }
+        List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            // The tree ignores words it already holds; the check just keeps known tokens off its lock
+            if (!tokenPostings.containsKey(token)) {
+                vocabularyTree.add(token);
+            }
+            addPosting(tokenPostings, token, book);
+        }
+        totalTokens.add(tokens.size());
+        for (String gram : grams(text)) {
+            addPosting(gramPostings, gram, book);
+        }
+    }
+    
+    public void remove(Book book) {
+        // Use the text captured at add time, the book may have been mutated since
+        String text = indexedText.remove(book);
+        if (text == null) {
+            return;
+        }
+        List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            removePosting(tokenPostings, token, book);
+        }
+        totalTokens.add(-tokens.size());
+        for (String gram : grams(text)) {
+            removePosting(gramPostings, gram, book);
+        }
+    }
+    
+    /**
+     * Same results as a case-insensitive {@code contains} over the field.
+     * Queries shorter than a trigram fall back to checking every indexed value.
+     */
+    public List<Book> search(String query) {
+        String q = normalize(query);
+        if (q.length() < GRAM_SIZE) {
+            List<Book> results = new ArrayList<>();
+            for (Map.Entry<Book, String> entry : indexedText.entrySet()) {
+                if (entry.getValue().contains(q)) {
+                    results.add(entry.getKey());
+                }
+            }
+            return results;
+        }
+        
+        List<Set<Book>> postings = new ArrayList<>();
+        for (String gram : grams(q)) {
+            Set<Book> posting = gramPostings.get(gram);
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        
+        List<Book> results = new ArrayList<>();
+        Set<Book> smallest = postings.get(0);
+        for (Book candidate : smallest) {
+            if (inAll(postings, candidate)) {
+                String text = indexedText.get(candidate);
+                if (text != null && text.contains(q)) {
+                    results.add(candidate);
+                }
+            }
+        }
+        return results;
+    }
+    
+    // Lazy variant of search: candidates are verified as the stream is consumed
+    public Stream<Book> stream(String query) {
+        String q = normalize(query);
+        if (q.length() < GRAM_SIZE) {
+            return indexedText.entrySet().stream()
+                    .filter(entry -> entry.getValue().contains(q))
+                    .map(Map.Entry::getKey);
+        }
+        
+        List<Set<Book>> postings = new ArrayList<>();
+        for (String gram : grams(q)) {
+            Set<Book> posting = gramPostings.get(gram);
+            if (posting == null) {
+                return Stream.empty();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        return postings.get(0).stream().filter(candidate -> {
+            if (!inAll(postings, candidate)) {
+                return false;
+            }
+            String text = indexedText.get(candidate);
+            return text != null && text.contains(q);
+        });
+    }
+    
+    /**
+     * Upper bound on the number of books search would return: the smallest
+     * posting among the query's trigrams, or every book for a shorter query.
+     */
+    public int estimate(String query) {
+        String q = normalize(query);
+        if (q.length() < GRAM_SIZE) {
+            return indexedText.size();
+        }
+        int smallest = Integer.MAX_VALUE;
+        for (String gram : grams(q)) {
+            Set<Book> posting = gramPostings.get(gram);
+            if (posting == null) {
+                return 0;
+            }
+            smallest = Math.min(smallest, posting.size());
+        }
+        return smallest;
+    }
+    
+    // Whether search would return the book, without looking at any other
+    public boolean matches(Book book, String query) {
+        String text = indexedText.get(book);
+        return text != null && text.contains(normalize(query));
+    }
+    
+    public Set<String> vocabulary() {
+        return Collections.unmodifiableSet(tokenPostings.keySet());
+    }
+    
+    public Set<Book> booksWithToken(String token) {
+        Set<Book> posting = tokenPostings.get(token);
+        return posting == null ? Collections.emptySet() : Collections.unmodifiableSet(posting);
+    }
+    
+    public int size() {
+        return indexedText.size();
+    }
+    
+    // Vocabulary tokens within maxDistance edits of the token, mapped to their distance
+    public Map<String, Integer> similarTokens(String token, int maxDistance) {
+        Map<String, Integer> similar = vocabularyTree.within(normalize(token), maxDistance);
+        // The tree keeps words whose last book is gone
+        similar.keySet().removeIf(word -> !tokenPostings.containsKey(word));
+        return similar;
+    }
+    
+    // The normalized text the book was indexed under, or null
+    public String textOf(Book book) {
+        return indexedText.get(book);
+    }
+    
+    public double averageTokens() {
+        int books = indexedText.size();
+        return books == 0 ? 0.0 : (double) totalTokens.sum() / books;
+    }
+    
+    public static String normalize(String value) {
+        return value.toLowerCase();
+    }
+    
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+    
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_SIZE));
+        }
+        return grams;
+    }
+    
+    private static boolean inAll(List<Set<Book>> postings, Book candidate) {
+        for (int i = 1; i < postings.size(); i++) {
+            if (!postings.get(i).contains(candidate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Both run under the per-key lock of compute so an emptied posting is never dropped while another book joins it
+    private static void addPosting(Map<String, Set<Book>> postings, String key, Book book) {
+        postings.compute(key, (k, posting) -> {
+            Set<Book> result = posting != null ? posting : ConcurrentHashMap.newKeySet();
+            result.add(book);
+            return result;
+        });
+    }
+    
+    private static void removePosting(Map<String, Set<Book>> postings, String key, Book book) {
+        postings.computeIfPresent(key, (k, posting) -> {
+            posting.remove(book);
+            return posting.isEmpty() ? null : posting;
+        });
+    }
+}
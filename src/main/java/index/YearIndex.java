@@ -0,0 +1,81 @@
+package main.java.index;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+import main.java.model.Book;
+
+/**
+ * Books by publication year, in year order, so a year range is one walk
+ * over a sub-map. Counting a range only sums the sizes of its postings,
+ * one per distinct year, which is what the query planner estimates with.
+ * Concurrent updates of different books are safe; callers serialize
+ * updates of the same book.
+ */
+public class YearIndex {
+    private final NavigableMap<Integer, Set<Book>> postings;
+    private final Map<Book, Integer> indexedYear;
+    
+    public YearIndex() {
+        this.postings = new ConcurrentSkipListMap<>();
+        this.indexedYear = new ConcurrentHashMap<>();
+    }
+    
+    public void add(Book book) {
+        int year = book.getPublicationYear();
+        if (indexedYear.put(book, year) != null) {
+            throw new IllegalStateException("Book " + book.getIsbn() + " is already indexed");
+        }
+        postings.compute(year, (y, posting) -> {
+            Set<Book> result = posting != null ? posting : ConcurrentHashMap.newKeySet();
+            result.add(book);
+            return result;
+        });
+    }
+    
+    public void remove(Book book) {
+        // The year captured at add time, the book may have been mutated since
+        Integer year = indexedYear.remove(book);
+        if (year == null) {
+            return;
+        }
+        postings.computeIfPresent(year, (y, posting) -> {
+            posting.remove(book);
+            return posting.isEmpty() ? null : posting;
+        });
+    }
+    
+    // Books published from fromYear to toYear, both inclusive
+    public void forEachInRange(int fromYear, int toYear, Consumer<Book> action) {
+        if (fromYear > toYear) {
+            return;
+        }
+        for (Set<Book> posting : postings.subMap(fromYear, true, toYear, true).values()) {
+            posting.forEach(action);
+        }
+    }
+    
+    public int count(int fromYear, int toYear) {
+        if (fromYear > toYear) {
+            return 0;
+        }
+        int count = 0;
+        for (Set<Book> posting : postings.subMap(fromYear, true, toYear, true).values()) {
+            count += posting.size();
+        }
+        return count;
+    }
+    
+    // The year the book was indexed under, or null
+    public Integer yearOf(Book book) {
+        return indexedYear.get(book);
+    }
+    
+    public int size() {
+        return indexedYear.size();
+    }
+}
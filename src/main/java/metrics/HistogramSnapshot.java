@@ -0,0 +1,47 @@
+package main.java.metrics;
+
+public class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    
+    HistogramSnapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+        this.counts = counts;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+    
+    // Getters
+    public long getCount() { return count; }
+    public long getTotalNanos() { return totalNanos; }
+    public long getMaxNanos() { return maxNanos; }
+    
+    public double getMeanNanos() {
+        return count == 0 ? 0.0 : (double) totalNanos / count;
+    }
+    
+    // Upper bound of the bucket holding the given percentile (0-100), capped at the observed maximum
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBound(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                count, getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99),
+                getPercentileNanos(99.9), maxNanos);
+    }
+}
@@ -0,0 +1,128 @@
+package main.java.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of per-operation metrics. Hot paths resolve their
+ * OperationMetrics once and keep the reference; recording then costs two
+ * nanoTime calls and a few uncontended atomic adds. The whole registry can
+ * be read as a snapshot, rendered in the Prometheus text format or
+ * published as an MXBean.
+ */
+public class LibraryMetrics {
+    private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, OperationMetrics> strategies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, OperationMetrics> listeners = new ConcurrentHashMap<>();
+    
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        return metrics != null ? metrics : operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+    
+    // Implementations of the same class share one entry, so a lookup never builds a name
+    public OperationMetrics strategy(Object strategy) {
+        return byClass(strategies, "strategy.", strategy.getClass());
+    }
+    
+    public OperationMetrics listener(Object listener) {
+        return byClass(listeners, "listener.", listener.getClass());
+    }
+    
+    private OperationMetrics byClass(ConcurrentHashMap<Class<?>, OperationMetrics> cache, String prefix, Class<?> type) {
+        OperationMetrics metrics = cache.get(type);
+        return metrics != null ? metrics : cache.computeIfAbsent(type, t -> operation(prefix + displayName(t)));
+    }
+    
+    // Lambdas get synthetic class names; report them under the class that declared them
+    static String displayName(Class<?> type) {
+        String name = type.getName();
+        name = name.substring(name.lastIndexOf('.') + 1);
+        int lambda = name.indexOf("$$Lambda");
+        return lambda >= 0 ? name.substring(0, lambda) + ".lambda" : name;
+    }
+    
+    public Map<String, OperationSnapshot> snapshot() {
+        Map<String, OperationSnapshot> snapshot = new TreeMap<>();
+        operations.forEach((name, metrics) -> snapshot.put(name, metrics.snapshot()));
+        return snapshot;
+    }
+    
+    public void reset() {
+        operations.values().forEach(OperationMetrics::reset);
+    }
+    
+    public String toPrometheusText() {
+        Map<String, OperationSnapshot> snapshot = snapshot();
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP library_operation_latency_seconds Latency of LibraryService operations, strategies and listeners\n");
+        out.append("# TYPE library_operation_latency_seconds summary\n");
+        for (OperationSnapshot operation : snapshot.values()) {
+            HistogramSnapshot latency = operation.getLatency();
+            String label = "operation=\"" + escape(operation.getName()) + "\"";
+            for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+                out.append("library_operation_latency_seconds{").append(label)
+                        .append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(latency.getPercentileNanos(quantile * 100))).append('\n');
+            }
+            out.append("library_operation_latency_seconds_sum{").append(label).append("} ")
+                    .append(seconds(latency.getTotalNanos())).append('\n');
+            out.append("library_operation_latency_seconds_count{").append(label).append("} ")
+                    .append(latency.getCount()).append('\n');
+        }
+        out.append("# HELP library_operation_failures_total Rejected operations by reason\n");
+        out.append("# TYPE library_operation_failures_total counter\n");
+        for (OperationSnapshot operation : snapshot.values()) {
+            for (Map.Entry<String, Long> failure : operation.getFailures().entrySet()) {
+                out.append("library_operation_failures_total{operation=\"").append(escape(operation.getName()))
+                        .append("\",reason=\"").append(escape(failure.getKey())).append("\"} ")
+                        .append(failure.getValue()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+    
+    // Publishes the registry as library:type=Metrics,name=<name> on the platform MBean server
+    public ObjectName registerMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("library", new Hashtable<>(mapOf("type", "Metrics", "name", name)));
+        server.registerMBean(new LibraryMetricsMXBean() {
+            @Override
+            public List<OperationStats> getOperations() {
+                return snapshot().values().stream().map(OperationStats::of).collect(Collectors.toList());
+            }
+            
+            @Override
+            public String getPrometheusText() {
+                return toPrometheusText();
+            }
+            
+            @Override
+            public void reset() {
+                LibraryMetrics.this.reset();
+            }
+        }, objectName);
+        return objectName;
+    }
+    
+    private static Map<String, String> mapOf(String k1, String v1, String k2, String v2) {
+        Map<String, String> map = new HashMap<>();
+        map.put(k1, v1);
+        map.put(k2, v2);
+        return map;
+    }
+    
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,9 @@
+package main.java.metrics;
+
+import java.util.List;
+
+public interface LibraryMetricsMXBean {
+    List<OperationStats> getOperations();
+    String getPrometheusText();
+    void reset();
+}
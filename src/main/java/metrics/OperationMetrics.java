@@ -0,0 +1,62 @@
+package main.java.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Latency and failure reasons of one named operation
+public class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latency;
+    private final ConcurrentHashMap<String, LongAdder> failures;
+    
+    OperationMetrics(String name) {
+        this.name = name;
+        this.latency = new LatencyHistogram();
+        this.failures = new ConcurrentHashMap<>();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    // Pass the System.nanoTime() taken when the operation started
+    public void recordSince(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+    }
+    
+    // Runs the operation and records its latency, also when it throws
+    public <T> T time(Supplier<T> operation) {
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            recordSince(start);
+        }
+    }
+    
+    public void record(long nanos) {
+        latency.record(nanos);
+    }
+    
+    public void fail(String reason) {
+        LongAdder counter = failures.get(reason);
+        if (counter == null) {
+            counter = failures.computeIfAbsent(reason, r -> new LongAdder());
+        }
+        counter.increment();
+    }
+    
+    public OperationSnapshot snapshot() {
+        Map<String, Long> reasons = new TreeMap<>();
+        failures.forEach((reason, counter) -> reasons.put(reason, counter.sum()));
+        return new OperationSnapshot(name, latency.snapshot(), reasons);
+    }
+    
+    void reset() {
+        latency.reset();
+        failures.clear();
+    }
+}
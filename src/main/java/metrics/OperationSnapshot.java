@@ -0,0 +1,30 @@
+package main.java.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class OperationSnapshot {
+    private final String name;
+    private final HistogramSnapshot latency;
+    private final Map<String, Long> failures;
+    
+    OperationSnapshot(String name, HistogramSnapshot latency, Map<String, Long> failures) {
+        this.name = name;
+        this.latency = latency;
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+    
+    // Getters
+    public String getName() { return name; }
+    public HistogramSnapshot getLatency() { return latency; }
+    public Map<String, Long> getFailures() { return failures; }
+    
+    public long getFailureCount() {
+        return failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s{%s, failures=%s}", name, latency, failures);
+    }
+}
@@ -0,0 +1,45 @@
+package main.java.metrics;
+
+import java.beans.ConstructorProperties;
+
+// Flat view of an OperationSnapshot that JMX clients can display without this library on their classpath
+public class OperationStats {
+    private final String name;
+    private final long count;
+    private final long failures;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+    
+    @ConstructorProperties({"name", "count", "failures", "meanNanos", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+    public OperationStats(String name, long count, long failures, double meanNanos,
+                          long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.name = name;
+        this.count = count;
+        this.failures = failures;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+    
+    static OperationStats of(OperationSnapshot snapshot) {
+        HistogramSnapshot latency = snapshot.getLatency();
+        return new OperationStats(snapshot.getName(), latency.getCount(), snapshot.getFailureCount(),
+                latency.getMeanNanos(), latency.getPercentileNanos(50), latency.getPercentileNanos(99),
+                latency.getPercentileNanos(99.9), latency.getMaxNanos());
+    }
+    
+    // Getters
+    public String getName() { return name; }
+    public long getCount() { return count; }
+    public long getFailures() { return failures; }
+    public double getMeanNanos() { return meanNanos; }
+    public long getP50Nanos() { return p50Nanos; }
+    public long getP99Nanos() { return p99Nanos; }
+    public long getP999Nanos() { return p999Nanos; }
+    public long getMaxNanos() { return maxNanos; }
+}
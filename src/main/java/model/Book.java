@@ -1,17 +1,34 @@
 package main.java.model;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A title and the interchangeable copies of it the library holds. Copies
+ * are counted rather than modelled one by one: checking one out is a CAS
+ * decrement of the copies on the shelf and returning one an increment, so
+ * lending a popular title never waits on a lock.
+ */
 public class Book {
+    private static final AtomicIntegerFieldUpdater<Book> AVAILABLE_COPIES =
+            AtomicIntegerFieldUpdater.newUpdater(Book.class, "availableCopies");
+    // Shelf count of a book removed from the catalog, so no copy can be taken from a stale reference
+    private static final int RETIRED = Integer.MIN_VALUE;
+    
     private String isbn;
-    private String title;
-    private String author;
-    private int publicationYear;
-    private boolean isAvailable;
+    private volatile String title;
+    private volatile String author;
+    private volatile int publicationYear;
+    private volatile int copies;
+    private volatile int availableCopies;
+    private int internalId = -1;
     
     public Book(String isbn, String title, String author, int publicationYear) {
         this.isbn = isbn;
         this.title = title;
         this.author = author;
         this.publicationYear = publicationYear;
-        this.isAvailable = true;
+        this.copies = 1;
+        this.availableCopies = 1;
     }
     
     // Getters and setters
@@ -19,17 +36,87 @@ public class Book {
     public String getTitle() { return title; }
     public String getAuthor() { return author; }
     public int getPublicationYear() { return publicationYear; }
-    public boolean isAvailable() { return isAvailable; }
+    // At least one copy is on the shelf
+    public boolean isAvailable() { return availableCopies > 0; }
+    public int getCopies() { return copies; }
+    public int getAvailableCopies() { return Math.max(availableCopies, 0); }
+    public int getInternalId() { return internalId; }
     
     public void setTitle(String title) { this.title = title; }
     public void setAuthor(String author) { this.author = author; }
     public void setPublicationYear(int year) { this.publicationYear = year; }
-    public void setAvailable(boolean available) { this.isAvailable = available; }
+    // All copies on the shelf, or none
+    public void setAvailable(boolean available) { this.availableCopies = available ? copies : 0; }
+    // For books not yet in a catalog: that many copies, all on the shelf
+    public void setCopies(int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("A book needs at least one copy: " + copies);
+        }
+        this.copies = copies;
+        this.availableCopies = copies;
+    }
+    // For books restored from storage, after setCopies
+    public void setAvailableCopies(int availableCopies) {
+        this.availableCopies = Math.max(0, Math.min(availableCopies, copies));
+    }
+    // Dense ID assigned by the service that stores the book; -1 until then
+    public void setInternalId(int internalId) { this.internalId = internalId; }
+    
+    /**
+     * Takes a copy off the shelf and returns how many are left, or -1 when
+     * none was there to take. Lock-free; used by the lending service.
+     */
+    public int checkOutCopy() {
+        while (true) {
+            int current = availableCopies;
+            if (current <= 0) {
+                return -1;
+            }
+            if (AVAILABLE_COPIES.compareAndSet(this, current, current - 1)) {
+                return current - 1;
+            }
+        }
+    }
+    
+    // Puts a copy back on the shelf and returns how many are there now
+    public int returnCopy() {
+        return AVAILABLE_COPIES.incrementAndGet(this);
+    }
+    
+    /**
+     * Changes the number of copies of a catalogued book, taking removed
+     * copies from the shelf. False when fewer than that many are on it.
+     * Callers serialize changes to the count.
+     */
+    public boolean changeCopies(int delta) {
+        if (copies + delta < 1) {
+            return false;
+        }
+        while (true) {
+            int current = availableCopies;
+            if (current + delta < 0 || current == RETIRED) {
+                return false;
+            }
+            if (AVAILABLE_COPIES.compareAndSet(this, current, current + delta)) {
+                copies += delta;
+                return true;
+            }
+        }
+    }
+    
+    // Takes every copy off the shelf for good; false when some are out
+    public boolean retire() {
+        return AVAILABLE_COPIES.compareAndSet(this, copies, RETIRED);
+    }
     
     @Override
     public String toString() {
-        return String.format("Book{ISBN='%s', title='%s', author='%s', year=%d, available=%s}",
-                isbn, title, author, publicationYear, isAvailable);
+        if (copies == 1) {
+            return String.format("Book{ISBN='%s', title='%s', author='%s', year=%d, available=%s}",
+                    isbn, title, author, publicationYear, isAvailable());
+        }
+        return String.format("Book{ISBN='%s', title='%s', author='%s', year=%d, available=%d/%d}",
+                isbn, title, author, publicationYear, getAvailableCopies(), copies);
     }
     
     @Override
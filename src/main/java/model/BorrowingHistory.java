@@ -0,0 +1,207 @@
+package main.java.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only list of book IDs (see IsbnDictionary). Stored either as a
+ * growable int array, or compressed: each ID as the zigzag varint of its
+ * difference to the previous one, with a restart point every 64 entries so
+ * positional reads stay cheap. A history of recently catalogued books
+ * then costs one or two bytes per loan instead of an ISBN string.
+ *
+ * Not thread-safe; the owning Patron synchronizes. Slots below size() are
+ * never written again, so a view only has to remember the arrays and the
+ * size it was taken at to stay immutable while the history keeps growing.
+ */
+final class BorrowingHistory {
+    // Set -Dlibrary.compactHistory=false to store plain int arrays
+    static final boolean COMPRESS_BY_DEFAULT =
+            Boolean.parseBoolean(System.getProperty("library.compactHistory", "true"));
+    private static final int RESTART_BITS = 6;
+    private static final int RESTART_INTERVAL = 1 << RESTART_BITS;
+    private static final int[] NO_IDS = new int[0];
+    private static final byte[] NO_BYTES = new byte[0];
+    
+    private final boolean compressed;
+    private int size;
+    
+    // Plain encoding
+    private int[] ids;
+    
+    // Compressed encoding; restarts[r] is the byte offset of entry r * RESTART_INTERVAL,
+    // whose delta is taken against restartBases[r]
+    private byte[] data;
+    private int length;
+    private int[] restarts;
+    private int[] restartBases;
+    private int last;
+    
+    BorrowingHistory(boolean compressed) {
+        this.compressed = compressed;
+        this.ids = NO_IDS;
+        this.data = NO_BYTES;
+        this.restarts = NO_IDS;
+        this.restartBases = NO_IDS;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    void add(int id) {
+        if (!compressed) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+            }
+            ids[size++] = id;
+            return;
+        }
+        if ((size & (RESTART_INTERVAL - 1)) == 0) {
+            int restart = size >>> RESTART_BITS;
+            if (restart == restarts.length) {
+                int grown = Math.max(2, restart * 2);
+                restarts = Arrays.copyOf(restarts, grown);
+                restartBases = Arrays.copyOf(restartBases, grown);
+            }
+            restarts[restart] = length;
+            restartBases[restart] = last;
+        }
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(16, data.length + (data.length >> 1) + 5));
+        }
+        int delta = id - last;
+        int zigzag = (delta << 1) ^ (delta >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            data[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        data[length++] = (byte) zigzag;
+        last = id;
+        size++;
+    }
+    
+    // The same history with its IDs taken from another dictionary
+    BorrowingHistory recode(IsbnDictionary from, IsbnDictionary to) {
+        BorrowingHistory recoded = new BorrowingHistory(compressed);
+        for (String isbn : view(from)) {
+            recoded.add(to.idFor(isbn));
+        }
+        return recoded;
+    }
+    
+    // Immutable view of the entries recorded so far, decoded to ISBNs on access
+    List<String> view(IsbnDictionary dictionary) {
+        return compressed
+                ? new CompressedView(dictionary, data, restarts, restartBases, size)
+                : new PlainView(dictionary, ids, size);
+    }
+    
+    private static final class PlainView extends AbstractList<String> implements java.util.RandomAccess {
+        private final IsbnDictionary dictionary;
+        private final int[] ids;
+        private final int size;
+        
+        PlainView(IsbnDictionary dictionary, int[] ids, int size) {
+            this.dictionary = dictionary;
+            this.ids = ids;
+            this.size = size;
+        }
+        
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return dictionary.isbnOf(ids[index]);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+    
+    private static final class CompressedView extends AbstractList<String> {
+        private final IsbnDictionary dictionary;
+        private final byte[] data;
+        private final int[] restarts;
+        private final int[] restartBases;
+        private final int size;
+        
+        CompressedView(IsbnDictionary dictionary, byte[] data, int[] restarts, int[] restartBases, int size) {
+            this.dictionary = dictionary;
+            this.data = data;
+            this.restarts = restarts;
+            this.restartBases = restartBases;
+            this.size = size;
+        }
+        
+        // Decodes forward from the nearest restart point, at most RESTART_INTERVAL entries
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            Cursor cursor = new Cursor(index >>> RESTART_BITS);
+            int id = cursor.next();
+            for (int i = index & (RESTART_INTERVAL - 1); i > 0; i--) {
+                id = cursor.next();
+            }
+            return dictionary.isbnOf(id);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public Iterator<String> iterator() {
+            Cursor cursor = new Cursor(0);
+            return new Iterator<String>() {
+                private int remaining = size;
+                
+                @Override
+                public boolean hasNext() {
+                    return remaining > 0;
+                }
+                
+                @Override
+                public String next() {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    remaining--;
+                    return dictionary.isbnOf(cursor.next());
+                }
+            };
+        }
+        
+        private final class Cursor {
+            private int offset;
+            private int previous;
+            
+            Cursor(int restart) {
+                this.offset = restarts.length == 0 ? 0 : restarts[restart];
+                this.previous = restarts.length == 0 ? 0 : restartBases[restart];
+            }
+            
+            int next() {
+                int zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    zigzag |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                return previous;
+            }
+        }
+    }
+}
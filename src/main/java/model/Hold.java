@@ -0,0 +1,37 @@
+package main.java.model;
+
+/**
+ * A patron's hold on a title: either waiting in line for a copy, or with a
+ * copy set aside to pick up before readyUntil. Immutable; times are epoch
+ * milliseconds.
+ */
+public class Hold {
+    // readyUntil of a hold still waiting for a copy
+    public static final long WAITING = -1;
+    
+    private final String patronId;
+    private final String isbn;
+    private final long readyUntil;
+    
+    public Hold(String patronId, String isbn, long readyUntil) {
+        this.patronId = patronId;
+        this.isbn = isbn;
+        this.readyUntil = readyUntil;
+    }
+    
+    // Getters
+    public String getPatronId() { return patronId; }
+    public String getIsbn() { return isbn; }
+    public long getReadyUntil() { return readyUntil; }
+    
+    public boolean isReady() {
+        return readyUntil != WAITING;
+    }
+    
+    @Override
+    public String toString() {
+        return isReady()
+                ? String.format("Hold{patron='%s', ISBN='%s', ready until=%tF %<tR}", patronId, isbn, readyUntil)
+                : String.format("Hold{patron='%s', ISBN='%s', waiting}", patronId, isbn);
+    }
+}
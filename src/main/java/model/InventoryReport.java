@@ -0,0 +1,38 @@
+package main.java.model;
+
+// Counts of titles and of the copies of them; a title is available while any copy is on the shelf
+public class InventoryReport {
+    private final long totalBooks;
+    private final long availableBooks;
+    private final long borrowedBooks;
+    private final long totalCopies;
+    private final long availableCopies;
+    
+    // One copy per title
+    public InventoryReport(long totalBooks, long availableBooks, long borrowedBooks) {
+        this(totalBooks, availableBooks, borrowedBooks, totalBooks, availableBooks);
+    }
+    
+    public InventoryReport(long totalBooks, long availableBooks, long borrowedBooks, long totalCopies, long availableCopies) {
+        this.totalBooks = totalBooks;
+        this.availableBooks = availableBooks;
+        this.borrowedBooks = borrowedBooks;
+        this.totalCopies = totalCopies;
+        this.availableCopies = availableCopies;
+    }
+    
+    // Getters
+    public long getTotalBooks() { return totalBooks; }
+    public long getAvailableBooks() { return availableBooks; }
+    public long getBorrowedBooks() { return borrowedBooks; }
+    public long getTotalCopies() { return totalCopies; }
+    public long getAvailableCopies() { return availableCopies; }
+    // Copies out on loan or set aside for a hold
+    public long getBorrowedCopies() { return totalCopies - availableCopies; }
+    
+    @Override
+    public String toString() {
+        return String.format("InventoryReport{total=%d, available=%d, borrowed=%d, copies=%d, availableCopies=%d}",
+                totalBooks, availableBooks, borrowedBooks, totalCopies, availableCopies);
+    }
+}
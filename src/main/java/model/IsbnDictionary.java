@@ -0,0 +1,77 @@
+package main.java.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.index.IsbnIndex;
+
+/**
+ * Assigns every ISBN a dense int ID, starting at 0, and never reuses one.
+ * Spellings of one ISBN (ISBN-10 or 13, with or without hyphens) share the
+ * ID of its canonical form, which decodes to the spelling first seen.
+ * IDs stay valid after a book is removed, so anything that stores them
+ * (bitmaps, loan histories) can always decode them again. Each
+ * LibraryService owns one; the partitions of a ShardedLibraryService share
+ * theirs so IDs agree across them.
+ */
+public final class IsbnDictionary {
+    private static final int SEGMENT_BITS = 14;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    
+    private final ConcurrentHashMap<String, Integer> ids;
+    private volatile AtomicReferenceArray<String>[] segments;
+    private int nextId;
+    
+    public IsbnDictionary() {
+        this.ids = new ConcurrentHashMap<>();
+        @SuppressWarnings("unchecked")
+        AtomicReferenceArray<String>[] none = (AtomicReferenceArray<String>[]) new AtomicReferenceArray<?>[0];
+        this.segments = none;
+    }
+    
+    public int idFor(String isbn) {
+        String key = IsbnIndex.canonicalize(isbn);
+        Integer id = ids.get(key);
+        return id != null ? id : assign(key, isbn);
+    }
+    
+    // -1 when the ISBN has never been seen
+    public int lookup(String isbn) {
+        Integer id = ids.get(IsbnIndex.canonicalize(isbn));
+        return id == null ? -1 : id;
+    }
+    
+    public String isbnOf(int id) {
+        AtomicReferenceArray<String>[] current = segments;
+        int segment = id >>> SEGMENT_BITS;
+        if (id < 0 || segment >= current.length) {
+            return null;
+        }
+        return current[segment].get(id & (SEGMENT_SIZE - 1));
+    }
+    
+    public int size() {
+        return ids.size();
+    }
+    
+    private synchronized int assign(String key, String isbn) {
+        Integer existing = ids.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextId++;
+        int segment = id >>> SEGMENT_BITS;
+        if (segment >= segments.length) {
+            AtomicReferenceArray<String>[] grown = Arrays.copyOf(segments, Math.max(4, segments.length * 2));
+            for (int i = segments.length; i < grown.length; i++) {
+                grown[i] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            }
+            segments = grown;
+        }
+        segments[segment].set(id & (SEGMENT_SIZE - 1), isbn);
+        // Publish the reverse mapping before the ID becomes visible to readers
+        ids.put(key, id);
+        return id;
+    }
+}
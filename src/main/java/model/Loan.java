@@ -0,0 +1,42 @@
+package main.java.model;
+
+/**
+ * A book on loan to a patron. Immutable: a renewal replaces the loan with
+ * one that has a later due date. Times are epoch milliseconds.
+ */
+public class Loan {
+    private final String patronId;
+    private final String isbn;
+    private final long checkedOutAt;
+    private final long dueAt;
+    private final int renewals;
+    
+    public Loan(String patronId, String isbn, long checkedOutAt, long dueAt, int renewals) {
+        this.patronId = patronId;
+        this.isbn = isbn;
+        this.checkedOutAt = checkedOutAt;
+        this.dueAt = dueAt;
+        this.renewals = renewals;
+    }
+    
+    // Getters
+    public String getPatronId() { return patronId; }
+    public String getIsbn() { return isbn; }
+    public long getCheckedOutAt() { return checkedOutAt; }
+    public long getDueAt() { return dueAt; }
+    public int getRenewals() { return renewals; }
+    
+    public boolean isOverdue(long now) {
+        return now >= dueAt;
+    }
+    
+    public Loan renewedUntil(long newDueAt) {
+        return new Loan(patronId, isbn, checkedOutAt, newDueAt, renewals + 1);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Loan{patron='%s', ISBN='%s', due=%tF %<tR, renewals=%d}",
+                patronId, isbn, dueAt, renewals);
+    }
+}
@@ -0,0 +1,28 @@
+package main.java.model;
+
+import java.util.Collections;
+import java.util.List;
+
+// One page of a listing; pass getNextCursor() back to fetch the following page
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+    
+    public Page(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+    
+    // Getters
+    public List<T> getItems() { return items; }
+    public String getNextCursor() { return nextCursor; }
+    
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Page{items=%d, hasNext=%s}", items.size(), hasNext());
+    }
+}
@@ -2,58 +2,158 @@ package main.java.model;
 import java.util.*;
 public class Patron {
     private String patronId;
-    private String name;
-    private String email;
-    private String phone;
-    private List<String> borrowingHistory;
-    private Set<String> currentlyBorrowed;
-    private int maxBooksAllowed;
+    private volatile String name;
+    private volatile String email;
+    private volatile String phone;
+    // Decodes the book IDs; the patron's own until it joins a service
+    private IsbnDictionary bookIds;
+    private BorrowingHistory borrowingHistory;
+    // IDs of the books on loan, kept as a small unsorted array since the limit is a handful of books
+    private int[] currentlyBorrowed;
+    private int borrowedCount;
+    private volatile int maxBooksAllowed;
+    private boolean guest;
     
     public Patron(String patronId, String name, String email, String phone) {
         this.patronId = patronId;
         this.name = name;
         this.email = email;
         this.phone = phone;
-        this.borrowingHistory = new ArrayList<>();
-        this.currentlyBorrowed = new HashSet<>();
+        this.borrowingHistory = new BorrowingHistory(BorrowingHistory.COMPRESS_BY_DEFAULT);
+        this.currentlyBorrowed = new int[4];
         this.maxBooksAllowed = 5; // Default limit
     }
     
+    /**
+     * Record of the patron in another partition of a sharded service, holding
+     * the loans made there. It has no borrowing limit of its own, since the
+     * home record's limit covers the loans in every partition.
+     */
+    public static Patron guestOf(Patron home) {
+        Patron guest = new Patron(home.getPatronId(), home.getName(), home.getEmail(), home.getPhone());
+        guest.maxBooksAllowed = Integer.MAX_VALUE;
+        guest.guest = true;
+        return guest;
+    }
+    
     // Getters and setters
     public String getPatronId() { return patronId; }
     public String getName() { return name; }
     public String getEmail() { return email; }
     public String getPhone() { return phone; }
-    public List<String> getBorrowingHistory() { return new ArrayList<>(borrowingHistory); }
-    public Set<String> getCurrentlyBorrowed() { return new HashSet<>(currentlyBorrowed); }
+    // Read-only view of the history as it was when called; later loans don't show up in it
+    public synchronized List<String> getBorrowingHistory() { return borrowingHistory.view(bookIds()); }
+    public synchronized int getBorrowingHistorySize() { return borrowingHistory.size(); }
+    public synchronized int getBorrowedCount() { return borrowedCount; }
     public int getMaxBooksAllowed() { return maxBooksAllowed; }
+    public boolean isGuest() { return guest; }
     
     public void setName(String name) { this.name = name; }
     public void setEmail(String email) { this.email = email; }
     public void setPhone(String phone) { this.phone = phone; }
     public void setMaxBooksAllowed(int maxBooks) { this.maxBooksAllowed = maxBooks; }
     
-    public boolean canBorrowMore() {
-        return currentlyBorrowed.size() < maxBooksAllowed;
+    public synchronized Set<String> getCurrentlyBorrowed() {
+        Set<String> borrowed = new HashSet<>();
+        for (int i = 0; i < borrowedCount; i++) {
+            borrowed.add(bookIds().isbnOf(currentlyBorrowed[i]));
+        }
+        return Collections.unmodifiableSet(borrowed);
+    }
+    
+    // Book IDs of the current loans, see IsbnDictionary
+    public synchronized int[] getBorrowedBookIds() {
+        return Arrays.copyOf(currentlyBorrowed, borrowedCount);
+    }
+    
+    // Any spelling of the ISBN will do: ISBN-10 or 13, with or without hyphens
+    public synchronized boolean hasBorrowed(String isbn) {
+        int bookId = bookIds().lookup(isbn);
+        return bookId >= 0 && hasBorrowed(bookId);
+    }
+    
+    // Book IDs come from the dictionary of the patron's service, as does Book.getInternalId()
+    public synchronized boolean hasBorrowed(int bookId) {
+        return indexOfLoan(bookId) >= 0;
+    }
+    
+    public synchronized boolean canBorrowMore() {
+        return borrowedCount < maxBooksAllowed;
+    }
+    
+    public synchronized void addToBorrowingHistory(String isbn) {
+        borrowingHistory.add(bookIds().idFor(isbn));
+    }
+    
+    public synchronized void borrowBook(String isbn) {
+        int bookId = bookIds().idFor(isbn);
+        addLoan(bookId);
+        borrowingHistory.add(bookId);
+    }
+    
+    public synchronized void returnBook(String isbn) {
+        int index = indexOfLoan(bookIds().lookup(isbn));
+        if (index >= 0) {
+            currentlyBorrowed[index] = currentlyBorrowed[--borrowedCount];
+        }
+    }
+    
+    // Re-establishes a loan restored from storage without recording it in the history again
+    public synchronized void restoreLoan(String isbn) {
+        addLoan(bookIds().idFor(isbn));
+    }
+    
+    /**
+     * Moves the patron's book IDs over to the dictionary of the service it
+     * joins, so they agree with the internal IDs of that service's books.
+     * A patron belongs to one service, or the partitions of one sharded
+     * service, at a time.
+     */
+    public synchronized void useBookIds(IsbnDictionary dictionary) {
+        IsbnDictionary current = bookIds;
+        if (current == dictionary) {
+            return;
+        }
+        if (current != null) {
+            for (int i = 0; i < borrowedCount; i++) {
+                currentlyBorrowed[i] = dictionary.idFor(current.isbnOf(currentlyBorrowed[i]));
+            }
+            borrowingHistory = borrowingHistory.recode(current, dictionary);
+        }
+        bookIds = dictionary;
     }
     
-    public void addToBorrowingHistory(String isbn) {
-        borrowingHistory.add(isbn);
+    // Created on first use, as most patrons join a service before they borrow anything
+    private IsbnDictionary bookIds() {
+        if (bookIds == null) {
+            bookIds = new IsbnDictionary();
+        }
+        return bookIds;
     }
     
-    public void borrowBook(String isbn) {
-        currentlyBorrowed.add(isbn);
-        addToBorrowingHistory(isbn);
+    private void addLoan(int bookId) {
+        if (indexOfLoan(bookId) >= 0) {
+            return;
+        }
+        if (borrowedCount == currentlyBorrowed.length) {
+            currentlyBorrowed = Arrays.copyOf(currentlyBorrowed, borrowedCount * 2);
+        }
+        currentlyBorrowed[borrowedCount++] = bookId;
     }
     
-    public void returnBook(String isbn) {
-        currentlyBorrowed.remove(isbn);
+    private int indexOfLoan(int bookId) {
+        for (int i = 0; i < borrowedCount; i++) {
+            if (currentlyBorrowed[i] == bookId) {
+                return i;
+            }
+        }
+        return -1;
     }
     
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return String.format("Patron{ID='%s', name='%s', email='%s', borrowed=%d/%d}",
-                patronId, name, email, currentlyBorrowed.size(), maxBooksAllowed);
+                patronId, name, email, borrowedCount, maxBooksAllowed);
     }
     
     @Override
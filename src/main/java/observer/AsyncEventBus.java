@@ -0,0 +1,306 @@
+package main.java.observer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import main.java.metrics.LibraryMetrics;
+
+/**
+ * Moves listener work off the publishing thread. Events are routed by book
+ * ISBN (or patron ID for patron-only events) to one of several partitions,
+ * each a bounded ring buffer drained in batches by its own consumer thread,
+ * so all events of one book reach the listeners in the order they were
+ * published. With more than one consumer, events of one patron about
+ * different books may be delivered out of order; listeners that need a
+ * patron's order read it from the service, as CoBorrowingRecommender does
+ * with the borrowing history.
+ *
+ * Ring slots are event objects allocated up front: publishing copies the
+ * event into a slot, and the slot is only reused once its batch has been
+ * delivered, so a publisher's event can be reused as soon as publish
+ * returns. Under BackpressurePolicy.SPILL a partition queues at most as
+ * many events again beyond its ring, then makes publishers wait.
+ */
+public class AsyncEventBus implements LibraryEventListener, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_MAX_BATCH = 256;
+    
+    private final Partition[] partitions;
+    private final BackpressurePolicy policy;
+    private final int maxBatch;
+    private final EventDispatcher dispatcher;
+    private final AtomicLong published;
+    private final AtomicLong delivered;
+    private final AtomicLong dropped;
+    private final AtomicLong spilled;
+    private final AtomicLong batches;
+    private volatile boolean closed;
+    private volatile LibraryMetrics metrics;
+    
+    public AsyncEventBus() {
+        this(1, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH, BackpressurePolicy.BLOCK);
+    }
+    
+    public AsyncEventBus(int consumers, int capacity, int maxBatch, BackpressurePolicy policy) {
+        if (consumers < 1 || capacity < 1 || maxBatch < 1 || policy == null) {
+            throw new IllegalArgumentException("consumers, capacity and maxBatch must be positive and policy set");
+        }
+        this.policy = policy;
+        this.maxBatch = maxBatch;
+        this.dispatcher = new EventDispatcher(true);
+        this.published = new AtomicLong();
+        this.delivered = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.spilled = new AtomicLong();
+        this.batches = new AtomicLong();
+        this.partitions = new Partition[consumers];
+        for (int i = 0; i < consumers; i++) {
+            partitions[i] = new Partition(i, capacity);
+        }
+        for (Partition partition : partitions) {
+            partition.consumer.start();
+        }
+    }
+    
+    // Subscription management
+    public void subscribe(LibraryEventListener listener) {
+        dispatcher.subscribe(listener, EnumSet.noneOf(EventType.class));
+    }
+    
+    public void subscribeBatch(BatchLibraryEventListener listener) {
+        dispatcher.subscribeBatch(listener, EnumSet.noneOf(EventType.class));
+    }
+    
+    // Only events of these types are delivered to the listener; an empty set means all of them
+    public void subscribe(LibraryEventListener listener, Set<EventType> types) {
+        dispatcher.subscribe(listener, types);
+    }
+    
+    public void subscribeBatch(BatchLibraryEventListener listener, Set<EventType> types) {
+        dispatcher.subscribeBatch(listener, types);
+    }
+    
+    public void unsubscribe(LibraryEventListener listener) {
+        dispatcher.unsubscribe(listener);
+    }
+    
+    public void unsubscribeBatch(BatchLibraryEventListener listener) {
+        dispatcher.unsubscribeBatch(listener);
+    }
+    
+    // Publishers skip building events of a type no one listens to
+    public boolean hasSubscribers(EventType type) {
+        return dispatcher.hasSubscribers(type);
+    }
+    
+    // Times every listener call on the consumer threads; null turns timing off
+    public void setMetrics(LibraryMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    public List<LibraryEventListener> getListeners() {
+        return dispatcher.getListeners();
+    }
+    
+    @Override
+    public void onLibraryEvent(LibraryEvent event) {
+        publish(event);
+    }
+    
+    // Returns false when the event was dropped, either by policy or because the bus is closed
+    public boolean publish(LibraryEvent event) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return partitionFor(event).offer(event);
+    }
+    
+    private Partition partitionFor(LibraryEvent event) {
+        if (partitions.length == 1) {
+            return partitions[0];
+        }
+        String key = event.getBookIsbn() != null ? event.getBookIsbn() : event.getPatronId();
+        int h = key == null ? 0 : key.hashCode();
+        return partitions[((h ^ (h >>> 16)) & 0x7fffffff) % partitions.length];
+    }
+    
+    public EventBusStats getStats() {
+        long depth = 0;
+        long maxDepth = 0;
+        long capacity = 0;
+        for (Partition partition : partitions) {
+            depth += partition.depth();
+            maxDepth = Math.max(maxDepth, partition.maxDepth);
+            capacity += partition.ring.length;
+        }
+        return new EventBusStats(published.get(), delivered.get(), dropped.get(), spilled.get(),
+                batches.get(), depth, maxDepth, capacity);
+    }
+    
+    // Blocks until everything published so far has been delivered, or the timeout passes
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Partition partition : partitions) {
+            if (!partition.awaitIdle(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Stops accepting events, delivers what is already queued and stops the consumers
+    @Override
+    public void close() {
+        closed = true;
+        for (Partition partition : partitions) {
+            partition.wakeUp();
+        }
+        for (Partition partition : partitions) {
+            try {
+                partition.consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    private void deliver(List<LibraryEvent> batch) {
+        dispatcher.dispatch(batch, metrics);
+        delivered.addAndGet(batch.size());
+        batches.incrementAndGet();
+    }
+    
+    private final class Partition {
+        private final LibraryEvent[] ring;
+        private final ArrayDeque<LibraryEvent> overflow;
+        private final ReentrantLock lock;
+        private final Condition notEmpty;
+        private final Condition notFull;
+        private final Condition idle;
+        private final Thread consumer;
+        private long head;
+        private long tail;
+        private boolean delivering;
+        private volatile long maxDepth;
+        
+        Partition(int index, int capacity) {
+            this.ring = new LibraryEvent[capacity];
+            for (int i = 0; i < capacity; i++) {
+                ring[i] = new LibraryEvent();
+            }
+            this.overflow = new ArrayDeque<>(Math.min(capacity, 1024));
+            this.lock = new ReentrantLock();
+            this.notEmpty = lock.newCondition();
+            this.notFull = lock.newCondition();
+            this.idle = lock.newCondition();
+            this.consumer = new Thread(this::consume, "library-event-bus-" + index);
+            this.consumer.setDaemon(true);
+        }
+        
+        boolean offer(LibraryEvent event) {
+            lock.lock();
+            try {
+                // Once events have spilled, newer ones queue behind them to keep the order
+                while (tail - head == ring.length || !overflow.isEmpty()) {
+                    // A full overflow queue holds up the publisher rather than growing without bound
+                    if (policy == BackpressurePolicy.SPILL && overflow.size() < ring.length) {
+                        overflow.addLast(event.copy());
+                        maxDepth = Math.max(maxDepth, (tail - head) + overflow.size());
+                        spilled.incrementAndGet();
+                        published.incrementAndGet();
+                        notEmpty.signal();
+                        return true;
+                    }
+                    if (policy == BackpressurePolicy.DROP || closed) {
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                    notFull.awaitUninterruptibly();
+                }
+                ring[(int) (tail % ring.length)].copyFrom(event);
+                tail++;
+                long depth = tail - head;
+                if (depth > maxDepth) {
+                    maxDepth = depth;
+                }
+                published.incrementAndGet();
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Slots stay taken while their batch is delivered, then go back to the publishers
+        private void consume() {
+            List<LibraryEvent> batch = new ArrayList<>(maxBatch);
+            while (true) {
+                lock.lock();
+                try {
+                    head += batch.size();
+                    batch.clear();
+                    while (!overflow.isEmpty() && tail - head < ring.length) {
+                        ring[(int) (tail % ring.length)].copyFrom(overflow.pollFirst());
+                        tail++;
+                    }
+                    notFull.signalAll();
+                    delivering = false;
+                    idle.signalAll();
+                    while (tail == head && !closed) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    if (tail == head) {
+                        return;
+                    }
+                    for (long next = head; next < tail && batch.size() < maxBatch; next++) {
+                        batch.add(ring[(int) (next % ring.length)]);
+                    }
+                    delivering = true;
+                } finally {
+                    lock.unlock();
+                }
+                deliver(batch);
+            }
+        }
+        
+        boolean awaitIdle(long deadline) throws InterruptedException {
+            lock.lock();
+            try {
+                while (tail != head || delivering) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    idle.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        long depth() {
+            lock.lock();
+            try {
+                return (tail - head) + overflow.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        void wakeUp() {
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
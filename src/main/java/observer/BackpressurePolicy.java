@@ -0,0 +1,8 @@
+package main.java.observer;
+
+// What AsyncEventBus does when a publisher finds its ring buffer full
+public enum BackpressurePolicy {
+    BLOCK,  // wait for the consumer to make room
+    DROP,   // discard the new event and count it
+    SPILL   // park it in an overflow queue as large as the ring, then wait as BLOCK does
+}
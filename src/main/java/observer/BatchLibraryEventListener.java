@@ -0,0 +1,8 @@
+package main.java.observer;
+
+import java.util.List;
+
+public interface BatchLibraryEventListener {
+    // Events arrive in publication order; the list is only valid for the duration of the call
+    void onLibraryEvents(List<LibraryEvent> events);
+}
@@ -0,0 +1,74 @@
+package main.java.observer;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The events one operation publishes, drawn from a per-thread pool of
+ * event objects so that publishing allocates nothing once the pool has
+ * grown to the largest batch the thread publishes. The buffer is itself
+ * the list handed to batch listeners. An operation acquires it, appends
+ * its events, dispatches them and releases it; a listener that publishes
+ * from inside a dispatch gets a fresh buffer of its own.
+ */
+public final class EventBuffer extends AbstractList<LibraryEvent> {
+    private static final ThreadLocal<EventBuffer> CURRENT = ThreadLocal.withInitial(EventBuffer::new);
+    
+    private final List<LibraryEvent> pool = new ArrayList<>();
+    private int size;
+    private boolean inUse;
+    
+    private EventBuffer() {
+    }
+    
+    public static EventBuffer acquire() {
+        EventBuffer buffer = CURRENT.get();
+        if (buffer.inUse) {
+            buffer = new EventBuffer();
+        }
+        buffer.inUse = true;
+        return buffer;
+    }
+    
+    public LibraryEvent append(EventType type, String patronId, String bookIsbn, long timestamp, long detail) {
+        return append(type, null, patronId, bookIsbn, timestamp, detail);
+    }
+    
+    // An event described by the given text instead of its type's template
+    public LibraryEvent append(EventType type, String description, String patronId, String bookIsbn, long timestamp) {
+        return append(type, description, patronId, bookIsbn, timestamp, LibraryEvent.NO_DETAIL);
+    }
+    
+    private LibraryEvent append(EventType type, String description, String patronId, String bookIsbn,
+                                long timestamp, long detail) {
+        if (size == pool.size()) {
+            pool.add(new LibraryEvent());
+        }
+        LibraryEvent event = pool.get(size++);
+        event.set(type, description, patronId, bookIsbn, timestamp, detail);
+        return event;
+    }
+    
+    // Drops the events' references and returns the buffer to its thread
+    public void release() {
+        for (int i = 0; i < size; i++) {
+            pool.get(i).set(null, null, null, null, 0, LibraryEvent.NO_DETAIL);
+        }
+        size = 0;
+        inUse = false;
+    }
+    
+    @Override
+    public LibraryEvent get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return pool.get(index);
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+}
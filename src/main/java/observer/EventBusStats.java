@@ -0,0 +1,44 @@
+package main.java.observer;
+
+public class EventBusStats {
+    private final long published;
+    private final long delivered;
+    private final long dropped;
+    private final long spilled;
+    private final long batches;
+    private final long queueDepth;
+    private final long maxQueueDepth;
+    private final long capacity;
+    
+    public EventBusStats(long published, long delivered, long dropped, long spilled,
+                         long batches, long queueDepth, long maxQueueDepth, long capacity) {
+        this.published = published;
+        this.delivered = delivered;
+        this.dropped = dropped;
+        this.spilled = spilled;
+        this.batches = batches;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.capacity = capacity;
+    }
+    
+    // Getters
+    public long getPublished() { return published; }
+    public long getDelivered() { return delivered; }
+    public long getDropped() { return dropped; }
+    public long getSpilled() { return spilled; }
+    public long getBatches() { return batches; }
+    public long getQueueDepth() { return queueDepth; }
+    public long getMaxQueueDepth() { return maxQueueDepth; }
+    public long getCapacity() { return capacity; }
+    
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0.0 : (double) delivered / batches;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("EventBusStats{published=%d, delivered=%d, dropped=%d, spilled=%d, batches=%d, depth=%d/%d, maxDepth=%d}",
+                published, delivered, dropped, spilled, batches, queueDepth, capacity, maxQueueDepth);
+    }
+}
@@ -0,0 +1,216 @@
+package main.java.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import main.java.metrics.LibraryMetrics;
+import main.java.metrics.OperationMetrics;
+
+/**
+ * Listeners by the event types they subscribed to. Subscribing rebuilds
+ * copy-on-write tables indexed by type, so dispatching an event only
+ * reads the listeners of its own type, and a publisher can ask whether a
+ * type has any before building the event at all. Plain listeners get one
+ * call per event; batch listeners get the events of their types in one
+ * call, the whole list when they take every type.
+ */
+public final class EventDispatcher {
+    private static final Logger logger = Logger.getLogger(EventDispatcher.class.getName());
+    private static final int TYPES = EventType.values().length;
+    
+    private final boolean isolateFailures;
+    private final Map<LibraryEventListener, Set<EventType>> listeners = new LinkedHashMap<>();
+    private final Map<BatchLibraryEventListener, Set<EventType>> batchListeners = new LinkedHashMap<>();
+    private volatile Table table = new Table(listeners, batchListeners);
+    
+    /**
+     * With isolateFailures a listener that throws is logged and counted as
+     * failed and the others still get the events; without it the exception
+     * reaches the publisher.
+     */
+    public EventDispatcher(boolean isolateFailures) {
+        this.isolateFailures = isolateFailures;
+    }
+    
+    // An empty set of types subscribes to all of them
+    public synchronized void subscribe(LibraryEventListener listener, Set<EventType> types) {
+        register(listeners, listener, types);
+    }
+    
+    public synchronized void subscribeBatch(BatchLibraryEventListener listener, Set<EventType> types) {
+        register(batchListeners, listener, types);
+    }
+    
+    public synchronized void unsubscribe(LibraryEventListener listener) {
+        if (listeners.remove(listener) != null) {
+            table = new Table(listeners, batchListeners);
+        }
+    }
+    
+    public synchronized void unsubscribeBatch(BatchLibraryEventListener listener) {
+        if (batchListeners.remove(listener) != null) {
+            table = new Table(listeners, batchListeners);
+        }
+    }
+    
+    public boolean hasSubscribers(EventType type) {
+        return table.subscribed[type.ordinal()];
+    }
+    
+    public List<LibraryEventListener> getListeners() {
+        return table.all;
+    }
+    
+    public List<BatchLibraryEventListener> getBatchListeners() {
+        return table.allBatch;
+    }
+    
+    // The types each listener subscribed to, in subscription order
+    public synchronized Map<LibraryEventListener, Set<EventType>> getSubscriptions() {
+        return copyOf(listeners);
+    }
+    
+    public synchronized Map<BatchLibraryEventListener, Set<EventType>> getBatchSubscriptions() {
+        return copyOf(batchListeners);
+    }
+    
+    private static <L> Map<L, Set<EventType>> copyOf(Map<L, Set<EventType>> registrations) {
+        Map<L, Set<EventType>> copy = new LinkedHashMap<>();
+        registrations.forEach((listener, types) -> copy.put(listener, EnumSet.copyOf(types)));
+        return copy;
+    }
+    
+    // Subscribing again adds types
+    private <L> void register(Map<L, Set<EventType>> registrations, L listener, Set<EventType> types) {
+        Set<EventType> merged = types.isEmpty() ? EnumSet.allOf(EventType.class) : EnumSet.copyOf(types);
+        Set<EventType> previous = registrations.get(listener);
+        if (previous != null) {
+            merged.addAll(previous);
+        }
+        registrations.put(listener, merged);
+        table = new Table(listeners, batchListeners);
+    }
+    
+    // Times each listener call when metrics is not null
+    public void dispatch(List<LibraryEvent> events, LibraryMetrics metrics) {
+        Table table = this.table;
+        for (int i = 0; i < events.size(); i++) {
+            LibraryEvent event = events.get(i);
+            List<LibraryEventListener> listeners = table.byType[event.getEventType().ordinal()];
+            for (int j = 0; j < listeners.size(); j++) {
+                LibraryEventListener listener = listeners.get(j);
+                OperationMetrics timing = metrics == null ? null : metrics.listener(listener);
+                long start = System.nanoTime();
+                try {
+                    listener.onLibraryEvent(event);
+                } catch (RuntimeException e) {
+                    failed(listener, timing, e);
+                }
+                if (timing != null) {
+                    timing.recordSince(start);
+                }
+            }
+        }
+        for (int j = 0; j < table.allBatch.size(); j++) {
+            BatchLibraryEventListener listener = table.allBatch.get(j);
+            Set<EventType> types = table.batchTypes.get(j);
+            List<LibraryEvent> selected = types.size() == TYPES ? events : select(events, types);
+            if (selected.isEmpty()) {
+                continue;
+            }
+            OperationMetrics timing = metrics == null ? null : metrics.listener(listener);
+            long start = System.nanoTime();
+            try {
+                listener.onLibraryEvents(selected);
+            } catch (RuntimeException e) {
+                failed(listener, timing, e);
+            }
+            if (timing != null) {
+                timing.recordSince(start);
+            }
+        }
+    }
+    
+    // A new list only when some of the events, but not all, are of the types
+    private static List<LibraryEvent> select(List<LibraryEvent> events, Set<EventType> types) {
+        int matching = 0;
+        for (int i = 0; i < events.size(); i++) {
+            if (types.contains(events.get(i).getEventType())) {
+                matching++;
+            }
+        }
+        if (matching == events.size()) {
+            return events;
+        }
+        if (matching == 0) {
+            return Collections.emptyList();
+        }
+        List<LibraryEvent> selected = new ArrayList<>(matching);
+        for (int i = 0; i < events.size(); i++) {
+            if (types.contains(events.get(i).getEventType())) {
+                selected.add(events.get(i));
+            }
+        }
+        return selected;
+    }
+    
+    private void failed(Object listener, OperationMetrics timing, RuntimeException e) {
+        if (!isolateFailures) {
+            throw e;
+        }
+        logger.log(Level.WARNING, "Listener " + listener + " failed", e);
+        if (timing != null) {
+            timing.fail("exception");
+        }
+    }
+    
+    // One immutable generation of the subscriptions
+    private static final class Table {
+        final List<LibraryEventListener>[] byType;
+        final boolean[] subscribed;
+        final List<LibraryEventListener> all;
+        final List<BatchLibraryEventListener> allBatch;
+        final List<Set<EventType>> batchTypes;
+        
+        Table(Map<LibraryEventListener, Set<EventType>> listeners,
+              Map<BatchLibraryEventListener, Set<EventType>> batchListeners) {
+            @SuppressWarnings("unchecked")
+            List<LibraryEventListener>[] lists = (List<LibraryEventListener>[]) new List<?>[TYPES];
+            for (int i = 0; i < TYPES; i++) {
+                lists[i] = new ArrayList<>();
+            }
+            List<LibraryEventListener> all = new ArrayList<>();
+            List<BatchLibraryEventListener> allBatch = new ArrayList<>();
+            List<Set<EventType>> batchTypes = new ArrayList<>();
+            this.subscribed = new boolean[TYPES];
+            listeners.forEach((listener, types) -> {
+                all.add(listener);
+                for (EventType type : types) {
+                    lists[type.ordinal()].add(listener);
+                    subscribed[type.ordinal()] = true;
+                }
+            });
+            batchListeners.forEach((listener, types) -> {
+                allBatch.add(listener);
+                batchTypes.add(types);
+                for (EventType type : types) {
+                    subscribed[type.ordinal()] = true;
+                }
+            });
+            for (int i = 0; i < TYPES; i++) {
+                lists[i] = Collections.unmodifiableList(lists[i]);
+            }
+            this.byType = lists;
+            this.all = Collections.unmodifiableList(all);
+            this.allBatch = Collections.unmodifiableList(allBatch);
+            this.batchTypes = batchTypes;
+        }
+    }
+}
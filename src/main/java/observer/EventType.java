@@ -0,0 +1,38 @@
+package main.java.observer;
+
+/**
+ * The kinds of LibraryEvent. Each carries the template its events are
+ * described by; a template with a placeholder is filled in from the
+ * event's detail, a count or a time in epoch millis, only when the
+ * description is asked for.
+ */
+public enum EventType {
+    BOOK_ADDED("Book added to inventory"),
+    BOOKS_BULK_ADDED("%d books added to inventory"),
+    BOOK_REMOVED("Book removed from inventory"),
+    BOOK_UPDATED("Book information updated"),
+    BOOK_COPIES_CHANGED("Copies set to %d"),
+    PATRON_ADDED("New patron registered"),
+    PATRONS_BULK_ADDED("%d patrons registered"),
+    PATRON_UPDATED("Patron information updated"),
+    BOOK_CHECKED_OUT("Book checked out, due %tF %<tR"),
+    BOOK_RETURNED("Book returned"),
+    LOAN_RENEWED("Loan renewed, due %tF %<tR"),
+    BOOK_OVERDUE("Book overdue since %tF %<tR"),
+    HOLD_PLACED("Hold placed"),
+    HOLD_CANCELLED("Hold cancelled"),
+    HOLD_READY("Hold ready for pickup"),
+    HOLD_EXPIRED("Hold not picked up in time");
+    
+    private final String template;
+    private final boolean hasDetail;
+    
+    EventType(String template) {
+        this.template = template;
+        this.hasDetail = template.indexOf('%') >= 0;
+    }
+    
+    String describe(long detail) {
+        return hasDetail ? String.format(template, detail) : template;
+    }
+}
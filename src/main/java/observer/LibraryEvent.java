@@ -1,30 +1,66 @@
 package main.java.observer;
 
+/**
+ * Something that happened in a library service. The service reuses its
+ * event objects, so an event is only valid for the duration of the
+ * listener call it is passed to; a listener that keeps one keeps a copy().
+ * The description is built from the type's template when it is first
+ * asked for.
+ */
 public class LibraryEvent {
-    private String eventType;
+    // The detail of an event whose description has no placeholder
+    public static final long NO_DETAIL = -1;
+    
+    private EventType eventType;
     private String description;
     private String patronId;
     private String bookIsbn;
     private long timestamp;
+    private long detail;
+    
+    public LibraryEvent(EventType eventType, String description, String patronId, String bookIsbn) {
+        set(eventType, description, patronId, bookIsbn, System.currentTimeMillis(), NO_DETAIL);
+    }
     
-    public LibraryEvent(String eventType, String description, String patronId, String bookIsbn) {
+    // A blank event for a buffer to fill in
+    LibraryEvent() {
+    }
+    
+    // description may be null, for the type's own
+    void set(EventType eventType, String description, String patronId, String bookIsbn, long timestamp, long detail) {
         this.eventType = eventType;
         this.description = description;
         this.patronId = patronId;
         this.bookIsbn = bookIsbn;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
+        this.detail = detail;
+    }
+    
+    void copyFrom(LibraryEvent other) {
+        set(other.eventType, other.description, other.patronId, other.bookIsbn, other.timestamp, other.detail);
+    }
+    
+    public LibraryEvent copy() {
+        LibraryEvent copy = new LibraryEvent();
+        copy.copyFrom(this);
+        return copy;
     }
     
     // Getters
-    public String getEventType() { return eventType; }
-    public String getDescription() { return description; }
+    public EventType getEventType() { return eventType; }
     public String getPatronId() { return patronId; }
     public String getBookIsbn() { return bookIsbn; }
     public long getTimestamp() { return timestamp; }
+    // The count or time the description refers to, or NO_DETAIL
+    public long getDetail() { return detail; }
+    
+    public String getDescription() {
+        return description != null ? description : eventType.describe(detail);
+    }
     
     @Override
     public String toString() {
         return String.format("[%s] %s - Patron: %s, Book: %s", 
-                eventType, description, patronId, bookIsbn);
+                eventType, getDescription(), patronId, bookIsbn);
     }
 }
@@ -1,5 +1,6 @@
 package main.java.observer;
 
+// The event is only valid during the call, see LibraryEvent
 public interface LibraryEventListener {
     void onLibraryEvent(LibraryEvent event);
 }
\ No newline at end of file
@@ -8,6 +8,9 @@ public class LoggingEventListener implements LibraryEventListener {
     
     @Override
     public void onLibraryEvent(LibraryEvent event) {
-        logger.log(Level.INFO, event.toString());
+        // Formatted here, only when it will be logged: the event is reused once this returns
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info(event.toString());
+        }
     }
-}
\ No newline at end of file
+}
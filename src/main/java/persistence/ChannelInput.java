@@ -0,0 +1,124 @@
+package main.java.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential reader over a file channel through one large direct buffer,
+ * so recovery reads the files in big NIO transfers instead of going
+ * through a stream per field. Optionally checksums everything it returns.
+ */
+final class ChannelInput {
+    private static final int BUFFER_SIZE = 4 << 20;
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32 crc;
+    private long consumed;
+    private byte[] scratch = new byte[256];
+    
+    ChannelInput(FileChannel channel, boolean checksum) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.flip();
+        this.crc = checksum ? new CRC32() : null;
+    }
+    
+    // Bytes handed out so far, i.e. the file offset of the next read
+    long position() {
+        return consumed;
+    }
+    
+    // False when the file ends before n more bytes are available
+    boolean ensure(int n) throws IOException {
+        if (buffer.remaining() >= n) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+    
+    int readInt() throws IOException {
+        require(4);
+        checksum(4);
+        consumed += 4;
+        return buffer.getInt();
+    }
+    
+    long readLong() throws IOException {
+        require(8);
+        checksum(8);
+        consumed += 8;
+        return buffer.getLong();
+    }
+    
+    byte readByte() throws IOException {
+        require(1);
+        checksum(1);
+        consumed += 1;
+        return buffer.get();
+    }
+    
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+    
+    String readString() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = readBytes(length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    // The returned array is reused by the next call and may be longer than length
+    byte[] readBytes(int length) throws IOException {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining() && !ensure(1)) {
+                throw new EOFException();
+            }
+            int chunk = Math.min(length - offset, buffer.remaining());
+            buffer.get(scratch, offset, chunk);
+            offset += chunk;
+        }
+        if (crc != null) {
+            crc.update(scratch, 0, length);
+        }
+        consumed += length;
+        return scratch;
+    }
+    
+    long checksumValue() {
+        return crc.getValue();
+    }
+    
+    private void require(int n) throws IOException {
+        if (!ensure(n)) {
+            throw new EOFException();
+        }
+    }
+    
+    private void checksum(int n) {
+        if (crc != null) {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(view.position() + n);
+            crc.update(view);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package main.java.persistence;
+
+public enum Durability {
+    // Mutators return immediately; a crash can lose the last commit interval
+    ASYNC,
+    // Mutators wait, outside their locks, for the group fsync that covers them
+    GROUP_COMMIT
+}
@@ -0,0 +1,71 @@
+package main.java.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * On-disk layout shared by the journal and snapshot files. Every journal
+ * record is framed as [int length][int crc32][long lsn][byte type][payload],
+ * where length and crc cover lsn, type and payload. The payload is the
+ * record's strings, an int and then any times it carries as longs. Strings
+ * are an int byte length (-1 for null) followed by UTF-8 bytes.
+ */
+final class JournalFormat {
+    static final byte BOOK_ADDED = 1;
+    static final byte BOOK_UPDATED = 2;
+    static final byte BOOK_REMOVED = 3;
+    static final byte PATRON_ADDED = 4;
+    static final byte PATRON_UPDATED = 5;
+    static final byte BOOK_CHECKED_OUT = 6;
+    static final byte BOOK_RETURNED = 7;
+    static final byte BOOK_COPIES_CHANGED = 8;
+    static final byte GUEST_ADDED = 9;
+    static final byte LOAN_RENEWED = 10;
+    static final byte HOLD_PLACED = 11;
+    static final byte HOLD_CANCELLED = 12;
+    static final byte HOLD_READY = 13;
+    
+    static final int FRAME_HEADER = 8;    // length + crc
+    static final int RECORD_HEADER = 9;   // lsn + type
+    static final int MAX_RECORD = 1 << 20;
+    
+    static final int SNAPSHOT_MAGIC = 0x4C4D5353; // "LMSS"
+    // Version 2 added copy counts, 3 guest records and 4 loan times and holds; older files are still read
+    static final int SNAPSHOT_VERSION = 4;
+    
+    static final String JOURNAL_PREFIX = "journal-";
+    static final String JOURNAL_SUFFIX = ".log";
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".bin";
+    
+    private JournalFormat() { }
+    
+    static String journalName(long firstLsn) {
+        return String.format("%s%020d%s", JOURNAL_PREFIX, firstLsn, JOURNAL_SUFFIX);
+    }
+    
+    static String snapshotName(long lastLsn) {
+        return String.format("%s%020d%s", SNAPSHOT_PREFIX, lastLsn, SNAPSHOT_SUFFIX);
+    }
+    
+    // The LSN embedded in a journal or snapshot file name, or -1 if the name is foreign
+    static long sequenceOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    static int sizeOf(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+}
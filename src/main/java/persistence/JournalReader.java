@@ -0,0 +1,103 @@
+package main.java.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+final class JournalReader {
+    interface RecordHandler {
+        void onRecord(JournalRecord record);
+    }
+    
+    // Where a segment's valid records end and whether anything after them had to be ignored
+    static final class SegmentResult {
+        final long lastLsn;
+        final long validBytes;
+        final long records;
+        final boolean torn;
+        
+        SegmentResult(long lastLsn, long validBytes, long records, boolean torn) {
+            this.lastLsn = lastLsn;
+            this.validBytes = validBytes;
+            this.records = records;
+            this.torn = torn;
+        }
+    }
+    
+    private JournalReader() { }
+    
+    /**
+     * Hands every intact record with an LSN above afterLsn to the handler.
+     * Reading stops at the first truncated or corrupt frame, which is what a
+     * crash in the middle of a write leaves behind.
+     */
+    static SegmentResult replay(Path segment, long afterLsn, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ChannelInput input = new ChannelInput(channel, false);
+            JournalRecord record = new JournalRecord();
+            CRC32 crc = new CRC32();
+            long lastLsn = afterLsn;
+            long records = 0;
+            long validBytes = 0;
+            
+            while (input.ensure(JournalFormat.FRAME_HEADER)) {
+                int length = input.readInt();
+                int expectedCrc = input.readInt();
+                if (length < JournalFormat.RECORD_HEADER || length > JournalFormat.MAX_RECORD
+                        || !input.ensure(length)) {
+                    return new SegmentResult(lastLsn, validBytes, records, true);
+                }
+                byte[] bytes;
+                try {
+                    bytes = input.readBytes(length);
+                } catch (EOFException e) {
+                    return new SegmentResult(lastLsn, validBytes, records, true);
+                }
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != expectedCrc || !decode(ByteBuffer.wrap(bytes, 0, length), record)) {
+                    return new SegmentResult(lastLsn, validBytes, records, true);
+                }
+                validBytes = input.position();
+                if (record.lsn > afterLsn) {
+                    handler.onRecord(record);
+                    lastLsn = record.lsn;
+                    records++;
+                }
+            }
+            return new SegmentResult(lastLsn, validBytes, records, input.position() < channel.size());
+        }
+    }
+    
+    private static boolean decode(ByteBuffer in, JournalRecord record) {
+        record.lsn = in.getLong();
+        record.type = in.get();
+        int fields = JournalRecord.fieldCount(record.type);
+        if (fields < 0) {
+            return false;
+        }
+        for (int i = 0; i < fields; i++) {
+            int length = in.getInt();
+            if (length < 0) {
+                record.fields[i] = null;
+            } else {
+                record.fields[i] = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+        }
+        record.number = in.getInt();
+        if (in.remaining() % 8 != 0 || in.remaining() / 8 > record.times.length) {
+            return false;
+        }
+        record.timeCount = in.remaining() / 8;
+        for (int i = 0; i < record.timeCount; i++) {
+            record.times[i] = in.getLong();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+package main.java.persistence;
+
+// One decoded journal entry; the reader reuses a single instance per segment
+final class JournalRecord {
+    long lsn;
+    byte type;
+    final String[] fields = new String[4];
+    int number;
+    // Checkout time and due date of a loan, or the pickup deadline of a hold; absent from older records
+    final long[] times = new long[2];
+    int timeCount;
+    
+    static int fieldCount(byte type) {
+        switch (type) {
+            case JournalFormat.BOOK_ADDED:
+            case JournalFormat.BOOK_UPDATED:
+                return 3;
+            case JournalFormat.BOOK_REMOVED:
+            case JournalFormat.BOOK_COPIES_CHANGED:
+                return 1;
+            case JournalFormat.PATRON_ADDED:
+            case JournalFormat.PATRON_UPDATED:
+            case JournalFormat.GUEST_ADDED:
+                return 4;
+            case JournalFormat.BOOK_CHECKED_OUT:
+            case JournalFormat.BOOK_RETURNED:
+            case JournalFormat.LOAN_RENEWED:
+            case JournalFormat.HOLD_PLACED:
+            case JournalFormat.HOLD_CANCELLED:
+            case JournalFormat.HOLD_READY:
+                return 2;
+            default:
+                return -1;
+        }
+    }
+}
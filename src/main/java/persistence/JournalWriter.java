@@ -0,0 +1,371 @@
+package main.java.persistence;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.Loan;
+import main.java.model.Patron;
+
+/**
+ * Append-only binary journal with group commit. Mutators only encode their
+ * record into an in-memory buffer; a single flusher thread swaps buffers,
+ * writes the filled one to the current segment and fsyncs it, so one fsync
+ * covers every record appended while the previous one was in progress.
+ * After a failed write the journal fails fast: append and awaitDurable
+ * throw, as a record accepted after it would follow a gap.
+ */
+public class JournalWriter implements MutationLog, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(JournalWriter.class.getName());
+    private static final int INITIAL_BUFFER = 1 << 16;
+    private static final long[] NO_TIMES = new long[0];
+    
+    private final Path directory;
+    private final Durability durability;
+    private final long commitIntervalMillis;
+    private final Object appendLock = new Object();
+    private final Object flushLock = new Object();
+    private final CRC32 crc = new CRC32();
+    private final Thread flusher;
+    
+    // Guarded by appendLock
+    private ByteBuffer active;
+    private ByteBuffer spare;
+    private long nextLsn;
+    // The flusher has swapped out a batch it has not yet written and forced
+    private boolean flushing;
+    private boolean closed;
+    // The first failed write; records after it would follow a gap, so nothing more is accepted
+    private volatile IOException failure;
+    
+    // Guarded by flushLock
+    private FileChannel channel;
+    
+    private volatile long durableLsn;
+    
+    public JournalWriter(Path directory, long firstLsn, Durability durability, long commitIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.durability = durability;
+        this.commitIntervalMillis = Math.max(1, commitIntervalMillis);
+        this.active = ByteBuffer.allocate(INITIAL_BUFFER);
+        this.spare = ByteBuffer.allocate(INITIAL_BUFFER);
+        this.nextLsn = firstLsn;
+        this.durableLsn = firstLsn - 1;
+        this.channel = openSegment(firstLsn);
+        this.flusher = new Thread(this::flushLoop, "library-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+    
+    // MutationLog
+    @Override
+    public long bookAdded(Book book) {
+        return append(JournalFormat.BOOK_ADDED, book.getPublicationYear(),
+                book.getIsbn(), book.getTitle(), book.getAuthor());
+    }
+    
+    @Override
+    public long bookUpdated(Book book) {
+        return append(JournalFormat.BOOK_UPDATED, book.getPublicationYear(),
+                book.getIsbn(), book.getTitle(), book.getAuthor());
+    }
+    
+    @Override
+    public long bookRemoved(String isbn) {
+        return append(JournalFormat.BOOK_REMOVED, 0, isbn);
+    }
+    
+    @Override
+    public long bookCopiesChanged(String isbn, int copies) {
+        return append(JournalFormat.BOOK_COPIES_CHANGED, copies, isbn);
+    }
+    
+    @Override
+    public long patronAdded(Patron patron) {
+        return append(JournalFormat.PATRON_ADDED, patron.getMaxBooksAllowed(),
+                patron.getPatronId(), patron.getName(), patron.getEmail(), patron.getPhone());
+    }
+    
+    @Override
+    public long patronUpdated(Patron patron) {
+        return append(JournalFormat.PATRON_UPDATED, 0,
+                patron.getPatronId(), patron.getName(), patron.getEmail(), patron.getPhone());
+    }
+    
+    @Override
+    public long guestAdded(Patron guest) {
+        return append(JournalFormat.GUEST_ADDED, 0,
+                guest.getPatronId(), guest.getName(), guest.getEmail(), guest.getPhone());
+    }
+    
+    @Override
+    public long bookCheckedOut(Loan loan) {
+        return append(JournalFormat.BOOK_CHECKED_OUT, 0, new long[] {loan.getCheckedOutAt(), loan.getDueAt()},
+                loan.getPatronId(), loan.getIsbn());
+    }
+    
+    @Override
+    public long bookReturned(String patronId, String isbn) {
+        return append(JournalFormat.BOOK_RETURNED, 0, patronId, isbn);
+    }
+    
+    @Override
+    public long loanRenewed(Loan loan) {
+        return append(JournalFormat.LOAN_RENEWED, loan.getRenewals(),
+                new long[] {loan.getCheckedOutAt(), loan.getDueAt()}, loan.getPatronId(), loan.getIsbn());
+    }
+    
+    @Override
+    public long holdPlaced(String patronId, String isbn) {
+        return append(JournalFormat.HOLD_PLACED, 0, patronId, isbn);
+    }
+    
+    @Override
+    public long holdCancelled(String patronId, String isbn) {
+        return append(JournalFormat.HOLD_CANCELLED, 0, patronId, isbn);
+    }
+    
+    @Override
+    public long holdReady(Hold hold) {
+        return append(JournalFormat.HOLD_READY, 0, new long[] {hold.getReadyUntil()},
+                hold.getPatronId(), hold.getIsbn());
+    }
+    
+    @Override
+    public void awaitDurable(long lsn) {
+        checkHealthy();
+        if (durability == Durability.ASYNC || lsn <= durableLsn) {
+            return;
+        }
+        synchronized (appendLock) {
+            appendLock.notifyAll();
+            while (durableLsn < lsn) {
+                checkHealthy();
+                if (closed) {
+                    return;
+                }
+                try {
+                    appendLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    public long getDurableLsn() {
+        return durableLsn;
+    }
+    
+    public long getLastLsn() {
+        synchronized (appendLock) {
+            return nextLsn - 1;
+        }
+    }
+    
+    /**
+     * Writes out everything appended so far, closes the current segment and
+     * starts a new one. Returns the last LSN of the closed segment. Callers
+     * must make sure no mutation is in flight, e.g. by holding every lock
+     * of the service. A batch the flusher has already taken is waited for,
+     * so it lands in the old segment ahead of the newer records.
+     */
+    public long rotate() throws IOException {
+        synchronized (appendLock) {
+            while (flushing) {
+                try {
+                    appendLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the journal flusher");
+                }
+            }
+            if (failure != null) {
+                throw new IOException("Journal write failed", failure);
+            }
+            long lastLsn = nextLsn - 1;
+            try {
+                synchronized (flushLock) {
+                    writeOut(active);
+                    channel.force(false);
+                    channel.close();
+                    channel = openSegment(nextLsn);
+                }
+            } catch (IOException e) {
+                failure = e;
+                appendLock.notifyAll();
+                throw e;
+            }
+            active.clear();
+            durableLsn = Math.max(durableLsn, lastLsn);
+            appendLock.notifyAll();
+            return lastLsn;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            closed = true;
+            appendLock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            synchronized (flushLock) {
+                if (failure != null) {
+                    channel.close();
+                    return;
+                }
+                writeOut(active);
+                active.clear();
+                channel.force(false);
+                channel.close();
+            }
+            durableLsn = nextLsn - 1;
+        }
+    }
+    
+    private long append(byte type, int number, String... fields) {
+        return append(type, number, NO_TIMES, fields);
+    }
+    
+    private long append(byte type, int number, long[] times, String... fields) {
+        byte[][] encoded = new byte[fields.length][];
+        int payload = 4 + 8 * times.length;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = JournalFormat.utf8(fields[i]);
+            payload += JournalFormat.sizeOf(encoded[i]);
+        }
+        int length = JournalFormat.RECORD_HEADER + payload;
+        if (length > JournalFormat.MAX_RECORD) {
+            throw new IllegalArgumentException("Journal record of " + length + " bytes is too large");
+        }
+        
+        synchronized (appendLock) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            checkHealthy();
+            ensureCapacity(JournalFormat.FRAME_HEADER + length);
+            long lsn = nextLsn++;
+            int start = active.position();
+            active.putInt(length);
+            active.putInt(0);
+            active.putLong(lsn);
+            active.put(type);
+            for (byte[] field : encoded) {
+                if (field == null) {
+                    active.putInt(-1);
+                } else {
+                    active.putInt(field.length);
+                    active.put(field);
+                }
+            }
+            active.putInt(number);
+            for (long time : times) {
+                active.putLong(time);
+            }
+            
+            crc.reset();
+            crc.update(active.array(), start + JournalFormat.FRAME_HEADER, length);
+            active.putInt(start + 4, (int) crc.getValue());
+            appendLock.notifyAll();
+            return lsn;
+        }
+    }
+    
+    private void checkHealthy() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+    }
+    
+    private void ensureCapacity(int bytes) {
+        if (active.remaining() >= bytes) {
+            return;
+        }
+        int capacity = active.capacity();
+        while (capacity - active.position() < bytes) {
+            capacity <<= 1;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        active.flip();
+        grown.put(active);
+        active = grown;
+    }
+    
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long lastLsn;
+            synchronized (appendLock) {
+                while (active.position() == 0 && !closed) {
+                    try {
+                        appendLock.wait(commitIntervalMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (active.position() == 0) {
+                    return;
+                }
+                batch = active;
+                active = spare;
+                spare = null;
+                lastLsn = nextLsn - 1;
+                flushing = true;
+            }
+            
+            try {
+                synchronized (flushLock) {
+                    writeOut(batch);
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Journal flush failed", e);
+                synchronized (appendLock) {
+                    failure = e;
+                    flushing = false;
+                    appendLock.notifyAll();
+                }
+                return;
+            }
+            
+            batch.clear();
+            synchronized (appendLock) {
+                spare = batch;
+                flushing = false;
+                durableLsn = Math.max(durableLsn, lastLsn);
+                appendLock.notifyAll();
+            }
+        }
+    }
+    
+    private void writeOut(ByteBuffer buffer) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+    
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        return FileChannel.open(directory.resolve(JournalFormat.journalName(firstLsn)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
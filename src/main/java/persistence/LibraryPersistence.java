@@ -0,0 +1,272 @@
+package main.java.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.Loan;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+import main.java.service.LibrarySnapshot;
+
+/**
+ * Durable storage for a LibraryService: a journal of every mutation plus
+ * periodic snapshots. Opening a directory restores the newest readable
+ * snapshot, replays the journal records written after it and then attaches
+ * a fresh journal segment to the service.
+ */
+public class LibraryPersistence implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(LibraryPersistence.class.getName());
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 5;
+    
+    private final Path directory;
+    private final LibraryService service;
+    private final JournalWriter journal;
+    private final RecoveryStats recoveryStats;
+    private ScheduledExecutorService checkpointer;
+    
+    private LibraryPersistence(Path directory, LibraryService service, JournalWriter journal, RecoveryStats recoveryStats) {
+        this.directory = directory;
+        this.service = service;
+        this.journal = journal;
+        this.recoveryStats = recoveryStats;
+    }
+    
+    public static LibraryPersistence open(Path directory, LibraryService service) throws IOException {
+        return open(directory, service, Durability.GROUP_COMMIT, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+    
+    public static LibraryPersistence open(Path directory, LibraryService service,
+                                          Durability durability, long commitIntervalMillis) throws IOException {
+        Files.createDirectories(directory);
+        RecoveryStats stats = recover(directory, service);
+        JournalWriter journal = new JournalWriter(directory, stats.getLastLsn() + 1, durability, commitIntervalMillis);
+        service.setMutationLog(journal);
+        logger.info("Library state recovered: " + stats);
+        return new LibraryPersistence(directory, service, journal, stats);
+    }
+    
+    public RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+    
+    /**
+     * Writes a snapshot and drops the journal segments and snapshots it makes
+     * obsolete. Mutations pause only while the journal is rotated, a
+     * LibrarySnapshot is opened at the same point and the holds, which are
+     * few, are copied; the rest is copied out of the snapshot and written
+     * after they resume.
+     */
+    public synchronized Path checkpoint() throws IOException {
+        long[] lastLsn = new long[1];
+        List<Hold> holds = new ArrayList<>();
+        LibrarySnapshot state = service.withExclusiveAccess(() -> {
+            try {
+                lastLsn[0] = journal.rotate();
+            } catch (IOException e) {
+                throw new IllegalStateException("Journal rotation failed", e);
+            }
+            holds.addAll(service.getAllHolds());
+            return service.openSnapshot();
+        });
+        SnapshotFile.Contents contents;
+        try (LibrarySnapshot snapshot = state) {
+            List<Patron> patrons = snapshot.getPatrons();
+            // Copies set aside for holds are stored on the shelf; restoring the holds takes them off again
+            Map<String, Integer> onLoan = new HashMap<>();
+            Map<String, Patron> byId = new HashMap<>();
+            for (Patron patron : patrons) {
+                patron.getCurrentlyBorrowed().forEach(isbn -> onLoan.merge(isbn, 1, Integer::sum));
+                byId.put(patron.getPatronId(), patron);
+            }
+            List<Book> books = snapshot.getBooks();
+            for (Book book : books) {
+                book.setAvailableCopies(book.getCopies() - onLoan.getOrDefault(book.getIsbn(), 0));
+            }
+            // Read after the locks are released: a loan changed since is journaled after lastLsn with its times
+            List<Loan> loans = new ArrayList<>();
+            for (Loan loan : service.getAllLoans()) {
+                Patron patron = byId.get(loan.getPatronId());
+                if (patron != null && patron.hasBorrowed(loan.getIsbn())) {
+                    loans.add(loan);
+                }
+            }
+            contents = new SnapshotFile.Contents(lastLsn[0], books, patrons, loans, holds);
+        }
+        
+        Path snapshot = SnapshotFile.write(directory, contents);
+        for (Path file : list(JournalFormat.SNAPSHOT_PREFIX, JournalFormat.SNAPSHOT_SUFFIX)) {
+            if (JournalFormat.sequenceOf(file, JournalFormat.SNAPSHOT_PREFIX, JournalFormat.SNAPSHOT_SUFFIX) < contents.lastLsn) {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (Path file : list(JournalFormat.JOURNAL_PREFIX, JournalFormat.JOURNAL_SUFFIX)) {
+            if (JournalFormat.sequenceOf(file, JournalFormat.JOURNAL_PREFIX, JournalFormat.JOURNAL_SUFFIX) <= contents.lastLsn) {
+                Files.deleteIfExists(file);
+            }
+        }
+        return snapshot;
+    }
+    
+    public synchronized void scheduleCheckpoints(long interval, TimeUnit unit) {
+        if (checkpointer != null) {
+            checkpointer.shutdownNow();
+        }
+        checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "library-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "Checkpoint failed", e);
+            }
+        }, interval, interval, unit);
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (checkpointer != null) {
+            checkpointer.shutdownNow();
+        }
+        service.setMutationLog(MutationLog.NONE);
+        journal.close();
+    }
+    
+    private static RecoveryStats recover(Path directory, LibraryService service) throws IOException {
+        long start = System.nanoTime();
+        SnapshotFile.Contents snapshot = null;
+        List<Path> snapshots = list(directory, JournalFormat.SNAPSHOT_PREFIX, JournalFormat.SNAPSHOT_SUFFIX);
+        Collections.reverse(snapshots);
+        for (Path file : snapshots) {
+            try {
+                snapshot = SnapshotFile.read(file);
+                break;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Skipping unreadable snapshot " + file, e);
+            }
+        }
+        
+        long snapshotLsn = snapshot == null ? 0 : snapshot.lastLsn;
+        long[] replayed = new long[2];
+        long lastLsn = snapshotLsn;
+        boolean torn = false;
+        
+        SnapshotFile.Contents loaded = snapshot;
+        List<Path> segments = list(directory, JournalFormat.JOURNAL_PREFIX, JournalFormat.JOURNAL_SUFFIX);
+        service.runWithoutSideEffects(() -> {
+            if (loaded != null) {
+                loaded.books.forEach(service::addBook);
+                loaded.patrons.forEach(service::addPatron);
+                loaded.loans.forEach(service::restoreLoan);
+                loaded.holds.forEach(service::restoreHold);
+            }
+        });
+        
+        for (Path segment : segments) {
+            if (torn) {
+                // Anything after a torn record was never acknowledged as durable
+                Files.delete(segment);
+                continue;
+            }
+            JournalReader.SegmentResult[] result = new JournalReader.SegmentResult[1];
+            long after = lastLsn;
+            IOException[] failure = new IOException[1];
+            service.runWithoutSideEffects(() -> {
+                try {
+                    result[0] = JournalReader.replay(segment, after, record -> {
+                        if (apply(service, record)) {
+                            replayed[0]++;
+                        } else {
+                            replayed[1]++;
+                        }
+                    });
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            lastLsn = Math.max(lastLsn, result[0].lastLsn);
+            if (result[0].torn) {
+                torn = true;
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(result[0].validBytes);
+                }
+            }
+        }
+        
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new RecoveryStats(snapshotLsn,
+                snapshot == null ? 0 : snapshot.books.size(),
+                snapshot == null ? 0 : snapshot.patrons.size(),
+                replayed[0], replayed[1], lastLsn, torn, elapsed);
+    }
+    
+    private static boolean apply(LibraryService service, JournalRecord record) {
+        String[] f = record.fields;
+        switch (record.type) {
+            case JournalFormat.BOOK_ADDED:
+                return service.addBook(new Book(f[0], f[1], f[2], record.number));
+            case JournalFormat.BOOK_UPDATED:
+                return service.updateBook(f[0], new Book(f[0], f[1], f[2], record.number));
+            case JournalFormat.BOOK_REMOVED:
+                return service.removeBook(f[0]);
+            case JournalFormat.BOOK_COPIES_CHANGED:
+                return service.setBookCopies(f[0], record.number);
+            case JournalFormat.PATRON_ADDED:
+                Patron patron = new Patron(f[0], f[1], f[2], f[3]);
+                patron.setMaxBooksAllowed(record.number);
+                return service.addPatron(patron);
+            case JournalFormat.GUEST_ADDED:
+                return service.addPatron(Patron.guestOf(new Patron(f[0], f[1], f[2], f[3])));
+            case JournalFormat.PATRON_UPDATED:
+                return service.updatePatron(f[0], new Patron(f[0], f[1], f[2], f[3]));
+            case JournalFormat.BOOK_CHECKED_OUT:
+                // Records from before loan times were journaled leave the loan period running from now
+                return service.checkoutBook(f[0], f[1]) && (record.timeCount < 2
+                        || service.restoreLoan(new Loan(f[0], f[1], record.times[0], record.times[1], 0)));
+            case JournalFormat.BOOK_RETURNED:
+                return service.returnBook(f[0], f[1]);
+            case JournalFormat.LOAN_RENEWED:
+                return service.restoreLoan(new Loan(f[0], f[1], record.times[0], record.times[1], record.number));
+            case JournalFormat.HOLD_PLACED:
+                return service.restoreHold(new Hold(f[0], f[1], Hold.WAITING));
+            case JournalFormat.HOLD_CANCELLED:
+                return service.cancelHold(f[0], f[1]);
+            case JournalFormat.HOLD_READY:
+                // Sets the deadline of a copy the replay already set aside, or sets one aside
+                return service.restoreHold(new Hold(f[0], f[1], record.times[0]));
+            default:
+                return false;
+        }
+    }
+    
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        return list(directory, prefix, suffix);
+    }
+    
+    // Matching files ordered by the LSN in their name
+    private static List<Path> list(Path directory, String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> JournalFormat.sequenceOf(file, prefix, suffix) >= 0)
+                    .sorted(Comparator.comparingLong(file -> JournalFormat.sequenceOf(file, prefix, suffix)))
+                    .collect(Collectors.toList());
+        }
+    }
+}
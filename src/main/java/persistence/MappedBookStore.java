@@ -0,0 +1,469 @@
+package main.java.persistence;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import main.java.index.IsbnIndex;
+import main.java.model.Book;
+
+/**
+ * Book records in a memory-mapped file, for catalogs too large to keep on
+ * the heap. Layout, all fixed at creation:
+ *
+ *   header   one 4 KiB page: magic, version, record size, capacity, slot
+ *            count, high-water mark, live and tombstoned slot counts, and
+ *            the head of the free record list
+ *   index    open-addressing hash table of 8-byte slots, 32 bits of the
+ *            canonical ISBN's hash above record number + 1, probed linearly
+ *   records  fixed-width 512-byte records: state, field lengths, year,
+ *            copies, copies on the shelf, then ISBN, title and author in UTF-8
+ *
+ * Nothing but the mappings lives on the heap, so the file is simply mapped
+ * again on restart. Copy counts are rewritten in place. A record is
+ * written before its slot, so a lookup never finds a half-written record;
+ * the OS writes pages back on its own schedule, and flush forces them out.
+ *
+ * Readers share a read lock; puts and removals take the write lock.
+ */
+public final class MappedBookStore implements AutoCloseable {
+    static final int MAGIC = 0x4C424B53;
+    static final int VERSION = 1;
+    public static final int RECORD_SIZE = 512;
+    private static final int HEADER_SIZE = 4096;
+    private static final int FIELDS = 20;
+    private static final long CHUNK_SIZE = 1L << 30;
+    private static final long TOMBSTONE = -1L << 32;
+    private static final int COPY_LOCKS = 64;
+    
+    // Header offsets
+    private static final int H_RECORD_SIZE = 8;
+    private static final int H_CAPACITY = 16;
+    private static final int H_SLOTS = 24;
+    private static final int H_NEXT_RECORD = 32;
+    private static final int H_LIVE = 40;
+    private static final int H_TOMBSTONES = 48;
+    private static final int H_FREE = 56;
+    
+    // Record offsets
+    private static final int R_STATE = 0;
+    private static final int R_ISBN_LENGTH = 1;
+    private static final int R_TITLE_LENGTH = 2;
+    private static final int R_AUTHOR_LENGTH = 4;
+    private static final int R_YEAR = 8;
+    private static final int R_NEXT_FREE = 8;
+    private static final int R_COPIES = 12;
+    private static final int R_AVAILABLE = 16;
+    
+    private final FileChannel channel;
+    private final Region header;
+    private final Region index;
+    private final Region records;
+    private final long capacity;
+    private final long slots;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] copyLocks;
+    
+    private MappedBookStore(FileChannel channel, long capacity, long slots) throws IOException {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.slots = slots;
+        long indexBytes = slots * 8;
+        long recordsStart = HEADER_SIZE + (indexBytes + HEADER_SIZE - 1) / HEADER_SIZE * HEADER_SIZE;
+        this.header = new Region(channel, 0, HEADER_SIZE);
+        this.index = new Region(channel, HEADER_SIZE, indexBytes);
+        this.records = new Region(channel, recordsStart, capacity * RECORD_SIZE);
+        this.copyLocks = new Object[COPY_LOCKS];
+        for (int i = 0; i < COPY_LOCKS; i++) {
+            copyLocks[i] = new Object();
+        }
+    }
+    
+    /**
+     * Maps the store in the file, creating it with room for capacity books
+     * if it doesn't exist; an existing file keeps the capacity it was made with.
+     */
+    public static MappedBookStore open(Path file, long capacity) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (exists) {
+                Region header = new Region(channel, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                        || header.getInt(H_RECORD_SIZE) != RECORD_SIZE) {
+                    throw new IOException("Not a book store, or an unsupported version: " + file);
+                }
+                return new MappedBookStore(channel, header.getLong(H_CAPACITY), header.getLong(H_SLOTS));
+            }
+            if (capacity < 1 || capacity > Integer.MAX_VALUE - 1) {
+                throw new IllegalArgumentException("Capacity out of range: " + capacity);
+            }
+            // At most half full, so probe sequences stay short
+            long slots = Long.highestOneBit(capacity * 2 - 1) << 1;
+            MappedBookStore store = new MappedBookStore(channel, capacity, slots);
+            store.header.putInt(H_RECORD_SIZE, RECORD_SIZE);
+            store.header.putLong(H_CAPACITY, capacity);
+            store.header.putLong(H_SLOTS, slots);
+            store.header.putInt(4, VERSION);
+            // Last, so a file cut short during creation is never taken for a store
+            store.header.putInt(0, MAGIC);
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    // Whether the book's fields fit in one record
+    public static boolean fits(Book book) {
+        return book.getIsbn() != null && utf8(book.getIsbn()).length <= 255
+                && FIELDS + utf8(book.getIsbn()).length + utf8(nonNull(book.getTitle())).length
+                        + utf8(nonNull(book.getAuthor())).length <= RECORD_SIZE;
+    }
+    
+    public Book get(String isbn) {
+        lock.readLock().lock();
+        try {
+            long record = find(isbn);
+            return record < 0 ? null : read(record);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean contains(String isbn) {
+        lock.readLock().lock();
+        try {
+            return find(isbn) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Stores the book, replacing the record of any spelling of its ISBN.
+     * Throws IllegalArgumentException when it doesn't fit a record and
+     * IllegalStateException when the store is full.
+     */
+    public void put(Book book) {
+        if (!fits(book)) {
+            throw new IllegalArgumentException("Book too large for one record: " + book.getIsbn());
+        }
+        lock.writeLock().lock();
+        try {
+            long existing = find(book.getIsbn());
+            if (existing >= 0) {
+                write(existing, book);
+                return;
+            }
+            long record = allocate();
+            write(record, book);
+            long hash = hash(book.getIsbn());
+            long slot = freeSlot(hash);
+            if (index.getLong(slot * 8) == TOMBSTONE) {
+                header.putLong(H_TOMBSTONES, header.getLong(H_TOMBSTONES) - 1);
+            }
+            index.putLong(slot * 8, (hash << 32) | (record + 1));
+            header.putLong(H_LIVE, header.getLong(H_LIVE) + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public boolean remove(String isbn) {
+        lock.writeLock().lock();
+        try {
+            long slot = findSlot(isbn);
+            if (slot < 0) {
+                return false;
+            }
+            long record = (index.getLong(slot * 8) & 0xFFFFFFFFL) - 1;
+            // The slot goes first, so no lookup reaches a record on the free list
+            index.putLong(slot * 8, TOMBSTONE);
+            records.putByte(record * RECORD_SIZE + R_STATE, (byte) 0);
+            records.putLong(record * RECORD_SIZE + R_NEXT_FREE, header.getLong(H_FREE));
+            header.putLong(H_FREE, record + 1);
+            header.putLong(H_LIVE, header.getLong(H_LIVE) - 1);
+            header.putLong(H_TOMBSTONES, header.getLong(H_TOMBSTONES) + 1);
+            if (header.getLong(H_TOMBSTONES) > slots / 4) {
+                rebuildIndex();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Rewrites the record's copy counts in place from the book's current ones; false if it isn't stored
+    public boolean updateCopies(Book book) {
+        lock.readLock().lock();
+        try {
+            long record = find(book.getIsbn());
+            if (record < 0) {
+                return false;
+            }
+            // Counts are read under the lock, so whichever update runs last leaves the latest ones
+            synchronized (copyLocks[(int) (record & (COPY_LOCKS - 1))]) {
+                records.putInt(record * RECORD_SIZE + R_COPIES, book.getCopies());
+                records.putInt(record * RECORD_SIZE + R_AVAILABLE, book.getAvailableCopies());
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Every stored book, each read into a new Book, in record order
+    public void forEach(Consumer<Book> action) {
+        lock.readLock().lock();
+        try {
+            long end = header.getLong(H_NEXT_RECORD);
+            for (long record = 0; record < end; record++) {
+                if (records.getByte(record * RECORD_SIZE + R_STATE) == 1) {
+                    action.accept(read(record));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public long size() {
+        return header.getLong(H_LIVE);
+    }
+    
+    public long capacity() {
+        return capacity;
+    }
+    
+    public void flush() {
+        header.force();
+        index.force();
+        records.force();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            flush();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Record number of the ISBN, or -1
+    private long find(String isbn) {
+        long slot = findSlot(isbn);
+        return slot < 0 ? -1 : (index.getLong(slot * 8) & 0xFFFFFFFFL) - 1;
+    }
+    
+    private long findSlot(String isbn) {
+        if (isbn == null) {
+            return -1;
+        }
+        String canonical = IsbnIndex.canonicalize(isbn);
+        long hash = hash(isbn);
+        for (long slot = hash & (slots - 1), probes = 0; probes < slots; slot = (slot + 1) & (slots - 1), probes++) {
+            long entry = index.getLong(slot * 8);
+            if (entry == 0) {
+                return -1;
+            }
+            if (entry != TOMBSTONE && (entry >>> 32) == hash) {
+                long record = (entry & 0xFFFFFFFFL) - 1;
+                if (IsbnIndex.canonicalize(readIsbn(record)).equals(canonical)) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    private long freeSlot(long hash) {
+        long slot = hash & (slots - 1);
+        while (true) {
+            long entry = index.getLong(slot * 8);
+            if (entry == 0 || entry == TOMBSTONE) {
+                return slot;
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+    }
+    
+    private long allocate() {
+        long free = header.getLong(H_FREE);
+        if (free != 0) {
+            header.putLong(H_FREE, records.getLong((free - 1) * RECORD_SIZE + R_NEXT_FREE));
+            return free - 1;
+        }
+        long next = header.getLong(H_NEXT_RECORD);
+        if (next >= capacity) {
+            throw new IllegalStateException("Book store is full: " + capacity + " records");
+        }
+        header.putLong(H_NEXT_RECORD, next + 1);
+        return next;
+    }
+    
+    // Clears the tombstones by reinserting every live record
+    private void rebuildIndex() {
+        for (long slot = 0; slot < slots; slot++) {
+            index.putLong(slot * 8, 0);
+        }
+        long end = header.getLong(H_NEXT_RECORD);
+        for (long record = 0; record < end; record++) {
+            if (records.getByte(record * RECORD_SIZE + R_STATE) == 1) {
+                long hash = hash(readIsbn(record));
+                index.putLong(freeSlot(hash) * 8, (hash << 32) | (record + 1));
+            }
+        }
+        header.putLong(H_TOMBSTONES, 0);
+    }
+    
+    private void write(long record, Book book) {
+        long base = record * RECORD_SIZE;
+        byte[] isbn = utf8(book.getIsbn());
+        byte[] title = utf8(nonNull(book.getTitle()));
+        byte[] author = utf8(nonNull(book.getAuthor()));
+        records.putByte(base + R_ISBN_LENGTH, (byte) isbn.length);
+        records.putShort(base + R_TITLE_LENGTH, (short) title.length);
+        records.putShort(base + R_AUTHOR_LENGTH, (short) author.length);
+        records.putInt(base + R_YEAR, book.getPublicationYear());
+        records.putInt(base + R_COPIES, book.getCopies());
+        records.putInt(base + R_AVAILABLE, book.getAvailableCopies());
+        records.put(base + FIELDS, isbn);
+        records.put(base + FIELDS + isbn.length, title);
+        records.put(base + FIELDS + isbn.length + title.length, author);
+        records.putByte(base + R_STATE, (byte) 1);
+    }
+    
+    private Book read(long record) {
+        long base = record * RECORD_SIZE;
+        int isbnLength = records.getByte(base + R_ISBN_LENGTH) & 0xFF;
+        int titleLength = records.getShort(base + R_TITLE_LENGTH) & 0xFFFF;
+        int authorLength = records.getShort(base + R_AUTHOR_LENGTH) & 0xFFFF;
+        String isbn = records.getString(base + FIELDS, isbnLength);
+        String title = records.getString(base + FIELDS + isbnLength, titleLength);
+        String author = records.getString(base + FIELDS + isbnLength + titleLength, authorLength);
+        Book book = new Book(isbn, title, author, records.getInt(base + R_YEAR));
+        book.setCopies(Math.max(1, records.getInt(base + R_COPIES)));
+        book.setAvailableCopies(records.getInt(base + R_AVAILABLE));
+        return book;
+    }
+    
+    private String readIsbn(long record) {
+        long base = record * RECORD_SIZE;
+        return records.getString(base + FIELDS, records.getByte(base + R_ISBN_LENGTH) & 0xFF);
+    }
+    
+    // 32 bits of a 64-bit FNV-1a over the canonical ISBN, never zero so a live slot is never empty
+    private static long hash(String isbn) {
+        String canonical = IsbnIndex.canonicalize(isbn);
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < canonical.length(); i++) {
+            h ^= canonical.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        long hash = (h ^ (h >>> 32)) & 0xFFFFFFFFL;
+        return hash == 0 ? 1 : hash;
+    }
+    
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+    
+    /**
+     * A span of the file mapped in 1 GiB chunks, since one mapping can't
+     * exceed 2 GiB. Records and slots never straddle a chunk boundary.
+     */
+    private static final class Region {
+        private final MappedByteBuffer[] chunks;
+        
+        Region(FileChannel channel, long start, long length) throws IOException {
+            int count = (int) Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            this.chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = i * CHUNK_SIZE;
+                long size = Math.min(CHUNK_SIZE, length - offset);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start + offset, size);
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        
+        byte getByte(long position) {
+            return chunk(position).get(offset(position));
+        }
+        
+        void putByte(long position, byte value) {
+            chunk(position).put(offset(position), value);
+        }
+        
+        short getShort(long position) {
+            return chunk(position).getShort(offset(position));
+        }
+        
+        void putShort(long position, short value) {
+            chunk(position).putShort(offset(position), value);
+        }
+        
+        int getInt(long position) {
+            return chunk(position).getInt(offset(position));
+        }
+        
+        void putInt(long position, int value) {
+            chunk(position).putInt(offset(position), value);
+        }
+        
+        long getLong(long position) {
+            return chunk(position).getLong(offset(position));
+        }
+        
+        void putLong(long position, long value) {
+            chunk(position).putLong(offset(position), value);
+        }
+        
+        void put(long position, byte[] bytes) {
+            MappedByteBuffer chunk = chunk(position);
+            int offset = offset(position);
+            for (int i = 0; i < bytes.length; i++) {
+                chunk.put(offset + i, bytes[i]);
+            }
+        }
+        
+        String getString(long position, int length) {
+            byte[] bytes = new byte[length];
+            MappedByteBuffer chunk = chunk(position);
+            int offset = offset(position);
+            for (int i = 0; i < length; i++) {
+                bytes[i] = chunk.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        void force() {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        }
+        
+        private MappedByteBuffer chunk(long position) {
+            return chunks[(int) (position / CHUNK_SIZE)];
+        }
+        
+        private int offset(long position) {
+            return (int) (position % CHUNK_SIZE);
+        }
+    }
+}
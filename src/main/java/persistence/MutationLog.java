@@ -0,0 +1,47 @@
+package main.java.persistence;
+
+import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.Loan;
+import main.java.model.Patron;
+
+/**
+ * Receives every state change LibraryService makes, in the order it makes
+ * them. Each call returns a log sequence number that can be handed to
+ * {@link #awaitDurable(long)} once the caller has released its locks.
+ */
+public interface MutationLog {
+    MutationLog NONE = new MutationLog() {
+        @Override public long bookAdded(Book book) { return 0; }
+        @Override public long bookUpdated(Book book) { return 0; }
+        @Override public long bookRemoved(String isbn) { return 0; }
+        @Override public long bookCopiesChanged(String isbn, int copies) { return 0; }
+        @Override public long patronAdded(Patron patron) { return 0; }
+        @Override public long patronUpdated(Patron patron) { return 0; }
+        @Override public long guestAdded(Patron guest) { return 0; }
+        @Override public long bookCheckedOut(Loan loan) { return 0; }
+        @Override public long bookReturned(String patronId, String isbn) { return 0; }
+        @Override public long loanRenewed(Loan loan) { return 0; }
+        @Override public long holdPlaced(String patronId, String isbn) { return 0; }
+        @Override public long holdCancelled(String patronId, String isbn) { return 0; }
+        @Override public long holdReady(Hold hold) { return 0; }
+        @Override public void awaitDurable(long lsn) { }
+    };
+    
+    long bookAdded(Book book);
+    long bookUpdated(Book book);
+    long bookRemoved(String isbn);
+    long bookCopiesChanged(String isbn, int copies);
+    long patronAdded(Patron patron);
+    long patronUpdated(Patron patron);
+    long guestAdded(Patron guest);
+    long bookCheckedOut(Loan loan);
+    long bookReturned(String patronId, String isbn);
+    long loanRenewed(Loan loan);
+    long holdPlaced(String patronId, String isbn);
+    // Also when a copy set aside was not picked up in time
+    long holdCancelled(String patronId, String isbn);
+    long holdReady(Hold hold);
+    
+    void awaitDurable(long lsn);
+}
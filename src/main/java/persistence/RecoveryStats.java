@@ -0,0 +1,40 @@
+package main.java.persistence;
+
+public class RecoveryStats {
+    private final long snapshotLsn;
+    private final long booksLoaded;
+    private final long patronsLoaded;
+    private final long recordsReplayed;
+    private final long recordsRejected;
+    private final long lastLsn;
+    private final boolean tornTail;
+    private final long elapsedMillis;
+    
+    public RecoveryStats(long snapshotLsn, long booksLoaded, long patronsLoaded, long recordsReplayed,
+                         long recordsRejected, long lastLsn, boolean tornTail, long elapsedMillis) {
+        this.snapshotLsn = snapshotLsn;
+        this.booksLoaded = booksLoaded;
+        this.patronsLoaded = patronsLoaded;
+        this.recordsReplayed = recordsReplayed;
+        this.recordsRejected = recordsRejected;
+        this.lastLsn = lastLsn;
+        this.tornTail = tornTail;
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    // Getters
+    public long getSnapshotLsn() { return snapshotLsn; }
+    public long getBooksLoaded() { return booksLoaded; }
+    public long getPatronsLoaded() { return patronsLoaded; }
+    public long getRecordsReplayed() { return recordsReplayed; }
+    public long getRecordsRejected() { return recordsRejected; }
+    public long getLastLsn() { return lastLsn; }
+    public boolean hadTornTail() { return tornTail; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    
+    @Override
+    public String toString() {
+        return String.format("RecoveryStats{snapshotLsn=%d, books=%d, patrons=%d, replayed=%d, rejected=%d, lastLsn=%d, tornTail=%s, elapsed=%dms}",
+                snapshotLsn, booksLoaded, patronsLoaded, recordsReplayed, recordsRejected, lastLsn, tornTail, elapsedMillis);
+    }
+}
@@ -0,0 +1,243 @@
+package main.java.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.Loan;
+import main.java.model.Patron;
+
+/**
+ * Compact image of the catalog, loans and holds as of one journal LSN.
+ * Layout: magic, version, lastLsn, book count, books, patron count,
+ * patrons, loan count, loans, hold count, holds and a trailing CRC32 of
+ * everything before it. Files are written under a temporary
+ * name and atomically renamed, so a visible snapshot is always complete.
+ */
+final class SnapshotFile {
+    private static final int BUFFER_SIZE = 4 << 20;
+    
+    static final class Contents {
+        final long lastLsn;
+        final List<Book> books;
+        final List<Patron> patrons;
+        final List<Loan> loans;
+        final List<Hold> holds;
+        
+        Contents(long lastLsn, List<Book> books, List<Patron> patrons, List<Loan> loans, List<Hold> holds) {
+            this.lastLsn = lastLsn;
+            this.books = books;
+            this.patrons = patrons;
+            this.loans = loans;
+            this.holds = holds;
+        }
+    }
+    
+    private SnapshotFile() { }
+    
+    static Path write(Path directory, Contents contents) throws IOException {
+        Path target = directory.resolve(JournalFormat.snapshotName(contents.lastLsn));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.putInt(JournalFormat.SNAPSHOT_MAGIC);
+            out.putInt(JournalFormat.SNAPSHOT_VERSION);
+            out.putLong(contents.lastLsn);
+            
+            out.putLong(contents.books.size());
+            for (Book book : contents.books) {
+                out.putString(book.getIsbn());
+                out.putString(book.getTitle());
+                out.putString(book.getAuthor());
+                out.putInt(book.getPublicationYear());
+                out.putInt(book.getCopies());
+                out.putInt(book.getAvailableCopies());
+            }
+            
+            out.putLong(contents.patrons.size());
+            for (Patron patron : contents.patrons) {
+                out.putString(patron.getPatronId());
+                out.putString(patron.getName());
+                out.putString(patron.getEmail());
+                out.putString(patron.getPhone());
+                out.putInt(patron.getMaxBooksAllowed());
+                out.putByte((byte) (patron.isGuest() ? 1 : 0));
+                List<String> history = patron.getBorrowingHistory();
+                out.putInt(history.size());
+                for (String isbn : history) {
+                    out.putString(isbn);
+                }
+                List<String> current = new ArrayList<>(patron.getCurrentlyBorrowed());
+                out.putInt(current.size());
+                for (String isbn : current) {
+                    out.putString(isbn);
+                }
+            }
+            
+            out.putLong(contents.loans.size());
+            for (Loan loan : contents.loans) {
+                out.putString(loan.getPatronId());
+                out.putString(loan.getIsbn());
+                out.putLong(loan.getCheckedOutAt());
+                out.putLong(loan.getDueAt());
+                out.putInt(loan.getRenewals());
+            }
+            
+            out.putLong(contents.holds.size());
+            for (Hold hold : contents.holds) {
+                out.putString(hold.getPatronId());
+                out.putString(hold.getIsbn());
+                out.putLong(hold.getReadyUntil());
+            }
+            out.finish();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+    
+    static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChannelInput in = new ChannelInput(channel, true);
+            if (in.readInt() != JournalFormat.SNAPSHOT_MAGIC) {
+                throw new IOException(file + " is not a library snapshot");
+            }
+            int version = in.readInt();
+            if (version < 1 || version > JournalFormat.SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            long lastLsn = in.readLong();
+            
+            long bookCount = in.readLong();
+            List<Book> books = new ArrayList<>((int) Math.min(bookCount, Integer.MAX_VALUE - 8));
+            for (long i = 0; i < bookCount; i++) {
+                Book book = new Book(in.readString(), in.readString(), in.readString(), in.readInt());
+                if (version == 1) {
+                    book.setAvailable(in.readBoolean());
+                } else {
+                    book.setCopies(in.readInt());
+                    book.setAvailableCopies(in.readInt());
+                }
+                books.add(book);
+            }
+            
+            long patronCount = in.readLong();
+            List<Patron> patrons = new ArrayList<>((int) Math.min(patronCount, Integer.MAX_VALUE - 8));
+            for (long i = 0; i < patronCount; i++) {
+                Patron patron = new Patron(in.readString(), in.readString(), in.readString(), in.readString());
+                patron.setMaxBooksAllowed(in.readInt());
+                if (version >= 3 && in.readBoolean()) {
+                    patron = Patron.guestOf(patron);
+                }
+                int history = in.readInt();
+                for (int h = 0; h < history; h++) {
+                    patron.addToBorrowingHistory(in.readString());
+                }
+                int current = in.readInt();
+                for (int c = 0; c < current; c++) {
+                    patron.restoreLoan(in.readString());
+                }
+                patrons.add(patron);
+            }
+            
+            List<Loan> loans = Collections.emptyList();
+            List<Hold> holds = Collections.emptyList();
+            if (version >= 4) {
+                long loanCount = in.readLong();
+                loans = new ArrayList<>((int) Math.min(loanCount, Integer.MAX_VALUE - 8));
+                for (long i = 0; i < loanCount; i++) {
+                    loans.add(new Loan(in.readString(), in.readString(), in.readLong(), in.readLong(), in.readInt()));
+                }
+                long holdCount = in.readLong();
+                holds = new ArrayList<>((int) Math.min(holdCount, Integer.MAX_VALUE - 8));
+                for (long i = 0; i < holdCount; i++) {
+                    holds.add(new Hold(in.readString(), in.readString(), in.readLong()));
+                }
+            }
+            
+            long computed = in.checksumValue();
+            if ((int) computed != in.readInt()) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+            return new Contents(lastLsn, books, patrons, loans, holds);
+        }
+    }
+    
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32 crc;
+        
+        Output(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.crc = new CRC32();
+        }
+        
+        void putInt(int value) throws IOException {
+            room(4);
+            buffer.putInt(value);
+        }
+        
+        void putLong(long value) throws IOException {
+            room(8);
+            buffer.putLong(value);
+        }
+        
+        void putByte(byte value) throws IOException {
+            room(1);
+            buffer.put(value);
+        }
+        
+        void putString(String value) throws IOException {
+            byte[] bytes = JournalFormat.utf8(value);
+            if (bytes == null) {
+                putInt(-1);
+                return;
+            }
+            putInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                room(1);
+                int chunk = Math.min(bytes.length - offset, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+        
+        void finish() throws IOException {
+            drain();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        
+        private void room(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                drain();
+            }
+        }
+        
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package main.java.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import main.java.index.IsbnIndex;
+import main.java.index.TextIndex;
+import main.java.model.Book;
+
+/**
+ * A condition on books: title, author, ISBN, publication year and
+ * availability predicates combined with and / or, e.g.
+ *
+ *   BookQuery.author("martin").and(BookQuery.publishedBetween(2000, 2010)).and(BookQuery.available())
+ *
+ * Title and author match case-insensitive substrings and an ISBN ending in
+ * '*' is a prefix, as in the single-field searches. Queries are immutable
+ * and say nothing about how they are answered; QueryEngine picks the
+ * indexes. Each node estimates how many books it matches, collects its
+ * matches into a bitmap of internal IDs, or checks a single book.
+ */
+public abstract class BookQuery {
+    private static final String PREFIX_WILDCARD = "*";
+    
+    BookQuery() {
+    }
+    
+    public static BookQuery title(String text) {
+        return new Text(Text.TITLE, Objects.requireNonNull(text));
+    }
+    
+    public static BookQuery author(String text) {
+        return new Text(Text.AUTHOR, Objects.requireNonNull(text));
+    }
+    
+    public static BookQuery isbn(String isbn) {
+        return new Isbn(Objects.requireNonNull(isbn));
+    }
+    
+    // Both years inclusive
+    public static BookQuery publishedBetween(int fromYear, int toYear) {
+        return new YearRange(fromYear, toYear);
+    }
+    
+    // A copy is on the shelf
+    public static BookQuery available() {
+        return Availability.AVAILABLE;
+    }
+    
+    // Every copy is out
+    public static BookQuery borrowed() {
+        return Availability.BORROWED;
+    }
+    
+    public static BookQuery allOf(BookQuery... queries) {
+        return new And(flatten(And.class, queries));
+    }
+    
+    public static BookQuery anyOf(BookQuery... queries) {
+        return new Or(flatten(Or.class, queries));
+    }
+    
+    public BookQuery and(BookQuery other) {
+        return allOf(this, other);
+    }
+    
+    public BookQuery or(BookQuery other) {
+        return anyOf(this, other);
+    }
+    
+    // Upper bound on the number of matches, from index statistics alone
+    abstract int estimate(QueryEngine engine);
+    
+    // Sets the internal ID of every match
+    abstract BitSet evaluate(QueryEngine engine);
+    
+    abstract boolean matches(QueryEngine engine, Book book);
+    
+    // Nested queries of the same kind are pulled up, so a chain of and calls is one intersection
+    private static List<BookQuery> flatten(Class<? extends Composite> kind, BookQuery... queries) {
+        if (queries.length == 0) {
+            throw new IllegalArgumentException("At least one query is needed");
+        }
+        List<BookQuery> flat = new ArrayList<>();
+        for (BookQuery query : queries) {
+            Objects.requireNonNull(query);
+            if (kind.isInstance(query)) {
+                flat.addAll(((Composite) query).children);
+            } else {
+                flat.add(query);
+            }
+        }
+        return Collections.unmodifiableList(flat);
+    }
+    
+    private static final class Text extends BookQuery {
+        static final String TITLE = "title";
+        static final String AUTHOR = "author";
+        
+        private final String field;
+        private final String text;
+        
+        Text(String field, String text) {
+            this.field = field;
+            this.text = text;
+        }
+        
+        @Override
+        int estimate(QueryEngine engine) {
+            return index(engine).estimate(text);
+        }
+        
+        @Override
+        BitSet evaluate(QueryEngine engine) {
+            BitSet matches = new BitSet();
+            for (Book book : index(engine).search(text)) {
+                matches.set(book.getInternalId());
+            }
+            return matches;
+        }
+        
+        @Override
+        boolean matches(QueryEngine engine, Book book) {
+            return index(engine).matches(book, text);
+        }
+        
+        private TextIndex index(QueryEngine engine) {
+            return field.equals(TITLE) ? engine.titleIndex() : engine.authorIndex();
+        }
+        
+        @Override
+        public String toString() {
+            return field + ":\"" + text + "\"";
+        }
+    }
+    
+    private static final class Isbn extends BookQuery {
+        // Each digit of a prefix past the 978 / 979 group is taken to narrow the catalog tenfold
+        private static final int GROUP_DIGITS = 3;
+        
+        private final String isbn;
+        private final boolean prefix;
+        private final String canonical;
+        
+        Isbn(String isbn) {
+            this.isbn = isbn;
+            this.prefix = isbn.endsWith(PREFIX_WILDCARD);
+            String value = prefix ? isbn.substring(0, isbn.length() - 1) : isbn;
+            this.canonical = prefix ? IsbnIndex.canonicalizePrefix(value) : IsbnIndex.canonicalize(value);
+        }
+        
+        @Override
+        int estimate(QueryEngine engine) {
+            if (!prefix) {
+                return engine.isbnIndex().get(canonical) == null ? 0 : 1;
+            }
+            int estimate = engine.isbnIndex().size();
+            for (int digit = GROUP_DIGITS; digit < canonical.length() && estimate > 1; digit++) {
+                estimate /= 10;
+            }
+            return Math.max(estimate, 1);
+        }
+        
+        @Override
+        BitSet evaluate(QueryEngine engine) {
+            BitSet matches = new BitSet();
+            if (prefix) {
+                engine.isbnIndex().streamByPrefix(canonical).forEach(book -> matches.set(book.getInternalId()));
+            } else {
+                Book book = engine.isbnIndex().get(canonical);
+                if (book != null) {
+                    matches.set(book.getInternalId());
+                }
+            }
+            return matches;
+        }
+        
+        @Override
+        boolean matches(QueryEngine engine, Book book) {
+            String key = IsbnIndex.canonicalize(book.getIsbn());
+            return prefix ? key.startsWith(canonical) : key.equals(canonical);
+        }
+        
+        @Override
+        public String toString() {
+            return "isbn:" + isbn;
+        }
+    }
+    
+    private static final class YearRange extends BookQuery {
+        private final int fromYear;
+        private final int toYear;
+        
+        YearRange(int fromYear, int toYear) {
+            this.fromYear = fromYear;
+            this.toYear = toYear;
+        }
+        
+        @Override
+        int estimate(QueryEngine engine) {
+            return engine.yearIndex().count(fromYear, toYear);
+        }
+        
+        @Override
+        BitSet evaluate(QueryEngine engine) {
+            BitSet matches = new BitSet();
+            engine.yearIndex().forEachInRange(fromYear, toYear, book -> matches.set(book.getInternalId()));
+            return matches;
+        }
+        
+        @Override
+        boolean matches(QueryEngine engine, Book book) {
+            Integer year = engine.yearIndex().yearOf(book);
+            return year != null && year >= fromYear && year <= toYear;
+        }
+        
+        @Override
+        public String toString() {
+            return "year:" + fromYear + ".." + toYear;
+        }
+    }
+    
+    private static final class Availability extends BookQuery {
+        static final Availability AVAILABLE = new Availability(true);
+        static final Availability BORROWED = new Availability(false);
+        
+        private final boolean available;
+        
+        private Availability(boolean available) {
+            this.available = available;
+        }
+        
+        @Override
+        int estimate(QueryEngine engine) {
+            long count = available
+                    ? engine.availabilityIndex().report().getAvailableBooks()
+                    : engine.availabilityIndex().report().getBorrowedBooks();
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+        
+        @Override
+        BitSet evaluate(QueryEngine engine) {
+            BitSet matches = new BitSet();
+            engine.availabilityIndex().copyBits(available, matches);
+            return matches;
+        }
+        
+        @Override
+        boolean matches(QueryEngine engine, Book book) {
+            return engine.availabilityIndex().isAvailable(book) == available;
+        }
+        
+        @Override
+        public String toString() {
+            return available ? "available" : "borrowed";
+        }
+    }
+    
+    private abstract static class Composite extends BookQuery {
+        final List<BookQuery> children;
+        
+        Composite(List<BookQuery> children) {
+            this.children = children;
+        }
+        
+        String join(String operator) {
+            StringBuilder sb = new StringBuilder("(");
+            for (BookQuery child : children) {
+                if (sb.length() > 1) {
+                    sb.append(' ').append(operator).append(' ');
+                }
+                sb.append(child);
+            }
+            return sb.append(')').toString();
+        }
+    }
+    
+    /**
+     * The planner proper. Children are taken from the most selective
+     * estimate up: the first collects its matches, and each following one
+     * is intersected as a bitmap while its estimate is no larger than the
+     * matches left, and otherwise checked book by book against them, which
+     * is cheaper than walking a posting much longer than the result.
+     */
+    private static final class And extends Composite {
+        And(List<BookQuery> children) {
+            super(children);
+        }
+        
+        @Override
+        int estimate(QueryEngine engine) {
+            int estimate = Integer.MAX_VALUE;
+            for (BookQuery child : children) {
+                estimate = Math.min(estimate, child.estimate(engine));
+            }
+            return estimate;
+        }
+        
+        @Override
+        BitSet evaluate(QueryEngine engine) {
+            int[] estimates = new int[children.size()];
+            Integer[] order = new Integer[children.size()];
+            for (int i = 0; i < order.length; i++) {
+                estimates[i] = children.get(i).estimate(engine);
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(estimates[a], estimates[b]));
+            
+            BitSet matches = children.get(order[0]).evaluate(engine);
+            for (int i = 1; i < order.length && !matches.isEmpty(); i++) {
+                BookQuery child = children.get(order[i]);
+                if (estimates[order[i]] <= matches.cardinality()) {
+                    matches.and(child.evaluate(engine));
+                    continue;
+                }
+                for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+                    Book book = engine.availabilityIndex().book(id);
+                    if (book == null || !child.matches(engine, book)) {
+                        matches.clear(id);
+                    }
+                }
+            }
+            return matches;
+        }
+        
+        @Override
+        boolean matches(QueryEngine engine, Book book) {
+            for (BookQuery child : children) {
+                if (!child.matches(engine, book)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public String toString() {
+            return join("AND");
+        }
+    }
+    
+    private static final class Or extends Composite {
+        Or(List<BookQuery> children) {
+            super(children);
+        }
+        
+        @Override
+        int estimate(QueryEngine engine) {
+            long estimate = 0;
+            for (BookQuery child : children) {
+                estimate += child.estimate(engine);
+            }
+            return (int) Math.min(estimate, engine.isbnIndex().size());
+        }
+        
+        @Override
+        BitSet evaluate(QueryEngine engine) {
+            BitSet matches = new BitSet();
+            for (BookQuery child : children) {
+                matches.or(child.evaluate(engine));
+            }
+            return matches;
+        }
+        
+        @Override
+        boolean matches(QueryEngine engine, Book book) {
+            for (BookQuery child : children) {
+                if (child.matches(engine, book)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        public String toString() {
+            return join("OR");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package main.java.query;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import main.java.index.AvailabilityIndex;
+import main.java.index.IsbnIndex;
+import main.java.index.TextIndex;
+import main.java.index.YearIndex;
+import main.java.model.Book;
+
+/**
+ * Answers BookQuery conditions from a catalog's indexes. Matches are
+ * collected as a bitmap of internal IDs, so intersections and unions are
+ * word-wide, and only the final matches are resolved to books; see
+ * BookQuery.And for how an intersection is ordered. Weakly consistent
+ * like the indexes: a book changed during a query may or may not match.
+ */
+public class QueryEngine {
+    private final TextIndex titleIndex;
+    private final TextIndex authorIndex;
+    private final IsbnIndex isbnIndex;
+    private final YearIndex yearIndex;
+    private final AvailabilityIndex availabilityIndex;
+    
+    public QueryEngine(TextIndex titleIndex, TextIndex authorIndex, IsbnIndex isbnIndex,
+                       YearIndex yearIndex, AvailabilityIndex availabilityIndex) {
+        this.titleIndex = titleIndex;
+        this.authorIndex = authorIndex;
+        this.isbnIndex = isbnIndex;
+        this.yearIndex = yearIndex;
+        this.availabilityIndex = availabilityIndex;
+    }
+    
+    // Matches in internal ID order, the order books were first catalogued in
+    public List<Book> find(BookQuery query) {
+        BitSet matches = query.evaluate(this);
+        List<Book> books = new ArrayList<>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            Book book = availabilityIndex.book(id);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+    
+    // Same order; the bitmap is built up front, only the books are looked up lazily
+    public Stream<Book> stream(BookQuery query) {
+        return query.evaluate(this).stream().mapToObj(availabilityIndex::book).filter(book -> book != null);
+    }
+    
+    // Upper bound on the number of matches the planner works from
+    public int estimate(BookQuery query) {
+        return query.estimate(this);
+    }
+    
+    // Index access for the query nodes
+    TextIndex titleIndex() { return titleIndex; }
+    TextIndex authorIndex() { return authorIndex; }
+    IsbnIndex isbnIndex() { return isbnIndex; }
+    YearIndex yearIndex() { return yearIndex; }
+    AvailabilityIndex availabilityIndex() { return availabilityIndex; }
+}
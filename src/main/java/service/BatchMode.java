@@ -0,0 +1,9 @@
+package main.java.service;
+
+// How a batch checkout or return treats items that fail
+public enum BatchMode {
+    // Nothing is applied unless every item succeeds
+    ALL_OR_NOTHING,
+    // Every item that can succeed does
+    BEST_EFFORT
+}
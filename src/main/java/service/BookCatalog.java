@@ -0,0 +1,377 @@
+package main.java.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Logger;
+
+import main.java.index.AvailabilityIndex;
+import main.java.index.IsbnIndex;
+import main.java.index.TextIndex;
+import main.java.index.YearIndex;
+import main.java.metrics.OperationMetrics;
+import main.java.model.Book;
+import main.java.model.IsbnDictionary;
+import main.java.model.Page;
+import main.java.observer.EventType;
+import main.java.persistence.MappedBookStore;
+import main.java.query.BookQuery;
+import main.java.query.QueryEngine;
+import main.java.strategy.AuthorSearchStrategy;
+import main.java.strategy.FuzzySearchStrategy;
+import main.java.strategy.ISBNSearchStrategy;
+import main.java.strategy.SearchStrategy;
+import main.java.strategy.TitleSearchStrategy;
+
+/**
+ * The books of a LibraryService: the inventory on the heap, its indexes,
+ * the search cache in front of them and the store they are written
+ * through to once one is attached. Changes to a book hold its stripe lock.
+ */
+final class BookCatalog {
+    private static final Logger logger = Logger.getLogger(BookCatalog.class.getName());
+    
+    final Map<String, Book> inventory;
+    final TextIndex titleIndex;
+    final TextIndex authorIndex;
+    final IsbnIndex isbnIndex;
+    final YearIndex yearIndex;
+    final AvailabilityIndex availabilityIndex;
+    final QueryEngine queryEngine;
+    final SearchStrategy titleSearch;
+    final SearchStrategy authorSearch;
+    final SearchStrategy isbnSearch;
+    final SearchStrategy fuzzySearch;
+    final SearchCache searchCache;
+    private final IsbnDictionary bookIds;
+    private final StripedLocks bookLocks;
+    private final VersionStore versions;
+    private final Circulation circulation;
+    private final SideEffects effects;
+    private final ServiceMetrics metrics;
+    private volatile MappedBookStore store;
+    
+    BookCatalog(IsbnDictionary bookIds, StripedLocks bookLocks, VersionStore versions, Circulation circulation,
+                SideEffects effects, ServiceMetrics metrics) {
+        this.inventory = new ConcurrentHashMap<>();
+        this.titleIndex = new TextIndex(Book::getTitle);
+        this.authorIndex = new TextIndex(Book::getAuthor);
+        this.isbnIndex = new IsbnIndex();
+        this.yearIndex = new YearIndex();
+        this.availabilityIndex = new AvailabilityIndex();
+        this.queryEngine = new QueryEngine(titleIndex, authorIndex, isbnIndex, yearIndex, availabilityIndex);
+        this.titleSearch = new TitleSearchStrategy(titleIndex);
+        this.authorSearch = new AuthorSearchStrategy(authorIndex);
+        this.isbnSearch = new ISBNSearchStrategy(isbnIndex);
+        this.fuzzySearch = new FuzzySearchStrategy(titleIndex, authorIndex);
+        this.searchCache = new SearchCache(SearchCache.DEFAULT_MAX_WEIGHT, titleSearch, authorSearch, isbnSearch, fuzzySearch);
+        this.bookIds = bookIds;
+        this.bookLocks = bookLocks;
+        this.versions = versions;
+        this.circulation = circulation;
+        this.effects = effects;
+        this.metrics = metrics;
+    }
+    
+    // The caller holds every lock, see LibraryService.attachCatalog
+    void attach(MappedBookStore store) {
+        for (Book book : inventory.values()) {
+            store.put(book);
+        }
+        this.store = store;
+    }
+    
+    boolean add(Book book) {
+        if (book == null || book.getIsbn() == null || book.getIsbn().trim().isEmpty()
+                || (store != null && !MappedBookStore.fits(book))) {
+            metrics.addBook.fail(ServiceMetrics.INVALID);
+            return false;
+        }
+        
+        long lsn;
+        Lock lock = lockFor(book.getIsbn());
+        lock.lock();
+        try {
+            lsn = insert(book);
+            if (lsn < 0) {
+                logger.warning("Book with ISBN " + book.getIsbn() + " already exists");
+                metrics.addBook.fail(ServiceMetrics.DUPLICATE);
+                return false;
+            }
+            searchCache.invalidate(book.getIsbn(), book.getTitle(), book.getAuthor());
+            effects.notify(EventType.BOOK_ADDED, null, book.getIsbn());
+        } finally {
+            lock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    // See LibraryService.addBooks
+    List<Book> addAll(Collection<Book> books) {
+        List<Book> rejected = new ArrayList<>();
+        long lsn = 0;
+        int added = 0;
+        for (Book book : books) {
+            if (book == null || book.getIsbn() == null || book.getIsbn().trim().isEmpty()) {
+                metrics.addBooks.fail(ServiceMetrics.INVALID);
+                rejected.add(book);
+                continue;
+            }
+            Lock lock = lockFor(book.getIsbn());
+            lock.lock();
+            try {
+                long bookLsn = insert(book);
+                if (bookLsn < 0) {
+                    metrics.addBooks.fail(ServiceMetrics.DUPLICATE);
+                    rejected.add(book);
+                    continue;
+                }
+                lsn = bookLsn;
+                added++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (added > 0) {
+            // Cheaper than a sweep per book; searches during the call may still see the catalog before it
+            searchCache.clear();
+            effects.notify(EventType.BOOKS_BULK_ADDED, null, null, added);
+        }
+        effects.awaitDurable(lsn);
+        return rejected;
+    }
+    
+    // Caller holds the book's stripe lock; returns the journal LSN, or -1 for a duplicate
+    private long insert(Book book) {
+        MappedBookStore target = effects.isReplaying() ? null : store;
+        if (target != null && (!MappedBookStore.fits(book) || target.contains(book.getIsbn()))) {
+            return -1;
+        }
+        return insert(book, target);
+    }
+    
+    // Also puts the book in the store, unless that is null
+    private long insert(Book book, MappedBookStore target) {
+        if (inventory.containsKey(book.getIsbn()) || !isbnIndex.add(book)) {
+            return -1;
+        }
+        if (target != null) {
+            try {
+                target.put(book);
+            } catch (RuntimeException e) {
+                isbnIndex.remove(book);
+                throw e;
+            }
+        }
+        book.setInternalId(bookIds.idFor(book.getIsbn()));
+        availabilityIndex.add(book);
+        titleIndex.add(book);
+        authorIndex.add(book);
+        yearIndex.add(book);
+        versions.commitBook(book);
+        long lsn = effects.journal().bookAdded(book);
+        if (book.getCopies() != 1) {
+            lsn = effects.journal().bookCopiesChanged(book.getIsbn(), book.getCopies());
+        }
+        // Last, since checkouts don't take the book lock: it can be lent, and its loans journaled, from here on
+        inventory.put(book.getIsbn(), book);
+        return lsn;
+    }
+    
+    boolean remove(String isbn) {
+        Book book = find(isbn);
+        if (book == null) {
+            metrics.removeBook.fail(ServiceMetrics.UNKNOWN_BOOK);
+            return false;
+        }
+        
+        long lsn;
+        Lock lock = lockFor(book.getIsbn());
+        lock.lock();
+        try {
+            if (!isCurrent(book)) {
+                metrics.removeBook.fail(ServiceMetrics.UNKNOWN_BOOK);
+                return false;
+            }
+            
+            // Fails while any copy is out; once retired no copy can be checked out
+            if (!book.retire()) {
+                logger.warning("Cannot remove book " + isbn + " - currently borrowed");
+                metrics.removeBook.fail(ServiceMetrics.UNAVAILABLE);
+                return false;
+            }
+            
+            inventory.remove(book.getIsbn());
+            if (store != null) {
+                store.remove(book.getIsbn());
+            }
+            circulation.discardHolds(book.getInternalId());
+            availabilityIndex.remove(book);
+            titleIndex.remove(book);
+            authorIndex.remove(book);
+            yearIndex.remove(book);
+            isbnIndex.remove(book);
+            versions.commitRemoval(book);
+            searchCache.invalidate(book.getIsbn(), book.getTitle(), book.getAuthor());
+            lsn = effects.journal().bookRemoved(book.getIsbn());
+            effects.notify(EventType.BOOK_REMOVED, null, book.getIsbn());
+        } finally {
+            lock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    boolean update(String isbn, Book updatedBook) {
+        Book existingBook = find(isbn);
+        if (existingBook == null || updatedBook == null || (store != null && !MappedBookStore.fits(new Book(
+                existingBook.getIsbn(), updatedBook.getTitle(), updatedBook.getAuthor(), updatedBook.getPublicationYear())))) {
+            metrics.updateBook.fail(existingBook == null ? ServiceMetrics.UNKNOWN_BOOK : ServiceMetrics.INVALID);
+            return false;
+        }
+        
+        long lsn;
+        Lock lock = lockFor(existingBook.getIsbn());
+        lock.lock();
+        try {
+            if (!isCurrent(existingBook)) {
+                metrics.updateBook.fail(ServiceMetrics.UNKNOWN_BOOK);
+                return false;
+            }
+            
+            titleIndex.remove(existingBook);
+            authorIndex.remove(existingBook);
+            yearIndex.remove(existingBook);
+            String oldTitle = existingBook.getTitle();
+            String oldAuthor = existingBook.getAuthor();
+            existingBook.setTitle(updatedBook.getTitle());
+            existingBook.setAuthor(updatedBook.getAuthor());
+            existingBook.setPublicationYear(updatedBook.getPublicationYear());
+            titleIndex.add(existingBook);
+            authorIndex.add(existingBook);
+            yearIndex.add(existingBook);
+            if (store != null) {
+                store.put(existingBook);
+            }
+            versions.commitBook(existingBook);
+            // Results that held the old values and results that match the new ones are both stale
+            searchCache.invalidate(null, oldTitle, oldAuthor);
+            searchCache.invalidate(null, existingBook.getTitle(), existingBook.getAuthor());
+            lsn = effects.journal().bookUpdated(existingBook);
+            
+            effects.notify(EventType.BOOK_UPDATED, null, existingBook.getIsbn());
+        } finally {
+            lock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    // A book only in the attached store comes back as a copy read from it
+    Book get(String isbn) {
+        Book book = onHeap(isbn);
+        MappedBookStore attached = store;
+        return book != null || attached == null || isbn == null ? book : attached.get(isbn);
+    }
+    
+    // The book a change applies to, loaded from the attached store if it is only there
+    Book find(String isbn) {
+        Book book = onHeap(isbn);
+        return book != null || isbn == null || store == null || effects.isReplaying() ? book : load(isbn);
+    }
+    
+    // Exact key first, then any other spelling of the same ISBN
+    Book onHeap(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        Book book = inventory.get(isbn);
+        return book != null ? book : isbnIndex.get(isbn);
+    }
+    
+    /**
+     * Brings a book that is only in the attached store onto the heap, ahead
+     * of the first change to it. The load is journaled like an addition, so
+     * recovery finds the book before the changes that follow, with the
+     * counts it had when it was loaded. It is not waited for: the change's
+     * own record comes after it, and is durable only once the load is.
+     */
+    private Book load(String isbn) {
+        Lock lock = lockFor(isbn);
+        Book book;
+        lock.lock();
+        try {
+            book = inventory.get(isbn);
+            if (book == null) {
+                book = isbnIndex.get(isbn);
+            }
+            if (book != null) {
+                return book;
+            }
+            book = store.get(isbn);
+            if (book == null) {
+                return null;
+            }
+            insert(book, null);
+            searchCache.invalidate(book.getIsbn(), book.getTitle(), book.getAuthor());
+        } finally {
+            lock.unlock();
+        }
+        return book;
+    }
+    
+    // Writes the book's copy counts through to the attached store
+    void storeCopies(Book book) {
+        MappedBookStore attached = store;
+        if (attached != null) {
+            attached.updateCopies(book);
+        }
+    }
+    
+    // A book looked up before its lock was taken may have been removed meanwhile
+    boolean isCurrent(Book book) {
+        return inventory.get(book.getIsbn()) == book;
+    }
+    
+    Lock lockFor(String isbn) {
+        // Every spelling of an ISBN must map to the same stripe
+        return bookLocks.lockFor(IsbnIndex.canonicalize(isbn));
+    }
+    
+    int stripeOf(Book book) {
+        return bookLocks.indexFor(IsbnIndex.canonicalize(book.getIsbn()));
+    }
+    
+    List<Book> all() {
+        return new ArrayList<>(inventory.values());
+    }
+    
+    // The field-specific searches leave the shared strategy untouched so concurrent callers don't race on it
+    List<Book> search(SearchStrategy strategy, String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        Page<Book> results = searchCache.get(strategy, query, 0, null, () -> {
+            OperationMetrics timing = metrics.registry.strategy(strategy);
+            List<Book> books = timing.time(() -> strategy.search(inventory.values(), query));
+            return new Page<>(books, null);
+        });
+        return new ArrayList<>(results.getItems());
+    }
+    
+    List<Book> searchByIsbnPrefix(String prefix) {
+        return prefix == null ? new ArrayList<>() : isbnIndex.findByPrefix(prefix);
+    }
+    
+    List<Book> searchByIsbnRange(String fromIsbn, String toIsbn) {
+        return fromIsbn == null || toIsbn == null ? new ArrayList<>() : isbnIndex.findRange(fromIsbn, toIsbn);
+    }
+    
+    List<Book> find(BookQuery query) {
+        return query == null ? new ArrayList<>() : queryEngine.find(query);
+    }
+}
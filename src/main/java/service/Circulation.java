@@ -0,0 +1,350 @@
+package main.java.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.Loan;
+
+/**
+ * Due dates of the copies on loan and hold queues of the titles that have
+ * them. A loan is keyed by book ID (Book.getInternalId()) and patron, and
+ * only changed under that patron's stripe lock; the holds of a title are
+ * only changed under the book's stripe lock. A title without holds has no
+ * hold state, so lending it never needs the book lock to check for one.
+ *
+ * A returned copy with patrons waiting is not shelved: it is set aside
+ * for the first in line, who has the pickup period to check it out before
+ * it passes to the next. Loan due dates and pickup deadlines are timeouts
+ * in one TimingWheel. A timeout that fires is acted on only if it is still
+ * the current one for its loan or hold, so returns, renewals and pickups
+ * need not race to cancel it.
+ */
+final class Circulation {
+    // Expirations are detected with a granularity of one tick
+    static final long TICK_MILLIS = 1000;
+    
+    private final ConcurrentHashMap<LoanKey, LoanState> loans;
+    private final ConcurrentHashMap<Integer, Holds> holds;
+    private final Set<LoanKey> overdue;
+    private final TimingWheel<Expiration> wheel;
+    
+    Circulation(long now) {
+        this.loans = new ConcurrentHashMap<>();
+        this.holds = new ConcurrentHashMap<>();
+        this.overdue = ConcurrentHashMap.newKeySet();
+        this.wheel = new TimingWheel<>(TICK_MILLIS, now);
+    }
+    
+    Loan loan(int bookId, String patronId) {
+        LoanState state = loans.get(new LoanKey(bookId, patronId));
+        return state == null ? null : state.loan;
+    }
+    
+    // Overdue loans, in no particular order
+    List<Loan> overdueLoans() {
+        List<Loan> result = new ArrayList<>(overdue.size());
+        for (LoanKey key : overdue) {
+            LoanState state = loans.get(key);
+            if (state != null) {
+                result.add(state.loan);
+            }
+        }
+        return result;
+    }
+    
+    Loan lend(Book book, String patronId, long now, LendingPolicy policy) {
+        Loan loan = new Loan(patronId, book.getIsbn(), now, now + policy.getLoanPeriod().toMillis(), 0);
+        startLoan(new LoanKey(book.getInternalId(), patronId), loan);
+        return loan;
+    }
+    
+    // A loan restored from storage gets a full loan period from now, until replaceLoan sets the stored one
+    void restoreLoan(int bookId, String isbn, String patronId, long now, LendingPolicy policy) {
+        LoanKey key = new LoanKey(bookId, patronId);
+        if (!loans.containsKey(key)) {
+            startLoan(key, new Loan(patronId, isbn, now, now + policy.getLoanPeriod().toMillis(), 0));
+        }
+    }
+    
+    // Sets the stored dates and renewals of a loan being restored
+    void replaceLoan(int bookId, Loan loan) {
+        LoanKey key = new LoanKey(bookId, loan.getPatronId());
+        LoanState state = loans.get(key);
+        if (state != null) {
+            wheel.cancel(state.due.timeout);
+            overdue.remove(key);
+        }
+        startLoan(key, loan);
+    }
+    
+    // Every loan, in no particular order
+    List<Loan> allLoans() {
+        List<Loan> result = new ArrayList<>(loans.size());
+        for (LoanState state : loans.values()) {
+            result.add(state.loan);
+        }
+        return result;
+    }
+    
+    // Extends the loan from now, or returns null when no renewals are left
+    Loan renew(int bookId, String patronId, long now, LendingPolicy policy) {
+        LoanKey key = new LoanKey(bookId, patronId);
+        LoanState state = loans.get(key);
+        if (state == null || state.loan.getRenewals() >= policy.getMaxRenewals()) {
+            return null;
+        }
+        Loan renewed = state.loan.renewedUntil(Math.max(state.loan.getDueAt(), now + policy.getLoanPeriod().toMillis()));
+        wheel.cancel(state.due.timeout);
+        overdue.remove(key);
+        startLoan(key, renewed);
+        return renewed;
+    }
+    
+    void endLoan(int bookId, String patronId) {
+        LoanKey key = new LoanKey(bookId, patronId);
+        LoanState state = loans.remove(key);
+        if (state != null) {
+            wheel.cancel(state.due.timeout);
+            overdue.remove(key);
+        }
+    }
+    
+    // Lock-free; true while anyone is waiting for the title or has a copy set aside
+    boolean hasHolds(int bookId) {
+        return holds.containsKey(bookId);
+    }
+    
+    // Lock-free; true while anyone is waiting for a copy
+    boolean hasWaiting(int bookId) {
+        Holds state = holds.get(bookId);
+        return state != null && state.waitingCount > 0;
+    }
+    
+    // Whether a copy is set aside for this patron to pick up
+    boolean isHeldFor(int bookId, String patronId) {
+        Holds state = holds.get(bookId);
+        return state != null && state.ready.containsKey(patronId);
+    }
+    
+    // Copies set aside, in the order they were served, then patrons waiting in turn
+    List<Hold> holds(int bookId, String isbn) {
+        Holds state = holds.get(bookId);
+        List<Hold> result = new ArrayList<>();
+        if (state != null) {
+            state.ready.values().forEach(pickup -> result.add(new Hold(pickup.patronId, isbn, pickup.deadline)));
+            state.waiting.forEach(patronId -> result.add(new Hold(patronId, isbn, Hold.WAITING)));
+        }
+        return result;
+    }
+    
+    // IDs of the titles with holds
+    List<Integer> heldBooks() {
+        return new ArrayList<>(holds.keySet());
+    }
+    
+    // Patrons with a copy set aside, in the order they were served, then those waiting in turn
+    List<String> holdQueue(int bookId) {
+        Holds state = holds.get(bookId);
+        List<String> queue = new ArrayList<>();
+        if (state != null) {
+            queue.addAll(state.ready.keySet());
+            queue.addAll(state.waiting);
+        }
+        return queue;
+    }
+    
+    // Queues the patron; false when the patron is already in line for the title
+    boolean placeHold(int bookId, String patronId) {
+        Holds state = holds.computeIfAbsent(bookId, id -> new Holds());
+        if (state.ready.containsKey(patronId) || state.waiting.contains(patronId)) {
+            return false;
+        }
+        state.waiting.add(patronId);
+        state.waitingCount++;
+        return true;
+    }
+    
+    /**
+     * Sets a returned copy aside for the next waiting patron and returns
+     * that patron, or null when no one is waiting and it belongs on the shelf.
+     */
+    String setAside(int bookId, long now, LendingPolicy policy) {
+        Holds state = holds.get(bookId);
+        if (state == null) {
+            return null;
+        }
+        String next = state.waiting.poll();
+        if (next == null) {
+            return null;
+        }
+        state.waitingCount--;
+        setAside(state, bookId, next, now + policy.getHoldPickupPeriod().toMillis());
+        return next;
+    }
+    
+    /**
+     * Sets a copy aside for the patron until the given time, as restored
+     * from storage; the caller has taken the copy off the shelf unless one
+     * was set aside for the patron already. The patron leaves the line.
+     */
+    void setAsideUntil(int bookId, String patronId, long readyUntil) {
+        Holds state = holds.computeIfAbsent(bookId, id -> new Holds());
+        if (state.waiting.remove(patronId)) {
+            state.waitingCount--;
+        }
+        Expiration previous = state.ready.get(patronId);
+        if (previous != null) {
+            wheel.cancel(previous.timeout);
+        }
+        setAside(state, bookId, patronId, readyUntil);
+    }
+    
+    // When the copy set aside for the patron must be picked up by, or Hold.WAITING if there is none
+    long readyUntil(int bookId, String patronId) {
+        Holds state = holds.get(bookId);
+        Expiration pickup = state == null ? null : state.ready.get(patronId);
+        return pickup == null ? Hold.WAITING : pickup.deadline;
+    }
+    
+    // Releases the copy set aside for the patron; the caller passes it on with setAside or shelves it
+    boolean releaseSetAside(int bookId, String patronId) {
+        Holds state = holds.get(bookId);
+        Expiration pickup = state == null ? null : state.ready.remove(patronId);
+        if (pickup == null) {
+            return false;
+        }
+        wheel.cancel(pickup.timeout);
+        discardIfIdle(bookId, state);
+        return true;
+    }
+    
+    // Takes the patron out of the line of those waiting for a copy
+    boolean leaveQueue(int bookId, String patronId) {
+        Holds state = holds.get(bookId);
+        if (state == null || !state.waiting.remove(patronId)) {
+            return false;
+        }
+        state.waitingCount--;
+        discardIfIdle(bookId, state);
+        return true;
+    }
+    
+    // The title left the catalog
+    void discardHolds(int bookId) {
+        Holds state = holds.remove(bookId);
+        if (state != null) {
+            state.ready.values().forEach(pickup -> wheel.cancel(pickup.timeout));
+        }
+    }
+    
+    // Advances the wheel; callers then take the right lock and apply each expiration
+    List<Expiration> expired(long now) {
+        return wheel.advance(now);
+    }
+    
+    long outstandingTimeouts() {
+        return wheel.size();
+    }
+    
+    // Marks the loan overdue and returns it, or returns null if it was returned or renewed meanwhile
+    Loan expireLoan(Expiration expiration) {
+        LoanKey key = new LoanKey(expiration.bookId, expiration.patronId);
+        LoanState state = loans.get(key);
+        if (state == null || state.due != expiration) {
+            return null;
+        }
+        overdue.add(key);
+        return state.loan;
+    }
+    
+    // Releases a copy that was not picked up in time; false if it was picked up or cancelled meanwhile
+    boolean expirePickup(Expiration expiration) {
+        Holds state = holds.get(expiration.bookId);
+        if (state == null || !state.ready.remove(expiration.patronId, expiration)) {
+            return false;
+        }
+        discardIfIdle(expiration.bookId, state);
+        return true;
+    }
+    
+    private void startLoan(LoanKey key, Loan loan) {
+        Expiration due = new Expiration(key.bookId, key.patronId, false, loan.getDueAt());
+        due.timeout = wheel.schedule(due, loan.getDueAt());
+        loans.put(key, new LoanState(loan, due));
+    }
+    
+    private void setAside(Holds state, int bookId, String patronId, long readyUntil) {
+        Expiration pickup = new Expiration(bookId, patronId, true, readyUntil);
+        pickup.timeout = wheel.schedule(pickup, readyUntil);
+        state.ready.put(patronId, pickup);
+    }
+    
+    private void discardIfIdle(int bookId, Holds state) {
+        if (state.ready.isEmpty() && state.waiting.isEmpty()) {
+            holds.remove(bookId, state);
+        }
+    }
+    
+    static final class Expiration {
+        final int bookId;
+        final String patronId;
+        final boolean pickup;
+        final long deadline;
+        TimingWheel.Timeout<Expiration> timeout;
+        
+        Expiration(int bookId, String patronId, boolean pickup, long deadline) {
+            this.bookId = bookId;
+            this.patronId = patronId;
+            this.pickup = pickup;
+            this.deadline = deadline;
+        }
+    }
+    
+    private static final class LoanKey {
+        private final int bookId;
+        private final String patronId;
+        
+        LoanKey(int bookId, String patronId) {
+            this.bookId = bookId;
+            this.patronId = patronId;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LoanKey)) {
+                return false;
+            }
+            LoanKey other = (LoanKey) o;
+            return bookId == other.bookId && patronId.equals(other.patronId);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * bookId + patronId.hashCode();
+        }
+    }
+    
+    private static final class LoanState {
+        final Loan loan;
+        final Expiration due;
+        
+        LoanState(Loan loan, Expiration due) {
+            this.loan = loan;
+            this.due = due;
+        }
+    }
+    
+    private static final class Holds {
+        final ArrayDeque<String> waiting = new ArrayDeque<>();
+        // Read without the lock by hasWaiting
+        volatile int waitingCount;
+        final Map<String, Expiration> ready = new LinkedHashMap<>();
+    }
+}
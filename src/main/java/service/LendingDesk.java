@@ -0,0 +1,877 @@
+package main.java.service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Logger;
+
+import main.java.metrics.OperationMetrics;
+import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.IsbnDictionary;
+import main.java.model.Loan;
+import main.java.model.Patron;
+import main.java.observer.EventBuffer;
+import main.java.observer.EventType;
+import main.java.observer.LibraryEvent;
+
+/**
+ * Checkouts, returns, renewals, holds and expirations of a LibraryService.
+ * Loans are changed under the patron's stripe lock, holds under the
+ * book's, and an operation that needs both takes the patron's first. The
+ * loan and hold state itself is kept by Circulation.
+ */
+final class LendingDesk {
+    private static final Logger logger = Logger.getLogger(LendingDesk.class.getName());
+    
+    private final BookCatalog catalog;
+    private final Map<String, Patron> patrons;
+    private final StripedLocks patronLocks;
+    private final StripedLocks bookLocks;
+    private final Circulation circulation;
+    private final VersionStore versions;
+    private final IsbnDictionary bookIds;
+    private final SideEffects effects;
+    private final Clock clock;
+    private final ServiceMetrics metrics;
+    private volatile LendingPolicy lendingPolicy;
+    
+    LendingDesk(BookCatalog catalog, Map<String, Patron> patrons, StripedLocks patronLocks, StripedLocks bookLocks,
+                Circulation circulation, VersionStore versions, IsbnDictionary bookIds, SideEffects effects,
+                Clock clock, ServiceMetrics metrics) {
+        this.catalog = catalog;
+        this.patrons = patrons;
+        this.patronLocks = patronLocks;
+        this.bookLocks = bookLocks;
+        this.circulation = circulation;
+        this.versions = versions;
+        this.bookIds = bookIds;
+        this.effects = effects;
+        this.clock = clock;
+        this.metrics = metrics;
+        this.lendingPolicy = LendingPolicy.DEFAULT;
+    }
+    
+    private Patron findPatron(String patronId) {
+        return patronId == null ? null : patrons.get(patronId);
+    }
+    
+    /**
+     * Lends the patron a copy of the book. The patron's stripe lock is the
+     * only lock taken: the copy comes off the shelf with a CAS on the book's
+     * counter, so concurrent checkouts of one popular title don't queue up.
+     * A patron with a copy set aside by a hold takes that one instead, under
+     * the book's lock. A patron can have one copy of a title at a time.
+     */
+    boolean checkout(String patronId, String isbn) {
+        Patron patron = findPatron(patronId);
+        Book book = catalog.find(isbn);
+        
+        if (patron == null || book == null) {
+            logger.warning("Invalid patron ID or ISBN for checkout");
+            metrics.checkoutBook.fail(patron == null ? ServiceMetrics.UNKNOWN_PATRON : ServiceMetrics.UNKNOWN_BOOK);
+            return false;
+        }
+        
+        long lsn;
+        Lock patronLock = patronLocks.lockFor(patronId);
+        patronLock.lock();
+        try {
+            int bookId = book.getInternalId();
+            if (!catalog.isCurrent(book)) {
+                logger.warning("Invalid patron ID or ISBN for checkout");
+                metrics.checkoutBook.fail(ServiceMetrics.UNKNOWN_BOOK);
+                return false;
+            }
+            
+            if (patron.hasBorrowed(bookId)) {
+                logger.warning("Patron " + patronId + " already has a copy of " + isbn);
+                metrics.checkoutBook.fail(ServiceMetrics.DUPLICATE);
+                return false;
+            }
+            
+            boolean heldForPatron = circulation.hasHolds(bookId) && isHeldFor(book, patronId);
+            if (!heldForPatron && !book.isAvailable()) {
+                logger.warning("Book " + isbn + " is not available");
+                metrics.checkoutBook.fail(ServiceMetrics.UNAVAILABLE);
+                return false;
+            }
+            
+            if (!patron.canBorrowMore()) {
+                logger.warning("Patron " + patronId + " has reached borrowing limit");
+                metrics.checkoutBook.fail(ServiceMetrics.LIMIT_REACHED);
+                return false;
+            }
+            
+            // Falls back to the shelf if the pickup period ended since the check above
+            boolean pickup = heldForPatron && pickUp(book, patronId);
+            if (!pickup) {
+                int remaining = book.checkOutCopy();
+                if (remaining < 0) {
+                    // The last copy went, or the book was removed, since the check above
+                    logger.warning("Book " + isbn + " is not available");
+                    metrics.checkoutBook.fail(ServiceMetrics.UNAVAILABLE);
+                    return false;
+                }
+                catalog.availabilityIndex.copyCheckedOut(book, remaining);
+                if (remaining == 0) {
+                    catalog.searchCache.invalidateAvailability();
+                }
+                catalog.storeCopies(book);
+            }
+            patron.borrowBook(book.getIsbn());
+            Loan loan = circulation.lend(book, patronId, clock.millis(), lendingPolicy);
+            versions.commitLoan(book, patron, pickup ? 0 : -1);
+            lsn = effects.journal().bookCheckedOut(loan);
+            
+            effects.notify(EventType.BOOK_CHECKED_OUT, patronId, book.getIsbn(), loan.getDueAt());
+        } finally {
+            patronLock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    boolean checkin(String patronId, String isbn) {
+        Patron patron = findPatron(patronId);
+        Book book = catalog.find(isbn);
+        
+        if (patron == null || book == null) {
+            logger.warning("Invalid patron ID or ISBN for return");
+            metrics.returnBook.fail(patron == null ? ServiceMetrics.UNKNOWN_PATRON : ServiceMetrics.UNKNOWN_BOOK);
+            return false;
+        }
+        
+        long lsn;
+        String heldFor;
+        Lock patronLock = patronLocks.lockFor(patronId);
+        patronLock.lock();
+        try {
+            int bookId = book.getInternalId();
+            if (!patron.hasBorrowed(bookId)) {
+                logger.warning("Patron " + patronId + " has not borrowed book " + isbn);
+                metrics.returnBook.fail(ServiceMetrics.NOT_BORROWED);
+                return false;
+            }
+            
+            circulation.endLoan(bookId, patronId);
+            patron.returnBook(book.getIsbn());
+            // Journaled before the copy can be lent again, so replay meets the return first
+            lsn = effects.journal().bookReturned(patronId, book.getIsbn());
+            // With holds waiting the copy goes to the hold shelf, not back into circulation
+            heldFor = circulation.hasWaiting(bookId) ? setAside(book) : null;
+            if (heldFor != null) {
+                versions.commitLoan(book, patron, 0);
+            } else {
+                shelve(book, patron);
+                // A hold placed while the copy was on its way back may still claim it
+                heldFor = circulation.hasWaiting(bookId) ? claimFromShelf(book) : null;
+                if (heldFor != null) {
+                    versions.commitLoan(book, null, -1);
+                }
+            }
+            
+            effects.notify(EventType.BOOK_RETURNED, patronId, book.getIsbn());
+            if (heldFor != null) {
+                effects.notify(EventType.HOLD_READY, heldFor, book.getIsbn());
+            }
+        } finally {
+            patronLock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    LendingResult[] checkoutAll(String patronId, List<String> isbns, BatchMode mode) {
+        LendingResult[] results = new LendingResult[isbns.size()];
+        try {
+            Patron patron = findPatron(patronId);
+            if (patron == null) {
+                Arrays.fill(results, LendingResult.UNKNOWN_PATRON);
+                return results;
+            }
+            Book[] books = lookUpBooks(isbns, results);
+            int[] stripes = bookStripes(books);
+            
+            long lsn = 0;
+            Lock patronLock = patronLocks.lockFor(patronId);
+            patronLock.lock();
+            lockStripes(stripes);
+            try {
+                // Pending items keep a null result until they are applied
+                boolean[] pickups = new boolean[books.length];
+                int room = patron.getMaxBooksAllowed() - patron.getBorrowedCount();
+                for (int i = 0; i < books.length; i++) {
+                    if (results[i] != null) {
+                        continue;
+                    }
+                    Book book = books[i];
+                    int bookId = book.getInternalId();
+                    if (!catalog.isCurrent(book)) {
+                        results[i] = LendingResult.UNKNOWN_BOOK;
+                    } else if (patron.hasBorrowed(bookId) || listedBefore(books, i)) {
+                        results[i] = LendingResult.DUPLICATE;
+                    } else {
+                        // The stripe is held, so a copy set aside for the patron stays theirs
+                        pickups[i] = circulation.hasHolds(bookId) && circulation.isHeldFor(bookId, patronId);
+                        if (!pickups[i] && !book.isAvailable()) {
+                            results[i] = LendingResult.UNAVAILABLE;
+                        } else if (room <= 0) {
+                            results[i] = LendingResult.LIMIT_REACHED;
+                        } else {
+                            room--;
+                        }
+                    }
+                }
+                
+                boolean proceed = mode == BatchMode.BEST_EFFORT || !abortIfAnyFailed(results);
+                if (proceed && takeCopies(books, pickups, results, mode)) {
+                    long now = clock.millis();
+                    LendingPolicy policy = lendingPolicy;
+                    boolean wanted = effects.isWanted(EventType.BOOK_CHECKED_OUT);
+                    EventBuffer events = EventBuffer.acquire();
+                    try {
+                        for (int i = 0; i < books.length; i++) {
+                            if (results[i] != null) {
+                                continue;
+                            }
+                            Book book = books[i];
+                            if (pickups[i]) {
+                                circulation.releaseSetAside(book.getInternalId(), patronId);
+                            }
+                            patron.borrowBook(book.getIsbn());
+                            Loan loan = circulation.lend(book, patronId, now, policy);
+                            versions.commitLoan(book, patron, pickups[i] ? 0 : -1);
+                            lsn = effects.journal().bookCheckedOut(loan);
+                            results[i] = LendingResult.OK;
+                            
+                            if (wanted) {
+                                events.append(EventType.BOOK_CHECKED_OUT, patronId, book.getIsbn(), now, loan.getDueAt());
+                            }
+                        }
+                        effects.dispatch(events);
+                    } finally {
+                        events.release();
+                    }
+                }
+            } finally {
+                unlockStripes(stripes);
+                patronLock.unlock();
+            }
+            effects.awaitDurable(lsn);
+            return results;
+        } finally {
+            recordFailures(metrics.checkoutBooks, results);
+        }
+    }
+    
+    /**
+     * Takes the shelf copies the pending checkouts need. Another patron's
+     * checkout can still take the last copy of a title, as it only holds
+     * its own lock, so every copy is claimed before any is published to the
+     * availability index and the store; under ALL_OR_NOTHING the copies
+     * already claimed then go back unseen and false is returned.
+     */
+    private boolean takeCopies(Book[] books, boolean[] pickups, LendingResult[] results, BatchMode mode) {
+        int[] remaining = new int[books.length];
+        for (int i = 0; i < books.length; i++) {
+            if (results[i] != null || pickups[i]) {
+                continue;
+            }
+            remaining[i] = books[i].checkOutCopy();
+            if (remaining[i] < 0) {
+                results[i] = LendingResult.UNAVAILABLE;
+                if (mode == BatchMode.ALL_OR_NOTHING) {
+                    for (int j = 0; j < i; j++) {
+                        if (results[j] == null && !pickups[j]) {
+                            unclaimCopy(books[j]);
+                        }
+                    }
+                    abortIfAnyFailed(results);
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < books.length; i++) {
+            if (results[i] != null || pickups[i]) {
+                continue;
+            }
+            catalog.availabilityIndex.copyCheckedOut(books[i], remaining[i]);
+            if (remaining[i] == 0) {
+                catalog.searchCache.invalidateAvailability();
+            }
+            catalog.storeCopies(books[i]);
+        }
+        return true;
+    }
+    
+    // Puts back a copy claimed but never published
+    private void unclaimCopy(Book book) {
+        int onShelf = versions.undoCheckOut(book);
+        if (onShelf == 1) {
+            // A checkout that ran meanwhile may have published the shelf as empty
+            catalog.availabilityIndex.copyUnclaimed(book);
+            catalog.searchCache.invalidateAvailability();
+            catalog.storeCopies(book);
+        }
+    }
+    
+    LendingResult[] checkinAll(String patronId, List<String> isbns, BatchMode mode) {
+        LendingResult[] results = new LendingResult[isbns.size()];
+        try {
+            Patron patron = findPatron(patronId);
+            if (patron == null) {
+                Arrays.fill(results, LendingResult.UNKNOWN_PATRON);
+                return results;
+            }
+            Book[] books = lookUpBooks(isbns, results);
+            int[] stripes = bookStripes(books);
+            
+            long lsn = 0;
+            Lock patronLock = patronLocks.lockFor(patronId);
+            patronLock.lock();
+            lockStripes(stripes);
+            try {
+                for (int i = 0; i < books.length; i++) {
+                    if (results[i] == null && (!patron.hasBorrowed(books[i].getInternalId()) || listedBefore(books, i))) {
+                        results[i] = LendingResult.NOT_BORROWED;
+                    }
+                }
+                
+                if (mode == BatchMode.BEST_EFFORT || !abortIfAnyFailed(results)) {
+                    long now = clock.millis();
+                    boolean returnsWanted = effects.isWanted(EventType.BOOK_RETURNED);
+                    boolean holdsWanted = effects.isWanted(EventType.HOLD_READY);
+                    EventBuffer events = EventBuffer.acquire();
+                    try {
+                        for (int i = 0; i < books.length; i++) {
+                            if (results[i] != null) {
+                                continue;
+                            }
+                            Book book = books[i];
+                            int bookId = book.getInternalId();
+                            circulation.endLoan(bookId, patronId);
+                            patron.returnBook(book.getIsbn());
+                            lsn = effects.journal().bookReturned(patronId, book.getIsbn());
+                            String heldFor = circulation.hasWaiting(bookId) ? setAside(book) : null;
+                            if (heldFor != null) {
+                                versions.commitLoan(book, patron, 0);
+                            } else {
+                                shelve(book, patron);
+                                heldFor = circulation.hasWaiting(bookId) ? claimFromShelf(book) : null;
+                                if (heldFor != null) {
+                                    versions.commitLoan(book, null, -1);
+                                }
+                            }
+                            results[i] = LendingResult.OK;
+                            
+                            if (returnsWanted) {
+                                events.append(EventType.BOOK_RETURNED, patronId, book.getIsbn(), now, LibraryEvent.NO_DETAIL);
+                            }
+                            if (heldFor != null && holdsWanted) {
+                                events.append(EventType.HOLD_READY, heldFor, book.getIsbn(), now, LibraryEvent.NO_DETAIL);
+                            }
+                        }
+                        effects.dispatch(events);
+                    } finally {
+                        events.release();
+                    }
+                }
+            } finally {
+                unlockStripes(stripes);
+                patronLock.unlock();
+            }
+            effects.awaitDurable(lsn);
+            return results;
+        } finally {
+            recordFailures(metrics.returnBooks, results);
+        }
+    }
+    
+    // Looks the books up before any lock is taken, as checkout and checkin do
+    private Book[] lookUpBooks(List<String> isbns, LendingResult[] results) {
+        Book[] books = new Book[results.length];
+        int i = 0;
+        for (String isbn : isbns) {
+            books[i] = catalog.find(isbn);
+            if (books[i] == null) {
+                results[i] = LendingResult.UNKNOWN_BOOK;
+            }
+            i++;
+        }
+        return books;
+    }
+    
+    // Batches are a handful of books, so a scan beats hashing them
+    private static boolean listedBefore(Book[] books, int i) {
+        for (int j = 0; j < i; j++) {
+            if (books[j] == books[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Marks the pending items ABORTED if any item failed
+    private static boolean abortIfAnyFailed(LendingResult[] results) {
+        boolean failed = false;
+        for (LendingResult result : results) {
+            failed |= result != null && result != LendingResult.ABORTED;
+        }
+        if (failed) {
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = LendingResult.ABORTED;
+                }
+            }
+        }
+        return failed;
+    }
+    
+    // The distinct book stripes of a batch in ascending order, the order they are locked in
+    private int[] bookStripes(Book[] books) {
+        int[] stripes = new int[books.length];
+        int count = 0;
+        for (Book book : books) {
+            if (book != null) {
+                stripes[count++] = catalog.stripeOf(book);
+            }
+        }
+        Arrays.sort(stripes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[i] != stripes[distinct - 1]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+        return Arrays.copyOf(stripes, distinct);
+    }
+    
+    private void lockStripes(int[] stripes) {
+        for (int stripe : stripes) {
+            bookLocks.stripe(stripe).lock();
+        }
+    }
+    
+    private void unlockStripes(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            bookLocks.stripe(stripes[i]).unlock();
+        }
+    }
+    
+    private static void recordFailures(OperationMetrics operation, LendingResult[] results) {
+        for (LendingResult result : results) {
+            if (result != null && result.reason != null) {
+                operation.fail(result.reason);
+            }
+        }
+    }
+    
+    boolean setCopies(String isbn, int copies) {
+        Book book = catalog.find(isbn);
+        if (book == null || copies < 1) {
+            metrics.setBookCopies.fail(book == null ? ServiceMetrics.UNKNOWN_BOOK : ServiceMetrics.INVALID);
+            return false;
+        }
+        
+        long lsn;
+        Lock lock = catalog.lockFor(book.getIsbn());
+        lock.lock();
+        try {
+            if (!catalog.isCurrent(book)) {
+                metrics.setBookCopies.fail(ServiceMetrics.UNKNOWN_BOOK);
+                return false;
+            }
+            int delta = copies - book.getCopies();
+            if (delta == 0) {
+                return true;
+            }
+            boolean wasAvailable = book.isAvailable();
+            if (delta < 0 && !versions.changeCopies(book, delta)) {
+                logger.warning("Cannot remove " + -delta + " copies of " + isbn + " - not on the shelf");
+                metrics.setBookCopies.fail(ServiceMetrics.UNAVAILABLE);
+                return false;
+            }
+            // Journaled before added copies can be lent and after removed ones are gone, so replay never runs short
+            lsn = effects.journal().bookCopiesChanged(book.getIsbn(), copies);
+            if (delta > 0) {
+                versions.changeCopies(book, delta);
+            }
+            catalog.availabilityIndex.copiesChanged(book, delta);
+            if (wasAvailable != book.isAvailable()) {
+                catalog.searchCache.invalidateAvailability();
+            }
+            catalog.storeCopies(book);
+            effects.notify(EventType.BOOK_COPIES_CHANGED, null, book.getIsbn(), copies);
+            // New copies go to waiting patrons first
+            String heldFor;
+            while (delta-- > 0 && circulation.hasWaiting(book.getInternalId())
+                    && (heldFor = claimFromShelf(book)) != null) {
+                versions.commitLoan(book, null, -1);
+                effects.notify(EventType.HOLD_READY, heldFor, book.getIsbn());
+            }
+        } finally {
+            lock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    // Loans restored with the patron, as by a snapshot load, get due dates until restoreLoan sets the stored ones
+    void restoreLoans(Patron patron) {
+        for (int bookId : patron.getBorrowedBookIds()) {
+            circulation.restoreLoan(bookId, bookIds.isbnOf(bookId), patron.getPatronId(), clock.millis(), lendingPolicy);
+        }
+    }
+    
+    // Gives a loan the patron has the checkout time, due date and renewals it was stored with
+    boolean restoreLoan(Loan loan) {
+        Patron patron = findPatron(loan.getPatronId());
+        Book book = catalog.find(loan.getIsbn());
+        if (patron == null || book == null) {
+            return false;
+        }
+        Lock patronLock = patronLocks.lockFor(patron.getPatronId());
+        patronLock.lock();
+        try {
+            if (!patron.hasBorrowed(book.getInternalId())) {
+                return false;
+            }
+            circulation.replaceLoan(book.getInternalId(), new Loan(patron.getPatronId(), book.getIsbn(),
+                    loan.getCheckedOutAt(), loan.getDueAt(), loan.getRenewals()));
+            return true;
+        } finally {
+            patronLock.unlock();
+        }
+    }
+    
+    /**
+     * Puts a stored hold back: a waiting one at the end of the line, a
+     * ready one in front of a copy set aside until its deadline. That copy
+     * comes off the shelf unless one was set aside for the patron already.
+     */
+    boolean restoreHold(Hold hold) {
+        Book book = catalog.find(hold.getIsbn());
+        if (hold.getPatronId() == null || book == null) {
+            return false;
+        }
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        bookLock.lock();
+        try {
+            int bookId = book.getInternalId();
+            if (!hold.isReady()) {
+                return circulation.placeHold(bookId, hold.getPatronId());
+            }
+            if (!circulation.isHeldFor(bookId, hold.getPatronId())) {
+                if (!takeFromShelf(book)) {
+                    return false;
+                }
+                versions.commitLoan(book, null, -1);
+            }
+            circulation.setAsideUntil(bookId, hold.getPatronId(), hold.getReadyUntil());
+            return true;
+        } finally {
+            bookLock.unlock();
+        }
+    }
+    
+    List<Loan> allLoans() {
+        return circulation.allLoans();
+    }
+    
+    // Each title's holds in queue order, see Circulation.holds
+    List<Hold> allHolds() {
+        List<Hold> holds = new ArrayList<>();
+        for (int bookId : circulation.heldBooks()) {
+            Book book = catalog.onHeap(bookIds.isbnOf(bookId));
+            if (book == null) {
+                continue;
+            }
+            Lock bookLock = catalog.lockFor(book.getIsbn());
+            bookLock.lock();
+            try {
+                holds.addAll(circulation.holds(bookId, book.getIsbn()));
+            } finally {
+                bookLock.unlock();
+            }
+        }
+        return holds;
+    }
+    
+    LendingPolicy getLendingPolicy() {
+        return lendingPolicy;
+    }
+    
+    void setLendingPolicy(LendingPolicy policy) {
+        this.lendingPolicy = Objects.requireNonNull(policy);
+    }
+    
+    // A book still only in the store has no loans or holds, so these read the heap alone
+    Loan loan(String patronId, String isbn) {
+        Book book = catalog.onHeap(isbn);
+        return book == null || patronId == null ? null : circulation.loan(book.getInternalId(), patronId);
+    }
+    
+    List<Loan> loans(String patronId) {
+        Patron patron = findPatron(patronId);
+        List<Loan> loans = new ArrayList<>();
+        if (patron != null) {
+            for (int bookId : patron.getBorrowedBookIds()) {
+                Loan loan = circulation.loan(bookId, patronId);
+                if (loan != null) {
+                    loans.add(loan);
+                }
+            }
+        }
+        return loans;
+    }
+    
+    List<Loan> overdueLoans() {
+        return circulation.overdueLoans();
+    }
+    
+    boolean renew(String patronId, String isbn) {
+        Patron patron = findPatron(patronId);
+        Book book = catalog.find(isbn);
+        if (patron == null || book == null) {
+            metrics.renewLoan.fail(patron == null ? ServiceMetrics.UNKNOWN_PATRON : ServiceMetrics.UNKNOWN_BOOK);
+            return false;
+        }
+        
+        long lsn;
+        Lock patronLock = patronLocks.lockFor(patronId);
+        patronLock.lock();
+        try {
+            if (!patron.hasBorrowed(book.getInternalId())) {
+                metrics.renewLoan.fail(ServiceMetrics.NOT_BORROWED);
+                return false;
+            }
+            if (circulation.hasWaiting(book.getInternalId())) {
+                logger.warning("Book " + isbn + " has holds and cannot be renewed");
+                metrics.renewLoan.fail(ServiceMetrics.HOLDS_WAITING);
+                return false;
+            }
+            Loan loan = circulation.renew(book.getInternalId(), patronId, clock.millis(), lendingPolicy);
+            if (loan == null) {
+                metrics.renewLoan.fail(ServiceMetrics.LIMIT_REACHED);
+                return false;
+            }
+            lsn = effects.journal().loanRenewed(loan);
+            effects.notify(EventType.LOAN_RENEWED, patronId, book.getIsbn(), loan.getDueAt());
+        } finally {
+            patronLock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    boolean placeHold(String patronId, String isbn) {
+        Patron patron = findPatron(patronId);
+        Book book = catalog.find(isbn);
+        if (patron == null || book == null) {
+            metrics.placeHold.fail(patron == null ? ServiceMetrics.UNKNOWN_PATRON : ServiceMetrics.UNKNOWN_BOOK);
+            return false;
+        }
+        
+        long lsn;
+        Lock patronLock = patronLocks.lockFor(patronId);
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        patronLock.lock();
+        bookLock.lock();
+        try {
+            int bookId = book.getInternalId();
+            if (!catalog.isCurrent(book)) {
+                metrics.placeHold.fail(ServiceMetrics.UNKNOWN_BOOK);
+                return false;
+            }
+            if (book.isAvailable()) {
+                // Nothing to wait for; check it out instead
+                metrics.placeHold.fail(ServiceMetrics.AVAILABLE);
+                return false;
+            }
+            if (patron.hasBorrowed(bookId) || !circulation.placeHold(bookId, patronId)) {
+                metrics.placeHold.fail(ServiceMetrics.DUPLICATE);
+                return false;
+            }
+            // A copy returned meanwhile may have missed the hold; returns check for holds after shelving
+            if (book.isAvailable()) {
+                circulation.leaveQueue(bookId, patronId);
+                metrics.placeHold.fail(ServiceMetrics.AVAILABLE);
+                return false;
+            }
+            lsn = effects.journal().holdPlaced(patronId, book.getIsbn());
+            effects.notify(EventType.HOLD_PLACED, patronId, book.getIsbn());
+        } finally {
+            bookLock.unlock();
+            patronLock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    boolean cancelHold(String patronId, String isbn) {
+        Book book = catalog.find(isbn);
+        if (patronId == null || book == null) {
+            metrics.cancelHold.fail(patronId == null ? ServiceMetrics.UNKNOWN_PATRON : ServiceMetrics.UNKNOWN_BOOK);
+            return false;
+        }
+        
+        long lsn;
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        bookLock.lock();
+        try {
+            boolean setAside = circulation.releaseSetAside(book.getInternalId(), patronId);
+            if (!setAside && !circulation.leaveQueue(book.getInternalId(), patronId)) {
+                metrics.cancelHold.fail(ServiceMetrics.NO_HOLD);
+                return false;
+            }
+            lsn = effects.journal().holdCancelled(patronId, book.getIsbn());
+            effects.notify(EventType.HOLD_CANCELLED, patronId, book.getIsbn());
+            if (setAside) {
+                passOn(book);
+            }
+        } finally {
+            bookLock.unlock();
+        }
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    List<String> holdQueue(String isbn) {
+        Book book = catalog.onHeap(isbn);
+        if (book == null) {
+            return new ArrayList<>();
+        }
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        bookLock.lock();
+        try {
+            return circulation.holdQueue(book.getInternalId());
+        } finally {
+            bookLock.unlock();
+        }
+    }
+    
+    int processExpirations() {
+        int applied = 0;
+        for (Circulation.Expiration expiration : circulation.expired(clock.millis())) {
+            String isbn = bookIds.isbnOf(expiration.bookId);
+            // Loans are guarded by the patron's lock, holds by the book's
+            Lock lock = expiration.pickup ? catalog.lockFor(isbn) : patronLocks.lockFor(expiration.patronId);
+            lock.lock();
+            try {
+                if (expiration.pickup) {
+                    Book book = catalog.inventory.get(isbn);
+                    if (book != null && circulation.expirePickup(expiration)) {
+                        // Replayed as a cancellation, which releases the copy the same way
+                        effects.journal().holdCancelled(expiration.patronId, book.getIsbn());
+                        effects.notify(EventType.HOLD_EXPIRED, expiration.patronId, isbn);
+                        passOn(book);
+                        applied++;
+                    }
+                } else {
+                    Loan loan = circulation.expireLoan(expiration);
+                    if (loan != null) {
+                        effects.notify(EventType.BOOK_OVERDUE, loan.getPatronId(), isbn, loan.getDueAt());
+                        applied++;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return applied;
+    }
+    
+    private boolean isHeldFor(Book book, String patronId) {
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        bookLock.lock();
+        try {
+            return circulation.isHeldFor(book.getInternalId(), patronId);
+        } finally {
+            bookLock.unlock();
+        }
+    }
+    
+    // Takes the copy set aside for the patron, if there still is one; the caller holds the patron's lock
+    private boolean pickUp(Book book, String patronId) {
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        bookLock.lock();
+        try {
+            return circulation.releaseSetAside(book.getInternalId(), patronId);
+        } finally {
+            bookLock.unlock();
+        }
+    }
+    
+    // A returned copy, kept off the shelf for the next waiting patron; null if no one is waiting any more
+    private String setAside(Book book) {
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        bookLock.lock();
+        try {
+            return journalSetAside(book, circulation.setAside(book.getInternalId(), clock.millis(), lendingPolicy));
+        } finally {
+            bookLock.unlock();
+        }
+    }
+    
+    // Takes a shelved copy back for the next waiting patron, if both are still there
+    private String claimFromShelf(Book book) {
+        Lock bookLock = catalog.lockFor(book.getIsbn());
+        bookLock.lock();
+        try {
+            if (!circulation.hasWaiting(book.getInternalId()) || !takeFromShelf(book)) {
+                return null;
+            }
+            return journalSetAside(book, circulation.setAside(book.getInternalId(), clock.millis(), lendingPolicy));
+        } finally {
+            bookLock.unlock();
+        }
+    }
+    
+    // Takes a copy off the shelf for the hold shelf; the caller holds the book's lock
+    private boolean takeFromShelf(Book book) {
+        int remaining = book.checkOutCopy();
+        if (remaining < 0) {
+            return false;
+        }
+        catalog.availabilityIndex.copyCheckedOut(book, remaining);
+        if (remaining == 0) {
+            catalog.searchCache.invalidateAvailability();
+        }
+        catalog.storeCopies(book);
+        return true;
+    }
+    
+    // Journals the pickup deadline of the copy just set aside, if any; the caller holds the book's lock
+    private String journalSetAside(Book book, String patronId) {
+        if (patronId != null) {
+            long readyUntil = circulation.readyUntil(book.getInternalId(), patronId);
+            effects.journal().holdReady(new Hold(patronId, book.getIsbn(), readyUntil));
+        }
+        return patronId;
+    }
+    
+    // Copies go back on the shelf through the version store, see VersionStore
+    private void shelve(Book book, Patron returnedBy) {
+        int onShelf = versions.commitShelved(book, returnedBy);
+        catalog.availabilityIndex.copyReturned(book, onShelf);
+        if (onShelf == 1) {
+            catalog.searchCache.invalidateAvailability();
+        }
+        catalog.storeCopies(book);
+    }
+    
+    // A copy set aside for a patron who gave it up goes to the next in line, or back on the shelf
+    private void passOn(Book book) {
+        String next = journalSetAside(book, circulation.setAside(book.getInternalId(), clock.millis(), lendingPolicy));
+        if (next != null) {
+            effects.notify(EventType.HOLD_READY, next, book.getIsbn());
+        } else {
+            shelve(book, null);
+        }
+    }
+}
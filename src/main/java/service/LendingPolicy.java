@@ -0,0 +1,38 @@
+package main.java.service;
+
+import java.time.Duration;
+
+/**
+ * How long loans and hold pickups last and how often a loan may be renewed.
+ * A renewal moves the due date to one loan period after the renewal.
+ */
+public class LendingPolicy {
+    public static final LendingPolicy DEFAULT = new LendingPolicy(Duration.ofDays(21), Duration.ofDays(7), 2);
+    
+    private final Duration loanPeriod;
+    private final Duration holdPickupPeriod;
+    private final int maxRenewals;
+    
+    public LendingPolicy(Duration loanPeriod, Duration holdPickupPeriod, int maxRenewals) {
+        if (loanPeriod.isNegative() || loanPeriod.isZero() || holdPickupPeriod.isNegative() || holdPickupPeriod.isZero()) {
+            throw new IllegalArgumentException("Loan and pickup periods must be positive");
+        }
+        if (maxRenewals < 0) {
+            throw new IllegalArgumentException("maxRenewals must not be negative: " + maxRenewals);
+        }
+        this.loanPeriod = loanPeriod;
+        this.holdPickupPeriod = holdPickupPeriod;
+        this.maxRenewals = maxRenewals;
+    }
+    
+    // Getters
+    public Duration getLoanPeriod() { return loanPeriod; }
+    public Duration getHoldPickupPeriod() { return holdPickupPeriod; }
+    public int getMaxRenewals() { return maxRenewals; }
+    
+    @Override
+    public String toString() {
+        return String.format("LendingPolicy{loan=%s, pickup=%s, maxRenewals=%d}",
+                loanPeriod, holdPickupPeriod, maxRenewals);
+    }
+}
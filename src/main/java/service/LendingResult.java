@@ -0,0 +1,21 @@
+package main.java.service;
+
+// Outcome of one item of a batch checkout or return
+public enum LendingResult {
+    OK(null),
+    UNKNOWN_PATRON(ServiceMetrics.UNKNOWN_PATRON),
+    UNKNOWN_BOOK(ServiceMetrics.UNKNOWN_BOOK),
+    UNAVAILABLE(ServiceMetrics.UNAVAILABLE),
+    DUPLICATE(ServiceMetrics.DUPLICATE),
+    LIMIT_REACHED(ServiceMetrics.LIMIT_REACHED),
+    NOT_BORROWED(ServiceMetrics.NOT_BORROWED),
+    // Would have succeeded, but another item of an all-or-nothing batch failed
+    ABORTED(ServiceMetrics.ABORTED);
+    
+    // Failure reason in the metrics, null for OK
+    final String reason;
+    
+    LendingResult(String reason) {
+        this.reason = reason;
+    }
+}
@@ -1,112 +1,264 @@
 package main.java.service;
 
+import java.time.Clock;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.InventoryReport;
+import main.java.model.IsbnDictionary;
+import main.java.model.Loan;
+import main.java.model.Page;
+import main.java.metrics.LibraryMetrics;
 import main.java.model.Patron;
-import main.java.observer.LibraryEvent;
+import main.java.observer.AsyncEventBus;
+import main.java.observer.BatchLibraryEventListener;
+import main.java.observer.EventType;
 import main.java.observer.LibraryEventListener;
-import main.java.observer.LoggingEventListener;
-import main.java.strategy.AuthorSearchStrategy;
-import main.java.strategy.ISBNSearchStrategy;
+import main.java.persistence.MappedBookStore;
+import main.java.persistence.MutationLog;
+import main.java.query.BookQuery;
 import main.java.strategy.SearchStrategy;
-import main.java.strategy.TitleSearchStrategy;
 
+/**
+ * Safe for use from many threads. Mutators lock the stripe of the entity
+ * they touch; operations that need both lock the patron stripe before the
+ * book stripe, so no two threads ever wait on each other in opposite order.
+ * Checkouts and returns lock only the patron: copies move on and off the
+ * shelf through the book's atomic counter, and the book's lock is taken
+ * only when the title has holds. Listeners are notified while those locks
+ * are held, which keeps the events of one patron, and the catalog events
+ * of one book, in the order they were applied. Listeners subscribe to the
+ * event types they want; an event no one subscribed to is never built,
+ * and the others are drawn from a per-thread EventBuffer, so lending
+ * allocates nothing for its events beyond what the listeners themselves do.
+ * No listener is registered by default; a LoggingEventListener, for one,
+ * formats every event it writes.
+ *
+ * The service times each public operation and hands the work to the
+ * BookCatalog, the LendingDesk or the Listings; it manages the patrons
+ * itself.
+ */
 public class LibraryService {
     private static final Logger logger = Logger.getLogger(LibraryService.class.getName());
+    private static final int LOCK_STRIPES = 1024;
     
-    private Map<String, Book> bookInventory;
-    private Map<String, Patron> patrons;
-    private SearchStrategy searchStrategy;
-    private List<LibraryEventListener> eventListeners;
+    private final Map<String, Patron> patrons;
+    private final NavigableMap<String, Patron> patronOrder;
+    private volatile SearchStrategy searchStrategy;
+    private final VersionStore versions;
+    private final IsbnDictionary bookIds;
+    private final StripedLocks bookLocks;
+    private final StripedLocks patronLocks;
+    private final SideEffects effects;
+    private final BookCatalog catalog;
+    private final LendingDesk lending;
+    private final Listings listings;
+    private ScheduledExecutorService expiryTimer;
+    private final ServiceMetrics metrics;
     
     public LibraryService() {
-        this.bookInventory = new HashMap<>();
-        this.patrons = new HashMap<>();
-        this.searchStrategy = new TitleSearchStrategy(); // Default strategy
-        this.eventListeners = new ArrayList<>();
-        
-        // Add default logging listener
-        addEventListener(new LoggingEventListener());
+        this(Clock.systemUTC());
+    }
+    
+    // The clock sets checkout times, due dates and hold pickup deadlines
+    public LibraryService(Clock clock) {
+        this(clock, new IsbnDictionary());
+    }
+    
+    // Services that share a dictionary agree on the internal IDs of their books
+    LibraryService(Clock clock, IsbnDictionary bookIds) {
+        this.bookIds = bookIds;
+        this.patrons = new ConcurrentHashMap<>();
+        this.patronOrder = new ConcurrentSkipListMap<>();
+        this.bookLocks = new StripedLocks(LOCK_STRIPES);
+        this.patronLocks = new StripedLocks(LOCK_STRIPES);
+        this.versions = new VersionStore(bookIds);
+        this.metrics = new ServiceMetrics(new LibraryMetrics());
+        this.effects = new SideEffects(clock, metrics.registry);
+        Circulation circulation = new Circulation(clock.millis());
+        this.catalog = new BookCatalog(bookIds, bookLocks, versions, circulation, effects, metrics);
+        this.lending = new LendingDesk(catalog, patrons, patronLocks, bookLocks, circulation, versions, bookIds,
+                effects, clock, metrics);
+        this.listings = new Listings(catalog, patronOrder);
+        this.searchStrategy = catalog.titleSearch; // Default strategy
     }
     
     // Event listener management
     public void addEventListener(LibraryEventListener listener) {
-        eventListeners.add(listener);
+        effects.subscribe(listener, EnumSet.noneOf(EventType.class));
+    }
+    
+    // The listener only gets events of these types
+    public void addEventListener(LibraryEventListener listener, EventType type, EventType... more) {
+        effects.subscribe(listener, EnumSet.of(type, more));
     }
     
     public void removeEventListener(LibraryEventListener listener) {
-        eventListeners.remove(listener);
+        effects.unsubscribe(listener);
+    }
+    
+    /**
+     * Batch listeners are fed in batches by the async bus; in synchronous
+     * mode they get the events of one operation together, most often one.
+     */
+    public void addBatchEventListener(BatchLibraryEventListener listener) {
+        effects.subscribeBatch(listener, EnumSet.noneOf(EventType.class));
+    }
+    
+    public void addBatchEventListener(BatchLibraryEventListener listener, EventType type, EventType... more) {
+        effects.subscribeBatch(listener, EnumSet.of(type, more));
+    }
+    
+    /**
+     * Switches to asynchronous dispatch: the registered listeners move onto the
+     * bus and the mutators only pay for handing the event to its ring buffer.
+     */
+    public void enableAsyncDispatch(AsyncEventBus bus) {
+        effects.enableAsyncDispatch(bus);
+    }
+    
+    // Assigns the internal IDs of the books and decodes the patrons' loans
+    IsbnDictionary getBookIds() {
+        return bookIds;
+    }
+    
+    BookCatalog getCatalog() {
+        return catalog;
+    }
+    
+    public AsyncEventBus getEventBus() {
+        return effects.getEventBus();
+    }
+    
+    // Latency and failure counts of the operations, search strategies and listeners
+    public LibraryMetrics getMetrics() {
+        return metrics.registry;
     }
     
-    private void notifyListeners(LibraryEvent event) {
-        for (LibraryEventListener listener : eventListeners) {
-            listener.onLibraryEvent(event);
+    // Hit rate and occupancy of the search result cache (-Dlibrary.searchCacheSize bounds it)
+    public SearchCacheStats getSearchCacheStats() {
+        return catalog.searchCache.stats();
+    }
+    
+    /**
+     * Opens a consistent point-in-time view of books, patrons and loans for
+     * reports and exports. Reading it never blocks lending, nor lending it;
+     * close it when done.
+     */
+    public LibrarySnapshot openSnapshot() {
+        return metrics.openSnapshot.time(versions::open);
+    }
+    
+    // Persistence hooks
+    public void setMutationLog(MutationLog log) {
+        effects.setMutationLog(log);
+    }
+    
+    /**
+     * Runs recovery code that re-applies stored state through the public
+     * mutators without journaling it again or notifying listeners. Meant for
+     * startup, before the service is shared with other threads.
+     */
+    public void runWithoutSideEffects(Runnable action) {
+        effects.runWithout(action);
+    }
+    
+    // Every loan with its due date and renewals, in no particular order
+    public List<Loan> getAllLoans() {
+        return lending.allLoans();
+    }
+    
+    // Every hold, each title's in queue order: copies set aside with their pickup deadline, then patrons waiting
+    public List<Hold> getAllHolds() {
+        return lending.allHolds();
+    }
+    
+    // Gives a loan the patron already has, e.g. as re-added from storage, the times and renewals it was stored with
+    public boolean restoreLoan(Loan loan) {
+        return lending.restoreLoan(loan);
+    }
+    
+    /**
+     * Puts back a hold from getAllHolds: a waiting one at the end of the
+     * line, a ready one in front of a copy set aside until its deadline,
+     * taken off the shelf unless one is set aside for the patron already.
+     */
+    public boolean restoreHold(Hold hold) {
+        return lending.restoreHold(hold);
+    }
+    
+    /**
+     * Keeps the catalog in the store from now on. Books added, updated and
+     * removed are written through, copy counts are rewritten in place as
+     * copies move. A book that is only in the store is read from it by
+     * getBook, and loaded onto the heap by the first change to it, such as
+     * a checkout. Listings, searches, queries and the inventory report only
+     * cover the books on the heap: added since the store was attached, or
+     * loaded so far. Attach after any journal recovery: the books already
+     * loaded are written to the store as they are now.
+     */
+    public void attachCatalog(MappedBookStore store) {
+        withExclusiveAccess(() -> {
+            catalog.attach(store);
+            return null;
+        });
+    }
+    
+    // Runs the action while every lock is held, so it sees no mutation in progress
+    public <T> T withExclusiveAccess(Supplier<T> action) {
+        patronLocks.lockAll();
+        bookLocks.lockAll();
+        try {
+            return action.get();
+        } finally {
+            bookLocks.unlockAll();
+            patronLocks.unlockAll();
         }
     }
     
     // Book management
     public boolean addBook(Book book) {
-        if (book == null || book.getIsbn() == null || book.getIsbn().trim().isEmpty()) {
-            return false;
-        }
-        
-        if (bookInventory.containsKey(book.getIsbn())) {
-            logger.warning("Book with ISBN " + book.getIsbn() + " already exists");
-            return false;
-        }
-        
-        bookInventory.put(book.getIsbn(), book);
-        notifyListeners(new LibraryEvent("BOOK_ADDED", 
-                "Book added to inventory", null, book.getIsbn()));
-        return true;
+        return metrics.addBook.time(() -> catalog.add(book));
+    }
+    
+    /**
+     * Bulk variant of addBook for loaders: no per-book warning or event, just
+     * one BOOKS_BULK_ADDED event for the whole call. Returns the books that
+     * were rejected as invalid or duplicate.
+     */
+    public List<Book> addBooks(Collection<Book> books) {
+        return metrics.addBooks.time(() -> catalog.addAll(books));
     }
     
     public boolean removeBook(String isbn) {
-        Book book = bookInventory.get(isbn);
-        if (book == null) {
-            return false;
-        }
-        
-        if (!book.isAvailable()) {
-            logger.warning("Cannot remove book " + isbn + " - currently borrowed");
-            return false;
-        }
-        
-        bookInventory.remove(isbn);
-        notifyListeners(new LibraryEvent("BOOK_REMOVED", 
-                "Book removed from inventory", null, isbn));
-        return true;
+        return metrics.removeBook.time(() -> catalog.remove(isbn));
     }
     
     public boolean updateBook(String isbn, Book updatedBook) {
-        if (!bookInventory.containsKey(isbn) || updatedBook == null) {
-            return false;
-        }
-        
-        Book existingBook = bookInventory.get(isbn);
-        existingBook.setTitle(updatedBook.getTitle());
-        existingBook.setAuthor(updatedBook.getAuthor());
-        existingBook.setPublicationYear(updatedBook.getPublicationYear());
-        
-        notifyListeners(new LibraryEvent("BOOK_UPDATED", 
-                "Book information updated", null, isbn));
-        return true;
+        return metrics.updateBook.time(() -> catalog.update(isbn, updatedBook));
     }
     
+    // A book only in the attached store comes back as a copy read from it, see attachCatalog
     public Book getBook(String isbn) {
-        return bookInventory.get(isbn);
+        return metrics.getBook.time(() -> catalog.get(isbn));
     }
     
     public List<Book> getAllBooks() {
-        return new ArrayList<>(bookInventory.values());
+        return metrics.getAllBooks.time(catalog::all);
     }
     
     public List<Book> getAvailableBooks() {
-        return bookInventory.values().stream()
-                .filter(Book::isAvailable)
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        return metrics.getAvailableBooks.time(catalog.availabilityIndex::availableBooks);
     }
     
     // Search functionality with Strategy pattern
@@ -115,138 +267,398 @@ public class LibraryService {
     }
     
     public List<Book> searchBooks(String query) {
-        if (query == null || query.trim().isEmpty()) {
-            return new ArrayList<>();
-        }
-        return searchStrategy.search(bookInventory.values(), query);
+        SearchStrategy strategy = searchStrategy;
+        return metrics.searchBooks.time(() -> catalog.search(strategy, query));
     }
     
     public List<Book> searchBooksByTitle(String title) {
-        setSearchStrategy(new TitleSearchStrategy());
-        return searchBooks(title);
+        return metrics.searchBooksByTitle.time(() -> catalog.search(catalog.titleSearch, title));
     }
     
     public List<Book> searchBooksByAuthor(String author) {
-        setSearchStrategy(new AuthorSearchStrategy());
-        return searchBooks(author);
+        return metrics.searchBooksByAuthor.time(() -> catalog.search(catalog.authorSearch, author));
     }
     
     public List<Book> searchBooksByISBN(String isbn) {
-        setSearchStrategy(new ISBNSearchStrategy());
-        return searchBooks(isbn);
+        return metrics.searchBooksByISBN.time(() -> catalog.search(catalog.isbnSearch, isbn));
+    }
+    
+    public List<Book> searchBooksByISBNPrefix(String prefix) {
+        return metrics.searchBooksByISBNPrefix.time(() -> catalog.searchByIsbnPrefix(prefix));
+    }
+    
+    public List<Book> searchBooksByISBNRange(String fromIsbn, String toIsbn) {
+        return metrics.searchBooksByISBNRange.time(() -> catalog.searchByIsbnRange(fromIsbn, toIsbn));
+    }
+    
+    // Tolerates typos in title and author words; the best matches come first
+    public List<Book> searchBooksFuzzy(String query) {
+        return metrics.searchBooksFuzzy.time(() -> catalog.search(catalog.fuzzySearch, query));
+    }
+    
+    /**
+     * Books matching a composite query, e.g. by an author, published in a
+     * year range and on the shelf, in the order they were first catalogued.
+     * The query starts from its most selective index, see BookQuery.
+     */
+    public List<Book> findBooks(BookQuery query) {
+        return metrics.findBooks.time(() -> catalog.find(query));
+    }
+    
+    // Paged and streaming listings
+    /**
+     * One page of the catalog in canonical ISBN order. Pass null as the cursor
+     * for the first page and the page's next cursor for the following ones;
+     * books added or removed in between are seen or skipped consistently.
+     */
+    public Page<Book> getAllBooks(int limit, String cursor) {
+        return metrics.getAllBooksPage.time(() -> listings.books(limit, cursor));
+    }
+    
+    // Pages in patron ID order
+    public Page<Patron> getAllPatrons(int limit, String cursor) {
+        return metrics.getAllPatronsPage.time(() -> listings.patrons(limit, cursor));
+    }
+    
+    // Availability pages follow the order books were first catalogued in, which is just as stable
+    public Page<Book> getAvailableBooks(int limit, String cursor) {
+        return metrics.getAvailableBooksPage.time(() -> listings.availableBooks(limit, cursor));
+    }
+    
+    public Page<Book> getBorrowedBooks(int limit, String cursor) {
+        return metrics.getBorrowedBooksPage.time(() -> listings.borrowedBooks(limit, cursor));
+    }
+    
+    // Search pages are in canonical ISBN order; only limit + 1 matches are held at any time
+    public Page<Book> searchBooks(String query, int limit, String cursor) {
+        SearchStrategy strategy = searchStrategy;
+        return metrics.searchBooksPage.time(() -> listings.search(strategy, query, limit, cursor));
+    }
+    
+    public Page<Book> searchBooksByTitle(String title, int limit, String cursor) {
+        return metrics.searchBooksByTitlePage.time(() -> listings.search(catalog.titleSearch, title, limit, cursor));
+    }
+    
+    public Page<Book> searchBooksByAuthor(String author, int limit, String cursor) {
+        return metrics.searchBooksByAuthorPage.time(() -> listings.search(catalog.authorSearch, author, limit, cursor));
+    }
+    
+    public Page<Book> searchBooksByISBN(String isbn, int limit, String cursor) {
+        return metrics.searchBooksByISBNPage.time(() -> listings.search(catalog.isbnSearch, isbn, limit, cursor));
+    }
+    
+    // Query pages are in canonical ISBN order like search pages, but aren't cached
+    public Page<Book> findBooks(BookQuery query, int limit, String cursor) {
+        return metrics.findBooksPage.time(() -> listings.find(query, limit, cursor));
+    }
+    
+    // Lazy streams over live data; they split well, so .parallel() spreads the work across cores
+    public Stream<Book> streamBooks() {
+        return listings.streamBooks();
+    }
+    
+    public Stream<Patron> streamPatrons() {
+        return listings.streamPatrons();
+    }
+    
+    public Stream<Book> streamAvailableBooks() {
+        return listings.streamAvailableBooks();
+    }
+    
+    public Stream<Book> streamBorrowedBooks() {
+        return listings.streamBorrowedBooks();
+    }
+    
+    public Stream<Book> streamSearchResults(String query) {
+        return listings.streamSearchResults(searchStrategy, query);
+    }
+    
+    public Stream<Book> streamBooksByTitle(String title) {
+        return listings.streamSearchResults(catalog.titleSearch, title);
+    }
+    
+    public Stream<Book> streamBooksByAuthor(String author) {
+        return listings.streamSearchResults(catalog.authorSearch, author);
+    }
+    
+    public Stream<Book> streamBooksByISBN(String isbn) {
+        return listings.streamSearchResults(catalog.isbnSearch, isbn);
     }
     
     // Patron management
     public boolean addPatron(Patron patron) {
-        if (patron == null || patron.getPatronId() == null || patron.getPatronId().trim().isEmpty()) {
-            return false;
-        }
-        
-        if (patrons.containsKey(patron.getPatronId())) {
-            logger.warning("Patron with ID " + patron.getPatronId() + " already exists");
-            return false;
-        }
-        
-        patrons.put(patron.getPatronId(), patron);
-        notifyListeners(new LibraryEvent("PATRON_ADDED", 
-                "New patron registered", patron.getPatronId(), null));
-        return true;
+        return metrics.addPatron.time(() -> register(patron));
+    }
+    
+    // Bulk variant of addPatron, see addBooks
+    public List<Patron> addPatrons(Collection<Patron> newPatrons) {
+        return metrics.addPatrons.time(() -> registerAll(newPatrons));
+    }
+    
+    // Registers a guest record, see Patron.guestOf; unlike a patron it is announced to no listener
+    boolean addGuest(Patron home) {
+        return metrics.addPatron.time(() -> register(Patron.guestOf(home)));
     }
     
     public boolean updatePatron(String patronId, Patron updatedPatron) {
-        if (!patrons.containsKey(patronId) || updatedPatron == null) {
-            return false;
-        }
-        
-        Patron existingPatron = patrons.get(patronId);
-        existingPatron.setName(updatedPatron.getName());
-        existingPatron.setEmail(updatedPatron.getEmail());
-        existingPatron.setPhone(updatedPatron.getPhone());
-        
-        notifyListeners(new LibraryEvent("PATRON_UPDATED", 
-                "Patron information updated", patronId, null));
-        return true;
+        return metrics.updatePatron.time(() -> update(patronId, updatedPatron));
     }
     
     public Patron getPatron(String patronId) {
-        return patrons.get(patronId);
+        return metrics.getPatron.time(() -> findPatron(patronId));
     }
     
     public List<Patron> getAllPatrons() {
-        return new ArrayList<>(patrons.values());
+        return metrics.getAllPatrons.time(() -> new ArrayList<>(patrons.values()));
     }
     
-    // Lending operations
-    public boolean checkoutBook(String patronId, String isbn) {
-        Patron patron = patrons.get(patronId);
-        Book book = bookInventory.get(isbn);
-        
-        if (patron == null || book == null) {
-            logger.warning("Invalid patron ID or ISBN for checkout");
+    private boolean register(Patron patron) {
+        if (patron == null || patron.getPatronId() == null || patron.getPatronId().trim().isEmpty()) {
+            metrics.addPatron.fail(ServiceMetrics.INVALID);
             return false;
         }
         
-        if (!book.isAvailable()) {
-            logger.warning("Book " + isbn + " is not available");
-            return false;
+        long lsn;
+        Lock lock = patronLocks.lockFor(patron.getPatronId());
+        lock.lock();
+        try {
+            if (patrons.putIfAbsent(patron.getPatronId(), patron) != null) {
+                logger.warning("Patron with ID " + patron.getPatronId() + " already exists");
+                metrics.addPatron.fail(ServiceMetrics.DUPLICATE);
+                return false;
+            }
+            patronOrder.put(patron.getPatronId(), patron);
+            patron.useBookIds(bookIds);
+            lending.restoreLoans(patron);
+            versions.commitPatron(patron);
+            if (patron.isGuest()) {
+                lsn = effects.journal().guestAdded(patron);
+            } else {
+                lsn = effects.journal().patronAdded(patron);
+                effects.notify(EventType.PATRON_ADDED, patron.getPatronId(), null);
+            }
+        } finally {
+            lock.unlock();
         }
-        
-        if (!patron.canBorrowMore()) {
-            logger.warning("Patron " + patronId + " has reached borrowing limit");
+        effects.awaitDurable(lsn);
+        return true;
+    }
+    
+    private List<Patron> registerAll(Collection<Patron> newPatrons) {
+        List<Patron> rejected = new ArrayList<>();
+        long lsn = 0;
+        int added = 0;
+        for (Patron patron : newPatrons) {
+            if (patron == null || patron.getPatronId() == null || patron.getPatronId().trim().isEmpty()) {
+                metrics.addPatrons.fail(ServiceMetrics.INVALID);
+                rejected.add(patron);
+                continue;
+            }
+            Lock lock = patronLocks.lockFor(patron.getPatronId());
+            lock.lock();
+            try {
+                if (patrons.putIfAbsent(patron.getPatronId(), patron) != null) {
+                    metrics.addPatrons.fail(ServiceMetrics.DUPLICATE);
+                    rejected.add(patron);
+                    continue;
+                }
+                patronOrder.put(patron.getPatronId(), patron);
+                patron.useBookIds(bookIds);
+                lending.restoreLoans(patron);
+                versions.commitPatron(patron);
+                lsn = effects.journal().patronAdded(patron);
+                added++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (added > 0) {
+            effects.notify(EventType.PATRONS_BULK_ADDED, null, null, added);
+        }
+        effects.awaitDurable(lsn);
+        return rejected;
+    }
+    
+    private boolean update(String patronId, Patron updatedPatron) {
+        Patron existingPatron = findPatron(patronId);
+        if (existingPatron == null || updatedPatron == null) {
+            metrics.updatePatron.fail(existingPatron == null ? ServiceMetrics.UNKNOWN_PATRON : ServiceMetrics.INVALID);
             return false;
         }
         
-        book.setAvailable(false);
-        patron.borrowBook(isbn);
-        
-        notifyListeners(new LibraryEvent("BOOK_CHECKED_OUT", 
-                "Book checked out", patronId, isbn));
-        
+        long lsn;
+        Lock lock = patronLocks.lockFor(patronId);
+        lock.lock();
+        try {
+            existingPatron.setName(updatedPatron.getName());
+            existingPatron.setEmail(updatedPatron.getEmail());
+            existingPatron.setPhone(updatedPatron.getPhone());
+            versions.commitPatron(existingPatron);
+            lsn = effects.journal().patronUpdated(existingPatron);
+            
+            effects.notify(EventType.PATRON_UPDATED, patronId, null);
+        } finally {
+            lock.unlock();
+        }
+        effects.awaitDurable(lsn);
         return true;
     }
     
+    private Patron findPatron(String patronId) {
+        return patronId == null ? null : patrons.get(patronId);
+    }
+    
+    // Lending operations
+    public boolean checkoutBook(String patronId, String isbn) {
+        return metrics.checkoutBook.time(() -> lending.checkout(patronId, isbn));
+    }
+    
     public boolean returnBook(String patronId, String isbn) {
-        Patron patron = patrons.get(patronId);
-        Book book = bookInventory.get(isbn);
-        
-        if (patron == null || book == null) {
-            logger.warning("Invalid patron ID or ISBN for return");
-            return false;
+        return metrics.returnBook.time(() -> lending.checkin(patronId, isbn));
+    }
+    
+    /**
+     * Lends the patron a copy of each book in one pass for a kiosk or a
+     * librarian scanning a stack. The patron's lock and then the stripes of
+     * all the books, in ascending order, are taken once, the patron's limit
+     * is checked once for the whole batch, and listeners see the batch's
+     * events together. Returns one result per ISBN, in order; under
+     * ALL_OR_NOTHING nothing is lent unless every item can be, and the
+     * items that could have been are ABORTED. Failures are only counted in
+     * the metrics, not logged.
+     */
+    public LendingResult[] checkoutBooks(String patronId, List<String> isbns, BatchMode mode) {
+        return metrics.checkoutBooks.time(() -> lending.checkoutAll(patronId, isbns, mode));
+    }
+    
+    /**
+     * Returns the patron's copies of the books in one pass, taking the
+     * locks once and notifying listeners once as checkoutBooks does. Items
+     * the patron has not borrowed are NOT_BORROWED; under ALL_OR_NOTHING
+     * nothing is returned unless every item can be.
+     */
+    public LendingResult[] returnBooks(String patronId, List<String> isbns, BatchMode mode) {
+        return metrics.returnBooks.time(() -> lending.checkinAll(patronId, isbns, mode));
+    }
+    
+    /**
+     * Sets the number of copies of a catalogued book. Copies taken away must
+     * be on the shelf; returns false when there aren't that many.
+     */
+    public boolean setBookCopies(String isbn, int copies) {
+        return metrics.setBookCopies.time(() -> lending.setCopies(isbn, copies));
+    }
+    
+    // Due dates, renewals and holds
+    public LendingPolicy getLendingPolicy() {
+        return lending.getLendingPolicy();
+    }
+    
+    // Applies to loans and holds from now on; existing due dates and pickup deadlines stay as they are
+    public void setLendingPolicy(LendingPolicy policy) {
+        lending.setLendingPolicy(policy);
+    }
+    
+    public Loan getLoan(String patronId, String isbn) {
+        return lending.loan(patronId, isbn);
+    }
+    
+    public List<Loan> getLoans(String patronId) {
+        return lending.loans(patronId);
+    }
+    
+    // Loans whose BOOK_OVERDUE event has fired and that are still out
+    public List<Loan> getOverdueLoans() {
+        return lending.overdueLoans();
+    }
+    
+    // Refused when the patron doesn't have the book, others are waiting for it, or no renewals are left
+    public boolean renewLoan(String patronId, String isbn) {
+        return metrics.renewLoan.time(() -> lending.renew(patronId, isbn));
+    }
+    
+    /**
+     * Puts the patron in line for a title with no copy on the shelf. Each
+     * returned copy is set aside for the first patron in line, who is sent
+     * HOLD_READY and has the pickup period to check it out before it passes
+     * to the next.
+     */
+    public boolean placeHold(String patronId, String isbn) {
+        return metrics.placeHold.time(() -> lending.placeHold(patronId, isbn));
+    }
+    
+    public boolean cancelHold(String patronId, String isbn) {
+        return metrics.cancelHold.time(() -> lending.cancelHold(patronId, isbn));
+    }
+    
+    // Patrons with a copy set aside first, then those waiting
+    public List<String> getHoldQueue(String isbn) {
+        return lending.holdQueue(isbn);
+    }
+    
+    /**
+     * Fires BOOK_OVERDUE for loans that passed their due date and
+     * HOLD_EXPIRED for pickups that lapsed, passing those copies on to the
+     * next in line or back to the shelf. Run by the expiry timer; can also
+     * be called directly, e.g. with a simulated clock. Returns the number
+     * of expirations applied.
+     */
+    public int processExpirations() {
+        return metrics.processExpirations.time(lending::processExpirations);
+    }
+    
+    // Calls processExpirations once per wheel tick on a daemon thread
+    public synchronized void startExpiryTimer() {
+        if (expiryTimer != null) {
+            return;
         }
-        
-        if (!patron.getCurrentlyBorrowed().contains(isbn)) {
-            logger.warning("Patron " + patronId + " has not borrowed book " + isbn);
-            return false;
+        expiryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "library-expiry-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiryTimer.scheduleAtFixedRate(() -> {
+            try {
+                processExpirations();
+            } catch (RuntimeException e) {
+                logger.warning("Processing expirations failed: " + e);
+            }
+        }, Circulation.TICK_MILLIS, Circulation.TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    public synchronized void stopExpiryTimer() {
+        if (expiryTimer != null) {
+            expiryTimer.shutdown();
+            expiryTimer = null;
         }
-        
-        book.setAvailable(true);
-        patron.returnBook(isbn);
-        
-        notifyListeners(new LibraryEvent("BOOK_RETURNED", 
-                "Book returned", patronId, isbn));
-        
-        return true;
     }
     
     // Inventory reporting
+    public InventoryReport getInventorySummary() {
+        return metrics.getInventorySummary.time(catalog.availabilityIndex::report);
+    }
+    
+    // Kept for existing callers; counts beyond Integer.MAX_VALUE are clamped, use getInventorySummary instead
     public Map<String, Integer> getInventoryReport() {
+        return inventoryReport(getInventorySummary());
+    }
+    
+    static Map<String, Integer> inventoryReport(InventoryReport summary) {
         Map<String, Integer> report = new HashMap<>();
-        long totalBooks = bookInventory.size();
-        long availableBooks = bookInventory.values().stream()
-                .mapToLong(book -> book.isAvailable() ? 1 : 0)
-                .sum();
-        long borrowedBooks = totalBooks - availableBooks;
-        
-        report.put("total", (int) totalBooks);
-        report.put("available", (int) availableBooks);
-        report.put("borrowed", (int) borrowedBooks);
-        
+        report.put("total", clamp(summary.getTotalBooks()));
+        report.put("available", clamp(summary.getAvailableBooks()));
+        report.put("borrowed", clamp(summary.getBorrowedBooks()));
+        report.put("totalCopies", clamp(summary.getTotalCopies()));
+        report.put("availableCopies", clamp(summary.getAvailableCopies()));
+        report.put("borrowedCopies", clamp(summary.getBorrowedCopies()));
         return report;
     }
     
+    private static int clamp(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+    
     public List<Book> getBorrowedBooks() {
-        return bookInventory.values().stream()
-                .filter(book -> !book.isAvailable())
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        return metrics.getBorrowedBooks.time(catalog.availabilityIndex::borrowedBooks);
     }
-}
\ No newline at end of file
+}
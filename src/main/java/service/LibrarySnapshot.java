@@ -0,0 +1,169 @@
+package main.java.service;
+
+import java.util.*;
+
+import main.java.model.Book;
+import main.java.model.InventoryReport;
+import main.java.model.Patron;
+import main.java.strategy.SearchStrategy;
+
+/**
+ * Point-in-time view of the books, patrons and loans of a LibraryService,
+ * as left by every mutation committed before it was opened and none after.
+ * Reading it takes no lock that lending needs, however long it runs. The
+ * books and patrons it returns are detached copies; close it so the
+ * versions it holds on to can be reclaimed.
+ */
+public class LibrarySnapshot implements AutoCloseable {
+    private final VersionStore store;
+    private final VersionStore.Reader reader;
+    private final long stamp;
+    private volatile boolean closed;
+    
+    LibrarySnapshot(VersionStore store, VersionStore.Reader reader, long stamp) {
+        this.store = store;
+        this.reader = reader;
+        this.stamp = stamp;
+    }
+    
+    // Commit stamp the snapshot reads at; later snapshots have equal or higher ones
+    public long getVersion() {
+        return stamp;
+    }
+    
+    // In the order the books were first catalogued
+    public List<Book> getBooks() {
+        checkOpen();
+        List<Book> books = new ArrayList<>();
+        for (int id = 0, limit = store.bookIdLimit(); id < limit; id++) {
+            VersionStore.BookVersion version = store.book(id, stamp);
+            if (version != null && !version.removed) {
+                books.add(copyOf(version));
+            }
+        }
+        return books;
+    }
+    
+    // Any spelling of the ISBN is recognized, as by the service
+    public Book getBook(String isbn) {
+        checkOpen();
+        if (isbn == null) {
+            return null;
+        }
+        VersionStore.BookVersion version = store.book(store.bookIds.lookup(isbn), stamp);
+        return version == null || version.removed ? null : copyOf(version);
+    }
+    
+    // In patron ID order
+    public List<Patron> getPatrons() {
+        checkOpen();
+        List<VersionStore.PatronVersion> versions = new ArrayList<>();
+        for (VersionStore.PatronVersion chain : store.patronChains()) {
+            VersionStore.PatronVersion version = VersionStore.visible(chain, stamp);
+            if (version != null) {
+                versions.add(version);
+            }
+        }
+        versions.sort(Comparator.comparing(version -> version.patronId));
+        List<Patron> patrons = new ArrayList<>(versions.size());
+        for (VersionStore.PatronVersion version : versions) {
+            patrons.add(copyOf(version));
+        }
+        return patrons;
+    }
+    
+    public Patron getPatron(String patronId) {
+        checkOpen();
+        if (patronId == null) {
+            return null;
+        }
+        VersionStore.PatronVersion version = store.patron(patronId, stamp);
+        return version == null ? null : copyOf(version);
+    }
+    
+    // ISBNs on loan per patron ID, for patrons with at least one loan
+    public Map<String, Set<String>> getLoans() {
+        checkOpen();
+        Map<String, Set<String>> loans = new TreeMap<>();
+        for (VersionStore.PatronVersion chain : store.patronChains()) {
+            VersionStore.PatronVersion version = VersionStore.visible(chain, stamp);
+            if (version == null || version.loans.length == 0) {
+                continue;
+            }
+            Set<String> isbns = new HashSet<>();
+            for (int bookId : version.loans) {
+                isbns.add(store.bookIds.isbnOf(bookId));
+            }
+            loans.put(version.patronId, Collections.unmodifiableSet(isbns));
+        }
+        return loans;
+    }
+    
+    public InventoryReport getInventorySummary() {
+        checkOpen();
+        long total = 0;
+        long available = 0;
+        long copies = 0;
+        long availableCopies = 0;
+        for (int id = 0, limit = store.bookIdLimit(); id < limit; id++) {
+            VersionStore.BookVersion version = store.book(id, stamp);
+            if (version != null && !version.removed) {
+                total++;
+                copies += version.copies;
+                availableCopies += version.availableCopies;
+                if (version.availableCopies > 0) {
+                    available++;
+                }
+            }
+        }
+        return new InventoryReport(total, available, total - available, copies, availableCopies);
+    }
+    
+    /**
+     * Runs the strategy over the snapshot's books. Indexed strategies are
+     * swapped for their unindexed form, since the live index already
+     * reflects later mutations.
+     */
+    public List<Book> searchBooks(SearchStrategy strategy, String query) {
+        checkOpen();
+        if (query == null || query.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return strategy.unindexed().search(getBooks(), query);
+    }
+    
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            store.close(reader);
+        }
+    }
+    
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Snapshot is closed");
+        }
+    }
+    
+    private static Book copyOf(VersionStore.BookVersion version) {
+        Book book = new Book(version.isbn, version.title, version.author, version.publicationYear);
+        book.setCopies(version.copies);
+        book.setAvailableCopies(version.availableCopies);
+        return book;
+    }
+    
+    private Patron copyOf(VersionStore.PatronVersion version) {
+        Patron patron = new Patron(version.patronId, version.name, version.email, version.phone);
+        if (version.guest) {
+            patron = Patron.guestOf(patron);
+        } else {
+            patron.setMaxBooksAllowed(version.maxBooksAllowed);
+        }
+        version.history.forEach(patron::addToBorrowingHistory);
+        for (int bookId : version.loans) {
+            patron.restoreLoan(store.bookIds.isbnOf(bookId));
+        }
+        return patron;
+    }
+}
@@ -0,0 +1,154 @@
+package main.java.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import main.java.index.IsbnIndex;
+import main.java.model.Book;
+import main.java.model.Page;
+import main.java.model.Patron;
+import main.java.query.BookQuery;
+import main.java.strategy.SearchStrategy;
+
+/**
+ * Cursor-paged and streaming listings over the live catalog and patrons.
+ * Nothing is locked; a page reflects the indexes as they were while it
+ * was read, and its cursor is a key, so changes made between pages are
+ * seen or skipped consistently.
+ */
+final class Listings {
+    private final BookCatalog catalog;
+    private final NavigableMap<String, Patron> patronOrder;
+    
+    Listings(BookCatalog catalog, NavigableMap<String, Patron> patronOrder) {
+        this.catalog = catalog;
+        this.patronOrder = patronOrder;
+    }
+    
+    Page<Book> books(int limit, String cursor) {
+        checkLimit(limit);
+        List<Book> books = catalog.isbnIndex.pageAfter(PageCursor.decode(PageCursor.BOOKS, cursor), limit + 1);
+        return isbnPage(books, limit, PageCursor.BOOKS);
+    }
+    
+    Page<Patron> patrons(int limit, String cursor) {
+        checkLimit(limit);
+        String after = PageCursor.decode(PageCursor.PATRONS, cursor);
+        NavigableMap<String, Patron> tail = after == null ? patronOrder : patronOrder.tailMap(after, false);
+        List<Patron> page = new ArrayList<>(Math.min(limit, 1024));
+        String next = null;
+        for (Patron patron : tail.values()) {
+            if (page.size() == limit) {
+                next = PageCursor.encode(PageCursor.PATRONS, page.get(limit - 1).getPatronId());
+                break;
+            }
+            page.add(patron);
+        }
+        return new Page<>(page, next);
+    }
+    
+    Page<Book> availableBooks(int limit, String cursor) {
+        checkLimit(limit);
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        int next = catalog.availabilityIndex.availableBooks(idCursor(PageCursor.AVAILABLE, cursor), limit, page);
+        return new Page<>(page, next < 0 ? null : PageCursor.encode(PageCursor.AVAILABLE, Integer.toString(next)));
+    }
+    
+    Page<Book> borrowedBooks(int limit, String cursor) {
+        checkLimit(limit);
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        int next = catalog.availabilityIndex.borrowedBooks(idCursor(PageCursor.BORROWED, cursor), limit, page);
+        return new Page<>(page, next < 0 ? null : PageCursor.encode(PageCursor.BORROWED, Integer.toString(next)));
+    }
+    
+    // Only limit + 1 matches are held at any time
+    Page<Book> search(SearchStrategy strategy, String query, int limit, String cursor) {
+        checkLimit(limit);
+        String after = PageCursor.decode(PageCursor.SEARCH, cursor);
+        if (query == null || query.trim().isEmpty()) {
+            return new Page<>(new ArrayList<>(), null);
+        }
+        return catalog.searchCache.get(strategy, query, limit, after,
+                () -> selectPage(strategy.stream(catalog.inventory.values(), query), limit, after, PageCursor.SEARCH));
+    }
+    
+    Page<Book> find(BookQuery query, int limit, String cursor) {
+        checkLimit(limit);
+        String after = PageCursor.decode(PageCursor.QUERY, cursor);
+        if (query == null) {
+            return new Page<>(new ArrayList<>(), null);
+        }
+        return selectPage(catalog.queryEngine.stream(query), limit, after, PageCursor.QUERY);
+    }
+    
+    Stream<Book> streamBooks() {
+        return catalog.isbnIndex.stream();
+    }
+    
+    Stream<Patron> streamPatrons() {
+        return patronOrder.values().stream();
+    }
+    
+    Stream<Book> streamAvailableBooks() {
+        return catalog.availabilityIndex.streamAvailableBooks();
+    }
+    
+    Stream<Book> streamBorrowedBooks() {
+        return catalog.availabilityIndex.streamBorrowedBooks();
+    }
+    
+    Stream<Book> streamSearchResults(SearchStrategy strategy, String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return Stream.empty();
+        }
+        return strategy.stream(catalog.inventory.values(), query);
+    }
+    
+    private static Page<Book> selectPage(Stream<Book> matches, int limit, String after, char listing) {
+        // Bounded selection of the smallest keys after the cursor instead of sorting every match
+        TreeMap<String, Book> best = new TreeMap<>();
+        matches.forEach(book -> {
+            String key = IsbnIndex.canonicalize(book.getIsbn());
+            if (after != null && key.compareTo(after) <= 0) {
+                return;
+            }
+            if (best.size() <= limit || key.compareTo(best.lastKey()) < 0) {
+                best.put(key, book);
+                if (best.size() > limit + 1) {
+                    best.pollLastEntry();
+                }
+            }
+        });
+        return isbnPage(new ArrayList<>(best.values()), limit, listing);
+    }
+    
+    // books holds up to limit + 1 entries in canonical ISBN order; the extra one only signals another page
+    private static Page<Book> isbnPage(List<Book> books, int limit, char listing) {
+        if (books.size() <= limit) {
+            return new Page<>(books, null);
+        }
+        List<Book> page = books.subList(0, limit);
+        return new Page<>(page, PageCursor.encode(listing, IsbnIndex.canonicalize(page.get(limit - 1).getIsbn())));
+    }
+    
+    private static int idCursor(char listing, String cursor) {
+        String id = PageCursor.decode(listing, cursor);
+        if (id == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed page cursor: " + cursor);
+        }
+    }
+    
+    private static void checkLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+    }
+}
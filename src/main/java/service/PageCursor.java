@@ -0,0 +1,43 @@
+package main.java.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation tokens. A cursor carries the sort key of the last
+ * item handed out, tagged with the listing it came from so a cursor of one
+ * listing is rejected by another.
+ */
+final class PageCursor {
+    static final char BOOKS = 'b';
+    static final char PATRONS = 'p';
+    static final char AVAILABLE = 'a';
+    static final char BORROWED = 'o';
+    static final char SEARCH = 's';
+    static final char QUERY = 'q';
+    
+    private PageCursor() {
+    }
+    
+    static String encode(char listing, String key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((listing + key).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    // The key to continue after, or null for the first page
+    static String decode(char listing, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page cursor: " + cursor);
+        }
+        if (value.isEmpty() || value.charAt(0) != listing) {
+            throw new IllegalArgumentException("Page cursor belongs to a different listing: " + cursor);
+        }
+        return value.substring(1);
+    }
+}
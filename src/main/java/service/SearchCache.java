@@ -0,0 +1,316 @@
+package main.java.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import main.java.index.IsbnIndex;
+import main.java.index.TextIndex;
+import main.java.model.Book;
+import main.java.model.Page;
+import main.java.strategy.SearchStrategy;
+
+/**
+ * Search results keyed by strategy, normalized query and page, in LRU
+ * segments that share one bound on the number of book references held.
+ * A put evicts the least recently used entries of its own segment until
+ * the cache is back under the bound, so eviction is close to, not exactly,
+ * global LRU. No single result may take more than an eighth of the bound.
+ *
+ * Entries of the service's own title, author and ISBN strategies go stale
+ * only when a changed book matches their query, and fuzzy results on every
+ * catalog change; results of any other strategy go stale on every change,
+ * availability included, since nothing is known about what they depend on.
+ *
+ * Invalidation is lazy, so it costs the writer, who may hold a book lock,
+ * a slot in a ring of recent changes rather than a sweep of the segments.
+ * Each entry remembers the last change it was checked against; a hit first
+ * checks it against the changes since, and drops the entry if one matches
+ * its query or if those changes have already left the ring. A load is
+ * checked the same way against the changes made while it ran, so a result
+ * computed before a change to its books is not stored after it, while
+ * loads of unrelated queries are kept.
+ */
+final class SearchCache {
+    // Set -Dlibrary.searchCacheSize=0 to disable the cache
+    static final long DEFAULT_MAX_WEIGHT = Long.getLong("library.searchCacheSize", 1024 * 1024);
+    private static final int SEGMENTS = 16;
+    // Changes remembered for checking entries; older entries are dropped on their next hit
+    private static final int CHANGE_LOG = 256;
+    
+    private enum Field { TITLE, AUTHOR, ISBN, FUZZY, OTHER }
+    
+    private final SearchStrategy titleStrategy;
+    private final SearchStrategy authorStrategy;
+    private final SearchStrategy isbnStrategy;
+    private final SearchStrategy fuzzyStrategy;
+    private final Segment[] segments;
+    private final long maxWeight;
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicReferenceArray<Change> changes = new AtomicReferenceArray<>(CHANGE_LOG);
+    private volatile long lastChange;
+    private final AtomicLong otherVersion = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    
+    SearchCache(long maxWeight, SearchStrategy titleStrategy, SearchStrategy authorStrategy,
+                SearchStrategy isbnStrategy, SearchStrategy fuzzyStrategy) {
+        this.maxWeight = Math.max(0, maxWeight);
+        this.titleStrategy = titleStrategy;
+        this.authorStrategy = authorStrategy;
+        this.isbnStrategy = isbnStrategy;
+        this.fuzzyStrategy = fuzzyStrategy;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+    
+    /**
+     * Cached result for the query, or the loader's result, which is stored
+     * unless the catalog changed while it ran. limit 0 stands for the full
+     * result list, otherwise the page of that size after the cursor.
+     */
+    Page<Book> get(SearchStrategy strategy, String query, int limit, String cursor, Supplier<Page<Book>> loader) {
+        if (maxWeight == 0) {
+            return loader.get();
+        }
+        Key key = key(strategy, query, limit, cursor);
+        Segment segment = segmentFor(key);
+        Page<Book> cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        long loadChange = lastChange;
+        long loadOtherVersion = otherVersion.get();
+        Page<Book> loaded = loader.get();
+        segment.put(key, loaded, loadChange, loadOtherVersion);
+        return loaded;
+    }
+    
+    // A book was added, removed, or had these field values before or after an update
+    void invalidate(String isbn, String title, String author) {
+        record(isbn == null ? null : IsbnIndex.canonicalize(isbn),
+                title == null ? null : TextIndex.normalize(title),
+                author == null ? null : TextIndex.normalize(author), false);
+    }
+    
+    // Loans don't change which books a built-in strategy returns, only whether they are available
+    void invalidateAvailability() {
+        otherVersion.incrementAndGet();
+    }
+    
+    void clear() {
+        record(null, null, null, true);
+    }
+    
+    // Called after the change is applied, so a load that sees this change's stamp also sees the change
+    private synchronized void record(String isbn, String title, String author, boolean all) {
+        long stamp = lastChange + 1;
+        changes.set((int) (stamp & (CHANGE_LOG - 1)), new Change(stamp, isbn, title, author, all));
+        lastChange = stamp;
+    }
+    
+    // Whether a change after since, up to until, may have altered the key's result
+    private boolean changedBetween(Key key, long since, long until) {
+        for (long stamp = since + 1; stamp <= until; stamp++) {
+            Change change = changes.get((int) (stamp & (CHANGE_LOG - 1)));
+            // A later change took the slot, so there is no telling what this one was
+            if (change.stamp != stamp || change.all || key.matches(change.isbn, change.title, change.author)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    SearchCacheStats stats() {
+        long entries = 0;
+        for (Segment segment : segments) {
+            entries += segment.size();
+        }
+        return new SearchCacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(),
+                entries, weight.get(), maxWeight);
+    }
+    
+    private Key key(SearchStrategy strategy, String query, int limit, String cursor) {
+        Field field = strategy == titleStrategy ? Field.TITLE
+                : strategy == authorStrategy ? Field.AUTHOR
+                : strategy == isbnStrategy ? Field.ISBN
+                : strategy == fuzzyStrategy ? Field.FUZZY
+                : Field.OTHER;
+        String normalized;
+        boolean prefix = false;
+        switch (field) {
+            case TITLE:
+            case AUTHOR:
+                normalized = TextIndex.normalize(query);
+                break;
+            case ISBN:
+                // Same normalization as ISBNSearchStrategy, so every spelling shares one entry
+                prefix = query.endsWith("*");
+                normalized = prefix
+                        ? IsbnIndex.canonicalizePrefix(query.substring(0, query.length() - 1))
+                        : IsbnIndex.canonicalize(query);
+                break;
+            default:
+                normalized = query;
+        }
+        return new Key(strategy, field, normalized, prefix, limit, cursor);
+    }
+    
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+    
+    private static long weightOf(Page<Book> page) {
+        return 1 + page.getItems().size();
+    }
+    
+    // Normalized values of a changed book, or every entry for all
+    private static final class Change {
+        final long stamp;
+        final String isbn;
+        final String title;
+        final String author;
+        final boolean all;
+        
+        Change(long stamp, String isbn, String title, String author, boolean all) {
+            this.stamp = stamp;
+            this.isbn = isbn;
+            this.title = title;
+            this.author = author;
+            this.all = all;
+        }
+    }
+    
+    private static final class Cached {
+        final Page<Book> page;
+        final long otherVersion;
+        // The last change the entry is known to have survived
+        long checked;
+        
+        Cached(Page<Book> page, long checked, long otherVersion) {
+            this.page = page;
+            this.checked = checked;
+            this.otherVersion = otherVersion;
+        }
+    }
+    
+    private static final class Key {
+        private final SearchStrategy strategy;
+        private final Field field;
+        private final String query;
+        private final boolean prefix;
+        private final int limit;
+        private final String cursor;
+        private final int hash;
+        
+        Key(SearchStrategy strategy, Field field, String query, boolean prefix, int limit, String cursor) {
+            this.strategy = strategy;
+            this.field = field;
+            this.query = query;
+            this.prefix = prefix;
+            this.limit = limit;
+            this.cursor = cursor;
+            this.hash = Objects.hash(System.identityHashCode(strategy), query, prefix, limit, cursor);
+        }
+        
+        // Whether a book with these normalized values is, or was, part of this result
+        boolean matches(String isbn, String title, String author) {
+            switch (field) {
+                case TITLE:
+                    return title != null && title.contains(query);
+                case AUTHOR:
+                    return author != null && author.contains(query);
+                case ISBN:
+                    return isbn != null && (prefix ? isbn.startsWith(query) : isbn.equals(query));
+                default:
+                    return true;
+            }
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return strategy == other.strategy && prefix == other.prefix && limit == other.limit
+                    && query.equals(other.query) && Objects.equals(cursor, other.cursor);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    // Access-ordered map; the eldest entries go first once the cache is over its weight
+    private final class Segment {
+        private final Map<Key, Cached> entries = new LinkedHashMap<>(64, 0.75f, true);
+        
+        synchronized Page<Book> get(Key key) {
+            Cached entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            long until = lastChange;
+            if (entry.checked != until) {
+                if (changedBetween(key, entry.checked, until)) {
+                    drop(key, entry);
+                    return null;
+                }
+                entry.checked = until;
+            }
+            if (key.field == Field.OTHER && entry.otherVersion != otherVersion.get()) {
+                drop(key, entry);
+                return null;
+            }
+            return entry.page;
+        }
+        
+        synchronized void put(Key key, Page<Book> page, long loadChange, long loadOtherVersion) {
+            long entryWeight = weightOf(page);
+            long until = lastChange;
+            if (entryWeight > maxWeight / 8 || changedBetween(key, loadChange, until)
+                    || (key.field == Field.OTHER && otherVersion.get() != loadOtherVersion)) {
+                return;
+            }
+            Cached previous = entries.put(key, new Cached(page, until, loadOtherVersion));
+            if (previous != null) {
+                weight.addAndGet(-weightOf(previous.page));
+            }
+            weight.addAndGet(entryWeight);
+            Iterator<Map.Entry<Key, Cached>> eldest = entries.entrySet().iterator();
+            while (weight.get() > maxWeight && entries.size() > 1) {
+                Map.Entry<Key, Cached> entry = eldest.next();
+                weight.addAndGet(-weightOf(entry.getValue().page));
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        
+        synchronized int size() {
+            return entries.size();
+        }
+        
+        private void drop(Key key, Cached entry) {
+            entries.remove(key);
+            weight.addAndGet(-weightOf(entry.page));
+            invalidations.increment();
+        }
+    }
+}
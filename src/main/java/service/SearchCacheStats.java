@@ -0,0 +1,42 @@
+package main.java.service;
+
+public class SearchCacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final long entries;
+    private final long weight;
+    private final long maxWeight;
+    
+    public SearchCacheStats(long hits, long misses, long evictions, long invalidations,
+                            long entries, long weight, long maxWeight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.entries = entries;
+        this.weight = weight;
+        this.maxWeight = maxWeight;
+    }
+    
+    // Getters
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getEvictions() { return evictions; }
+    public long getInvalidations() { return invalidations; }
+    public long getEntries() { return entries; }
+    public long getWeight() { return weight; }
+    public long getMaxWeight() { return maxWeight; }
+    
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SearchCacheStats{hitRate=%.3f, hits=%d, misses=%d, evictions=%d, invalidations=%d, entries=%d, weight=%d/%d}",
+                getHitRate(), hits, misses, evictions, invalidations, entries, weight, maxWeight);
+    }
+}
@@ -0,0 +1,111 @@
+package main.java.service;
+
+import main.java.metrics.LibraryMetrics;
+import main.java.metrics.OperationMetrics;
+
+/**
+ * The OperationMetrics of every public LibraryService operation, resolved
+ * once so the hot paths never touch the registry map.
+ */
+final class ServiceMetrics {
+    // Failure reasons
+    static final String UNKNOWN_PATRON = "unknown_patron";
+    static final String UNKNOWN_BOOK = "unknown_book";
+    static final String UNAVAILABLE = "unavailable";
+    static final String LIMIT_REACHED = "limit_reached";
+    static final String NOT_BORROWED = "not_borrowed";
+    static final String DUPLICATE = "duplicate";
+    static final String INVALID = "invalid";
+    static final String HOLDS_WAITING = "holds_waiting";
+    static final String AVAILABLE = "available";
+    static final String NO_HOLD = "no_hold";
+    static final String ABORTED = "aborted";
+    
+    final LibraryMetrics registry;
+    final OperationMetrics addBook;
+    final OperationMetrics addBooks;
+    final OperationMetrics removeBook;
+    final OperationMetrics updateBook;
+    final OperationMetrics getBook;
+    final OperationMetrics getAllBooks;
+    final OperationMetrics getAvailableBooks;
+    final OperationMetrics searchBooks;
+    final OperationMetrics searchBooksByTitle;
+    final OperationMetrics searchBooksByAuthor;
+    final OperationMetrics searchBooksByISBN;
+    final OperationMetrics searchBooksByISBNPrefix;
+    final OperationMetrics searchBooksByISBNRange;
+    final OperationMetrics searchBooksFuzzy;
+    final OperationMetrics findBooks;
+    final OperationMetrics addPatron;
+    final OperationMetrics addPatrons;
+    final OperationMetrics updatePatron;
+    final OperationMetrics getPatron;
+    final OperationMetrics getAllPatrons;
+    final OperationMetrics checkoutBook;
+    final OperationMetrics returnBook;
+    final OperationMetrics checkoutBooks;
+    final OperationMetrics returnBooks;
+    final OperationMetrics getInventorySummary;
+    final OperationMetrics getBorrowedBooks;
+    final OperationMetrics openSnapshot;
+    final OperationMetrics renewLoan;
+    final OperationMetrics placeHold;
+    final OperationMetrics cancelHold;
+    final OperationMetrics processExpirations;
+    final OperationMetrics setBookCopies;
+    final OperationMetrics getAllBooksPage;
+    final OperationMetrics getAllPatronsPage;
+    final OperationMetrics getAvailableBooksPage;
+    final OperationMetrics getBorrowedBooksPage;
+    final OperationMetrics searchBooksPage;
+    final OperationMetrics searchBooksByTitlePage;
+    final OperationMetrics searchBooksByAuthorPage;
+    final OperationMetrics searchBooksByISBNPage;
+    final OperationMetrics findBooksPage;
+    
+    ServiceMetrics(LibraryMetrics registry) {
+        this.registry = registry;
+        this.addBook = registry.operation("addBook");
+        this.addBooks = registry.operation("addBooks");
+        this.removeBook = registry.operation("removeBook");
+        this.updateBook = registry.operation("updateBook");
+        this.getBook = registry.operation("getBook");
+        this.getAllBooks = registry.operation("getAllBooks");
+        this.getAvailableBooks = registry.operation("getAvailableBooks");
+        this.searchBooks = registry.operation("searchBooks");
+        this.searchBooksByTitle = registry.operation("searchBooksByTitle");
+        this.searchBooksByAuthor = registry.operation("searchBooksByAuthor");
+        this.searchBooksByISBN = registry.operation("searchBooksByISBN");
+        this.searchBooksByISBNPrefix = registry.operation("searchBooksByISBNPrefix");
+        this.searchBooksByISBNRange = registry.operation("searchBooksByISBNRange");
+        this.searchBooksFuzzy = registry.operation("searchBooksFuzzy");
+        this.findBooks = registry.operation("findBooks");
+        this.addPatron = registry.operation("addPatron");
+        this.addPatrons = registry.operation("addPatrons");
+        this.updatePatron = registry.operation("updatePatron");
+        this.getPatron = registry.operation("getPatron");
+        this.getAllPatrons = registry.operation("getAllPatrons");
+        this.checkoutBook = registry.operation("checkoutBook");
+        this.returnBook = registry.operation("returnBook");
+        this.checkoutBooks = registry.operation("checkoutBooks");
+        this.returnBooks = registry.operation("returnBooks");
+        this.getInventorySummary = registry.operation("getInventorySummary");
+        this.getBorrowedBooks = registry.operation("getBorrowedBooks");
+        this.openSnapshot = registry.operation("openSnapshot");
+        this.renewLoan = registry.operation("renewLoan");
+        this.placeHold = registry.operation("placeHold");
+        this.cancelHold = registry.operation("cancelHold");
+        this.processExpirations = registry.operation("processExpirations");
+        this.setBookCopies = registry.operation("setBookCopies");
+        this.getAllBooksPage = registry.operation("getAllBooks.page");
+        this.getAllPatronsPage = registry.operation("getAllPatrons.page");
+        this.getAvailableBooksPage = registry.operation("getAvailableBooks.page");
+        this.getBorrowedBooksPage = registry.operation("getBorrowedBooks.page");
+        this.searchBooksPage = registry.operation("searchBooks.page");
+        this.searchBooksByTitlePage = registry.operation("searchBooksByTitle.page");
+        this.searchBooksByAuthorPage = registry.operation("searchBooksByAuthor.page");
+        this.searchBooksByISBNPage = registry.operation("searchBooksByISBN.page");
+        this.findBooksPage = registry.operation("findBooks.page");
+    }
+}
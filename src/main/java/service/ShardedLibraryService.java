@@ -0,0 +1,570 @@
+package main.java.service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntFunction;
+
+import main.java.index.IsbnIndex;
+import main.java.model.Book;
+import main.java.model.InventoryReport;
+import main.java.model.IsbnDictionary;
+import main.java.model.Loan;
+import main.java.model.Page;
+import main.java.model.Patron;
+import main.java.observer.EventType;
+import main.java.observer.LibraryEventListener;
+import main.java.query.BookQuery;
+import main.java.strategy.SearchStrategy;
+
+/**
+ * A library split across partitions, one LibraryService each, such as the
+ * branches of a library system run in one process. Books live in the
+ * partition their canonical ISBN hashes to and patrons in the one their ID
+ * hashes to. Jump consistent hashing keeps that mapping stable, and moves
+ * as few keys as possible should the number of partitions change.
+ *
+ * Single-key operations go straight to their partition. Listings, searches
+ * and reports are scattered over a fork-join pool and merged; pages are
+ * merged in the same order and with the same cursors as a single
+ * service's, so a page reads at most limit items from each partition.
+ *
+ * A patron borrowing from another partition gets a guest record there that
+ * holds those loans; guests are neither announced as new patrons nor shown
+ * in patron listings. The borrowing limit of the home record counts loans
+ * in every partition, so checkouts of one patron are serialized here.
+ * getPatron returns the home record, whose loans are the home partition's
+ * only; getLoans lists them all.
+ *
+ * Partitions must only be changed through this class. Each can be made
+ * durable on its own with LibraryPersistence.
+ */
+public class ShardedLibraryService implements AutoCloseable {
+    private final LibraryService[] partitions;
+    private final ForkJoinPool pool;
+    private final StripedLocks patronLocks;
+    
+    public ShardedLibraryService(int partitions) {
+        this(newPartitions(partitions));
+    }
+    
+    // The partitions must share one IsbnDictionary, as those newPartition creates do
+    public ShardedLibraryService(List<LibraryService> partitions) {
+        if (partitions.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition is required");
+        }
+        for (LibraryService partition : partitions) {
+            if (partition.getBookIds() != partitions.get(0).getBookIds()) {
+                throw new IllegalArgumentException("Partitions must share one IsbnDictionary; create them with newPartition");
+            }
+        }
+        this.partitions = partitions.toArray(new LibraryService[0]);
+        this.pool = new ForkJoinPool(Math.min(this.partitions.length, Runtime.getRuntime().availableProcessors()));
+        this.patronLocks = new StripedLocks(64);
+    }
+    
+    private static List<LibraryService> newPartitions(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one partition is required: " + count);
+        }
+        List<LibraryService> partitions = new ArrayList<>(count);
+        IsbnDictionary bookIds = new IsbnDictionary();
+        for (int i = 0; i < count; i++) {
+            partitions.add(newPartition(Clock.systemUTC(), bookIds));
+        }
+        return partitions;
+    }
+    
+    // A partition whose book IDs agree with those of the others created with the same dictionary
+    public static LibraryService newPartition(Clock clock, IsbnDictionary bookIds) {
+        return new LibraryService(clock, bookIds);
+    }
+    
+    public List<LibraryService> getPartitions() {
+        return Collections.unmodifiableList(Arrays.asList(partitions));
+    }
+    
+    public int partitionForBook(String isbn) {
+        return jumpHash(mix(IsbnIndex.canonicalize(isbn).hashCode()), partitions.length);
+    }
+    
+    public int partitionForPatron(String patronId) {
+        return jumpHash(mix(patronId.hashCode()), partitions.length);
+    }
+    
+    public void addEventListener(LibraryEventListener listener) {
+        for (LibraryService partition : partitions) {
+            partition.addEventListener(listener);
+        }
+    }
+    
+    public void addEventListener(LibraryEventListener listener, EventType type, EventType... more) {
+        for (LibraryService partition : partitions) {
+            partition.addEventListener(listener, type, more);
+        }
+    }
+    
+    public void setSearchStrategy(SearchStrategy strategy) {
+        for (LibraryService partition : partitions) {
+            partition.setSearchStrategy(strategy);
+        }
+    }
+    
+    // Book management
+    public boolean addBook(Book book) {
+        return bookPartition(book.getIsbn()).addBook(book);
+    }
+    
+    // Each partition adds its share in parallel; returns the books rejected
+    public List<Book> addBooks(Collection<Book> books) {
+        List<List<Book>> shares = split(books, book -> partitionForBook(book.getIsbn()));
+        return concat(scatter(i -> shares.get(i).isEmpty() ? Collections.<Book>emptyList()
+                : partitions[i].addBooks(shares.get(i))));
+    }
+    
+    public boolean removeBook(String isbn) {
+        return isbn != null && bookPartition(isbn).removeBook(isbn);
+    }
+    
+    public boolean updateBook(String isbn, Book updatedBook) {
+        return isbn != null && bookPartition(isbn).updateBook(isbn, updatedBook);
+    }
+    
+    public boolean setBookCopies(String isbn, int copies) {
+        return isbn != null && bookPartition(isbn).setBookCopies(isbn, copies);
+    }
+    
+    public Book getBook(String isbn) {
+        return isbn == null ? null : bookPartition(isbn).getBook(isbn);
+    }
+    
+    public List<Book> getAllBooks() {
+        return concat(scatter(i -> partitions[i].getAllBooks()));
+    }
+    
+    public List<Book> getAvailableBooks() {
+        return concat(scatter(i -> partitions[i].getAvailableBooks()));
+    }
+    
+    public List<Book> getBorrowedBooks() {
+        return concat(scatter(i -> partitions[i].getBorrowedBooks()));
+    }
+    
+    public List<Book> searchBooks(String query) {
+        return concat(scatter(i -> partitions[i].searchBooks(query)));
+    }
+    
+    public List<Book> searchBooksByTitle(String title) {
+        return concat(scatter(i -> partitions[i].searchBooksByTitle(title)));
+    }
+    
+    public List<Book> searchBooksByAuthor(String author) {
+        return concat(scatter(i -> partitions[i].searchBooksByAuthor(author)));
+    }
+    
+    public List<Book> searchBooksByISBN(String isbn) {
+        return concat(scatter(i -> partitions[i].searchBooksByISBN(isbn)));
+    }
+    
+    // Each partition answers from its own indexes; sorted so the order matches a single service's
+    public List<Book> findBooks(BookQuery query) {
+        List<Book> books = concat(scatter(i -> partitions[i].findBooks(query)));
+        books.sort(Comparator.comparingInt(Book::getInternalId));
+        return books;
+    }
+    
+    // Paged listings, merged in the order and with the cursors of LibraryService's
+    public Page<Book> getAllBooks(int limit, String cursor) {
+        return mergeByIsbn(PageCursor.BOOKS, limit, cursor, (p, after) -> p.getAllBooks(limit, after));
+    }
+    
+    public Page<Book> searchBooks(String query, int limit, String cursor) {
+        return mergeByIsbn(PageCursor.SEARCH, limit, cursor, (p, after) -> p.searchBooks(query, limit, after));
+    }
+    
+    public Page<Book> searchBooksByTitle(String title, int limit, String cursor) {
+        return mergeByIsbn(PageCursor.SEARCH, limit, cursor, (p, after) -> p.searchBooksByTitle(title, limit, after));
+    }
+    
+    public Page<Book> searchBooksByAuthor(String author, int limit, String cursor) {
+        return mergeByIsbn(PageCursor.SEARCH, limit, cursor, (p, after) -> p.searchBooksByAuthor(author, limit, after));
+    }
+    
+    public Page<Book> searchBooksByISBN(String isbn, int limit, String cursor) {
+        return mergeByIsbn(PageCursor.SEARCH, limit, cursor, (p, after) -> p.searchBooksByISBN(isbn, limit, after));
+    }
+    
+    public Page<Book> findBooks(BookQuery query, int limit, String cursor) {
+        return mergeByIsbn(PageCursor.QUERY, limit, cursor, (p, after) -> p.findBooks(query, limit, after));
+    }
+    
+    // Internal IDs come from one dictionary for every partition, so they order the merge just as they do one service
+    public Page<Book> getAvailableBooks(int limit, String cursor) {
+        return merge(limit, cursor, (p, after) -> p.getAvailableBooks(limit, after),
+                Comparator.comparingInt(Book::getInternalId), (i, book) -> true,
+                book -> PageCursor.encode(PageCursor.AVAILABLE, Integer.toString(book.getInternalId() + 1)));
+    }
+    
+    public Page<Book> getBorrowedBooks(int limit, String cursor) {
+        return merge(limit, cursor, (p, after) -> p.getBorrowedBooks(limit, after),
+                Comparator.comparingInt(Book::getInternalId), (i, book) -> true,
+                book -> PageCursor.encode(PageCursor.BORROWED, Integer.toString(book.getInternalId() + 1)));
+    }
+    
+    public Page<Patron> getAllPatrons(int limit, String cursor) {
+        return merge(limit, cursor, (p, after) -> p.getAllPatrons(limit, after),
+                Comparator.comparing(Patron::getPatronId), (i, patron) -> partitionForPatron(patron.getPatronId()) == i,
+                patron -> PageCursor.encode(PageCursor.PATRONS, patron.getPatronId()));
+    }
+    
+    // Patron management
+    public boolean addPatron(Patron patron) {
+        return patron != null && patron.getPatronId() != null && homePartition(patron.getPatronId()).addPatron(patron);
+    }
+    
+    public List<Patron> addPatrons(Collection<Patron> patrons) {
+        List<List<Patron>> shares = split(patrons, patron -> partitionForPatron(patron.getPatronId()));
+        return concat(scatter(i -> shares.get(i).isEmpty() ? Collections.<Patron>emptyList()
+                : partitions[i].addPatrons(shares.get(i))));
+    }
+    
+    // Guest records are updated along with the home record
+    public boolean updatePatron(String patronId, Patron updatedPatron) {
+        if (patronId == null) {
+            return false;
+        }
+        Lock lock = patronLocks.lockFor(patronId);
+        lock.lock();
+        try {
+            if (!homePartition(patronId).updatePatron(patronId, updatedPatron)) {
+                return false;
+            }
+            int home = partitionForPatron(patronId);
+            for (int i = 0; i < partitions.length; i++) {
+                if (i != home && partitions[i].getPatron(patronId) != null) {
+                    partitions[i].updatePatron(patronId, updatedPatron);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public Patron getPatron(String patronId) {
+        return patronId == null ? null : homePartition(patronId).getPatron(patronId);
+    }
+    
+    public List<Patron> getAllPatrons() {
+        return concat(scatter(i -> {
+            List<Patron> own = new ArrayList<>();
+            for (Patron patron : partitions[i].getAllPatrons()) {
+                if (partitionForPatron(patron.getPatronId()) == i) {
+                    own.add(patron);
+                }
+            }
+            return own;
+        }));
+    }
+    
+    // Lending operations, carried out by the book's partition
+    public boolean checkoutBook(String patronId, String isbn) {
+        if (patronId == null || isbn == null) {
+            return false;
+        }
+        Lock lock = patronLocks.lockFor(patronId);
+        lock.lock();
+        try {
+            Patron patron = getPatron(patronId);
+            if (patron == null || loanCount(patronId) >= patron.getMaxBooksAllowed()) {
+                return false;
+            }
+            LibraryService branch = bookPartition(isbn);
+            return lendingRecord(branch, patron) && branch.checkoutBook(patronId, isbn);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public boolean returnBook(String patronId, String isbn) {
+        return patronId != null && isbn != null && bookPartition(isbn).returnBook(patronId, isbn);
+    }
+    
+    public boolean renewLoan(String patronId, String isbn) {
+        return patronId != null && isbn != null && bookPartition(isbn).renewLoan(patronId, isbn);
+    }
+    
+    public boolean placeHold(String patronId, String isbn) {
+        if (patronId == null || isbn == null) {
+            return false;
+        }
+        Patron patron = getPatron(patronId);
+        LibraryService branch = bookPartition(isbn);
+        return patron != null && lendingRecord(branch, patron) && branch.placeHold(patronId, isbn);
+    }
+    
+    public boolean cancelHold(String patronId, String isbn) {
+        return patronId != null && isbn != null && bookPartition(isbn).cancelHold(patronId, isbn);
+    }
+    
+    public List<String> getHoldQueue(String isbn) {
+        return isbn == null ? Collections.emptyList() : bookPartition(isbn).getHoldQueue(isbn);
+    }
+    
+    public Loan getLoan(String patronId, String isbn) {
+        return isbn == null ? null : bookPartition(isbn).getLoan(patronId, isbn);
+    }
+    
+    public List<Loan> getLoans(String patronId) {
+        return concat(scatter(i -> partitions[i].getLoans(patronId)));
+    }
+    
+    public List<Loan> getOverdueLoans() {
+        return concat(scatter(i -> partitions[i].getOverdueLoans()));
+    }
+    
+    public int processExpirations() {
+        int expired = 0;
+        for (int count : scatter(i -> partitions[i].processExpirations())) {
+            expired += count;
+        }
+        return expired;
+    }
+    
+    public void startExpiryTimer() {
+        for (LibraryService partition : partitions) {
+            partition.startExpiryTimer();
+        }
+    }
+    
+    public void stopExpiryTimer() {
+        for (LibraryService partition : partitions) {
+            partition.stopExpiryTimer();
+        }
+    }
+    
+    // Inventory reporting
+    public InventoryReport getInventorySummary() {
+        long total = 0;
+        long available = 0;
+        long borrowed = 0;
+        long copies = 0;
+        long availableCopies = 0;
+        for (InventoryReport report : scatter(i -> partitions[i].getInventorySummary())) {
+            total += report.getTotalBooks();
+            available += report.getAvailableBooks();
+            borrowed += report.getBorrowedBooks();
+            copies += report.getTotalCopies();
+            availableCopies += report.getAvailableCopies();
+        }
+        return new InventoryReport(total, available, borrowed, copies, availableCopies);
+    }
+    
+    public Map<String, Integer> getInventoryReport() {
+        return LibraryService.inventoryReport(getInventorySummary());
+    }
+    
+    @Override
+    public void close() {
+        stopExpiryTimer();
+        pool.shutdown();
+    }
+    
+    private LibraryService bookPartition(String isbn) {
+        return partitions[partitionForBook(isbn)];
+    }
+    
+    private LibraryService homePartition(String patronId) {
+        return partitions[partitionForPatron(patronId)];
+    }
+    
+    // Loans of the patron in every partition; the caller holds the patron's lock
+    private int loanCount(String patronId) {
+        int loans = 0;
+        for (LibraryService partition : partitions) {
+            Patron record = partition.getPatron(patronId);
+            if (record != null) {
+                loans += record.getBorrowedCount();
+            }
+        }
+        return loans;
+    }
+    
+    // The patron's record in the branch, made a guest there first if need be
+    private boolean lendingRecord(LibraryService branch, Patron patron) {
+        if (branch.getPatron(patron.getPatronId()) != null) {
+            return true;
+        }
+        // Lost to a concurrent hold for the same patron is just as good
+        return branch.addGuest(patron) || branch.getPatron(patron.getPatronId()) != null;
+    }
+    
+    private Page<Book> mergeByIsbn(char listing, int limit, String cursor, PageFetch<Book> fetch) {
+        return merge(limit, cursor, fetch, Comparator.comparing(book -> IsbnIndex.canonicalize(book.getIsbn())),
+                (i, book) -> true, book -> PageCursor.encode(listing, IsbnIndex.canonicalize(book.getIsbn())));
+    }
+    
+    /**
+     * Fetches the page after the cursor from every partition in parallel and
+     * merges them. A partition whose page runs out before the merged one is
+     * full is asked for its next page; items not kept don't count.
+     */
+    private <T> Page<T> merge(int limit, String cursor, PageFetch<T> fetch, Comparator<? super T> order,
+                              Ownership<T> owned, CursorOf<T> cursorOf) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        List<Page<T>> pages = scatter(i -> fetch.page(partitions[i], cursor));
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(partitions.length, (a, b) -> order.compare(a.peek(), b.peek()));
+        for (int i = 0; i < partitions.length; i++) {
+            Head<T> head = new Head<>(i, pages.get(i));
+            if (head.advance(fetch, partitions[i])) {
+                heads.add(head);
+            }
+        }
+        List<T> items = new ArrayList<>(Math.min(limit, 1024));
+        while (items.size() < limit && !heads.isEmpty()) {
+            Head<T> head = heads.poll();
+            T item = head.peek();
+            if (owned.test(head.partition, item)) {
+                items.add(item);
+            }
+            if (head.advance(fetch, partitions[head.partition])) {
+                heads.add(head);
+            }
+        }
+        String next = heads.isEmpty() || items.isEmpty() ? null : cursorOf.apply(items.get(items.size() - 1));
+        return new Page<>(items, next);
+    }
+    
+    // Runs the call for every partition on the pool; results in partition order
+    private <T> List<T> scatter(IntFunction<T> call) {
+        @SuppressWarnings("unchecked")
+        T[] results = (T[]) new Object[partitions.length];
+        pool.invoke(ForkJoinTask.adapt(new Scatter<>(call, results, 0, partitions.length)));
+        return Arrays.asList(results);
+    }
+    
+    private <T> List<List<T>> split(Collection<T> items, PartitionOf<T> partitionOf) {
+        List<List<T>> shares = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            shares.add(new ArrayList<>());
+        }
+        for (T item : items) {
+            shares.get(partitionOf.partition(item)).add(item);
+        }
+        return shares;
+    }
+    
+    private static <T> List<T> concat(List<? extends Collection<T>> parts) {
+        int size = 0;
+        for (Collection<T> part : parts) {
+            size += part.size();
+        }
+        List<T> all = new ArrayList<>(size);
+        for (Collection<T> part : parts) {
+            all.addAll(part);
+        }
+        return all;
+    }
+    
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+    
+    // Lamping and Veach's jump consistent hash
+    private static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long jump = 0;
+        while (jump < buckets) {
+            bucket = jump;
+            key = key * 2862933555777941757L + 1;
+            jump = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+    
+    private interface PageFetch<T> {
+        Page<T> page(LibraryService partition, String cursor);
+    }
+    
+    private interface Ownership<T> {
+        boolean test(int partition, T item);
+    }
+    
+    private interface CursorOf<T> {
+        String apply(T item);
+    }
+    
+    private interface PartitionOf<T> {
+        int partition(T item);
+    }
+    
+    // One partition's side of a merge
+    private static final class Head<T> {
+        final int partition;
+        private Page<T> page;
+        private int position = -1;
+        
+        Head(int partition, Page<T> page) {
+            this.partition = partition;
+            this.page = page;
+        }
+        
+        T peek() {
+            return page.getItems().get(position);
+        }
+        
+        // Moves to the next item, fetching the partition's next page when this one is used up
+        boolean advance(PageFetch<T> fetch, LibraryService source) {
+            position++;
+            while (position >= page.getItems().size()) {
+                if (!page.hasNext()) {
+                    return false;
+                }
+                page = fetch.page(source, page.getNextCursor());
+                position = 0;
+            }
+            return true;
+        }
+    }
+    
+    // Forks half of the partitions and runs the other half in place, down to one partition per task
+    private final class Scatter<T> implements Runnable {
+        private final IntFunction<T> call;
+        private final T[] results;
+        private final int from;
+        private final int to;
+        
+        Scatter(IntFunction<T> call, T[] results, int from, int to) {
+            this.call = call;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        public void run() {
+            if (to - from == 1) {
+                results[from] = call.apply(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ForkJoinTask.invokeAll(ForkJoinTask.adapt(new Scatter<>(call, results, from, middle)),
+                    ForkJoinTask.adapt(new Scatter<>(call, results, middle, to)));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package main.java.service;
+
+import java.time.Clock;
+import java.util.EnumSet;
+import java.util.Set;
+
+import main.java.metrics.LibraryMetrics;
+import main.java.observer.AsyncEventBus;
+import main.java.observer.BatchLibraryEventListener;
+import main.java.observer.EventBuffer;
+import main.java.observer.EventDispatcher;
+import main.java.observer.EventType;
+import main.java.observer.LibraryEvent;
+import main.java.observer.LibraryEventListener;
+import main.java.persistence.MutationLog;
+
+/**
+ * Where the mutations of a LibraryService send what they did: the journal
+ * and the listeners. Both are switched off while stored state is replayed,
+ * see LibraryService.runWithoutSideEffects.
+ */
+final class SideEffects {
+    private final Clock clock;
+    private final LibraryMetrics registry;
+    private volatile MutationLog mutationLog;
+    private volatile boolean replaying;
+    private volatile EventDispatcher dispatcher;
+    private volatile AsyncEventBus eventBus;
+    
+    SideEffects(Clock clock, LibraryMetrics registry) {
+        this.clock = clock;
+        this.registry = registry;
+        this.mutationLog = MutationLog.NONE;
+        this.dispatcher = new EventDispatcher(false);
+    }
+    
+    synchronized void subscribe(LibraryEventListener listener, Set<EventType> types) {
+        AsyncEventBus bus = eventBus;
+        if (bus != null) {
+            bus.subscribe(listener, types);
+        } else {
+            dispatcher.subscribe(listener, types);
+        }
+    }
+    
+    synchronized void unsubscribe(LibraryEventListener listener) {
+        AsyncEventBus bus = eventBus;
+        if (bus != null) {
+            bus.unsubscribe(listener);
+        } else {
+            dispatcher.unsubscribe(listener);
+        }
+    }
+    
+    synchronized void subscribeBatch(BatchLibraryEventListener listener, Set<EventType> types) {
+        AsyncEventBus bus = eventBus;
+        if (bus != null) {
+            bus.subscribeBatch(listener, types);
+        } else {
+            dispatcher.subscribeBatch(listener, types);
+        }
+    }
+    
+    synchronized void enableAsyncDispatch(AsyncEventBus bus) {
+        if (eventBus != null) {
+            throw new IllegalStateException("Asynchronous dispatch is already enabled");
+        }
+        dispatcher.getSubscriptions().forEach(bus::subscribe);
+        dispatcher.getBatchSubscriptions().forEach(bus::subscribeBatch);
+        bus.setMetrics(registry);
+        EventDispatcher forward = new EventDispatcher(false);
+        forward.subscribe(bus, EnumSet.noneOf(EventType.class));
+        eventBus = bus;
+        dispatcher = forward;
+    }
+    
+    AsyncEventBus getEventBus() {
+        return eventBus;
+    }
+    
+    void setMutationLog(MutationLog log) {
+        this.mutationLog = log == null ? MutationLog.NONE : log;
+    }
+    
+    void runWithout(Runnable action) {
+        replaying = true;
+        try {
+            action.run();
+        } finally {
+            replaying = false;
+        }
+    }
+    
+    boolean isReplaying() {
+        return replaying;
+    }
+    
+    MutationLog journal() {
+        return replaying ? MutationLog.NONE : mutationLog;
+    }
+    
+    // Called after the locks are released so a group commit never stalls other writers
+    void awaitDurable(long lsn) {
+        if (lsn > 0) {
+            mutationLog.awaitDurable(lsn);
+        }
+    }
+    
+    // Whether an event of this type would reach any listener, so it is worth building
+    boolean isWanted(EventType type) {
+        if (replaying) {
+            return false;
+        }
+        AsyncEventBus bus = eventBus;
+        return bus != null ? bus.hasSubscribers(type) : dispatcher.hasSubscribers(type);
+    }
+    
+    // detail is the count or time the type's description refers to
+    void notify(EventType type, String patronId, String isbn, long detail) {
+        if (!isWanted(type)) {
+            return;
+        }
+        EventBuffer events = EventBuffer.acquire();
+        try {
+            events.append(type, patronId, isbn, clock.millis(), detail);
+            dispatcher.dispatch(events, registry);
+        } finally {
+            events.release();
+        }
+    }
+    
+    void notify(EventType type, String patronId, String isbn) {
+        notify(type, patronId, isbn, LibraryEvent.NO_DETAIL);
+    }
+    
+    // The events of a batch operation, appended by the caller
+    void dispatch(EventBuffer events) {
+        if (!events.isEmpty()) {
+            dispatcher.dispatch(events, registry);
+        }
+    }
+}
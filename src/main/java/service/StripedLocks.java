@@ -0,0 +1,51 @@
+package main.java.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed pool of locks addressed by key hash. Two keys only contend when
+ * they land on the same stripe. Callers that need several stripes of one
+ * pool take them in ascending index order.
+ */
+final class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    
+    StripedLocks(int concurrency) {
+        int size = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+    
+    int indexFor(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+    
+    ReentrantLock lockFor(Object key) {
+        return stripes[indexFor(key)];
+    }
+    
+    ReentrantLock stripe(int index) {
+        return stripes[index];
+    }
+    
+    int size() {
+        return stripes.length;
+    }
+    
+    void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+    
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package main.java.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hierarchical timing wheel, as in the Linux kernel's timer cascade: four
+ * levels of 256 buckets, where a bucket of level n spans 256^n ticks, so
+ * 2^32 ticks are covered without ever comparing deadlines. Scheduling and
+ * cancelling are O(1) and lock-free; they are queued and applied by the
+ * next advance, which is meant to run on a single ticking thread. Between
+ * advances an outstanding timeout costs nothing but its node; each tick
+ * touches one bucket, plus one bucket per higher level every 256 ticks.
+ */
+final class TimingWheel<T> {
+    private static final int LEVELS = 4;
+    private static final int BITS = 8;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final long MAX_SPAN = (1L << (BITS * LEVELS)) - 1;
+    
+    private final long tickMillis;
+    private final Timeout<T>[][] buckets;
+    private final ConcurrentLinkedQueue<Timeout<T>> scheduled;
+    private final ConcurrentLinkedQueue<Timeout<T>> cancelled;
+    // The next tick to run; guarded by this
+    private long currentTick;
+    private long size;
+    
+    TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        @SuppressWarnings("unchecked")
+        Timeout<T>[][] buckets = (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+        this.buckets = buckets;
+        for (Timeout<T>[] level : buckets) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Timeout<>(null, 0);
+            }
+        }
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.currentTick = startMillis / tickMillis;
+    }
+    
+    long tickMillis() {
+        return tickMillis;
+    }
+    
+    // Fires on the first advance to a time at or after the deadline rounded up to a whole tick
+    Timeout<T> schedule(T task, long deadlineMillis) {
+        long deadlineTick = -Math.floorDiv(-deadlineMillis, tickMillis);
+        Timeout<T> timeout = new Timeout<>(task, deadlineTick);
+        scheduled.add(timeout);
+        return timeout;
+    }
+    
+    void cancel(Timeout<T> timeout) {
+        if (timeout != null && !timeout.cancelled) {
+            timeout.cancelled = true;
+            cancelled.add(timeout);
+        }
+    }
+    
+    // Runs every tick up to the given time and returns the tasks that expired, tick by tick
+    synchronized List<T> advance(long nowMillis) {
+        Timeout<T> timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.next != null) {
+                unlink(timeout);
+                size--;
+            }
+        }
+        while ((timeout = scheduled.poll()) != null) {
+            if (!timeout.cancelled) {
+                insert(timeout);
+                size++;
+            }
+        }
+        
+        List<T> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick <= targetTick) {
+            if (size == 0) {
+                currentTick = targetTick + 1;
+                break;
+            }
+            int index = (int) (currentTick & MASK);
+            // Refill level 0 from the level above whenever it wraps, and so on up
+            for (int level = 1; index == 0 && level < LEVELS; level++) {
+                index = (int) ((currentTick >>> (BITS * level)) & MASK);
+                cascade(buckets[level][index]);
+            }
+            Timeout<T> head = buckets[0][(int) (currentTick & MASK)];
+            currentTick++;
+            while (head.next != head) {
+                timeout = head.next;
+                unlink(timeout);
+                if (timeout.deadlineTick >= currentTick) {
+                    // Deadline was beyond the wheel's span; it goes round again
+                    insert(timeout);
+                } else {
+                    size--;
+                    expired.add(timeout.task);
+                }
+            }
+        }
+        return expired;
+    }
+    
+    // Timeouts scheduled and not yet expired or cancelled, as of the last advance
+    synchronized long size() {
+        return size;
+    }
+    
+    private void cascade(Timeout<T> head) {
+        while (head.next != head) {
+            Timeout<T> timeout = head.next;
+            unlink(timeout);
+            insert(timeout);
+        }
+    }
+    
+    private void insert(Timeout<T> timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        long tick = delta < 0 ? currentTick : delta > MAX_SPAN ? currentTick + MAX_SPAN : timeout.deadlineTick;
+        int level = 0;
+        delta = tick - currentTick;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        Timeout<T> head = buckets[level][(int) ((tick >>> (BITS * level)) & MASK)];
+        timeout.previous = head.previous;
+        timeout.next = head;
+        head.previous.next = timeout;
+        head.previous = timeout;
+    }
+    
+    private static <T> void unlink(Timeout<T> timeout) {
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+    
+    // A bucket head is a Timeout without a task, linked to itself when empty
+    static final class Timeout<T> {
+        private final T task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+        
+        private Timeout(T task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+            if (task == null) {
+                this.previous = this;
+                this.next = this;
+            }
+        }
+    }
+}
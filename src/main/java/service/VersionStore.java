@@ -0,0 +1,438 @@
+package main.java.service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.model.Book;
+import main.java.model.IsbnDictionary;
+import main.java.model.Patron;
+
+/**
+ * Versioned copy of the book and patron state behind LibrarySnapshot.
+ * Every mutation the service applies under its stripe locks also pushes an
+ * immutable version of each record it changed onto that record's chain,
+ * newest first, and commits them together before the locks are released:
+ *
+ *   1. reserve the next stamp from a global counter,
+ *   2. write it into the new versions,
+ *   3. mark the stamp done, and advance the published stamp over every
+ *      done stamp that follows it.
+ *
+ * A snapshot reads the published stamp S once and from then on sees, per
+ * record, the newest version stamped at or below S. Only a run of done
+ * stamps is published, and stamps are written before they are done, so a
+ * version without one can only belong to a commit after S. Neither readers
+ * nor writers lock or wait: whichever commit completes the run publishes
+ * it, so a writer stalled between steps 1 and 3 holds back what new
+ * snapshots see, but not the other writers.
+ *
+ * Copies of a title are lent without the book's stripe lock, so book
+ * versions are pushed and stamped under a striped monitor instead: each
+ * records the shelf count of the previous version plus its own change,
+ * which keeps the counts of a chain in stamp order and in line with the
+ * loans committed alongside them. Copies only reach the shelf under that
+ * monitor too, so whoever takes a returned copy is stamped after the
+ * return and no snapshot sees one copy on two loans.
+ *
+ * Open snapshots register the stamp published when they started. A commit
+ * cuts its chains below the newest version the oldest open snapshot can
+ * see, and removed books are dropped once no open snapshot predates the
+ * removal, so old versions live exactly as long as some reader needs them.
+ */
+final class VersionStore {
+    private static final int SEGMENT_BITS = 14;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final Reader FIRST = new Reader(Long.MIN_VALUE, Long.MIN_VALUE);
+    private static final int MONITORS = 64;
+    
+    // Decodes the book IDs of the chains and the patron versions
+    final IsbnDictionary bookIds;
+    // Book chains indexed by Book.getInternalId()
+    private volatile AtomicReferenceArray<BookVersion>[] bookSegments;
+    private volatile int bookIdLimit;
+    private final ConcurrentHashMap<String, PatronVersion> patrons;
+    private final AtomicLong reserved;
+    private final AtomicLong published;
+    // Done stamps not yet published, because a lower one was still in progress
+    private final ConcurrentSkipListSet<Long> done;
+    private final ConcurrentSkipListSet<Reader> readers;
+    private final AtomicLong readerIds;
+    private final ConcurrentLinkedQueue<BookVersion> removals;
+    private final Object[] monitors;
+    
+    VersionStore(IsbnDictionary bookIds) {
+        this.bookIds = bookIds;
+        @SuppressWarnings("unchecked")
+        AtomicReferenceArray<BookVersion>[] none = (AtomicReferenceArray<BookVersion>[]) new AtomicReferenceArray<?>[0];
+        this.bookSegments = none;
+        this.patrons = new ConcurrentHashMap<>();
+        this.reserved = new AtomicLong();
+        this.published = new AtomicLong();
+        this.done = new ConcurrentSkipListSet<>();
+        this.readers = new ConcurrentSkipListSet<>(
+                Comparator.comparingLong((Reader reader) -> reader.floor).thenComparingLong(reader -> reader.id));
+        this.readerIds = new AtomicLong();
+        this.removals = new ConcurrentLinkedQueue<>();
+        this.monitors = new Object[MONITORS];
+        for (int i = 0; i < MONITORS; i++) {
+            monitors[i] = new Object();
+        }
+    }
+    
+    // A book was catalogued or updated; the caller holds its stripe lock
+    void commitBook(Book book) {
+        BookVersion version;
+        long stamp;
+        synchronized (monitorFor(book.getInternalId())) {
+            BookVersion previous = head(book.getInternalId());
+            int available = previous == null || previous.removed
+                    ? book.getAvailableCopies()
+                    : previous.availableCopies + book.getCopies() - previous.copies;
+            version = pushBook(new BookVersion(book, available, false, previous));
+            stamp = reserve(version, null);
+        }
+        publish(stamp);
+        trim(version);
+    }
+    
+    // Book.changeCopies and its commit in one; the caller holds the book's stripe lock
+    boolean changeCopies(Book book, int delta) {
+        BookVersion version;
+        long stamp;
+        synchronized (monitorFor(book.getInternalId())) {
+            if (!book.changeCopies(delta)) {
+                return false;
+            }
+            BookVersion previous = head(book.getInternalId());
+            int available = previous == null || previous.removed
+                    ? book.getAvailableCopies()
+                    : previous.availableCopies + delta;
+            version = pushBook(new BookVersion(book, available, false, previous));
+            stamp = reserve(version, null);
+        }
+        publish(stamp);
+        trim(version);
+        return true;
+    }
+    
+    void commitRemoval(Book book) {
+        BookVersion version;
+        long stamp;
+        synchronized (monitorFor(book.getInternalId())) {
+            version = pushBook(new BookVersion(book, book.getCopies(), true, head(book.getInternalId())));
+            stamp = reserve(version, null);
+        }
+        publish(stamp);
+        trim(version);
+        removals.add(version);
+        purgeRemovals();
+    }
+    
+    // The caller holds the patron's stripe lock
+    void commitPatron(Patron patron) {
+        PatronVersion version = pushPatron(patron);
+        publish(reserve(null, version));
+        trim(version);
+    }
+    
+    /**
+     * A copy of the book was lent, set aside or taken back for a hold;
+     * shelfDelta is the change in copies on the shelf. The patron whose
+     * loans changed, if any, is committed with it; the caller holds that
+     * patron's lock.
+     */
+    void commitLoan(Book book, Patron patron, int shelfDelta) {
+        commitLoan(book, patron, shelfDelta, false);
+    }
+    
+    // Puts a copy back on the shelf and commits that with the patron who returned it, if any
+    int commitShelved(Book book, Patron patron) {
+        return commitLoan(book, patron, 1, true);
+    }
+    
+    private int commitLoan(Book book, Patron patron, int shelfDelta, boolean shelve) {
+        BookVersion bookVersion;
+        PatronVersion patronVersion;
+        long stamp;
+        int onShelf = 0;
+        synchronized (monitorFor(book.getInternalId())) {
+            if (shelve) {
+                onShelf = book.returnCopy();
+            }
+            BookVersion previous = head(book.getInternalId());
+            bookVersion = previous == null
+                    ? new BookVersion(book, book.getAvailableCopies(), false, null)
+                    : new BookVersion(previous, previous.availableCopies + shelfDelta);
+            pushBook(bookVersion);
+            patronVersion = patron == null ? null : pushPatron(patron);
+            stamp = reserve(bookVersion, patronVersion);
+        }
+        publish(stamp);
+        trim(bookVersion);
+        if (patronVersion != null) {
+            trim(patronVersion);
+        }
+        return onShelf;
+    }
+    
+    // Puts back a copy taken off the shelf whose loan was never committed, so no version records either
+    int undoCheckOut(Book book) {
+        synchronized (monitorFor(book.getInternalId())) {
+            return book.returnCopy();
+        }
+    }
+    
+    LibrarySnapshot open() {
+        Reader reader = new Reader(published.get(), readerIds.incrementAndGet());
+        readers.add(reader);
+        // Read again after registering: versions this stamp needs are only cut by a floor at or above it
+        return new LibrarySnapshot(this, reader, published.get());
+    }
+    
+    void close(Reader reader) {
+        readers.remove(reader);
+    }
+    
+    // Newest version of the book with this internal ID visible at the stamp, removals included
+    BookVersion book(int id, long stamp) {
+        AtomicReferenceArray<BookVersion>[] segments = bookSegments;
+        int segment = id >>> SEGMENT_BITS;
+        if (id < 0 || segment >= segments.length) {
+            return null;
+        }
+        return visible(segments[segment].get(id & (SEGMENT_SIZE - 1)), stamp);
+    }
+    
+    int bookIdLimit() {
+        return bookIdLimit;
+    }
+    
+    PatronVersion patron(String patronId, long stamp) {
+        return visible(patrons.get(patronId), stamp);
+    }
+    
+    Iterable<PatronVersion> patronChains() {
+        return patrons.values();
+    }
+    
+    static BookVersion visible(BookVersion version, long stamp) {
+        while (version != null) {
+            long s = version.stamp;
+            if (s != 0 && s <= stamp) {
+                return version;
+            }
+            version = version.previous;
+        }
+        return null;
+    }
+    
+    static PatronVersion visible(PatronVersion version, long stamp) {
+        while (version != null) {
+            long s = version.stamp;
+            if (s != 0 && s <= stamp) {
+                return version;
+            }
+            version = version.previous;
+        }
+        return null;
+    }
+    
+    private BookVersion head(int id) {
+        return segmentFor(id).get(id & (SEGMENT_SIZE - 1));
+    }
+    
+    private BookVersion pushBook(BookVersion version) {
+        segmentFor(version.id).set(version.id & (SEGMENT_SIZE - 1), version);
+        return version;
+    }
+    
+    private PatronVersion pushPatron(Patron patron) {
+        PatronVersion version = new PatronVersion(patron, patrons.get(patron.getPatronId()));
+        patrons.put(patron.getPatronId(), version);
+        return version;
+    }
+    
+    // Stamps the versions with the next stamp; stamps of one book are reserved under its monitor
+    long reserve(BookVersion bookVersion, PatronVersion patronVersion) {
+        long stamp = reserved.incrementAndGet();
+        if (bookVersion != null) {
+            bookVersion.stamp = stamp;
+        }
+        if (patronVersion != null) {
+            patronVersion.stamp = stamp;
+        }
+        return stamp;
+    }
+    
+    /**
+     * Marks the stamp done, and publishes it along with the done stamps
+     * after it if every lower one is. Adding to done before reading
+     * published, as a publisher advances published before reading done,
+     * means one of two racing commits always sees the other's.
+     */
+    void publish(long stamp) {
+        if (!published.compareAndSet(stamp - 1, stamp)) {
+            done.add(stamp);
+        }
+        while (true) {
+            long next = published.get() + 1;
+            if (!done.contains(next)) {
+                return;
+            }
+            if (published.compareAndSet(next - 1, next)) {
+                done.remove(next);
+            }
+        }
+    }
+    
+    private Object monitorFor(int id) {
+        return monitors[id & (MONITORS - 1)];
+    }
+    
+    // The stamp below which no open snapshot, nor any opened from now on, reads
+    private long floor() {
+        long floor = published.get();
+        Reader oldest = readers.ceiling(FIRST);
+        return oldest == null ? floor : Math.min(floor, oldest.floor);
+    }
+    
+    private void trim(BookVersion version) {
+        long floor = floor();
+        for (BookVersion v = version; v != null; v = v.previous) {
+            if (v.stamp <= floor) {
+                v.previous = null;
+                return;
+            }
+        }
+    }
+    
+    private void trim(PatronVersion version) {
+        long floor = floor();
+        for (PatronVersion v = version; v != null; v = v.previous) {
+            if (v.stamp <= floor) {
+                v.previous = null;
+                return;
+            }
+        }
+    }
+    
+    // Clears the slots of removed books that no open snapshot can still see
+    private void purgeRemovals() {
+        long floor = floor();
+        BookVersion removal;
+        while ((removal = removals.peek()) != null && removal.stamp <= floor) {
+            removals.poll();
+            AtomicReferenceArray<BookVersion> segment = bookSegments[removal.id >>> SEGMENT_BITS];
+            // Fails harmlessly when the book was added again meanwhile
+            segment.compareAndSet(removal.id & (SEGMENT_SIZE - 1), removal, null);
+        }
+    }
+    
+    private AtomicReferenceArray<BookVersion> segmentFor(int id) {
+        int segment = id >>> SEGMENT_BITS;
+        if (segment >= bookSegments.length) {
+            grow(segment);
+        }
+        if (id >= bookIdLimit) {
+            raiseLimit(id + 1);
+        }
+        return bookSegments[segment];
+    }
+    
+    private synchronized void grow(int segment) {
+        if (segment < bookSegments.length) {
+            return;
+        }
+        AtomicReferenceArray<BookVersion>[] grown = Arrays.copyOf(bookSegments, Math.max(segment + 1, bookSegments.length * 2));
+        for (int i = bookSegments.length; i < grown.length; i++) {
+            grown[i] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        }
+        bookSegments = grown;
+    }
+    
+    private synchronized void raiseLimit(int limit) {
+        if (limit > bookIdLimit) {
+            bookIdLimit = limit;
+        }
+    }
+    
+    static final class Reader {
+        private final long floor;
+        private final long id;
+        
+        Reader(long floor, long id) {
+            this.floor = floor;
+            this.id = id;
+        }
+    }
+    
+    static final class BookVersion {
+        final int id;
+        final String isbn;
+        final String title;
+        final String author;
+        final int publicationYear;
+        final int copies;
+        final int availableCopies;
+        final boolean removed;
+        volatile long stamp;
+        volatile BookVersion previous;
+        
+        BookVersion(Book book, int availableCopies, boolean removed, BookVersion previous) {
+            this.id = book.getInternalId();
+            this.isbn = book.getIsbn();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.publicationYear = book.getPublicationYear();
+            this.copies = book.getCopies();
+            this.availableCopies = availableCopies;
+            this.removed = removed;
+            this.previous = previous;
+        }
+        
+        // The same book with a different shelf count
+        BookVersion(BookVersion previous, int availableCopies) {
+            this.id = previous.id;
+            this.isbn = previous.isbn;
+            this.title = previous.title;
+            this.author = previous.author;
+            this.publicationYear = previous.publicationYear;
+            this.copies = previous.copies;
+            this.availableCopies = availableCopies;
+            this.removed = previous.removed;
+            this.previous = previous;
+        }
+    }
+    
+    static final class PatronVersion {
+        final String patronId;
+        final String name;
+        final String email;
+        final String phone;
+        final int maxBooksAllowed;
+        final boolean guest;
+        final int[] loans;
+        // Immutable view of the history as of this version, see Patron.getBorrowingHistory
+        final List<String> history;
+        volatile long stamp;
+        volatile PatronVersion previous;
+        
+        PatronVersion(Patron patron, PatronVersion previous) {
+            this.patronId = patron.getPatronId();
+            this.name = patron.getName();
+            this.email = patron.getEmail();
+            this.phone = patron.getPhone();
+            this.maxBooksAllowed = patron.getMaxBooksAllowed();
+            this.guest = patron.isGuest();
+            this.loans = patron.getBorrowedBookIds();
+            this.history = patron.getBorrowingHistory();
+            this.previous = previous;
+        }
+    }
+}
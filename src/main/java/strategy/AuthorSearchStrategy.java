@@ -3,14 +3,41 @@ package main.java.strategy;
 // AuthorSearchStrategy.java
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import main.java.index.TextIndex;
 import main.java.model.Book;
 
 public class AuthorSearchStrategy implements SearchStrategy {
+    private final TextIndex index;
+    
+    public AuthorSearchStrategy() {
+        this(null);
+    }
+    
+    public AuthorSearchStrategy(TextIndex index) {
+        this.index = index;
+    }
+    
+    @Override
+    public SearchStrategy unindexed() {
+        return index == null ? this : new AuthorSearchStrategy();
+    }
+    
     @Override
     public List<Book> search(Collection<Book> books, String query) {
-        return books.stream()
-                .filter(book -> book.getAuthor().toLowerCase().contains(query.toLowerCase()))
-                .collect(Collectors.toList());
+        if (index != null) {
+            return index.search(query);
+        }
+        return stream(books, query).collect(Collectors.toList());
+    }
+    
+    @Override
+    public Stream<Book> stream(Collection<Book> books, String query) {
+        if (index != null) {
+            return index.stream(query);
+        }
+        String q = query.toLowerCase();
+        return books.stream().filter(book -> book.getAuthor().toLowerCase().contains(q));
     }
 }
\ No newline at end of file
@@ -0,0 +1,292 @@
+package main.java.strategy;
+
+import java.util.*;
+
+import main.java.index.TextIndex;
+import main.java.model.Book;
+
+/**
+ * Typo-tolerant search over titles and authors, ranked by BM25. Every query
+ * term is expanded to the vocabulary tokens within a few edits of it (see
+ * TextIndex.similarTokens); per term and field a book scores the best BM25
+ * weight among the expansions it contains, discounted by their edit
+ * distance, and author matches count half as much as title matches. Only
+ * the best results are kept, in a bounded heap, highest score first.
+ */
+public class FuzzySearchStrategy implements SearchStrategy {
+    public static final int DEFAULT_LIMIT = 20;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double AUTHOR_WEIGHT = 0.5;
+    // Closest expansions kept per term; short terms have many neighbours one edit away
+    private static final int MAX_EXPANSIONS = 16;
+    // A term matching more books than this only rescores candidates found through rarer terms
+    private static final int CANDIDATE_TERM_LIMIT = 50_000;
+    
+    private final TextIndex titleIndex;
+    private final TextIndex authorIndex;
+    private final int limit;
+    
+    public FuzzySearchStrategy(TextIndex titleIndex, TextIndex authorIndex) {
+        this(titleIndex, authorIndex, DEFAULT_LIMIT);
+    }
+    
+    public FuzzySearchStrategy(TextIndex titleIndex, TextIndex authorIndex, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        this.titleIndex = titleIndex;
+        this.authorIndex = authorIndex;
+        this.limit = limit;
+    }
+    
+    // Indexes the collection for each search, so it is ranked by its own term statistics
+    @Override
+    public SearchStrategy unindexed() {
+        return (books, query) -> {
+            TextIndex titles = new TextIndex(Book::getTitle);
+            TextIndex authors = new TextIndex(Book::getAuthor);
+            for (Book book : books) {
+                titles.add(book);
+                authors.add(book);
+            }
+            return new FuzzySearchStrategy(titles, authors, limit).search(books, query);
+        };
+    }
+    
+    // The indexes cover the inventory, so the collection is not scanned
+    @Override
+    public List<Book> search(Collection<Book> books, String query) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(TextIndex.tokenize(TextIndex.normalize(query))));
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<FieldQuery> fields = Arrays.asList(
+                new FieldQuery(titleIndex, 1.0, terms),
+                new FieldQuery(authorIndex, AUTHOR_WEIGHT, terms));
+        
+        PriorityQueue<Scored> worstFirst = new PriorityQueue<>(limit + 1);
+        for (Book book : candidates(fields, terms.size())) {
+            double score = 0;
+            for (FieldQuery field : fields) {
+                score += field.score(book);
+            }
+            if (score <= 0) {
+                continue;
+            }
+            Scored scored = new Scored(book, score);
+            if (worstFirst.size() < limit) {
+                worstFirst.add(scored);
+            } else if (scored.compareTo(worstFirst.peek()) > 0) {
+                worstFirst.poll();
+                worstFirst.add(scored);
+            }
+        }
+        
+        List<Book> results = new ArrayList<>(worstFirst.size());
+        while (!worstFirst.isEmpty()) {
+            results.add(worstFirst.poll().book);
+        }
+        Collections.reverse(results);
+        return results;
+    }
+    
+    /**
+     * Books of every selective term, in any field. When every term is
+     * common, the books matching all of them, or failing that the books of
+     * the least common term, so a query of common words only scores a
+     * large part of the catalog when nothing narrower matches.
+     */
+    private static Set<Book> candidates(List<FieldQuery> fields, int terms) {
+        Set<Book> candidates = new HashSet<>();
+        List<List<Set<Book>>> common = new ArrayList<>();
+        for (int term = 0; term < terms; term++) {
+            List<Set<Book>> postings = new ArrayList<>();
+            for (FieldQuery field : fields) {
+                postings.addAll(field.termPostings.get(term));
+            }
+            int size = size(postings);
+            if (size == 0) {
+                continue;
+            }
+            if (size <= CANDIDATE_TERM_LIMIT) {
+                postings.forEach(candidates::addAll);
+            } else {
+                common.add(postings);
+            }
+        }
+        if (!candidates.isEmpty() || common.isEmpty()) {
+            return candidates;
+        }
+        common.sort(Comparator.comparingInt(FuzzySearchStrategy::size));
+        for (Set<Book> posting : common.get(0)) {
+            for (Book book : posting) {
+                if (inAll(common, book)) {
+                    candidates.add(book);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            common.get(0).forEach(candidates::addAll);
+        }
+        return candidates;
+    }
+    
+    private static int size(List<Set<Book>> postings) {
+        int size = 0;
+        for (Set<Book> posting : postings) {
+            size += posting.size();
+        }
+        return size;
+    }
+    
+    private static boolean inAll(List<List<Set<Book>>> terms, Book book) {
+        for (int i = 1; i < terms.size(); i++) {
+            boolean found = false;
+            for (Set<Book> posting : terms.get(i)) {
+                if (posting.contains(book)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Edits tolerated for a term of this length, as in most search engines
+    private static int maxEdits(String term) {
+        return term.length() <= 2 ? 0 : term.length() <= 5 ? 1 : 2;
+    }
+    
+    /**
+     * One field's share of a query. The expansions go into a small
+     * open-addressing table so scoring a book walks its indexed text once,
+     * without splitting it into token strings.
+     */
+    private static final class FieldQuery {
+        private final TextIndex index;
+        private final double fieldWeight;
+        private final double averageLength;
+        private final List<List<Set<Book>>> termPostings = new ArrayList<>();
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Integer> tokenTerms = new ArrayList<>();
+        // idf of the expansion times the discount for its edits
+        private final List<Double> tokenWeights = new ArrayList<>();
+        private final int[] slots;
+        private final int[] frequencies;
+        private final double[] best;
+        
+        FieldQuery(TextIndex index, double fieldWeight, List<String> terms) {
+            this.index = index;
+            this.fieldWeight = fieldWeight;
+            this.averageLength = Math.max(1.0, index.averageTokens());
+            int books = index.size();
+            for (int term = 0; term < terms.size(); term++) {
+                List<Map.Entry<String, Integer>> expansions =
+                        new ArrayList<>(index.similarTokens(terms.get(term), maxEdits(terms.get(term))).entrySet());
+                expansions.sort(Map.Entry.comparingByValue());
+                List<Set<Book>> postings = new ArrayList<>();
+                for (Map.Entry<String, Integer> expansion : expansions.subList(0, Math.min(MAX_EXPANSIONS, expansions.size()))) {
+                    Set<Book> posting = index.booksWithToken(expansion.getKey());
+                    int df = posting.size();
+                    tokens.add(expansion.getKey());
+                    tokenTerms.add(term);
+                    tokenWeights.add(Math.log(1 + (books - df + 0.5) / (df + 0.5)) / (1 + expansion.getValue()));
+                    postings.add(posting);
+                }
+                termPostings.add(postings);
+            }
+            this.slots = new int[Integer.highestOneBit(Math.max(1, tokens.size()) * 4)];
+            for (int t = 0; t < tokens.size(); t++) {
+                int slot = spread(tokens.get(t).hashCode()) & (slots.length - 1);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & (slots.length - 1);
+                }
+                slots[slot] = t + 1;
+            }
+            this.frequencies = new int[tokens.size()];
+            this.best = new double[terms.size()];
+        }
+        
+        double score(Book book) {
+            String text = index.textOf(book);
+            if (text == null || tokens.isEmpty()) {
+                return 0;
+            }
+            Arrays.fill(frequencies, 0);
+            int length = 0;
+            int start = -1;
+            int hash = 0;
+            for (int i = 0; i <= text.length(); i++) {
+                // Same token boundaries as TextIndex.tokenize
+                boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (wordChar) {
+                    if (start < 0) {
+                        start = i;
+                        hash = 0;
+                    }
+                    hash = 31 * hash + text.charAt(i);
+                } else if (start >= 0) {
+                    length++;
+                    int t = lookup(text, start, i - start, hash);
+                    if (t >= 0) {
+                        frequencies[t]++;
+                    }
+                    start = -1;
+                }
+            }
+            
+            double norm = K1 * (1 - B + B * length / averageLength);
+            Arrays.fill(best, 0);
+            for (int t = 0; t < frequencies.length; t++) {
+                int tf = frequencies[t];
+                if (tf > 0) {
+                    int term = tokenTerms.get(t);
+                    best[term] = Math.max(best[term], tokenWeights.get(t) * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+            double score = 0;
+            for (double termScore : best) {
+                score += termScore;
+            }
+            return score * fieldWeight;
+        }
+        
+        // Expansion whose token is text[start, start + length), or -1
+        private int lookup(String text, int start, int length, int hash) {
+            int slot = spread(hash) & (slots.length - 1);
+            while (slots[slot] != 0) {
+                String token = tokens.get(slots[slot] - 1);
+                if (token.length() == length && text.regionMatches(start, token, 0, length)) {
+                    return slots[slot] - 1;
+                }
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            return -1;
+        }
+        
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+    
+    // Ordered by score, ties broken by ISBN so equal scores rank the same way every time
+    private static final class Scored implements Comparable<Scored> {
+        private final Book book;
+        private final double score;
+        
+        Scored(Book book, double score) {
+            this.book = book;
+            this.score = score;
+        }
+        
+        @Override
+        public int compareTo(Scored other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : other.book.getIsbn().compareTo(book.getIsbn());
+        }
+    }
+}
@@ -3,14 +3,62 @@ package main.java.strategy;
 // ISBNSearchStrategy.java
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import main.java.index.IsbnIndex;
 import main.java.model.Book;
 
 public class ISBNSearchStrategy implements SearchStrategy {
+    // A trailing '*' turns the query into a prefix search, e.g. "978-0-596*"
+    private static final String PREFIX_WILDCARD = "*";
+    
+    private final IsbnIndex index;
+    
+    public ISBNSearchStrategy() {
+        this(null);
+    }
+    
+    public ISBNSearchStrategy(IsbnIndex index) {
+        this.index = index;
+    }
+    
+    @Override
+    public SearchStrategy unindexed() {
+        return index == null ? this : new ISBNSearchStrategy();
+    }
+    
     @Override
     public List<Book> search(Collection<Book> books, String query) {
+        boolean prefix = query.endsWith(PREFIX_WILDCARD);
+        String isbn = prefix ? query.substring(0, query.length() - 1) : query;
+        
+        if (index != null) {
+            if (prefix) {
+                return index.findByPrefix(isbn);
+            }
+            Book book = index.get(isbn);
+            return book == null ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(book));
+        }
+        
+        return scan(books, isbn, prefix).collect(Collectors.toList());
+    }
+    
+    @Override
+    public Stream<Book> stream(Collection<Book> books, String query) {
+        boolean prefix = query.endsWith(PREFIX_WILDCARD);
+        String isbn = prefix ? query.substring(0, query.length() - 1) : query;
+        
+        if (index != null) {
+            return prefix ? index.streamByPrefix(isbn) : search(books, query).stream();
+        }
+        return scan(books, isbn, prefix);
+    }
+    
+    private static Stream<Book> scan(Collection<Book> books, String isbn, boolean prefix) {
+        String canonical = prefix ? IsbnIndex.canonicalizePrefix(isbn) : IsbnIndex.canonicalize(isbn);
         return books.stream()
-                .filter(book -> book.getIsbn().equals(query))
-                .collect(Collectors.toList());
+                .filter(book -> prefix
+                        ? IsbnIndex.canonicalize(book.getIsbn()).startsWith(canonical)
+                        : IsbnIndex.canonicalize(book.getIsbn()).equals(canonical));
     }
-}
\ No newline at end of file
+}
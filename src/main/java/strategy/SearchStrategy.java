@@ -2,9 +2,25 @@ package main.java.strategy;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import main.java.model.Book;
 
 public interface SearchStrategy {
     List<Book> search(Collection<Book> books, String query);
-}
\ No newline at end of file
+    
+    // Lazy variant for callers that only consume part of the result
+    default Stream<Book> stream(Collection<Book> books, String query) {
+        return search(books, query).stream();
+    }
+    
+    /**
+     * Same search answered from the collection passed in alone. Strategies
+     * backed by an index return one that scans instead, so callers holding
+     * a collection other than the indexed one, such as a LibrarySnapshot's
+     * books, get results from that collection.
+     */
+    default SearchStrategy unindexed() {
+        return this;
+    }
+}
@@ -2,14 +2,42 @@ package main.java.strategy;
 
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import main.java.index.TextIndex;
 import main.java.model.Book;
 
 public class TitleSearchStrategy implements SearchStrategy {
+    private final TextIndex index;
+    
+    public TitleSearchStrategy() {
+        this(null);
+    }
+    
+    // When an index is supplied it already covers the inventory, so the collection is not scanned
+    public TitleSearchStrategy(TextIndex index) {
+        this.index = index;
+    }
+    
+    @Override
+    public SearchStrategy unindexed() {
+        return index == null ? this : new TitleSearchStrategy();
+    }
+    
     @Override
     public List<Book> search(Collection<Book> books, String query) {
-        return books.stream()
-                .filter(book -> book.getTitle().toLowerCase().contains(query.toLowerCase()))
-                .collect(Collectors.toList());
+        if (index != null) {
+            return index.search(query);
+        }
+        return stream(books, query).collect(Collectors.toList());
+    }
+    
+    @Override
+    public Stream<Book> stream(Collection<Book> books, String query) {
+        if (index != null) {
+            return index.stream(query);
+        }
+        String q = query.toLowerCase();
+        return books.stream().filter(book -> book.getTitle().toLowerCase().contains(q));
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package main.java.analytics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.observer.EventType;
+import main.java.service.LibraryService;
+
+class CoBorrowingRecommenderTest {
+    private static final String A = "9780000000001";
+    private static final String B = "9780000000002";
+    private static final String C = "9780000000003";
+    private static final String D = "9780000000004";
+    
+    private final LibraryService service = new LibraryService();
+    private final CoBorrowingRecommender recommender = new CoBorrowingRecommender(service);
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        for (String isbn : new String[] {A, B, C, D}) {
+            service.addBook(new Book(isbn, "Book " + isbn, "Author", 2000));
+        }
+        service.addEventListener(recommender, EventType.BOOK_CHECKED_OUT);
+        borrow("P0", A, B);
+        borrow("P1", B, A);
+        borrow("P2", A, C);
+        borrow("P3", D);
+    }
+    
+    @Test
+    void coBorrowedTitlesAreRankedByCosineSimilarity() {
+        List<Recommendation> forA = recommender.getRecommendations(A, 5);
+        assertEquals(Arrays.asList(B, C), isbns(forA));
+        assertEquals(2 / Math.sqrt(3 * 2), forA.get(0).getScore(), 1e-9);
+        assertEquals(1 / Math.sqrt(3 * 1), forA.get(1).getScore(), 1e-9);
+        assertEquals(2, forA.get(0).getCoBorrowers());
+        
+        assertEquals(Arrays.asList(A), isbns(recommender.getRecommendations(B, 5)));
+        assertTrue(recommender.getRecommendations(D, 5).isEmpty());
+        assertEquals(1, recommender.getRecommendations(A, 1).size());
+    }
+    
+    @Test
+    void borrowingATitleAgainAddsNothing() {
+        borrow("P0", A);
+        assertEquals(3, recommender.getBorrowers(A));
+        assertEquals(2, recommender.getRecommendations(A, 5).get(0).getCoBorrowers());
+    }
+    
+    @Test
+    void rebuildingRanksEveryRowAfresh() {
+        CoBorrowingRecommender rebuilt = new CoBorrowingRecommender(service);
+        assertTrue(rebuilt.getRecommendations(A, 5).isEmpty());
+        rebuilt.rebuild();
+        
+        for (String isbn : new String[] {A, B, C, D}) {
+            assertEquals(recommender.getBorrowers(isbn), rebuilt.getBorrowers(isbn));
+            assertEquals(isbns(recommender.getRecommendations(isbn, 5)), isbns(rebuilt.getRecommendations(isbn, 5)));
+        }
+        // B's row was ranked before A's third borrower; the rebuild sees them all
+        assertEquals(2 / Math.sqrt(2 * 3), rebuilt.getRecommendations(B, 1).get(0).getScore(), 1e-9);
+    }
+    
+    @Test
+    void topMustFitTheNeighbours() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CoBorrowingRecommender(id -> null, service::getAllPatrons, 4, 5, null));
+    }
+    
+    private void borrow(String patronId, String... isbns) {
+        if (service.getPatron(patronId) == null) {
+            service.addPatron(new Patron(patronId, "Patron " + patronId, patronId + "@example.com", null));
+        }
+        for (String isbn : isbns) {
+            assertTrue(service.checkoutBook(patronId, isbn));
+            service.returnBook(patronId, isbn);
+        }
+    }
+    
+    private static List<String> isbns(List<Recommendation> recommendations) {
+        return recommendations.stream().map(Recommendation::getIsbn).collect(Collectors.toList());
+    }
+}
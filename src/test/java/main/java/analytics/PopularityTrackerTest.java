@@ -0,0 +1,131 @@
+package main.java.analytics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.observer.EventType;
+import main.java.service.LibraryService;
+
+class PopularityTrackerTest {
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @Test
+    void sketchNeverUndercountsAndMerges() {
+        CountMinSketch sketch = new CountMinSketch(4, 256);
+        CountMinSketch other = new CountMinSketch(4, 256);
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            String key = "k" + random.nextInt(2000);
+            exact.merge(key, 1, Integer::sum);
+            (i % 2 == 0 ? sketch : other).add(key, 1);
+        }
+        sketch.merge(other);
+        
+        assertEquals(20_000, sketch.getTotal());
+        int far = 0;
+        for (Map.Entry<String, Integer> entry : exact.entrySet()) {
+            long estimate = sketch.estimate(entry.getKey());
+            assertTrue(estimate >= entry.getValue());
+            if (estimate - entry.getValue() > Math.E / 256 * 20_000) {
+                far++;
+            }
+        }
+        assertTrue(far < exact.size() / 20);
+    }
+    
+    @Test
+    void spaceSavingKeepsTheHeavyHitters() {
+        SpaceSaving summary = new SpaceSaving(10);
+        for (int i = 0; i < 1000; i++) {
+            summary.add("noise" + i, 1);
+            if (i % 4 == 0) {
+                summary.add("heavy", 1);
+            }
+        }
+        assertEquals(10, summary.size());
+        assertTrue(summary.contains("heavy"));
+        assertTrue(summary.count("heavy") >= 250);
+        assertEquals("heavy", summary.entries().get(0).getKey());
+    }
+    
+    @Test
+    void oldBucketsFallOutOfTheWindow() {
+        SlidingTopK window = new SlidingTopK(Duration.ofHours(4), 4, 16, 4, 256);
+        for (int i = 0; i < 5; i++) {
+            window.add("early", 10 * HOUR + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            window.add("late", 13 * HOUR + i);
+        }
+        
+        List<CountEstimate> top = window.top(2, 13 * HOUR + 10);
+        assertEquals("early", top.get(0).getKey());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals(0, window.estimate("early", 14 * HOUR));
+        assertEquals(3, window.estimate("late", 14 * HOUR));
+        assertEquals(1, window.top(5, 14 * HOUR).size());
+    }
+    
+    @Test
+    void checkoutsOfAServiceAreRankedByTitleAndAuthor() {
+        Clock clock = Clock.fixed(Instant.parse("2024-03-01T12:00:00Z"), ZoneOffset.UTC);
+        LibraryService service = new LibraryService(clock);
+        service.addBook(new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008));
+        service.addBook(new Book("9780137081073", "The Clean Coder", "Robert C. Martin", 2011));
+        service.addBook(new Book("9780134685991", "Effective Java", "Joshua Bloch", 2018));
+        PopularityTracker tracker = new PopularityTracker(isbn -> service.getBook(isbn).getAuthor(),
+                Duration.ofDays(7), 7, 10, clock);
+        service.addEventListener(tracker, EventType.BOOK_CHECKED_OUT);
+        
+        for (int i = 0; i < 3; i++) {
+            service.addPatron(new Patron("P" + i, "Patron " + i, "p" + i + "@example.com", null));
+            service.checkoutBook("P" + i, "9780134685991");
+            service.returnBook("P" + i, "9780134685991");
+        }
+        service.checkoutBook("P0", "9780132350884");
+        service.checkoutBook("P1", "9780137081073");
+        
+        assertEquals("9780134685991", tracker.getTopTitles(1).get(0).getKey());
+        assertEquals(3, tracker.getCheckouts("9780134685991"));
+        assertEquals(2, tracker.getAuthorCheckouts("Robert C. Martin"));
+        assertEquals(3, tracker.getTopTitles(10).size());
+        
+        // A second branch on the same clock, merged in
+        LibraryService other = new LibraryService(clock);
+        other.addBook(new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008));
+        PopularityTracker branch = new PopularityTracker(isbn -> other.getBook(isbn).getAuthor(),
+                Duration.ofDays(7), 7, 10, clock);
+        other.addEventListener(branch, EventType.BOOK_CHECKED_OUT);
+        for (int i = 0; i < 2; i++) {
+            other.addPatron(new Patron("B" + i, "Patron " + i, "b" + i + "@example.com", null));
+            other.checkoutBook("B" + i, "9780132350884");
+            other.returnBook("B" + i, "9780132350884");
+        }
+        tracker.merge(branch);
+        assertEquals("Robert C. Martin", tracker.getTopAuthors(1).get(0).getKey());
+        assertEquals(4, tracker.getAuthorCheckouts("Robert C. Martin"));
+        assertEquals(3, tracker.getCheckouts("9780132350884"));
+    }
+}
@@ -0,0 +1,54 @@
+package main.java.app;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import main.java.service.LibraryService;
+
+class BatchRunnerTest {
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @Test
+    void runsTheScriptAndReportsRejectsAndMalformedLines() throws Exception {
+        LibraryService service = new LibraryService();
+        String script = "# catalog\n"
+                + "add_book,978-0-132-35088-4,\"Clean Code\",Robert C. Martin,2008\n"
+                + "add_patron,P001,John Doe,john@email.com,123-456-7890\n"
+                + "\n"
+                + "checkout,P001,978-0-132-35088-4\n"
+                + "checkout,P001,978-0-132-35088-4\n"
+                + "search_title,clean\n"
+                + "checkout,P001\n"
+                + "add_book,9780201633610,Design Patterns,Gamma,someday\n"
+                + "renew,P001,978-0-132-35088-4\n"
+                + "report\n";
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        
+        new BatchRunner(service).run(new BufferedReader(new StringReader(script)),
+                new PrintStream(buffer, true, "UTF-8"));
+        
+        String output = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(output.matches("(?s).*\\ncheckout +2 +1 .*"), output);
+        assertTrue(output.contains("total 6 operations"), output);
+        assertTrue(output.contains("3 malformed line(s) skipped"), output);
+        assertTrue(output.contains("line 8: checkout takes 2 argument(s), got 1"), output);
+        assertTrue(output.contains("line 9: bad year 'someday'"), output);
+        assertTrue(output.contains("line 10: unknown command 'renew'"), output);
+        assertFalse(service.getBook("9780132350884").isAvailable());
+    }
+}
@@ -0,0 +1,60 @@
+package main.java.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ZipfianGeneratorTest {
+    
+    @Test
+    void ranksFollowTheirZipfProbabilities() {
+        int n = 100;
+        double theta = 0.9;
+        ZipfianGenerator generator = new ZipfianGenerator(n, theta);
+        Random random = new Random(42);
+        int draws = 200_000;
+        int[] counts = new int[n];
+        for (int i = 0; i < draws; i++) {
+            counts[generator.next(random)]++;
+        }
+        
+        double zeta = 0;
+        for (int k = 1; k <= n; k++) {
+            zeta += 1 / Math.pow(k, theta);
+        }
+        for (int rank : new int[] {0, 1}) {
+            double expected = draws / Math.pow(rank + 1, theta) / zeta;
+            assertEquals(expected, counts[rank], expected * 0.05, "rank " + rank);
+        }
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[10] && counts[10] > counts[90]);
+    }
+    
+    @Test
+    void zeroThetaIsUniformAndEveryRankIsInRange() {
+        ZipfianGenerator generator = new ZipfianGenerator(10, 0);
+        Random random = new Random(7);
+        int[] counts = new int[10];
+        for (int i = 0; i < 100_000; i++) {
+            counts[generator.next(random)]++;
+        }
+        for (int count : counts) {
+            assertEquals(10_000, count, 500);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ZipfianGenerator(10, 1.0));
+    }
+    
+    @Test
+    void loadGeneratorOptionsAreKeyValuePairs() {
+        Map<String, String> options = LoadGenerator.parseOptions(new String[] {"books=500", "mix=checkout:1,return:1"});
+        assertEquals("500", options.get("books"));
+        assertEquals("checkout:1,return:1", options.get("mix"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseOptions(new String[] {"threads"}));
+        Map<String, String> badMix = LoadGenerator.parseOptions(new String[] {"mix=browse:5"});
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(badMix));
+    }
+}
@@ -0,0 +1,98 @@
+package main.java.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.java.model.Book;
+import main.java.service.LibraryService;
+
+class BulkImporterTest {
+    private final LibraryService service = new LibraryService();
+    
+    @TempDir
+    Path directory;
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @Test
+    void importsEveryChunkAndCountsRejects() throws Exception {
+        StringBuilder csv = new StringBuilder("isbn,title,author,year,copies\n");
+        for (int i = 0; i < 250; i++) {
+            csv.append(String.format("97800000%05d,\"Title, part %d\",Author %d,2001,2\n", i, i, i));
+        }
+        csv.append("9780000000000,Duplicate,Someone,1999,1\n");
+        csv.append("9781111111111,Bad year,Someone,soon,1\n");
+        csv.append("9782222222222,Missing author\n");
+        Path file = directory.resolve("books.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        
+        ImportReport report = new BulkImporter(service, 4, 16).importBooks(file);
+        
+        assertEquals(253, report.getRecordsRead());
+        assertEquals(250, report.getAccepted());
+        assertEquals(1, report.getDuplicates());
+        assertEquals(2, report.getInvalid());
+        assertEquals(Files.size(file), report.getBytesRead());
+        assertEquals(250, service.getAllBooks().size());
+        Book book = service.getBook("9780000000007");
+        assertEquals("Title, part 7", book.getTitle());
+        assertEquals(2, book.getCopies());
+    }
+    
+    @Test
+    void csvWithoutHeaderUsesTheDefaultColumns() throws Exception {
+        ImportReport report = new BulkImporter(service).importBooks(stream(
+                "9780132350884,Clean Code,Robert C. Martin,2008\n"), ImportFormat.CSV);
+        
+        assertEquals(1, report.getAccepted());
+        assertEquals("Robert C. Martin", service.getBook("9780132350884").getAuthor());
+    }
+    
+    @Test
+    void importsPatronsFromJsonLines() throws Exception {
+        ImportReport report = new BulkImporter(service).importPatrons(stream(
+                "{\"patronId\": \"P001\", \"name\": \"Ada\", \"email\": \"ada@example.com\", \"maxBooksAllowed\": 3}\n"
+                + "\n"
+                + "{\"id\": \"P002\", \"name\": \"Grace\", \"phone\": null}\n"
+                + "{\"name\": \"No ID\"}\n"), ImportFormat.JSON_LINES);
+        
+        assertEquals(2, report.getAccepted());
+        assertEquals(1, report.getInvalid());
+        assertEquals(3, service.getPatron("P001").getMaxBooksAllowed());
+        assertNotNull(service.getPatron("P002"));
+    }
+    
+    @Test
+    void csvFieldsFollowRfc4180Quoting() {
+        List<String> fields = RecordParser.parseCsv("a,\"b, c\",\"say \"\"hi\"\"\",");
+        assertEquals(Arrays.asList("a", "b, c", "say \"hi\"", ""), fields);
+    }
+    
+    @Test
+    void formatFollowsTheFileExtension() {
+        assertEquals(ImportFormat.JSON_LINES, ImportFormat.forFile(directory.resolve("patrons.jsonl")));
+        assertEquals(ImportFormat.CSV, ImportFormat.forFile(directory.resolve("books.CSV")));
+        assertEquals(ImportFormat.JSON_LINES, ImportFormat.forFile(directory.resolve("books.ndjson")));
+    }
+    
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,172 @@
+package main.java.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+class LibraryHttpApiTest {
+    private final LibraryService service = new LibraryService();
+    private final LibraryHttpApi api = new LibraryHttpApi(service);
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 5; i++) {
+            service.addBook(new Book("978000000000" + i, "Java volume " + i, "Author " + i, 2000 + i));
+        }
+        service.addPatron(new Patron("P001", "Ada", "ada@example.com", "555-0100"));
+    }
+    
+    @Test
+    void pagesCarryTheirNextCursor() throws Exception {
+        String first = body(handle("GET /books?limit=3 HTTP/1.1", ""));
+        assertTrue(first.contains("\"isbn\":\"9780000000002\""));
+        assertFalse(first.contains("\"nextCursor\":null"));
+        
+        String cursor = first.substring(first.indexOf("\"nextCursor\":\"") + 14, first.lastIndexOf('"'));
+        String next = "GET /books?limit=3&cursor=" + URLEncoder.encode(cursor, "UTF-8") + " HTTP/1.1";
+        String second = body(handle(next, ""));
+        assertTrue(second.contains("\"isbn\":\"9780000000004\""));
+        assertFalse(second.contains("\"isbn\":\"9780000000002\""));
+        assertTrue(second.endsWith("\"nextCursor\":null}"));
+    }
+    
+    @Test
+    void lendingAndPatronsAcceptJsonBodies() {
+        HttpResponse created = handle("POST /patrons HTTP/1.1", "{\"patronId\": \"P002\", \"name\": \"Grace\"}");
+        assertEquals(201, created.getStatus());
+        assertEquals("Grace", service.getPatron("P002").getName());
+        
+        assertEquals(200, handle("POST /checkout?patronId=P002&isbn=9780000000001 HTTP/1.1", "").getStatus());
+        assertFalse(service.getBook("9780000000001").isAvailable());
+        assertEquals(409, status("POST /checkout HTTP/1.1", "{\"patronId\": \"P001\", \"isbn\": \"9780000000001\"}"));
+        assertEquals(200, handle("POST /return HTTP/1.1",
+                "{\"patronId\": \"P002\", \"isbn\": \"9780000000001\"}").getStatus());
+    }
+    
+    @Test
+    void errorsMapToTheirStatus() {
+        assertEquals(404, status("GET /books/9789999999999 HTTP/1.1", ""));
+        assertEquals(404, status("GET /nowhere HTTP/1.1", ""));
+        assertEquals(405, status("DELETE /books HTTP/1.1", ""));
+        assertEquals(405, status("GET /checkout HTTP/1.1", ""));
+        assertEquals(400, status("GET /books?limit=0 HTTP/1.1", ""));
+        assertEquals(400, status("GET /search?by=title HTTP/1.1", ""));
+        assertEquals(400, status("GET /search?q=java&by=publisher HTTP/1.1", ""));
+        assertEquals(400, status("POST /patrons HTTP/1.1", "{\"patronId\": "));
+        assertEquals(409, status("POST /patrons HTTP/1.1", "{\"patronId\": \"P001\"}"));
+    }
+    
+    @Test
+    void streamedListingsFormOneJsonArray() {
+        for (int i = 5; i < 200; i++) {
+            service.addBook(new Book(String.format("9780000%06d", i), "Java volume " + i, "Someone", 2000));
+        }
+        HttpResponse response = handle("GET /search?q=java&stream=true HTTP/1.1", "");
+        assertTrue(response.isChunked());
+        
+        StringBuilder json = new StringBuilder();
+        int chunks = 0;
+        for (String chunk; (chunk = response.getChunkedBody().nextChunk()) != null; chunks++) {
+            json.append(chunk);
+        }
+        assertTrue(chunks > 1);
+        assertNull(response.getChunkedBody().nextChunk());
+        assertTrue(json.charAt(0) == '[' && json.charAt(json.length() - 1) == ']');
+        assertEquals(200, json.toString().split("\\{\"isbn\"", -1).length - 1);
+    }
+    
+    @Test
+    void parserWaitsForTheWholeBody() {
+        byte[] request = "POST /patrons HTTP/1.1\r\nContent-Length: 5\r\n\r\nab".getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer in = ByteBuffer.wrap(request);
+        assertNull(RequestParser.parse(in));
+        assertEquals(0, in.position());
+        
+        HttpException malformed = assertThrows(HttpException.class, () -> RequestParser.parse(
+                ByteBuffer.wrap("GET /books\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1))));
+        assertEquals(400, malformed.getStatus());
+    }
+    
+    @Test
+    void serverAnswersOverKeepAliveConnections() throws Exception {
+        try (HttpServer server = new HttpServer(api, 0)) {
+            server.start();
+            String base = "http://localhost:" + server.getPort();
+            
+            HttpURLConnection book = (HttpURLConnection) new URL(base + "/books/9780000000003").openConnection();
+            assertEquals(200, book.getResponseCode());
+            assertTrue(read(book.getInputStream()).contains("\"title\":\"Java volume 3\""));
+            
+            HttpURLConnection checkout = (HttpURLConnection) new URL(base + "/checkout").openConnection();
+            checkout.setRequestMethod("POST");
+            checkout.setDoOutput(true);
+            try (OutputStream out = checkout.getOutputStream()) {
+                out.write("{\"patronId\": \"P001\", \"isbn\": \"9780000000003\"}".getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(200, checkout.getResponseCode());
+            read(checkout.getInputStream());
+            
+            HttpURLConnection missing = (HttpURLConnection) new URL(base + "/patrons/P404").openConnection();
+            assertEquals(404, missing.getResponseCode());
+            read(missing.getErrorStream());
+        }
+        assertFalse(service.getBook("9780000000003").isAvailable());
+    }
+    
+    private HttpResponse handle(String requestLine, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String head = requestLine + "\r\nHost: localhost\r\nContent-Length: " + bytes.length + "\r\n\r\n";
+        ByteBuffer in = ByteBuffer.allocate(head.length() + bytes.length);
+        in.put(head.getBytes(StandardCharsets.ISO_8859_1)).put(bytes).flip();
+        return api.handle(RequestParser.parse(in));
+    }
+    
+    private int status(String requestLine, String body) {
+        try {
+            return handle(requestLine, body).getStatus();
+        } catch (HttpException e) {
+            return e.getStatus();
+        }
+    }
+    
+    private static String body(HttpResponse response) {
+        assertEquals(200, response.getStatus());
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+    
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package main.java.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BkTreeTest {
+    @Test
+    void lookupsFindExactlyTheWordsWithinTheDistance() {
+        Random random = new Random(42);
+        BkTree tree = new BkTree();
+        String[] words = new String[2000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = randomWord(random, 3 + random.nextInt(8));
+            tree.add(words[i]);
+        }
+        
+        for (String query : new String[] {"java", "patterns", words[17], "x"}) {
+            Map<String, Integer> expected = new HashMap<>();
+            for (String word : words) {
+                int distance = BkTree.distance(query, word);
+                if (distance <= 2) {
+                    expected.put(word, distance);
+                }
+            }
+            assertEquals(expected, new HashMap<>(tree.within(query, 2)));
+        }
+    }
+    
+    @Test
+    void bitParallelDistanceAgreesWithTheTable() {
+        BkTree tree = new BkTree();
+        String longWord = "supercalifragilisticexpialidocious-antidisestablishmentarianism-x";
+        tree.add(longWord);
+        tree.add("kitten");
+        assertEquals(Integer.valueOf(3), tree.within("sitting", 3).get("kitten"));
+        assertEquals(3, BkTree.distance("kitten", "sitting"));
+        assertTrue(tree.within(longWord.substring(1), 1).containsKey(longWord));
+    }
+    
+    @Test
+    void duplicatesAreNotAdded() {
+        BkTree tree = new BkTree();
+        assertTrue(tree.add("java"));
+        assertFalse(tree.add("java"));
+        assertEquals(1, tree.within("java", 0).size());
+    }
+    
+    private static String randomWord(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(6));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,91 @@
+package main.java.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+
+class IsbnIndexTest {
+    private final IsbnIndex index = new IsbnIndex();
+    private final Book cleanCode = new Book("0-13-235088-2", "Clean Code", "Robert C. Martin", 2008);
+    
+    @BeforeEach
+    void setUp() {
+        index.add(cleanCode);
+        index.add(new Book("9780804429573", "Chaos", "Someone", 1985));
+        index.add(new Book("978-0-596-00712-6", "Head First Design Patterns", "Eric Freeman", 2004));
+        index.add(new Book("9780596009205", "Head First Java", "Kathy Sierra", 2005));
+        index.add(new Book("9791032305690", "Un livre", "Quelqu'un", 2019));
+    }
+    
+    @Test
+    void isbn10FormsBecomeTheirIsbn13() {
+        assertEquals("9780132350884", IsbnIndex.canonicalize("0132350882"));
+        assertEquals("9780132350884", IsbnIndex.canonicalize("0-13-235088-2"));
+        assertEquals("9780132350884", IsbnIndex.canonicalize("0 13 235088 2"));
+        assertEquals("9780804429573", IsbnIndex.canonicalize("0-8044-2957-X"));
+        assertEquals("9780804429573", IsbnIndex.canonicalize("080442957x"));
+        assertEquals("9780132350884", IsbnIndex.canonicalize("978-0-13-235088-4"));
+        assertEquals("9780132350884", IsbnIndex.canonicalize("9780132350884"));
+        // Not an ISBN-10, so only the separators go
+        assertEquals("ABC123", IsbnIndex.canonicalize("abc-123"));
+    }
+    
+    @Test
+    void lookupsAcceptEitherForm() {
+        assertSame(cleanCode, index.get("9780132350884"));
+        assertSame(cleanCode, index.get("978 0 13 235088 4"));
+        assertSame(cleanCode, index.get("0132350882"));
+        assertEquals("Chaos", index.get("0-8044-2957-X").getTitle());
+        assertNull(index.get("9780000000000"));
+        assertNull(index.get(null));
+        assertFalse(index.add(new Book("978-0-13-235088-4", "Duplicate", "Someone", 2008)));
+        assertEquals(5, index.size());
+    }
+    
+    @Test
+    void prefixesMatchCanonicalKeys() {
+        assertEquals(Arrays.asList("9780596007126", "9780596009205"), keys(index.findByPrefix("978-0-596")));
+        // An ISBN-10 prefix is widened to the 978 range
+        assertEquals(Arrays.asList("9780596007126", "9780596009205"), keys(index.findByPrefix("0-596")));
+        assertEquals(Arrays.asList("9791032305690"), keys(index.findByPrefix("979")));
+        assertEquals(5, index.findByPrefix("97").size());
+        assertEquals(5, index.findByPrefix("").size());
+        assertEquals(2, index.streamByPrefix("0596").count());
+    }
+    
+    @Test
+    void rangesAreInclusiveAndOrdered() {
+        assertEquals(Arrays.asList("9780132350884", "9780596007126", "9780596009205"),
+                keys(index.findRange("0-13-235088-2", "9780596009205")));
+        assertTrue(index.findRange("9780600000000", "9780100000000").isEmpty());
+        
+        List<Book> first = index.pageAfter(null, 2);
+        assertEquals(Arrays.asList("9780132350884", "9780596007126"), keys(first));
+        assertEquals(Arrays.asList("9780596009205", "9780804429573", "9791032305690"),
+                keys(index.pageAfter("9780596007126", 10)));
+    }
+    
+    @Test
+    void removalUsesTheCanonicalKey() {
+        index.remove(new Book("9780132350884", "Other copy", "Someone", 2008));
+        assertSame(cleanCode, index.get("0132350882"));
+        index.remove(cleanCode);
+        assertNull(index.get("9780132350884"));
+        assertTrue(index.findByPrefix("978013").isEmpty());
+    }
+    
+    private static List<String> keys(List<Book> books) {
+        return books.stream().map(book -> IsbnIndex.canonicalize(book.getIsbn())).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,116 @@
+package main.java.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+
+class TextIndexTest {
+    private static final String[] TITLES = {
+        "Clean Code", "The Clean Coder", "CODE COMPLETE",
+        "Design Patterns: Elements of Reusable Software",
+        "Head-First Java (2nd ed.)", "Java Concurrency in Practice", "Über die Straße", "Ça va, l'été?",
+        "Δοκιμή και Αλφάβητο", "東京の本", "C++ Primer", "It's a Go!", "a", "ab", "naïve Bayes, naïvely"
+    };
+    
+    private final TextIndex index = new TextIndex(Book::getTitle);
+    private final List<Book> books = new ArrayList<>();
+    
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < TITLES.length; i++) {
+            Book book = new Book(String.format("97800000%05d", i), TITLES[i], "Author", 2000);
+            books.add(book);
+            index.add(book);
+        }
+    }
+    
+    @Test
+    void everySubstringMatchesTheContainsScan() {
+        for (String query : queries()) {
+            assertSameBooks(scan(books, query), index.search(query), query);
+            assertSameBooks(scan(books, query), index.stream(query).collect(Collectors.toList()), query);
+            assertTrue(index.estimate(query) >= scan(books, query).size(), query);
+        }
+    }
+    
+    @Test
+    void shortMixedCaseAndPunctuatedQueries() {
+        assertEquals(TITLES.length, index.search("").size());
+        assertSameBooks(scan(books, "A"), index.search("A"));
+        assertSameBooks(scan(books, "c+"), index.search("C+"));
+        assertSameBooks(scan(books, "cLeAn CoD"), index.search("cLeAn CoD"));
+        assertSameBooks(scan(books, "(2nd"), index.search("(2ND"));
+        assertSameBooks(scan(books, "STRASSE"), index.search("STRASSE"));
+        assertEquals(1, index.search("ÜBER DIE").size());
+        assertEquals(1, index.search("ça VA, L'").size());
+        assertEquals(1, index.search("ΔΟΚΙΜΉ").size());
+        assertEquals(1, index.search("京の").size());
+        assertEquals(1, index.search("NAÏVE").size());
+        assertTrue(index.search("naive").isEmpty());
+    }
+    
+    @Test
+    void removedAndUpdatedBooksFollowTheScan() {
+        Book cleanCode = books.get(0);
+        index.remove(cleanCode);
+        books.remove(cleanCode);
+        index.remove(cleanCode);
+        
+        // An update re-indexes the book under its new title
+        Book java = books.stream().filter(book -> book.getTitle().startsWith("Head-First")).findFirst().get();
+        index.remove(java);
+        java.setTitle("Head First Kotlin");
+        index.add(java);
+        
+        for (String query : queries()) {
+            assertSameBooks(scan(books, query), index.search(query), query);
+        }
+        assertTrue(index.search("java (2nd").isEmpty());
+        assertEquals(Arrays.asList(java), index.search("kotlin"));
+        assertEquals(Arrays.asList(books.get(0)), index.search("clean cod"));
+    }
+    
+    // Every substring of every title, in a few casings, plus some that match nothing
+    private static Set<String> queries() {
+        Set<String> queries = new LinkedHashSet<>();
+        for (String title : TITLES) {
+            for (int from = 0; from < title.length(); from++) {
+                for (int to = from; to <= Math.min(title.length(), from + 8); to++) {
+                    String query = title.substring(from, to);
+                    queries.add(query);
+                    queries.add(query.toUpperCase());
+                }
+            }
+        }
+        queries.addAll(Arrays.asList("xyz", "codez", "java  ", " ", "--", "kotlin"));
+        return queries;
+    }
+    
+    // What the title strategy did before the index: a case-insensitive contains over every book
+    private static List<Book> scan(Collection<Book> books, String query) {
+        return books.stream()
+                .filter(book -> book.getTitle().toLowerCase().contains(query.toLowerCase()))
+                .collect(Collectors.toList());
+    }
+    
+    private static void assertSameBooks(List<Book> expected, List<Book> actual) {
+        assertSameBooks(expected, actual, "");
+    }
+    
+    private static void assertSameBooks(List<Book> expected, List<Book> actual, String query) {
+        assertEquals(new LinkedHashSet<>(expected), new LinkedHashSet<>(actual), query);
+        assertEquals(expected.size(), actual.size(), query);
+    }
+}
@@ -0,0 +1,87 @@
+package main.java.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+class LibraryMetricsTest {
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @Test
+    void percentilesStayWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMaxNanos());
+        assertEquals(500_500, snapshot.getMeanNanos(), 0.5);
+        assertEquals(500_000, snapshot.getPercentileNanos(50), 500_000 * 0.04);
+        assertEquals(990_000, snapshot.getPercentileNanos(99), 990_000 * 0.04);
+        assertEquals(1_000_000, snapshot.getPercentileNanos(100));
+    }
+    
+    @Test
+    void timeRecordsAlsoWhenTheOperationThrows() {
+        OperationMetrics operation = new LibraryMetrics().operation("op");
+        assertEquals("done", operation.time(() -> "done"));
+        assertThrows(IllegalStateException.class, () -> operation.time(() -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(2, operation.snapshot().getLatency().getCount());
+    }
+    
+    @Test
+    void operationsAreResolvedOnceByName() {
+        LibraryMetrics metrics = new LibraryMetrics();
+        assertSame(metrics.operation("getBook"), metrics.operation("getBook"));
+        metrics.operation("getBook").record(10);
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().get("getBook").getLatency().getCount());
+    }
+    
+    @Test
+    void serviceCountsLatencyAndFailureReasons() {
+        LibraryService service = new LibraryService();
+        service.addBook(new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008));
+        service.addPatron(new Patron("P001", "Ada", "ada@example.com", "555-0100"));
+        service.checkoutBook("P001", "9780132350884");
+        service.checkoutBook("P002", "9780132350884");
+        service.checkoutBook("P001", "9780201633610");
+        
+        OperationSnapshot checkout = service.getMetrics().snapshot().get("checkoutBook");
+        assertEquals(3, checkout.getLatency().getCount());
+        assertEquals(Long.valueOf(1), checkout.getFailures().get("unknown_patron"));
+        assertEquals(Long.valueOf(1), checkout.getFailures().get("unknown_book"));
+        assertEquals(2, checkout.getFailureCount());
+    }
+    
+    @Test
+    void prometheusTextHasQuantilesAndFailureCounters() {
+        LibraryMetrics metrics = new LibraryMetrics();
+        OperationMetrics operation = metrics.operation("returnBook");
+        operation.record(2_000_000);
+        operation.fail("not_borrowed");
+        
+        String text = metrics.toPrometheusText();
+        assertTrue(text.contains("library_operation_latency_seconds{operation=\"returnBook\",quantile=\"0.5\"}"));
+        assertTrue(text.contains("library_operation_latency_seconds_count{operation=\"returnBook\"} 1"));
+        assertTrue(text.contains("library_operation_failures_total{operation=\"returnBook\",reason=\"not_borrowed\"} 1"));
+    }
+}
@@ -0,0 +1,50 @@
+package main.java.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BookTest {
+    
+    @Test
+    void copiesLeaveAndReturnToTheShelfOneAtATime() {
+        Book book = new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008);
+        book.setCopies(2);
+        assertEquals(1, book.checkOutCopy());
+        assertEquals(0, book.checkOutCopy());
+        assertEquals(-1, book.checkOutCopy());
+        assertFalse(book.isAvailable());
+        assertEquals(1, book.returnCopy());
+        assertTrue(book.isAvailable());
+    }
+    
+    @Test
+    void copiesCanOnlyBeRemovedFromTheShelf() {
+        Book book = new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008);
+        book.setCopies(3);
+        book.checkOutCopy();
+        book.checkOutCopy();
+        assertFalse(book.changeCopies(-2));
+        assertTrue(book.changeCopies(-1));
+        assertEquals(2, book.getCopies());
+        assertEquals(0, book.getAvailableCopies());
+        assertTrue(book.changeCopies(2));
+        assertEquals(2, book.getAvailableCopies());
+        assertThrows(IllegalArgumentException.class, () -> book.setCopies(0));
+    }
+    
+    @Test
+    void onlyABookWithEveryCopyHomeCanBeRetired() {
+        Book book = new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008);
+        book.setCopies(2);
+        book.checkOutCopy();
+        assertFalse(book.retire());
+        book.returnCopy();
+        assertTrue(book.retire());
+        assertEquals(-1, book.checkOutCopy());
+        assertFalse(book.changeCopies(1));
+    }
+}
@@ -0,0 +1,64 @@
+package main.java.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+
+class PatronTest {
+    
+    @Test
+    void standalonePatronsKeepTheirLoansToThemselves() {
+        Patron first = new Patron("P001", "Ada", "ada@example.com", "555-0100");
+        Patron second = new Patron("P002", "Grace", "grace@example.com", "555-0101");
+        first.borrowBook("9780132350884");
+        second.borrowBook("9780201633610");
+        
+        assertArrayEquals(new int[] {0}, first.getBorrowedBookIds());
+        assertArrayEquals(new int[] {0}, second.getBorrowedBookIds());
+        assertTrue(first.hasBorrowed("9780132350884"));
+        assertFalse(first.hasBorrowed("9780201633610"));
+    }
+    
+    @Test
+    void joiningAServiceRecodesLoansAndHistory() {
+        IsbnDictionary service = new IsbnDictionary();
+        service.idFor("9780000000001");
+        service.idFor("9780000000002");
+        Patron patron = new Patron("P001", "Ada", "ada@example.com", "555-0100");
+        patron.borrowBook("9780132350884");
+        patron.borrowBook("9780201633610");
+        patron.returnBook("9780132350884");
+        
+        patron.useBookIds(service);
+        int id = service.lookup("9780201633610");
+        assertTrue(id >= 2);
+        assertArrayEquals(new int[] {id}, patron.getBorrowedBookIds());
+        assertTrue(patron.hasBorrowed(id));
+        assertEquals(new HashSet<>(Arrays.asList("9780201633610")), patron.getCurrentlyBorrowed());
+        assertEquals(Arrays.asList("9780132350884", "9780201633610"), patron.getBorrowingHistory());
+        
+        patron.returnBook("9780201633610");
+        assertEquals(0, patron.getBorrowedCount());
+    }
+    
+    @Test
+    void anySpellingOfAnIsbnFindsTheLoan() {
+        Patron patron = new Patron("P001", "Ada", "ada@example.com", "555-0100");
+        patron.borrowBook("0-13-235088-2");
+        assertTrue(patron.hasBorrowed("9780132350884"));
+        assertTrue(patron.hasBorrowed("978-0-13-235088-4"));
+        assertTrue(patron.hasBorrowed("0132350882"));
+        assertEquals(new HashSet<>(Arrays.asList("0-13-235088-2")), patron.getCurrentlyBorrowed());
+        
+        patron.borrowBook("9780132350884");
+        assertEquals(1, patron.getBorrowedCount());
+        patron.returnBook("0132350882");
+        assertFalse(patron.hasBorrowed("9780132350884"));
+    }
+}
@@ -0,0 +1,94 @@
+package main.java.observer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncEventBusTest {
+    
+    @Test
+    void deliversEveryEventOfOneBookInPublicationOrder() throws Exception {
+        List<String> seen = new ArrayList<>();
+        AtomicInteger batched = new AtomicInteger();
+        try (AsyncEventBus bus = new AsyncEventBus(2, 16, 4, BackpressurePolicy.BLOCK)) {
+            bus.subscribe(event -> seen.add(event.getPatronId()));
+            bus.subscribeBatch(events -> batched.addAndGet(events.size()));
+            for (int i = 0; i < 100; i++) {
+                bus.publish(new LibraryEvent(EventType.BOOK_CHECKED_OUT, "checked out", "P" + i, "9780132350884"));
+            }
+            assertTrue(bus.awaitDrained(10, TimeUnit.SECONDS));
+            assertEquals(100, seen.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("P" + i, seen.get(i));
+            }
+            assertEquals(100, batched.get());
+            assertEquals(100, bus.getStats().getDelivered());
+        }
+    }
+    
+    @Test
+    void spillingStopsAtTheRingsCapacityAndThenBlocks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> seen = new ArrayList<>();
+        try (AsyncEventBus bus = new AsyncEventBus(1, 2, 1, BackpressurePolicy.SPILL)) {
+            bus.subscribe(event -> {
+                awaitQuietly(release);
+                seen.add(event.getPatronId());
+            });
+            Thread publisher = new Thread(() -> {
+                for (int i = 0; i < 5; i++) {
+                    bus.publish(new LibraryEvent(EventType.BOOK_CHECKED_OUT, "checked out", "P" + i, "9780132350884"));
+                }
+            });
+            publisher.start();
+            while (bus.getStats().getSpilled() < 2 || publisher.getState() != Thread.State.WAITING) {
+                assertTrue(publisher.isAlive());
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+            assertTrue(publisher.isAlive());
+            assertEquals(2, bus.getStats().getSpilled());
+            
+            release.countDown();
+            publisher.join();
+            assertTrue(bus.awaitDrained(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("P0", "P1", "P2", "P3", "P4"), seen);
+        }
+    }
+    
+    @Test
+    void unsubscribedListenersGetNothingMore() throws Exception {
+        AtomicInteger single = new AtomicInteger();
+        AtomicInteger batched = new AtomicInteger();
+        LibraryEventListener listener = event -> single.incrementAndGet();
+        BatchLibraryEventListener batchListener = events -> batched.addAndGet(events.size());
+        try (AsyncEventBus bus = new AsyncEventBus()) {
+            bus.subscribe(listener);
+            bus.subscribeBatch(batchListener);
+            bus.publish(new LibraryEvent(EventType.BOOK_RETURNED, "returned", "P1", "9780132350884"));
+            assertTrue(bus.awaitDrained(10, TimeUnit.SECONDS));
+            bus.unsubscribe(listener);
+            bus.unsubscribeBatch(batchListener);
+            bus.publish(new LibraryEvent(EventType.BOOK_RETURNED, "returned", "P1", "9780132350884"));
+            assertTrue(bus.awaitDrained(10, TimeUnit.SECONDS));
+            assertEquals(1, single.get());
+            assertEquals(1, batched.get());
+        }
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package main.java.observer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class EventDispatcherTest {
+    
+    @Test
+    void deliversOnlyTheSubscribedTypes() {
+        EventDispatcher dispatcher = new EventDispatcher(false);
+        List<EventType> seen = new ArrayList<>();
+        List<EventType> batched = new ArrayList<>();
+        dispatcher.subscribe(event -> seen.add(event.getEventType()), EnumSet.of(EventType.BOOK_RETURNED));
+        dispatcher.subscribeBatch(events -> events.forEach(event -> batched.add(event.getEventType())),
+                EnumSet.of(EventType.BOOK_CHECKED_OUT));
+        
+        assertTrue(dispatcher.hasSubscribers(EventType.BOOK_RETURNED));
+        assertTrue(dispatcher.hasSubscribers(EventType.BOOK_CHECKED_OUT));
+        assertFalse(dispatcher.hasSubscribers(EventType.HOLD_PLACED));
+        
+        dispatcher.dispatch(Arrays.asList(event(EventType.BOOK_CHECKED_OUT), event(EventType.BOOK_RETURNED),
+                event(EventType.HOLD_PLACED)), null);
+        assertEquals(Arrays.asList(EventType.BOOK_RETURNED), seen);
+        assertEquals(Arrays.asList(EventType.BOOK_CHECKED_OUT), batched);
+    }
+    
+    @Test
+    void batchListenersGetTheBatchItselfWhenEveryEventMatches() {
+        EventDispatcher dispatcher = new EventDispatcher(false);
+        List<List<LibraryEvent>> received = new ArrayList<>();
+        dispatcher.subscribeBatch(received::add, EnumSet.of(EventType.BOOK_CHECKED_OUT));
+        List<LibraryEvent> events = Arrays.asList(event(EventType.BOOK_CHECKED_OUT), event(EventType.BOOK_CHECKED_OUT));
+        
+        dispatcher.dispatch(events, null);
+        dispatcher.dispatch(Arrays.asList(event(EventType.BOOK_RETURNED)), null);
+        assertEquals(1, received.size());
+        assertSame(events, received.get(0));
+    }
+    
+    @Test
+    void anEmptySetSubscribesToEveryTypeAndUnsubscribeStopsDelivery() {
+        EventDispatcher dispatcher = new EventDispatcher(false);
+        List<EventType> seen = new ArrayList<>();
+        LibraryEventListener listener = event -> seen.add(event.getEventType());
+        dispatcher.subscribe(listener, EnumSet.noneOf(EventType.class));
+        for (EventType type : EventType.values()) {
+            assertTrue(dispatcher.hasSubscribers(type));
+        }
+        
+        dispatcher.dispatch(Arrays.asList(event(EventType.HOLD_READY)), null);
+        dispatcher.unsubscribe(listener);
+        dispatcher.dispatch(Arrays.asList(event(EventType.HOLD_READY)), null);
+        assertEquals(Arrays.asList(EventType.HOLD_READY), seen);
+        assertFalse(dispatcher.hasSubscribers(EventType.HOLD_READY));
+    }
+    
+    private static LibraryEvent event(EventType type) {
+        return new LibraryEvent(type, type.name(), "P001", "9780132350884");
+    }
+}
@@ -0,0 +1,102 @@
+package main.java.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.java.model.Loan;
+
+class JournalWriterTest {
+    @TempDir
+    Path directory;
+    
+    @Test
+    void rotationKeepsEverySegmentInLsnOrder() throws Exception {
+        int records = 20000;
+        List<Long> rotatedAt = new ArrayList<>();
+        try (JournalWriter journal = new JournalWriter(directory, 1, Durability.GROUP_COMMIT, 1)) {
+            Thread appender = new Thread(() -> {
+                for (int i = 0; i < records; i++) {
+                    journal.bookCheckedOut(new Loan("P" + (i % 7), "978000000000" + (i % 10), i, i + 14, 0));
+                }
+            });
+            appender.start();
+            while (appender.isAlive()) {
+                long lastLsn = journal.rotate();
+                // Everything the rotation reports as closed is forced, and nothing beyond it
+                assertTrue(journal.getDurableLsn() >= lastLsn);
+                rotatedAt.add(lastLsn);
+                Thread.yield();
+            }
+            appender.join();
+        }
+        assertTrue(rotatedAt.size() > 1);
+        
+        // Read back in segment order: the LSNs run 1..records without a gap or an inversion
+        List<Long> lsns = new ArrayList<>();
+        for (Path segment : segments()) {
+            long first = JournalFormat.sequenceOf(segment, JournalFormat.JOURNAL_PREFIX, JournalFormat.JOURNAL_SUFFIX);
+            JournalReader.replay(segment, 0, record -> {
+                assertTrue(record.lsn >= first, "record " + record.lsn + " in segment " + first);
+                lsns.add(record.lsn);
+            });
+        }
+        assertEquals(records, lsns.size());
+        for (int i = 0; i < lsns.size(); i++) {
+            assertEquals(i + 1, (long) lsns.get(i));
+        }
+    }
+    
+    @Test
+    void rotatedSegmentHoldsExactlyTheReportedRecords() throws Exception {
+        try (JournalWriter journal = new JournalWriter(directory, 1, Durability.GROUP_COMMIT, 1)) {
+            for (int i = 0; i < 100; i++) {
+                journal.bookReturned("P1", "9780132350884");
+            }
+            assertEquals(100, journal.rotate());
+            assertEquals(100, journal.getDurableLsn());
+            journal.bookReturned("P1", "9780132350884");
+        }
+        List<Path> segments = segments();
+        assertEquals(2, segments.size());
+        assertEquals(100, JournalReader.replay(segments.get(0), 0, record -> { }).lastLsn);
+        assertEquals(101, JournalReader.replay(segments.get(1), 100, record -> { }).lastLsn);
+    }
+    
+    @Test
+    void failsFastOnceAWriteHasFailed() throws Exception {
+        Path lost = Files.createDirectory(directory.resolve("lost"));
+        try (JournalWriter journal = new JournalWriter(lost, 1, Durability.ASYNC, 1)) {
+            long lsn = journal.bookReturned("P1", "9780132350884");
+            Files.delete(lost.resolve(JournalFormat.journalName(1)));
+            Files.delete(lost);
+            
+            assertThrows(IOException.class, journal::rotate);
+            assertThrows(UncheckedIOException.class, () -> journal.bookReturned("P1", "9780132350884"));
+            assertThrows(UncheckedIOException.class, () -> journal.awaitDurable(lsn));
+            assertThrows(IOException.class, journal::rotate);
+        }
+    }
+    
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(JournalFormat.JOURNAL_PREFIX))
+                    .sorted((a, b) -> Long.compare(
+                            JournalFormat.sequenceOf(a, JournalFormat.JOURNAL_PREFIX, JournalFormat.JOURNAL_SUFFIX),
+                            JournalFormat.sequenceOf(b, JournalFormat.JOURNAL_PREFIX, JournalFormat.JOURNAL_SUFFIX)))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package main.java.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.java.model.Book;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+class LibraryPersistenceTest {
+    private static final int BOOKS = 20;
+    private static final int PATRONS = 8;
+    
+    @TempDir
+    Path directory;
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.WARNING);
+    }
+    
+    @Test
+    void recoversFromSnapshotAndJournal() throws Exception {
+        LibraryService service = new LibraryService();
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, service)) {
+            populate(service);
+            assertTrue(service.checkoutBook("P0", isbn(0)));
+            persistence.checkpoint();
+            assertTrue(service.checkoutBook("P1", isbn(1)));
+            assertTrue(service.returnBook("P0", isbn(0)));
+        }
+        
+        LibraryService recovered = new LibraryService();
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, recovered)) {
+            assertEquals(BOOKS, recovered.getAllBooks().size());
+            assertFalse(recovered.getPatron("P0").hasBorrowed(isbn(0)));
+            assertTrue(recovered.getPatron("P1").hasBorrowed(isbn(1)));
+            assertFalse(recovered.getBook(isbn(1)).isAvailable());
+        }
+    }
+    
+    @Test
+    void replaysEveryLoanCommittedAcrossConcurrentCheckpoints() throws Exception {
+        LibraryService service = new LibraryService();
+        Map<String, Set<String>> expected;
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, service)) {
+            populate(service);
+            Thread lending = new Thread(() -> {
+                for (int i = 0; i < 4000; i++) {
+                    String patron = "P" + (i % PATRONS);
+                    String isbn = isbn((i * 7) % BOOKS);
+                    if (!service.checkoutBook(patron, isbn)) {
+                        service.returnBook(patron, isbn);
+                    }
+                }
+            });
+            lending.start();
+            while (lending.isAlive()) {
+                persistence.checkpoint();
+            }
+            lending.join();
+            expected = loans(service);
+        }
+        
+        LibraryService recovered = new LibraryService();
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, recovered)) {
+            assertEquals(expected, loans(recovered));
+        }
+    }
+    
+    @Test
+    void guestsStayGuestsInTheJournalAndTheSnapshot() throws Exception {
+        LibraryService service = new LibraryService();
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, service)) {
+            populate(service);
+            assertTrue(service.addPatron(Patron.guestOf(new Patron("G0", "Guest", "g@example.com", "555-0190"))));
+            persistence.checkpoint();
+            assertTrue(service.addPatron(Patron.guestOf(new Patron("G1", "Guest", "g@example.com", "555-0191"))));
+        }
+        
+        LibraryService recovered = new LibraryService();
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, recovered)) {
+            assertTrue(recovered.getPatron("G0").isGuest());
+            assertTrue(recovered.getPatron("G1").isGuest());
+            assertFalse(recovered.getPatron("P0").isGuest());
+            assertEquals(Integer.MAX_VALUE, recovered.getPatron("G1").getMaxBooksAllowed());
+        }
+    }
+    
+    @Test
+    void loanTimesAndHoldsSurviveARestart() throws Exception {
+        ManualClock clock = new ManualClock();
+        LibraryService service = new LibraryService(clock);
+        List<String> loans;
+        List<String> holds;
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, service)) {
+            populate(service);
+            assertTrue(service.checkoutBook("P0", isbn(0)));
+            clock.advance(TimeUnit.DAYS.toMillis(3));
+            assertTrue(service.renewLoan("P0", isbn(0)));
+            assertTrue(service.checkoutBook("P1", isbn(1)));
+            assertTrue(service.placeHold("P2", isbn(1)));
+            assertTrue(service.placeHold("P3", isbn(1)));
+            persistence.checkpoint();
+            
+            // Everything from here on is only in the journal
+            clock.advance(TimeUnit.DAYS.toMillis(1));
+            assertTrue(service.returnBook("P1", isbn(1)));
+            assertTrue(service.checkoutBook("P4", isbn(2)));
+            clock.advance(TimeUnit.HOURS.toMillis(5));
+            assertTrue(service.renewLoan("P4", isbn(2)));
+            loans = describeLoans(service);
+            holds = describeHolds(service);
+        }
+        assertEquals(2, holds.size());
+        assertTrue(holds.get(0).startsWith("P2 " + isbn(1) + " "));
+        
+        clock.advance(TimeUnit.DAYS.toMillis(10));
+        LibraryService recovered = new LibraryService(clock);
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, recovered)) {
+            assertEquals(loans, describeLoans(recovered));
+            assertEquals(holds, describeHolds(recovered));
+            assertEquals(1, recovered.getLoan("P0", isbn(0)).getRenewals());
+            assertEquals(Arrays.asList("P2", "P3"), recovered.getHoldQueue(isbn(1)));
+            assertFalse(recovered.getBook(isbn(1)).isAvailable());
+        }
+        
+        // A second restart reads the same state back from a snapshot alone
+        LibraryService again = new LibraryService(clock);
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, again)) {
+            persistence.checkpoint();
+        }
+        LibraryService fromSnapshot = new LibraryService(clock);
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, fromSnapshot)) {
+            assertEquals(loans, describeLoans(fromSnapshot));
+            assertEquals(holds, describeHolds(fromSnapshot));
+            assertFalse(fromSnapshot.getBook(isbn(1)).isAvailable());
+        }
+    }
+    
+    private static void populate(LibraryService service) {
+        for (int i = 0; i < BOOKS; i++) {
+            service.addBook(new Book(isbn(i), "Title " + i, "Author " + i, 2000 + i));
+        }
+        for (int i = 0; i < PATRONS; i++) {
+            Patron patron = new Patron("P" + i, "Patron " + i, "p" + i + "@example.com", "555-01" + i);
+            patron.setMaxBooksAllowed(BOOKS);
+            service.addPatron(patron);
+        }
+    }
+    
+    private static Map<String, Set<String>> loans(LibraryService service) {
+        Map<String, Set<String>> loans = new TreeMap<>();
+        for (Patron patron : service.getAllPatrons()) {
+            loans.put(patron.getPatronId(), patron.getCurrentlyBorrowed());
+        }
+        return loans;
+    }
+    
+    private static List<String> describeLoans(LibraryService service) {
+        return service.getAllLoans().stream()
+                .map(loan -> loan.getPatronId() + " " + loan.getIsbn() + " " + loan.getCheckedOutAt() + " "
+                        + loan.getDueAt() + " " + loan.getRenewals())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+    
+    private static List<String> describeHolds(LibraryService service) {
+        return service.getAllHolds().stream()
+                .map(hold -> hold.getPatronId() + " " + hold.getIsbn() + " " + hold.getReadyUntil())
+                .collect(Collectors.toList());
+    }
+    
+    private static String isbn(int i) {
+        return String.format("97800000%05d", i);
+    }
+    
+    private static final class ManualClock extends Clock {
+        private volatile long millis = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+        
+        void advance(long delta) {
+            millis += delta;
+        }
+        
+        @Override
+        public long millis() {
+            return millis;
+        }
+        
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+        
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+        
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
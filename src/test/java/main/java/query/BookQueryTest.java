@@ -0,0 +1,156 @@
+package main.java.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Page;
+import main.java.model.Patron;
+import main.java.service.LibraryService;
+
+class BookQueryTest {
+    private static final String[] WORDS = {"java", "garden", "clean", "patterns", "history"};
+    private static final String[] AUTHORS = {"Martin", "Bloch", "Fowler", "Sierra"};
+    
+    private final LibraryService service = new LibraryService();
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(11);
+        for (int i = 0; i < 400; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            String author = AUTHORS[random.nextInt(AUTHORS.length)] + " " + (char) ('A' + random.nextInt(3));
+            service.addBook(new Book(String.format("9781000%06d", i), title, author, 1980 + random.nextInt(40)));
+        }
+        service.addPatron(new Patron("P001", "Ada", "ada@example.com", "555-0100"));
+        service.getPatron("P001").setMaxBooksAllowed(100);
+        for (int i = 0; i < 400; i += 9) {
+            service.checkoutBook("P001", String.format("9781000%06d", i));
+        }
+    }
+    
+    @Test
+    void combinedConditionsMatchAFullScan() {
+        check(BookQuery.author("martin").and(BookQuery.publishedBetween(2000, 2010)).and(BookQuery.available()),
+                book -> book.getAuthor().contains("Martin") && year(book, 2000, 2010) && book.isAvailable());
+        check(BookQuery.title("java").or(BookQuery.title("garden")).and(BookQuery.borrowed()),
+                book -> !book.isAvailable()
+                        && (book.getTitle().contains("java") || book.getTitle().contains("garden")));
+        check(BookQuery.anyOf(BookQuery.isbn("978100000012*"), BookQuery.author("sierra b")),
+                book -> book.getIsbn().startsWith("978100000012") || book.getAuthor().equals("Sierra B"));
+        check(BookQuery.allOf(BookQuery.title("patterns"), BookQuery.publishedBetween(2010, 1990)), book -> false);
+        check(BookQuery.isbn("978-1-000-00004-2"), book -> book.getIsbn().equals("9781000000042"));
+    }
+    
+    @Test
+    void randomTreesMatchAFullScan() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            List<Predicate<Book>> scan = new ArrayList<>(1);
+            BookQuery query = randomQuery(random, 3, scan);
+            check(query, scan.get(0));
+        }
+    }
+    
+    @Test
+    void pagesFollowCanonicalIsbnOrder() {
+        BookQuery query = BookQuery.title("clean").and(BookQuery.available());
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Book> page = service.findBooks(query, 7, cursor);
+            assertTrue(page.getItems().size() <= 7);
+            page.getItems().forEach(book -> paged.add(book.getIsbn()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        
+        List<String> all = isbns(service.findBooks(query));
+        all.sort(null);
+        assertEquals(all, paged);
+        assertNull(service.findBooks(null, 5, null).getNextCursor());
+    }
+    
+    @Test
+    void emptyCombinationsAreRejected() {
+        assertThrows(IllegalArgumentException.class, BookQuery::allOf);
+        assertThrows(NullPointerException.class, () -> BookQuery.title(null));
+        assertThrows(NullPointerException.class, () -> BookQuery.available().or(null));
+    }
+    
+    private BookQuery randomQuery(Random random, int depth, List<Predicate<Book>> scan) {
+        int kind = random.nextInt(depth == 0 ? 4 : 6);
+        Predicate<Book> predicate;
+        BookQuery query;
+        switch (kind) {
+            case 0: {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                query = BookQuery.title(word);
+                predicate = book -> book.getTitle().contains(word);
+                break;
+            }
+            case 1: {
+                String author = AUTHORS[random.nextInt(AUTHORS.length)];
+                query = BookQuery.author(author.toLowerCase());
+                predicate = book -> book.getAuthor().contains(author);
+                break;
+            }
+            case 2: {
+                int from = 1980 + random.nextInt(40);
+                int to = from + random.nextInt(10);
+                query = BookQuery.publishedBetween(from, to);
+                predicate = book -> year(book, from, to);
+                break;
+            }
+            case 3:
+                query = random.nextBoolean() ? BookQuery.available() : BookQuery.borrowed();
+                predicate = query == BookQuery.available() ? Book::isAvailable : book -> !book.isAvailable();
+                break;
+            default: {
+                List<Predicate<Book>> left = new ArrayList<>(1);
+                List<Predicate<Book>> right = new ArrayList<>(1);
+                BookQuery a = randomQuery(random, depth - 1, left);
+                BookQuery b = randomQuery(random, depth - 1, right);
+                boolean and = kind == 4;
+                query = and ? a.and(b) : a.or(b);
+                predicate = and ? left.get(0).and(right.get(0)) : left.get(0).or(right.get(0));
+            }
+        }
+        scan.add(predicate);
+        return query;
+    }
+    
+    private void check(BookQuery query, Predicate<Book> scan) {
+        List<String> expected = isbns(service.getAllBooks().stream().filter(scan).collect(Collectors.toList()));
+        List<String> found = isbns(service.findBooks(query));
+        expected.sort(null);
+        found.sort(null);
+        assertEquals(expected, found, query.toString());
+    }
+    
+    private static boolean year(Book book, int from, int to) {
+        return book.getPublicationYear() >= from && book.getPublicationYear() <= to;
+    }
+    
+    private static List<String> isbns(List<Book> books) {
+        return books.stream().map(Book::getIsbn).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,168 @@
+package main.java.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Loan;
+import main.java.model.Patron;
+import main.java.observer.EventType;
+
+class LendingDeskTest {
+    private static final String ISBN = "9780132350884";
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    
+    private final ManualClock clock = new ManualClock();
+    private final LibraryService service = new LibraryService(clock);
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        service.setLendingPolicy(new LendingPolicy(Duration.ofDays(14), Duration.ofDays(3), 1));
+        service.addBook(new Book(ISBN, "Clean Code", "Robert C. Martin", 2008));
+        for (String id : new String[] {"P01", "P02", "P03"}) {
+            service.addPatron(new Patron(id, "Patron " + id, id + "@example.com", "555-0100"));
+        }
+        service.addEventListener(event -> events.add(event.getEventType() + " " + event.getPatronId()),
+                EventType.LOAN_RENEWED, EventType.BOOK_OVERDUE, EventType.HOLD_READY, EventType.HOLD_EXPIRED);
+    }
+    
+    @Test
+    void loansAreDueAfterTheLoanPeriodAndRenewOnce() {
+        assertTrue(service.checkoutBook("P01", ISBN));
+        Loan loan = service.getLoan("P01", ISBN);
+        assertEquals(clock.millis() + 14 * DAY, loan.getDueAt());
+        
+        clock.advance(10 * DAY);
+        assertTrue(service.renewLoan("P01", ISBN));
+        assertEquals(clock.millis() + 14 * DAY, service.getLoan("P01", ISBN).getDueAt());
+        assertEquals(1, service.getLoans("P01").get(0).getRenewals());
+        assertFalse(service.renewLoan("P01", ISBN));
+        assertFalse(service.renewLoan("P02", ISBN));
+        assertEquals(Arrays.asList("LOAN_RENEWED P01"), events);
+        
+        assertTrue(service.returnBook("P01", ISBN));
+        assertNull(service.getLoan("P01", ISBN));
+    }
+    
+    @Test
+    void overdueLoansFireOnceUntilReturned() {
+        service.checkoutBook("P01", ISBN);
+        clock.advance(14 * DAY - 5000);
+        assertEquals(0, service.processExpirations());
+        
+        clock.advance(10_000);
+        assertEquals(1, service.processExpirations());
+        assertEquals(0, service.processExpirations());
+        assertEquals("P01", service.getOverdueLoans().get(0).getPatronId());
+        assertEquals(Arrays.asList("BOOK_OVERDUE P01"), events);
+        
+        service.returnBook("P01", ISBN);
+        assertTrue(service.getOverdueLoans().isEmpty());
+    }
+    
+    @Test
+    void returnedCopiesAreSetAsideForTheHoldQueueInOrder() {
+        service.checkoutBook("P01", ISBN);
+        assertFalse(service.placeHold("P01", ISBN));
+        assertTrue(service.placeHold("P02", ISBN));
+        assertTrue(service.placeHold("P03", ISBN));
+        assertFalse(service.placeHold("P03", ISBN));
+        assertFalse(service.renewLoan("P01", ISBN));
+        
+        service.returnBook("P01", ISBN);
+        assertEquals(Arrays.asList("P02", "P03"), service.getHoldQueue(ISBN));
+        assertEquals(Arrays.asList("HOLD_READY P02"), events);
+        assertFalse(service.checkoutBook("P03", ISBN));
+        assertTrue(service.checkoutBook("P02", ISBN));
+        assertEquals(Arrays.asList("P03"), service.getHoldQueue(ISBN));
+    }
+    
+    @Test
+    void lapsedPickupsPassToTheNextInLineThenTheShelf() {
+        service.checkoutBook("P01", ISBN);
+        service.placeHold("P02", ISBN);
+        service.placeHold("P03", ISBN);
+        service.returnBook("P01", ISBN);
+        
+        clock.advance(3 * DAY + 2000);
+        assertEquals(1, service.processExpirations());
+        assertEquals(Arrays.asList("P03"), service.getHoldQueue(ISBN));
+        
+        assertTrue(service.cancelHold("P03", ISBN));
+        assertFalse(service.cancelHold("P03", ISBN));
+        assertTrue(service.getHoldQueue(ISBN).isEmpty());
+        assertTrue(service.getBook(ISBN).isAvailable());
+        assertEquals(Arrays.asList("HOLD_READY P02", "HOLD_EXPIRED P02", "HOLD_READY P03"), events);
+    }
+    
+    @Test
+    void holdsNeedEveryCopyOut() {
+        service.setBookCopies(ISBN, 2);
+        service.checkoutBook("P01", ISBN);
+        assertFalse(service.placeHold("P02", ISBN));
+        assertTrue(service.checkoutBook("P02", ISBN));
+        assertTrue(service.placeHold("P03", ISBN));
+    }
+    
+    @Test
+    void copyChangesCarryTheCountAsTheirDetail() {
+        List<String> changes = new ArrayList<>();
+        service.addEventListener(event -> changes.add(event.getDetail() + " " + event.getDescription()),
+                EventType.BOOK_COPIES_CHANGED);
+        service.setBookCopies(ISBN, 3);
+        assertEquals(Arrays.asList("3 Copies set to 3"), changes);
+    }
+    
+    // A clock the test moves by hand, so expirations run without waiting
+    private static final class ManualClock extends Clock {
+        private volatile long millis = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+        
+        void advance(long delta) {
+            millis += delta;
+        }
+        
+        @Override
+        public long millis() {
+            return millis;
+        }
+        
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+        
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+        
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
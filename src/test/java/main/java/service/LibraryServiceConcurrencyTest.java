@@ -0,0 +1,157 @@
+package main.java.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.InventoryReport;
+import main.java.model.Patron;
+
+/**
+ * Concurrent checkouts and returns over a catalog with several copies per
+ * title. Every thread lends to patrons of its own and mostly asks for what
+ * can succeed, so nearly every operation changes state and the lending
+ * invariants are checked under real contention on the titles.
+ */
+class LibraryServiceConcurrencyTest {
+    private static final int THREADS = 4;
+    private static final int PATRONS_PER_THREAD = 8;
+    private static final int OPERATIONS_PER_THREAD = 20000;
+    private static final int BOOKS = 48;
+    private static final int COPIES = 3;
+    private static final int MAX_BOOKS_PER_PATRON = 4;
+    
+    private final LibraryService service = new LibraryService();
+    // Copies out per title, raised after a checkout succeeds and lowered before a return is asked for
+    private final AtomicIntegerArray lent = new AtomicIntegerArray(BOOKS);
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final List<String> violations = new CopyOnWriteArrayList<>();
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @Test
+    void lendingInvariantsHoldUnderContention() throws Exception {
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book(isbn(i), "Title " + i, "Author " + (i % 7), 2000 + i % 20);
+            book.setCopies(COPIES);
+            service.addBook(book);
+        }
+        for (int i = 0; i < THREADS * PATRONS_PER_THREAD; i++) {
+            Patron patron = new Patron(patronId(i), "Patron " + i, "p" + i + "@example.com", "555-0100");
+            patron.setMaxBooksAllowed(MAX_BOOKS_PER_PATRON);
+            service.addPatron(patron);
+        }
+        
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int first = t * PATRONS_PER_THREAD;
+            threads.add(new Thread(() -> lend(first, new Random(first), start)));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(new ArrayList<String>(), violations);
+        assertTrue(successes.get() >= attempts.get() * 9 / 10,
+                successes.get() + " of " + attempts.get() + " operations succeeded");
+        verifyFinalState();
+    }
+    
+    // Each patron's loans are only changed by its own thread, so the thread knows what it holds
+    private void lend(int firstPatron, Random random, CountDownLatch start) {
+        awaitQuietly(start);
+        List<List<Integer>> held = new ArrayList<>();
+        for (int p = 0; p < PATRONS_PER_THREAD; p++) {
+            held.add(new ArrayList<>());
+        }
+        for (int op = 0; op < OPERATIONS_PER_THREAD; op++) {
+            int p = random.nextInt(PATRONS_PER_THREAD);
+            String patronId = patronId(firstPatron + p);
+            List<Integer> loans = held.get(p);
+            attempts.incrementAndGet();
+            if (loans.size() < MAX_BOOKS_PER_PATRON && (loans.isEmpty() || random.nextBoolean())) {
+                int book = random.nextInt(BOOKS);
+                if (loans.contains(book) || !service.checkoutBook(patronId, isbn(book))) {
+                    continue;
+                }
+                loans.add(book);
+                successes.incrementAndGet();
+                int out = lent.incrementAndGet(book);
+                if (out > COPIES) {
+                    violations.add(out + " copies of " + isbn(book) + " lent");
+                }
+                int borrowed = service.getPatron(patronId).getBorrowedCount();
+                if (borrowed != loans.size()) {
+                    violations.add(patronId + " holds " + borrowed + " books, expected " + loans.size());
+                }
+            } else {
+                int book = loans.remove(random.nextInt(loans.size()));
+                lent.decrementAndGet(book);
+                if (service.returnBook(patronId, isbn(book))) {
+                    successes.incrementAndGet();
+                } else {
+                    violations.add("Return of " + isbn(book) + " by " + patronId + " was rejected");
+                }
+            }
+        }
+    }
+    
+    private void verifyFinalState() {
+        Map<String, Integer> loans = new HashMap<>();
+        for (Patron patron : service.getAllPatrons()) {
+            assertTrue(patron.getBorrowedCount() <= MAX_BOOKS_PER_PATRON, patron.toString());
+            for (String isbn : patron.getCurrentlyBorrowed()) {
+                loans.merge(isbn, 1, Integer::sum);
+            }
+        }
+        long available = 0;
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = service.getBook(isbn(i));
+            int out = loans.getOrDefault(book.getIsbn(), 0);
+            assertEquals(lent.get(i), out, book.getIsbn());
+            assertEquals(COPIES, book.getAvailableCopies() + out, book.getIsbn());
+            available += book.getAvailableCopies();
+        }
+        InventoryReport report = service.getInventorySummary();
+        assertEquals(BOOKS * COPIES, report.getTotalCopies());
+        assertEquals(available, report.getAvailableCopies());
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static String isbn(int i) {
+        return String.format("978-0-000-%05d-0", i);
+    }
+    
+    private static String patronId(int i) {
+        return String.format("P%03d", i);
+    }
+}
@@ -0,0 +1,237 @@
+package main.java.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.java.model.Book;
+import main.java.model.Hold;
+import main.java.model.InventoryReport;
+import main.java.model.Loan;
+import main.java.model.Patron;
+import main.java.observer.EventType;
+import main.java.persistence.MappedBookStore;
+import main.java.persistence.MutationLog;
+
+class LibraryServiceTest {
+    private LibraryService service;
+    
+    @TempDir
+    Path directory;
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        service = new LibraryService();
+        service.addBook(new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008));
+        service.addPatron(new Patron("P001", "Ada", "ada@example.com", "555-0100"));
+    }
+    
+    @Test
+    void checkoutAndReturnMoveTheCopy() {
+        assertTrue(service.checkoutBook("P001", "9780132350884"));
+        assertFalse(service.getBook("9780132350884").isAvailable());
+        assertNotNull(service.getLoan("P001", "9780132350884"));
+        
+        assertTrue(service.returnBook("P001", "9780132350884"));
+        assertTrue(service.getBook("9780132350884").isAvailable());
+        assertNull(service.getLoan("P001", "9780132350884"));
+    }
+    
+    @Test
+    void rejectsUnknownPatronsAndBooks() {
+        assertFalse(service.checkoutBook("P999", "9780132350884"));
+        assertFalse(service.checkoutBook("P001", "9780000000000"));
+        assertFalse(service.returnBook("P001", "9780132350884"));
+    }
+    
+    @Test
+    void duplicateIsbnIsRejected() {
+        assertFalse(service.addBook(new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008)));
+        assertEquals(1, service.getAllBooks().size());
+    }
+    
+    @Test
+    void typedListenersOnlyHearTheirTypes() {
+        List<EventType> lending = new ArrayList<>();
+        List<EventType> returns = new ArrayList<>();
+        service.addEventListener(event -> lending.add(event.getEventType()),
+                EventType.BOOK_CHECKED_OUT, EventType.BOOK_RETURNED);
+        service.addBatchEventListener(events -> events.forEach(event -> returns.add(event.getEventType())),
+                EventType.BOOK_RETURNED);
+        
+        service.addBook(new Book("9780201633610", "Design Patterns", "Erich Gamma", 1994));
+        service.checkoutBook("P001", "9780132350884");
+        service.returnBook("P001", "9780132350884");
+        assertEquals(Arrays.asList(EventType.BOOK_CHECKED_OUT, EventType.BOOK_RETURNED), lending);
+        assertEquals(Arrays.asList(EventType.BOOK_RETURNED), returns);
+    }
+    
+    @Test
+    void allOrNothingBatchLendsNothingWhenOneItemIsUnavailable() {
+        service.addBook(new Book("9780201633610", "Design Patterns", "Erich Gamma", 1994));
+        service.addPatron(new Patron("P002", "Grace", "grace@example.com", "555-0101"));
+        assertTrue(service.checkoutBook("P002", "9780201633610"));
+        InventoryReport before = service.getInventorySummary();
+        
+        LendingResult[] results = service.checkoutBooks("P001",
+                Arrays.asList("9780132350884", "9780201633610"), BatchMode.ALL_OR_NOTHING);
+        assertEquals(Arrays.asList(LendingResult.ABORTED, LendingResult.UNAVAILABLE), Arrays.asList(results));
+        assertTrue(service.getBook("9780132350884").isAvailable());
+        assertEquals(0, service.getPatron("P001").getBorrowedCount());
+        assertEquals(before.getAvailableCopies(), service.getInventorySummary().getAvailableCopies());
+        assertEquals(1, service.getAvailableBooks().size());
+    }
+    
+    @Test
+    void allOrNothingRacingSingleCheckoutsLeavesTheCountsWhole() throws Exception {
+        service.addBook(new Book("9780201633610", "Design Patterns", "Erich Gamma", 1994));
+        service.addPatron(new Patron("P002", "Grace", "grace@example.com", "555-0101"));
+        List<String> batch = Arrays.asList("9780132350884", "9780201633610");
+        CountDownLatch go = new CountDownLatch(1);
+        Thread single = new Thread(() -> {
+            awaitQuietly(go);
+            for (int i = 0; i < 20000; i++) {
+                if (service.checkoutBook("P002", "9780201633610")) {
+                    service.returnBook("P002", "9780201633610");
+                }
+            }
+        });
+        single.start();
+        go.countDown();
+        for (int i = 0; i < 20000; i++) {
+            LendingResult[] results = service.checkoutBooks("P001", batch, BatchMode.ALL_OR_NOTHING);
+            if (results[0] == LendingResult.OK) {
+                assertEquals(LendingResult.OK, results[1]);
+                service.returnBooks("P001", batch, BatchMode.ALL_OR_NOTHING);
+            }
+        }
+        single.join();
+        
+        InventoryReport report = service.getInventorySummary();
+        assertEquals(report.getTotalCopies(), report.getAvailableCopies());
+        assertEquals(2, report.getAvailableBooks());
+        assertEquals(2, service.getAvailableBooks().size());
+    }
+    
+    @Test
+    void everyServiceNumbersItsOwnBooks() {
+        LibraryService other = new LibraryService();
+        other.addBook(new Book("9780201633610", "Design Patterns", "Erich Gamma", 1994));
+        assertEquals(0, service.getBook("9780132350884").getInternalId());
+        assertEquals(0, other.getBook("9780201633610").getInternalId());
+        
+        Patron patron = new Patron("P002", "Grace", "grace@example.com", "555-0101");
+        patron.borrowBook("9780201633610");
+        patron.returnBook("9780201633610");
+        assertTrue(service.addPatron(patron));
+        assertTrue(service.checkoutBook("P002", "9780132350884"));
+        assertTrue(patron.hasBorrowed(0));
+        assertEquals(Arrays.asList("9780201633610", "9780132350884"), patron.getBorrowingHistory());
+    }
+    
+    @Test
+    void loansAreFoundUnderEitherIsbnForm() {
+        assertTrue(service.checkoutBook("P001", "0-13-235088-2"));
+        Patron patron = service.getPatron("P001");
+        assertTrue(patron.hasBorrowed("9780132350884"));
+        assertTrue(patron.hasBorrowed("0132350882"));
+        assertFalse(service.checkoutBook("P001", "978-0-13-235088-4"));
+        assertTrue(service.returnBook("P001", "0132350882"));
+        assertFalse(patron.hasBorrowed("9780132350884"));
+    }
+    
+    @Test
+    void snapshotSearchesSeeTheSnapshotsBooksEvenThroughIndexedStrategies() {
+        BookCatalog catalog = service.getCatalog();
+        try (LibrarySnapshot snapshot = service.openSnapshot()) {
+            service.addBook(new Book("9780134685991", "Effective Java", "Joshua Bloch", 2018));
+            service.updateBook("9780132350884",
+                    new Book("9780132350884", "Clean Architecture", "Robert C. Martin", 2017));
+            
+            assertEquals(1, service.searchBooksByTitle("java").size());
+            assertTrue(snapshot.searchBooks(catalog.titleSearch, "java").isEmpty());
+            assertEquals("Clean Code", snapshot.searchBooks(catalog.titleSearch, "code").get(0).getTitle());
+            assertTrue(snapshot.searchBooks(catalog.isbnSearch, "978013468*").isEmpty());
+            assertEquals(1, snapshot.searchBooks(catalog.authorSearch, "martin").size());
+            assertEquals(1, snapshot.searchBooks(catalog.fuzzySearch, "clen code").size());
+            
+            service.removeBook("9780132350884");
+            assertEquals(1, snapshot.searchBooks(catalog.isbnSearch, "0-13-235088-2").size());
+        }
+    }
+    
+    @Test
+    void booksOnlyInTheStoreAreReadWithoutJournalingAndLoadedByTheirFirstChange() throws Exception {
+        RecordingLog log = new RecordingLog();
+        service.setMutationLog(log);
+        try (MappedBookStore store = MappedBookStore.open(directory.resolve("books.db"), 16)) {
+            store.put(new Book("9780201633610", "Design Patterns", "Erich Gamma", 1994));
+            service.attachCatalog(store);
+            
+            Book stored = service.getBook("0-201-63361-2");
+            assertEquals("Design Patterns", stored.getTitle());
+            assertTrue(service.searchBooksByTitle("patterns").isEmpty());
+            assertEquals(Arrays.asList(), log.records);
+            
+            assertTrue(service.checkoutBook("P001", "9780201633610"));
+            assertEquals(Arrays.asList("bookAdded", "bookCheckedOut"), log.records);
+            assertEquals(Arrays.asList(2L), log.awaited);
+            assertFalse(service.getBook("9780201633610").isAvailable());
+            assertEquals(1, service.searchBooksByTitle("patterns").size());
+        }
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Numbers the records it is handed and remembers what was waited for
+    private static final class RecordingLog implements MutationLog {
+        final List<String> records = new ArrayList<>();
+        final List<Long> awaited = new ArrayList<>();
+        
+        private long record(String kind) {
+            records.add(kind);
+            return records.size();
+        }
+        
+        @Override public long bookAdded(Book book) { return record("bookAdded"); }
+        @Override public long bookUpdated(Book book) { return record("bookUpdated"); }
+        @Override public long bookRemoved(String isbn) { return record("bookRemoved"); }
+        @Override public long bookCopiesChanged(String isbn, int copies) { return record("bookCopiesChanged"); }
+        @Override public long patronAdded(Patron patron) { return record("patronAdded"); }
+        @Override public long patronUpdated(Patron patron) { return record("patronUpdated"); }
+        @Override public long guestAdded(Patron guest) { return record("guestAdded"); }
+        @Override public long bookCheckedOut(Loan loan) { return record("bookCheckedOut"); }
+        @Override public long bookReturned(String patronId, String isbn) { return record("bookReturned"); }
+        @Override public long loanRenewed(Loan loan) { return record("loanRenewed"); }
+        @Override public long holdPlaced(String patronId, String isbn) { return record("holdPlaced"); }
+        @Override public long holdCancelled(String patronId, String isbn) { return record("holdCancelled"); }
+        @Override public long holdReady(Hold hold) { return record("holdReady"); }
+        @Override public void awaitDurable(long lsn) { awaited.add(lsn); }
+    }
+}
@@ -0,0 +1,149 @@
+package main.java.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Page;
+import main.java.model.Patron;
+
+class ListingsTest {
+    private final LibraryService service = new LibraryService();
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        // Catalogued out of ISBN order, with one ISBN spelled with hyphens
+        for (int i : new int[] {7, 2, 9, 4, 0, 5, 8, 1, 6}) {
+            service.addBook(new Book("978000000000" + i, "Java volume " + i, "Author " + i, 2000 + i));
+        }
+        service.addBook(new Book("978-0-00-000000-3", "Java volume 3", "Author 3", 2003));
+        for (String id : new String[] {"P03", "P01", "P02"}) {
+            service.addPatron(new Patron(id, "Patron " + id, id + "@example.com", "555-0100"));
+        }
+    }
+    
+    @Test
+    void bookPagesFollowCanonicalIsbnOrderAndEndWithoutACursor() {
+        List<String> isbns = collect(cursor -> service.getAllBooks(3, cursor), 3).stream()
+                .map(book -> book.getIsbn().replace("-", "")).collect(Collectors.toList());
+        
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("978000000000" + i);
+        }
+        assertEquals(expected, isbns);
+    }
+    
+    @Test
+    void changesBetweenPagesAreSeenOrSkippedByPosition() {
+        Page<Book> first = service.getAllBooks(4, null);
+        service.addBook(new Book("9779999999999", "Behind the cursor", "Someone", 2020));
+        service.addBook(new Book("9789999999999", "Ahead of the cursor", "Someone", 2020));
+        service.removeBook("9780000000005");
+        
+        List<Book> rest = collectFrom(cursor -> service.getAllBooks(4, cursor), first.getNextCursor());
+        List<String> titles = rest.stream().map(Book::getTitle).collect(Collectors.toList());
+        assertFalse(titles.contains("Behind the cursor"));
+        assertFalse(titles.contains("Java volume 5"));
+        assertEquals("Ahead of the cursor", titles.get(titles.size() - 1));
+        assertEquals(6, rest.size());
+    }
+    
+    @Test
+    void patronPagesFollowPatronIds() {
+        Page<Patron> first = service.getAllPatrons(2, null);
+        assertEquals(Arrays.asList("P01", "P02"), ids(first.getItems()));
+        Page<Patron> second = service.getAllPatrons(2, first.getNextCursor());
+        assertEquals(Arrays.asList("P03"), ids(second.getItems()));
+        assertNull(second.getNextCursor());
+    }
+    
+    @Test
+    void availabilityPagesTrackCheckouts() {
+        service.checkoutBook("P01", "9780000000002");
+        service.checkoutBook("P02", "9780000000004");
+        
+        List<Book> borrowed = collect(cursor -> service.getBorrowedBooks(1, cursor), 1);
+        List<Book> available = collect(cursor -> service.getAvailableBooks(3, cursor), 3);
+        assertEquals(Arrays.asList("Java volume 2", "Java volume 4"), titles(borrowed));
+        assertEquals(8, available.size());
+        assertTrue(available.stream().allMatch(Book::isAvailable));
+    }
+    
+    @Test
+    void searchPagesHoldOnlyTheirMatches() {
+        service.addBook(new Book("9781234567897", "Cooking", "Chef", 1999));
+        
+        List<Book> matches = collect(cursor -> service.searchBooksByTitle("java", 4, cursor), 4);
+        assertEquals(10, matches.size());
+        assertFalse(titles(matches).contains("Cooking"));
+        assertEquals(service.streamBooksByTitle("java").count(), matches.size());
+    }
+    
+    @Test
+    void cursorsAndLimitsAreChecked() {
+        String bookCursor = service.getAllBooks(1, null).getNextCursor();
+        assertThrows(IllegalArgumentException.class, () -> service.getAllPatrons(1, bookCursor));
+        assertThrows(IllegalArgumentException.class, () -> service.getAllBooks(1, "not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> service.getAllBooks(0, null));
+    }
+    
+    @Test
+    void streamsCoverTheLiveCatalog() {
+        service.checkoutBook("P01", "9780000000009");
+        assertEquals(10, service.streamBooks().parallel().count());
+        assertEquals(9, service.streamAvailableBooks().count());
+        assertEquals(1, service.streamBorrowedBooks().count());
+        assertEquals(3, service.streamPatrons().count());
+    }
+    
+    private static <T> List<T> collect(Function<String, Page<T>> listing, int limit) {
+        List<T> items = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<T> page = listing.apply(cursor);
+            assertTrue(page.getItems().size() <= limit);
+            items.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return items;
+    }
+    
+    private static <T> List<T> collectFrom(Function<String, Page<T>> listing, String cursor) {
+        List<T> items = new ArrayList<>();
+        while (cursor != null) {
+            Page<T> page = listing.apply(cursor);
+            items.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        }
+        return items;
+    }
+    
+    private static List<String> ids(List<Patron> patrons) {
+        return patrons.stream().map(Patron::getPatronId).collect(Collectors.toList());
+    }
+    
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,116 @@
+package main.java.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Page;
+import main.java.strategy.SearchStrategy;
+
+class SearchCacheTest {
+    private final SearchStrategy title = (books, query) -> Collections.emptyList();
+    private final SearchStrategy author = (books, query) -> Collections.emptyList();
+    private final SearchStrategy isbn = (books, query) -> Collections.emptyList();
+    private final SearchStrategy fuzzy = (books, query) -> Collections.emptyList();
+    private final SearchStrategy custom = (books, query) -> Collections.emptyList();
+    private final SearchCache cache = new SearchCache(1024, title, author, isbn, fuzzy);
+    private final AtomicInteger loads = new AtomicInteger();
+    
+    @Test
+    void onlyChangesMatchingTheQueryDropAnEntry() {
+        Page<Book> first = get(title, "clean code");
+        assertSame(first, get(title, "clean code"));
+        
+        cache.invalidate("9780201633610", "Design Patterns", "Erich Gamma");
+        assertSame(first, get(title, "clean code"));
+        assertEquals(1, loads.get());
+        
+        cache.invalidate("9780132350884", "Clean Code", "Robert C. Martin");
+        get(title, "clean code");
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.stats().getInvalidations());
+    }
+    
+    @Test
+    void isbnEntriesAreDroppedByAnySpellingAndByPrefix() {
+        get(isbn, "978-0-13-235088-4");
+        get(isbn, "978013*");
+        get(isbn, "9780201633610");
+        cache.invalidate("0-13-235088-2", "Clean Code", "Robert C. Martin");
+        
+        get(isbn, "9780132350884");
+        get(isbn, "978-013*");
+        get(isbn, "9780201633610");
+        assertEquals(5, loads.get());
+    }
+    
+    @Test
+    void aLoadOverlappingAnUnrelatedChangeIsKept() {
+        get(author, "martin", () -> {
+            cache.invalidate("9780201633610", "Design Patterns", "Erich Gamma");
+            return page();
+        });
+        get(author, "martin");
+        assertEquals(1, loads.get());
+    }
+    
+    @Test
+    void aLoadOverlappingAMatchingChangeIsNotStored() {
+        get(author, "martin", () -> {
+            cache.invalidate("9780132350884", "Clean Code", "Robert C. Martin");
+            return page();
+        });
+        get(author, "martin");
+        assertEquals(2, loads.get());
+    }
+    
+    @Test
+    void availabilityOnlyDropsResultsOfOtherStrategies() {
+        get(title, "clean");
+        get(custom, "clean");
+        cache.invalidateAvailability();
+        
+        get(title, "clean");
+        get(custom, "clean");
+        assertEquals(3, loads.get());
+    }
+    
+    @Test
+    void entriesOutlivedByTheChangeLogAreReloaded() {
+        get(title, "clean code");
+        for (int i = 0; i < 1000; i++) {
+            cache.invalidate("97800000" + (10000 + i), "Unrelated " + i, "Someone");
+        }
+        get(title, "clean code");
+        assertEquals(2, loads.get());
+    }
+    
+    @Test
+    void clearDropsEverything() {
+        get(title, "clean");
+        get(fuzzy, "clean");
+        cache.clear();
+        get(title, "clean");
+        get(fuzzy, "clean");
+        assertEquals(4, loads.get());
+    }
+    
+    private Page<Book> get(SearchStrategy strategy, String query) {
+        return get(strategy, query, this::page);
+    }
+    
+    private Page<Book> get(SearchStrategy strategy, String query, Supplier<Page<Book>> loader) {
+        return cache.get(strategy, query, 0, null, loader);
+    }
+    
+    private Page<Book> page() {
+        loads.incrementAndGet();
+        return new Page<>(Collections.emptyList(), null);
+    }
+}
@@ -0,0 +1,173 @@
+package main.java.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.model.Book;
+import main.java.model.Page;
+import main.java.model.Patron;
+import main.java.observer.EventType;
+
+class ShardedLibraryServiceTest {
+    private final ShardedLibraryService sharded = new ShardedLibraryService(4);
+    private final LibraryService single = new LibraryService();
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 60; i++) {
+            String isbn = String.format("9780000%06d", i * 7919 % 1000);
+            String title = (i % 3 == 0 ? "Java " : "Garden ") + "volume " + i;
+            sharded.addBook(new Book(isbn, title, "Author " + i % 5, 1990 + i % 30));
+            single.addBook(new Book(isbn, title, "Author " + i % 5, 1990 + i % 30));
+        }
+        for (int i = 0; i < 20; i++) {
+            String id = String.format("P%03d", i);
+            sharded.addPatron(new Patron(id, "Patron " + i, id + "@example.com", "555-0100"));
+            single.addPatron(new Patron(id, "Patron " + i, id + "@example.com", "555-0100"));
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        sharded.close();
+    }
+    
+    @Test
+    void keysSpreadOverEveryPartitionAndStayPut() {
+        Set<Integer> used = new HashSet<>();
+        for (Book book : sharded.getAllBooks()) {
+            int partition = sharded.partitionForBook(book.getIsbn());
+            assertNotNull(sharded.getPartitions().get(partition).getBook(book.getIsbn()));
+            used.add(partition);
+        }
+        assertEquals(4, used.size());
+        assertEquals(sharded.partitionForBook("9780132350884"), sharded.partitionForBook("978-0-13-235088-4"));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedLibraryService(0));
+    }
+    
+    @Test
+    void partitionsMustShareTheirDictionary() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedLibraryService(Arrays.asList(new LibraryService(), new LibraryService())));
+    }
+    
+    @Test
+    void mergedPagesMatchASingleService() {
+        assertEquals(pages(cursor -> single.getAllBooks(7, cursor)), pages(cursor -> sharded.getAllBooks(7, cursor)));
+        assertEquals(pages(cursor -> single.searchBooksByTitle("java", 4, cursor)),
+                pages(cursor -> sharded.searchBooksByTitle("java", 4, cursor)));
+        
+        List<String> singlePatrons = new ArrayList<>();
+        List<String> shardedPatrons = new ArrayList<>();
+        for (String cursor = null; ; ) {
+            Page<Patron> page = sharded.getAllPatrons(6, cursor);
+            page.getItems().forEach(patron -> shardedPatrons.add(patron.getPatronId()));
+            if ((cursor = page.getNextCursor()) == null) {
+                break;
+            }
+        }
+        single.getAllPatrons().forEach(patron -> singlePatrons.add(patron.getPatronId()));
+        singlePatrons.sort(null);
+        assertEquals(singlePatrons, shardedPatrons);
+    }
+    
+    @Test
+    void borrowingLimitCountsLoansInEveryPartition() {
+        Patron patron = sharded.getPatron("P001");
+        List<Book> books = sharded.getAllBooks();
+        int borrowed = 0;
+        for (Book book : books) {
+            if (borrowed == patron.getMaxBooksAllowed()) {
+                assertFalse(sharded.checkoutBook("P001", book.getIsbn()));
+                break;
+            }
+            assertTrue(sharded.checkoutBook("P001", book.getIsbn()));
+            borrowed++;
+        }
+        assertEquals(patron.getMaxBooksAllowed(), sharded.getLoans("P001").size());
+        assertEquals(borrowed, sharded.getInventorySummary().getBorrowedBooks());
+        
+        // Guest records hold the loans abroad but are never listed
+        assertEquals(20, sharded.getAllPatrons().size());
+        String isbn = books.get(0).getIsbn();
+        assertTrue(sharded.returnBook("P001", isbn));
+        assertNull(sharded.getLoan("P001", isbn));
+        assertFalse(sharded.checkoutBook("P404", isbn));
+    }
+    
+    @Test
+    void guestRecordsFollowPatronUpdates() {
+        Book abroad = sharded.getAllBooks().stream()
+                .filter(book -> sharded.partitionForBook(book.getIsbn()) != sharded.partitionForPatron("P002"))
+                .findFirst().get();
+        assertTrue(sharded.checkoutBook("P002", abroad.getIsbn()));
+        
+        assertTrue(sharded.updatePatron("P002", new Patron("P002", "Renamed", "new@example.com", "555-0199")));
+        LibraryService branch = sharded.getPartitions().get(sharded.partitionForBook(abroad.getIsbn()));
+        assertEquals("Renamed", branch.getPatron("P002").getName());
+        assertEquals("Renamed", sharded.getPatron("P002").getName());
+    }
+    
+    @Test
+    void guestsAreNotAnnouncedAndFollowTheHomeLimit() {
+        List<EventType> added = new ArrayList<>();
+        sharded.addEventListener(event -> added.add(event.getEventType()), EventType.PATRON_ADDED);
+        int home = sharded.partitionForPatron("P003");
+        Map<Integer, List<String>> byPartition = sharded.getAllBooks().stream().map(Book::getIsbn)
+                .filter(isbn -> sharded.partitionForBook(isbn) != home)
+                .collect(Collectors.groupingBy(sharded::partitionForBook));
+        int abroad = Collections.max(byPartition.keySet(), Comparator.comparing(i -> byPartition.get(i).size()));
+        List<String> isbns = byPartition.get(abroad);
+        assertTrue(sharded.checkoutBook("P003", isbns.get(0)));
+        Patron guest = sharded.getPartitions().get(abroad).getPatron("P003");
+        assertTrue(guest.isGuest());
+        assertEquals(Arrays.asList(), added);
+        
+        // Raised on the home record after the guest was made
+        sharded.getPatron("P003").setMaxBooksAllowed(8);
+        for (int i = 1; i < 8; i++) {
+            assertTrue(sharded.checkoutBook("P003", isbns.get(i)));
+        }
+        assertFalse(sharded.checkoutBook("P003", isbns.get(8)));
+        assertEquals(8, guest.getBorrowedCount());
+    }
+    
+    private static List<String> pages(Function<String, Page<Book>> listing) {
+        List<String> isbns = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Book> page = listing.apply(cursor);
+            isbns.addAll(page.getItems().stream().map(Book::getIsbn).collect(Collectors.toList()));
+            isbns.add("|" + page.getNextCursor());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return isbns;
+    }
+}
@@ -0,0 +1,61 @@
+package main.java.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import main.java.model.IsbnDictionary;
+import main.java.model.Patron;
+
+class VersionStoreTest {
+    private final VersionStore store = new VersionStore(new IsbnDictionary());
+    
+    @Test
+    void aStalledCommitHoldsBackSnapshotsButNotOtherWriters() {
+        long stalled = store.reserve(null, null);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 3; i++) {
+                store.commitPatron(new Patron("P00" + i, "Patron " + i, "p" + i + "@example.com", "555-010" + i));
+            }
+        });
+        try (LibrarySnapshot before = store.open()) {
+            assertEquals(stalled - 1, before.getVersion());
+            assertNull(before.getPatron("P000"));
+        }
+        
+        store.publish(stalled);
+        try (LibrarySnapshot after = store.open()) {
+            assertEquals(stalled + 3, after.getVersion());
+            assertEquals(3, after.getPatrons().size());
+        }
+    }
+    
+    @Test
+    void concurrentCommitsPublishEveryStamp() throws Exception {
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int writer = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    store.commitPatron(new Patron("P" + writer + "-" + (i % 10), "Patron", "p@example.com", "555-0100"));
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        try (LibrarySnapshot snapshot = store.open()) {
+            assertEquals(20000, snapshot.getVersion());
+            assertEquals(40, snapshot.getPatrons().size());
+        }
+    }
+}
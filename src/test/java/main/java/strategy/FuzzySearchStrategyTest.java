@@ -0,0 +1,85 @@
+package main.java.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.index.TextIndex;
+import main.java.model.Book;
+import main.java.service.LibraryService;
+
+class FuzzySearchStrategyTest {
+    private final TextIndex titles = new TextIndex(Book::getTitle);
+    private final TextIndex authors = new TextIndex(Book::getAuthor);
+    private final List<Book> books = new ArrayList<>();
+    
+    @BeforeAll
+    static void quiet() {
+        Logger.getLogger("main.java").setLevel(Level.SEVERE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        add(new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008));
+        add(new Book("9780201633610", "Design Patterns", "Erich Gamma", 1994));
+        add(new Book("9780134685991", "Effective Java", "Joshua Bloch", 2018));
+        add(new Book("9781617294945", "Java Concurrency Patterns", "Someone Else", 2019));
+        add(new Book("9780596009205", "Head First Java", "Kathy Sierra", 2005));
+    }
+    
+    @Test
+    void misspelledTermsStillMatch() {
+        List<Book> results = new FuzzySearchStrategy(titles, authors).search(books, "efective jav");
+        assertEquals("Effective Java", results.get(0).getTitle());
+        assertEquals(3, results.size());
+    }
+    
+    @Test
+    void titleMatchesOutrankAuthorMatches() {
+        add(new Book("9780000000001", "Gardening", "Pattern Smith", 2001));
+        List<Book> results = new FuzzySearchStrategy(titles, authors).search(books, "patterns");
+        assertEquals(3, results.size());
+        assertEquals("Gardening", results.get(2).getTitle());
+    }
+    
+    @Test
+    void onlyTheBestResultsAreKept() {
+        List<Book> results = new FuzzySearchStrategy(titles, authors, 2).search(books, "java");
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(book -> book.getTitle().contains("Java")));
+        assertEquals(Collections.emptyList(), new FuzzySearchStrategy(titles, authors).search(books, "  "));
+        assertThrows(IllegalArgumentException.class, () -> new FuzzySearchStrategy(titles, authors, 0));
+    }
+    
+    @Test
+    void shortTermsMustMatchExactly() {
+        assertEquals(Collections.emptyList(), new FuzzySearchStrategy(titles, authors).search(books, "jv"));
+    }
+    
+    @Test
+    void serviceFollowsCatalogChanges() {
+        LibraryService service = new LibraryService();
+        books.forEach(service::addBook);
+        assertEquals("Clean Code", service.searchBooksFuzzy("clen").get(0).getTitle());
+        
+        service.removeBook("9780132350884");
+        assertTrue(service.searchBooksFuzzy("clen").isEmpty());
+        assertTrue(service.searchBooksFuzzy(null).isEmpty());
+    }
+    
+    private void add(Book book) {
+        books.add(book);
+        titles.add(book);
+        authors.add(book);
+    }
+}